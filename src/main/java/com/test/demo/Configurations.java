@@ -1,9 +1,35 @@
 package com.test.demo;
 
+import com.test.demo.http.Bulkhead;
+import com.test.demo.http.BulkheadInterceptor;
+import com.test.demo.http.Bulkheads;
+import com.test.demo.http.CircuitBreaker;
+import com.test.demo.http.CircuitBreakerInterceptor;
+import com.test.demo.http.CircuitBreakers;
+import com.test.demo.http.ConditionalRequestInterceptor;
+import com.test.demo.http.HttpResponseCache;
+import com.test.demo.http.MeteredRequestInterceptor;
+import com.test.demo.http.OutboundMetrics;
+import com.test.demo.http.RateLimitGovernor;
+import com.test.demo.http.RateLimitInterceptor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.actuate.info.InfoContributor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Main configuration class.
  */
@@ -11,7 +37,188 @@ import org.springframework.web.client.RestTemplate;
 public class Configurations {
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public HttpResponseCache httpResponseCache(@Value("${http.cache.max-entries:10000}") int maxEntries,
+                                               @Value("${http.cache.max-megabytes:64}") long maxMegabytes,
+                                               @Value("${http.cache.max-entry-kilobytes:1024}") int maxEntryKilobytes,
+                                               @Value("${http.cache.ttl-minutes:360}") long ttlMinutes) {
+        return new HttpResponseCache(maxEntries, maxMegabytes * 1024 * 1024, maxEntryKilobytes * 1024,
+                TimeUnit.MINUTES.toMillis(ttlMinutes));
+    }
+
+    @Bean
+    public RateLimitGovernor rateLimitGovernor(@Value("${github.rate-limit.reserve:50}") long reserve,
+                                               @Value("${github.rate-limit.max-wait-seconds:3600}") long maxWaitSeconds) {
+        return new RateLimitGovernor(reserve, TimeUnit.SECONDS.toMillis(maxWaitSeconds));
+    }
+
+    @Bean
+    public OutboundMetrics outboundMetrics(MeterRegistry meterRegistry,
+                                           @Value("${github.api-url:https://api.github.com}") String gitHubApiUrl,
+                                           @Value("${pipedrive.api-url:https://api.pipedrive.com}") String pipeDriveApiUrl) {
+        return new OutboundMetrics(meterRegistry, gitHubApiUrl, pipeDriveApiUrl);
+    }
+
+    /**
+     * Status of the health of the app while a circuit breaker is open: still serving, from caches and the
+     * outbox, but an upstream is failing.
+     */
+    public static final Status DEGRADED = new Status("DEGRADED", "An upstream api is failing");
+
+    @Bean
+    public CircuitBreakers circuitBreakers(@Value("${github.api-url:https://api.github.com}") String gitHubApiUrl,
+                                           @Value("${pipedrive.api-url:https://api.pipedrive.com}") String pipeDriveApiUrl,
+                                           @Value("${circuit-breaker.window-size:50}") int windowSize,
+                                           @Value("${circuit-breaker.minimum-calls:20}") int minimumCalls,
+                                           @Value("${circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+                                           @Value("${circuit-breaker.slow-call-millis:5000}") long slowCallMillis,
+                                           @Value("${circuit-breaker.slow-call-rate-threshold:80}") int slowCallRateThreshold,
+                                           @Value("${circuit-breaker.open-millis:30000}") long openMillis,
+                                           @Value("${circuit-breaker.half-open-calls:5}") int halfOpenCalls) {
+        return new CircuitBreakers(gitHubApiUrl, pipeDriveApiUrl, name -> new CircuitBreaker(name, windowSize,
+                minimumCalls, failureRateThreshold, slowCallMillis, slowCallRateThreshold, openMillis, halfOpenCalls));
+    }
+
+    /**
+     * Both bounds together should stay within {@code http.client.max-per-route}, so neither traffic can take
+     * the connections of the other.
+     */
+    @Bean
+    public Bulkheads bulkheads(@Value("${bulkhead.sweep.max-concurrent:12}") int sweepMaxConcurrent,
+                               @Value("${bulkhead.sweep.max-wait-millis:60000}") long sweepMaxWaitMillis,
+                               @Value("${bulkhead.interactive.max-concurrent:8}") int interactiveMaxConcurrent,
+                               @Value("${bulkhead.interactive.max-wait-millis:2000}") long interactiveMaxWaitMillis) {
+        return new Bulkheads(new Bulkhead("sweep", sweepMaxConcurrent, sweepMaxWaitMillis),
+                new Bulkhead("interactive", interactiveMaxConcurrent, interactiveMaxWaitMillis));
+    }
+
+    /**
+     * A call rejected because of the rate limit is retried by its caller through the whole chain, see
+     * {@link RateLimitInterceptor#retryRateLimited}, so every attempt goes through every interceptor. The bulkhead
+     * is inside the rate limit interceptor, so a call waiting on the rate limit holds no permit, and each attempt
+     * holds one until its response is closed. The circuit breaker inside the bulkhead sees each attempt. The
+     * metered one is innermost and times each attempt.
+     */
+    @Bean
+    public RestTemplate restTemplate(ClientHttpRequestFactory clientHttpRequestFactory,
+                                     HttpResponseCache httpResponseCache,
+                                     RateLimitGovernor rateLimitGovernor,
+                                     OutboundMetrics outboundMetrics,
+                                     CircuitBreakers circuitBreakers,
+                                     Bulkheads bulkheads,
+                                     @Value("${github.api-url:https://api.github.com}") String gitHubApiUrl,
+                                     @Value("${github.graphql-url:https://api.github.com/graphql}") String graphQlUrl,
+                                     @Value("${github.rate-limit.reserve:50}") long reserve,
+                                     @Value("${github.rate-limit.max-wait-seconds:3600}") long maxWaitSeconds,
+                                     @Value("${http.request.deadline-millis:10000}") long deadlineMillis) {
+        RestTemplate restTemplate = new RestTemplate(clientHttpRequestFactory);
+        restTemplate.getInterceptors().add(new ConditionalRequestInterceptor(httpResponseCache));
+        // the GraphQL api has a budget of points of its own
+        RateLimitGovernor graphQlGovernor = new RateLimitGovernor(reserve, TimeUnit.SECONDS.toMillis(maxWaitSeconds));
+        // interactive calls give up on the rate limit when their request would time out anyway
+        restTemplate.getInterceptors().add(new RateLimitInterceptor(rateLimitGovernor, gitHubApiUrl,
+                graphQlGovernor, graphQlUrl, bulkheads, deadlineMillis));
+        restTemplate.getInterceptors().add(new BulkheadInterceptor(bulkheads));
+        restTemplate.getInterceptors().add(new CircuitBreakerInterceptor(circuitBreakers));
+        restTemplate.getInterceptors().add(new MeteredRequestInterceptor(outboundMetrics));
+        return restTemplate;
+    }
+
+    /**
+     * Meters of the circuit breakers and bulkheads: {@code circuit.breaker.state} is 1 for the current state of
+     * each breaker and 0 for the others, {@code circuit.breaker.not.permitted} counts the calls refused by each
+     * breaker, and {@code bulkhead.available} and {@code bulkhead.rejected} give the free permits and refused
+     * calls of each bulkhead.
+     *
+     * @param circuitBreakers the breakers.
+     * @param bulkheads       the bulkheads.
+     * @return meter binder.
+     */
+    @Bean
+    public MeterBinder resilienceMetrics(CircuitBreakers circuitBreakers, Bulkheads bulkheads) {
+        return registry -> {
+            for (CircuitBreaker breaker : circuitBreakers.getAll()) {
+                for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+                    Gauge.builder("circuit.breaker.state", breaker, b -> b.getState() == state ? 1 : 0)
+                            .tag("name", breaker.getName())
+                            .tag("state", state.name())
+                            .register(registry);
+                }
+                FunctionCounter.builder("circuit.breaker.not.permitted", breaker,
+                        CircuitBreaker::getNotPermittedCalls)
+                        .description("Calls refused by an open circuit breaker")
+                        .tag("name", breaker.getName())
+                        .register(registry);
+            }
+            for (Bulkhead bulkhead : bulkheads.getAll()) {
+                Gauge.builder("bulkhead.available", bulkhead, Bulkhead::getAvailable)
+                        .tag("name", bulkhead.getName())
+                        .register(registry);
+                FunctionCounter.builder("bulkhead.rejected", bulkhead, Bulkhead::getRejected)
+                        .description("Calls refused by a full bulkhead")
+                        .tag("name", bulkhead.getName())
+                        .register(registry);
+            }
+        };
+    }
+
+    /**
+     * Expose the circuit breakers on {@code /actuator/health}, {@link #DEGRADED} while any of them is open.
+     *
+     * @param circuitBreakers the breakers.
+     * @return health indicator.
+     */
+    @Bean
+    public HealthIndicator circuitBreakersHealthIndicator(CircuitBreakers circuitBreakers) {
+        return () -> {
+            Health.Builder builder = Health.up();
+            for (CircuitBreaker breaker : circuitBreakers.getAll()) {
+                if (breaker.getState() == CircuitBreaker.State.OPEN) {
+                    builder.status(DEGRADED);
+                }
+                Map<String, Object> details = new LinkedHashMap<>();
+                details.put("state", breaker.getState());
+                details.put("failureRate", breaker.getFailureRate());
+                details.put("slowCallRate", breaker.getSlowCallRate());
+                details.put("notPermittedCalls", breaker.getNotPermittedCalls());
+                builder.withDetail(breaker.getName(), details);
+            }
+            return builder.build();
+        };
+    }
+
+    /**
+     * Expose hit/miss counters of {@link HttpResponseCache} on {@code /actuator/info}.
+     *
+     * @param httpResponseCache the cache.
+     * @return info contributor.
+     */
+    @Bean
+    public InfoContributor httpResponseCacheInfo(HttpResponseCache httpResponseCache) {
+        return builder -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("entries", httpResponseCache.size());
+            details.put("bytes", httpResponseCache.bytes());
+            details.put("hits", httpResponseCache.getHits());
+            details.put("misses", httpResponseCache.getMisses());
+            details.put("evictions", httpResponseCache.getEvictions());
+            builder.withDetail("httpResponseCache", details);
+        };
+    }
+
+    /**
+     * Expose the Github rate limit budget on {@code /actuator/info}.
+     *
+     * @param rateLimitGovernor the governor.
+     * @return info contributor.
+     */
+    @Bean
+    public InfoContributor rateLimitInfo(RateLimitGovernor rateLimitGovernor) {
+        return builder -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("remaining", rateLimitGovernor.getRemaining());
+            details.put("resetAt", rateLimitGovernor.getResetAt());
+            details.put("pausedForMillis", rateLimitGovernor.getPausedFor());
+            builder.withDetail("githubRateLimit", details);
+        };
     }
 }
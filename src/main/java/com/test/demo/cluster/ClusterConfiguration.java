@@ -0,0 +1,59 @@
+package com.test.demo.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configuration of the sweep across replicas, sharded by {@link ShardCoordinator} or run by the leader
+ * elected by {@link LeaderElection}.
+ */
+@Configuration
+public class ClusterConfiguration {
+
+    /**
+     * @param directory the directory shared by every replica.
+     * @return the store of members and shared users in the directory.
+     */
+    @Bean
+    @ConditionalOnExpression("${cluster.enabled:false} and '${cluster.store:file}' == 'file'")
+    public ClusterStore fileClusterStore(@Value("${cluster.dir:./cluster}") String directory) {
+        return new FileClusterStore(directory);
+    }
+
+    /**
+     * @param directory the directory shared by every replica.
+     * @return the store of the leader lease in the directory.
+     */
+    @Bean
+    @ConditionalOnExpression("${cluster.enabled:false} and '${cluster.mode:shard}' == 'leader'"
+            + " and '${cluster.lease-store:file}' == 'file'")
+    public LeaseStore fileLeaseStore(@Value("${cluster.dir:./cluster}") String directory) {
+        return new FileLeaseStore(directory);
+    }
+
+    /**
+     * Expose the members of the cluster and the leader on {@code /actuator/info}.
+     *
+     * @param shardCoordinator the coordinator.
+     * @param leaderElection   the leader election.
+     * @return info contributor.
+     */
+    @Bean
+    public InfoContributor clusterInfo(ShardCoordinator shardCoordinator, LeaderElection leaderElection) {
+        return builder -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("memberId", shardCoordinator.getMemberId());
+            details.put("members", shardCoordinator.getMembers());
+            if (leaderElection.isEnabled()) {
+                details.put("leader", leaderElection.getLeader());
+            }
+            builder.withDetail("cluster", details);
+        };
+    }
+}
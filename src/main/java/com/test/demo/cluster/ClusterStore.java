@@ -0,0 +1,67 @@
+package com.test.demo.cluster;
+
+import com.test.demo.dto.SharedUser;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Store shared by all replicas, holding who is alive and the sweep state of every user.
+ * {@link FileClusterStore} keeps it in a shared directory; with {@code cluster.store} set to anything else, a
+ * bean of another implementation (e.g. backed by a database) takes its place. Failures are thrown as
+ * unchecked exceptions, e.g. {@link java.io.UncheckedIOException}.
+ */
+public interface ClusterStore {
+
+    /**
+     * Announce that a member is alive.
+     *
+     * @param memberId  id of the member.
+     * @param expiresAt timestamp in epoch millis that the member counts as gone unless it announces again.
+     */
+    void heartbeat(String memberId, long expiresAt);
+
+    /**
+     * Announce that a member is leaving, so the others take over its users right away.
+     *
+     * @param memberId id of the member.
+     */
+    void leave(String memberId);
+
+    /**
+     * @param now current timestamp in epoch millis.
+     * @return ids of the members whose last heartbeat has not expired.
+     */
+    Set<String> members(long now);
+
+    /**
+     * Share the state of a user, replacing the previous one.
+     *
+     * @param sharedUser state of the user.
+     */
+    void putUser(SharedUser sharedUser);
+
+    /**
+     * Mark a user as removed.
+     *
+     * @param username username of the user.
+     */
+    void removeUser(String username);
+
+    /**
+     * @return every shared user, removed ones included, by username in lower case.
+     */
+    Map<String, SharedUser> users();
+
+    /**
+     * The shared users changed since a time, so a replica can keep up without reading every user. The default
+     * reads every user.
+     *
+     * @param since timestamp in epoch millis.
+     * @return the shared users changed at or after {@code since}, removed ones included, by username in lower
+     * case; may also hold users that did not change.
+     */
+    default Map<String, SharedUser> usersChangedSince(long since) {
+        return users();
+    }
+}
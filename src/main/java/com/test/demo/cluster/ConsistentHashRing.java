@@ -0,0 +1,72 @@
+package com.test.demo.cluster;
+
+import com.test.demo.persistence.Hashing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hashing of keys (usernames) onto members (replicas). Every member is placed on the ring at a
+ * number of virtual nodes and a key belongs to the first node at or after its hash, so a member joining or
+ * leaving only moves about {@code 1/members} of the keys, from or to that member. Immutable.
+ */
+public class ConsistentHashRing {
+
+    /**
+     * Members by the hash of their virtual nodes.
+     */
+    private final NavigableMap<Long, String> nodes = new TreeMap<>();
+
+    /**
+     * The members.
+     */
+    private final Set<String> members;
+
+    /**
+     * Constructor.
+     *
+     * @param members      ids of the members, at least one.
+     * @param virtualNodes number of nodes per member; more nodes spread the keys more evenly.
+     */
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one member");
+        }
+        this.members = Collections.unmodifiableSet(new TreeSet<>(members));
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // on a collision the smaller id wins, so every replica builds the same ring
+                nodes.merge(hash(member + "#" + i), member, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    /**
+     * @param key the key, e.g. a username in lower case.
+     * @return id of the member owning the key.
+     */
+    public String ownerOf(String key) {
+        Map.Entry<Long, String> node = nodes.ceilingEntry(hash(key));
+        return (node != null ? node : nodes.firstEntry()).getValue();
+    }
+
+    /**
+     * @return ids of the members, sorted.
+     */
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * @param value the value.
+     * @return hash of the value, see {@link Hashing}.
+     */
+    static long hash(String value) {
+        return Hashing.hash64(value);
+    }
+}
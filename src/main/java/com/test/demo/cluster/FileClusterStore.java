@@ -0,0 +1,231 @@
+package com.test.demo.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.SharedUser;
+import com.test.demo.service.UserRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * {@link ClusterStore} in a directory shared by all replicas (e.g. a volume mounted by every pod), or local to
+ * a host for tests. A member is a file in {@code members/} holding the expiry of its heartbeat, and a user is a
+ * json file in {@code users/}. Files are replaced atomically, so readers never see a partial write.
+ */
+public class FileClusterStore implements ClusterStore {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(FileClusterStore.class);
+
+    /**
+     * Suffix of the user files.
+     */
+    private static final String USER_SUFFIX = ".json";
+
+    /**
+     * Prefix of files being written.
+     */
+    private static final String TEMP_PREFIX = ".";
+
+    /**
+     * Directory of the member files.
+     */
+    private final Path membersDir;
+
+    /**
+     * Directory of the user files.
+     */
+    private final Path usersDir;
+
+    /**
+     * Jackson Object mapper.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Constructor.
+     *
+     * @param directory the shared directory, created if missing.
+     */
+    public FileClusterStore(String directory) {
+        this.membersDir = Paths.get(directory, "members");
+        this.usersDir = Paths.get(directory, "users");
+        try {
+            Files.createDirectories(membersDir);
+            Files.createDirectories(usersDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void heartbeat(String memberId, long expiresAt) {
+        write(membersDir.resolve(encode(memberId)), String.valueOf(expiresAt).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void leave(String memberId) {
+        try {
+            Files.deleteIfExists(membersDir.resolve(encode(memberId)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Set<String> members(long now) {
+        Set<String> members = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(membersDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(TEMP_PREFIX)) {
+                    continue;
+                }
+                String expiresAt = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+                try {
+                    if (Long.parseLong(expiresAt) > now) {
+                        members.add(decode(name));
+                    }
+                } catch (NumberFormatException e) {
+                    logger.warn("Skipping member file {} with expiry '{}'", file, expiresAt);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return members;
+    }
+
+    @Override
+    public void putUser(SharedUser sharedUser) {
+        try {
+            write(userFile(sharedUser.getUsername()), mapper.writeValueAsBytes(sharedUser));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void removeUser(String username) {
+        SharedUser removed = new SharedUser();
+        removed.setUsername(username);
+        removed.setRemoved(true);
+        putUser(removed);
+    }
+
+    @Override
+    public Map<String, SharedUser> users() {
+        return readUsers(Long.MIN_VALUE);
+    }
+
+    /**
+     * Only the files modified since the given time are read; listing the directory costs no reads.
+     *
+     * @param since timestamp in epoch millis, compared with the modification time of the user files.
+     * @return the users whose files were modified at or after {@code since}.
+     */
+    @Override
+    public Map<String, SharedUser> usersChangedSince(long since) {
+        return readUsers(since);
+    }
+
+    /**
+     * @param since timestamp in epoch millis, {@link Long#MIN_VALUE} for every user.
+     * @return the users whose files were modified at or after {@code since}, by username in lower case.
+     */
+    private Map<String, SharedUser> readUsers(long since) {
+        Map<String, SharedUser> users = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(usersDir, "*" + USER_SUFFIX)) {
+            for (Path file : files) {
+                if (file.getFileName().toString().startsWith(TEMP_PREFIX)) {
+                    continue;
+                }
+                if (since != Long.MIN_VALUE && Files.getLastModifiedTime(file).toMillis() < since) {
+                    continue;
+                }
+                SharedUser sharedUser;
+                try {
+                    sharedUser = mapper.readValue(file.toFile(), SharedUser.class);
+                } catch (IOException e) {
+                    logger.error(String.format("Skipping unreadable shared user %s", file), e);
+                    continue;
+                }
+                users.put(UserRegistry.normalize(sharedUser.getUsername()), sharedUser);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return users;
+    }
+
+    /**
+     * @param username username of a user.
+     * @return file of the user.
+     */
+    private Path userFile(String username) {
+        return usersDir.resolve(encode(UserRegistry.normalize(username)) + USER_SUFFIX);
+    }
+
+    /**
+     * Replace a file atomically.
+     *
+     * @param file    the file.
+     * @param content new content of the file.
+     */
+    static void write(Path file, byte[] content) {
+        Path temp = file.resolveSibling(TEMP_PREFIX + file.getFileName() + "." + UUID.randomUUID());
+        try {
+            Files.write(temp, content);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param name a member id or username.
+     * @return the name as a safe file name.
+     */
+    private static String encode(String name) {
+        try {
+            return URLEncoder.encode(name, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param fileName a file name made by {@link #encode(String)}.
+     * @return the name.
+     */
+    private static String decode(String fileName) {
+        try {
+            return URLDecoder.decode(fileName, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.test.demo.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.LeaderLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.function.UnaryOperator;
+
+/**
+ * {@link LeaseStore} in a directory shared by all replicas, next to {@link FileClusterStore}. The lease is a
+ * json file, read and replaced while holding an exclusive lock on a lock file, so works offline without any
+ * coordination service. The lock is only held for the update, never while sweeping, so a replica that dies
+ * leaves a lease that simply expires.
+ */
+public class FileLeaseStore implements LeaseStore {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(FileLeaseStore.class);
+
+    /**
+     * Serializes updates within this JVM, where a second lock on the same file would be refused.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    /**
+     * The lease file.
+     */
+    private final Path leaseFile;
+
+    /**
+     * The lock file.
+     */
+    private final Path lockFile;
+
+    /**
+     * Jackson Object mapper.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Constructor.
+     *
+     * @param directory the shared directory, created if missing.
+     */
+    public FileLeaseStore(String directory) {
+        this.leaseFile = Paths.get(directory, "leader.json");
+        this.lockFile = Paths.get(directory, "leader.lock");
+        try {
+            Files.createDirectories(leaseFile.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public LeaderLease acquire(String holder, long now, long leaseMillis) {
+        return update(lease -> {
+            if (lease.getHolder() != null && !lease.getHolder().equals(holder) && lease.getExpiresAt() > now) {
+                return null;
+            }
+            lease.setHolder(holder);
+            lease.setExpiresAt(now + leaseMillis);
+            return lease;
+        });
+    }
+
+    @Override
+    public void release(String holder) {
+        update(lease -> {
+            if (!holder.equals(lease.getHolder())) {
+                return null;
+            }
+            lease.setExpiresAt(0);
+            return lease;
+        });
+    }
+
+    @Override
+    public LeaderLease checkpoint(String holder, Date sweepStartedAt) {
+        return update(lease -> {
+            if (!holder.equals(lease.getHolder())) {
+                return null;
+            }
+            lease.setSweepStartedAt(sweepStartedAt);
+            return lease;
+        });
+    }
+
+    /**
+     * Read and replace the lease under the lock.
+     *
+     * @param change changes the lease, returns {@code null} to leave it unchanged.
+     * @return the lease after the change.
+     */
+    private LeaderLease update(UnaryOperator<LeaderLease> change) {
+        synchronized (JVM_LOCK) {
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                LeaderLease lease = read();
+                LeaderLease changed = change.apply(lease);
+                if (changed == null) {
+                    return lease;
+                }
+                FileClusterStore.write(leaseFile, mapper.writeValueAsBytes(changed));
+                return changed;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the lease, a free one if missing or unreadable.
+     */
+    private LeaderLease read() {
+        if (Files.exists(leaseFile)) {
+            try {
+                return mapper.readValue(leaseFile.toFile(), LeaderLease.class);
+            } catch (IOException e) {
+                logger.warn(String.format("Replacing unreadable lease %s", leaseFile), e);
+            }
+        }
+        return new LeaderLease();
+    }
+}
@@ -0,0 +1,217 @@
+package com.test.demo.cluster;
+
+import com.test.demo.dto.LeaderLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Elects the one replica that sweeps, for high availability without sharding ({@code cluster.mode=leader}).
+ * Every replica tries to take or renew a {@link LeaderLease} in the {@link LeaseStore}; the holder is the
+ * leader and stops counting as one once it could not renew for the length of the lease, which is also when
+ * the others may take over. A leader that dies mid-sweep is replaced within {@code lease-millis + renew-millis},
+ * and the start of its sweep, kept in the lease, lets the new leader resume the sweep instead of restarting it.
+ * <p>
+ * Without a store (the default) this replica is always the leader.
+ */
+@Component
+public class LeaderElection {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+
+    /**
+     * The shared store, {@code null} when not electing.
+     */
+    private final LeaseStore store;
+
+    /**
+     * Id of this replica.
+     */
+    private final String memberId;
+
+    /**
+     * Time the lease is held unless renewed, in milliseconds.
+     */
+    private final long leaseMillis;
+
+    /**
+     * The lease as of the last attempt, {@code null} until the first one.
+     */
+    private volatile LeaderLease lease;
+
+    /**
+     * Timestamp of the last renewal of the lease by this replica.
+     */
+    private volatile long renewedAt;
+
+    /**
+     * Whether this replica was the leader after the last attempt, to log changes.
+     */
+    private volatile boolean leading;
+
+    /**
+     * Constructor.
+     *
+     * @param store       the shared store, present when electing.
+     * @param memberId    id of this replica, a random one if empty.
+     * @param leaseMillis time the lease is held unless renewed, in milliseconds.
+     */
+    @Autowired
+    public LeaderElection(Optional<LeaseStore> store,
+                          @Value("${cluster.member-id:${HOSTNAME:}}") String memberId,
+                          @Value("${cluster.leader.lease-millis:15000}") long leaseMillis) {
+        this.store = store.orElse(null);
+        this.memberId = StringUtils.hasText(memberId) ? memberId : UUID.randomUUID().toString();
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * Run for leader, so the outcome is known before the first sweep.
+     */
+    @PostConstruct
+    public void join() {
+        if (store != null) {
+            logger.info("Running for sweep leader as {}", memberId);
+            renew();
+        }
+    }
+
+    /**
+     * Give up the lease, so another replica takes over right away.
+     */
+    @PreDestroy
+    public void leave() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.release(memberId);
+        } catch (RuntimeException e) {
+            logger.warn("Could not release the leader lease, another replica takes over once it expires", e);
+        }
+    }
+
+    /**
+     * Take or renew the lease.
+     */
+    @Scheduled(fixedDelayString = "${cluster.leader.renew-millis:5000}")
+    public void renew() {
+        if (store == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        LeaderLease current;
+        try {
+            current = store.acquire(memberId, now, leaseMillis);
+        } catch (RuntimeException e) {
+            logger.error("Could not renew the leader lease", e);
+            return;
+        }
+        if (memberId.equals(current.getHolder())) {
+            renewedAt = now;
+        }
+        lease = current;
+        boolean leader = isLeader();
+        if (leader != leading) {
+            leading = leader;
+            if (leader) {
+                logger.info("Elected sweep leader{}", current.getSweepStartedAt() == null ? ""
+                        : String.format(", resuming the sweep started at %s", current.getSweepStartedAt()));
+            } else {
+                logger.warn("No longer the sweep leader, {} is", current.getHolder());
+            }
+        }
+    }
+
+    /**
+     * @return whether this replica sweeps; a leader that could not renew for the length of the lease is not.
+     */
+    public boolean isLeader() {
+        if (store == null) {
+            return true;
+        }
+        LeaderLease current = lease;
+        return current != null && memberId.equals(current.getHolder())
+                && System.currentTimeMillis() - renewedAt < leaseMillis;
+    }
+
+    /**
+     * Record the start of a sweep of the leader, so another leader resumes it.
+     *
+     * @param startedAt start of the sweep.
+     */
+    public void sweepStarted(Date startedAt) {
+        checkpoint(startedAt);
+    }
+
+    /**
+     * Record that the sweep of the leader processed every user.
+     */
+    public void sweepFinished() {
+        checkpoint(null);
+    }
+
+    /**
+     * @return start of the sweep a leader has not finished as of the last attempt, {@code null} if none or not
+     * electing.
+     */
+    public Date getUnfinishedSweep() {
+        LeaderLease current = lease;
+        return current == null ? null : current.getSweepStartedAt();
+    }
+
+    /**
+     * @return whether leaders are elected, i.e. a {@link LeaseStore} is configured.
+     */
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * @return id of this replica.
+     */
+    public String getMemberId() {
+        return memberId;
+    }
+
+    /**
+     * @return id of the leader as of the last attempt, this replica when not electing.
+     */
+    public String getLeader() {
+        if (store == null) {
+            return memberId;
+        }
+        LeaderLease current = lease;
+        return current == null ? null : current.getHolder();
+    }
+
+    /**
+     * Record the checkpoint of the sweep in the lease, logging a failure: the sweep then restarts if the
+     * leader changes.
+     *
+     * @param sweepStartedAt start of the sweep, {@code null} if finished.
+     */
+    private void checkpoint(Date sweepStartedAt) {
+        if (store == null) {
+            return;
+        }
+        try {
+            lease = store.checkpoint(memberId, sweepStartedAt);
+        } catch (RuntimeException e) {
+            logger.error("Could not record the sweep checkpoint in the leader lease", e);
+        }
+    }
+}
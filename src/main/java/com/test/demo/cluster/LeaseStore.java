@@ -0,0 +1,40 @@
+package com.test.demo.cluster;
+
+import com.test.demo.dto.LeaderLease;
+
+import java.util.Date;
+
+/**
+ * Store of the {@link LeaderLease}, shared by all replicas. Every call must be atomic across replicas.
+ * {@link FileLeaseStore} keeps it under a file lock in a shared directory; with {@code cluster.lease-store} set
+ * to anything else, a bean of another implementation (e.g. backed by a database) takes its place. Failures are
+ * thrown as unchecked exceptions, e.g. {@link java.io.UncheckedIOException}.
+ */
+public interface LeaseStore {
+
+    /**
+     * Take the lease if it is free or expired, or renew it if already held.
+     *
+     * @param holder      id of the replica.
+     * @param now         current timestamp in epoch millis.
+     * @param leaseMillis time the lease is held unless renewed, in milliseconds.
+     * @return the lease after the attempt, held by {@code holder} if it succeeded.
+     */
+    LeaderLease acquire(String holder, long now, long leaseMillis);
+
+    /**
+     * Give up the lease if held, keeping its checkpoint, so another replica takes it right away.
+     *
+     * @param holder id of the replica.
+     */
+    void release(String holder);
+
+    /**
+     * Record the start of the leader's sweep, {@code null} once the sweep is finished.
+     *
+     * @param holder         id of the replica.
+     * @param sweepStartedAt start of the sweep, {@code null} if finished.
+     * @return the lease, unchanged if not held by {@code holder}.
+     */
+    LeaderLease checkpoint(String holder, Date sweepStartedAt);
+}
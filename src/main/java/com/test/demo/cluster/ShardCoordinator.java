@@ -0,0 +1,463 @@
+package com.test.demo.cluster;
+
+import com.test.demo.dto.SharedUser;
+import com.test.demo.dto.UserDTO;
+import com.test.demo.persistence.UserStore;
+import com.test.demo.service.UserRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+/**
+ * Splits the users between the replicas, so each user is swept by one replica only.
+ * Every replica heartbeats into the {@link ClusterStore} and places the live members on a
+ * {@link ConsistentHashRing}; a replica sweeps the users the ring gives it. When a replica joins or leaves,
+ * the next heartbeat rebuilds the ring and about {@code 1/members} of the users move.
+ * <p>
+ * The previous owner of a user that moved only sees the new ring at its own next heartbeat, and the outbox and
+ * {@code DeliveredGistIndex} that keep a gist from being posted twice are local to a replica. So a user that
+ * moved here from a member that is still live is only taken over once that member must have seen the new ring,
+ * or stopped owning anybody because its heartbeats failed: {@code cluster.member-ttl-millis} after the change.
+ * A user whose previous owner left is taken over right away. A replica that joins treats the ring without
+ * itself as the previous one.
+ * <p>
+ * The store also holds the sweep state of every user: changes made through a replica are shared, and before a
+ * sweep {@link #sync()} brings the local {@link UserRegistry} up to date, so users added through any replica
+ * are swept, and a user that moved keeps the cursor and pending gists of its previous replica. Polls in between
+ * use {@link #syncChanges()}, which only reads the users changed since the last sync.
+ * <p>
+ * With {@code cluster.mode=leader}, {@link LeaderElection} decides instead: the leader owns every user.
+ * <p>
+ * Without a store (the default, {@code cluster.enabled=false}) this replica owns every user.
+ */
+@Component
+public class ShardCoordinator {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    /**
+     * The shared store, {@code null} when not clustered.
+     */
+    private final ClusterStore store;
+
+    /**
+     * Registry containing all user being screened.
+     */
+    private final UserRegistry users;
+
+    /**
+     * Injected {@link UserStore}, journals changes made by {@link #sync()}.
+     */
+    private final UserStore userStore;
+
+    /**
+     * Injected {@link LeaderElection}, decides ownership when it elects leaders.
+     */
+    private final LeaderElection leaderElection;
+
+    /**
+     * Id of this replica.
+     */
+    private final String memberId;
+
+    /**
+     * Time a heartbeat counts, in milliseconds.
+     */
+    private final long memberTtlMillis;
+
+    /**
+     * Number of nodes per member on the ring.
+     */
+    private final int virtualNodes;
+
+    /**
+     * Most time between two syncs reading every user, in milliseconds.
+     */
+    private final long fullSyncMillis;
+
+    /**
+     * Start of the last sync, guarded by {@code this}.
+     */
+    private long lastSyncAt;
+
+    /**
+     * Start of the last sync reading every user, guarded by {@code this}.
+     */
+    private long lastFullSyncAt = Long.MIN_VALUE;
+
+    /**
+     * Ring of the live members, {@code null} until the first heartbeat.
+     */
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * Timestamp of the last successful heartbeat.
+     */
+    private volatile long lastHeartbeatAt;
+
+    /**
+     * Ring the users are handed off from while {@link #handoffUntil} has not passed, {@code null} if nobody
+     * else was a member.
+     */
+    private volatile ConsistentHashRing handoffRing;
+
+    /**
+     * Timestamp until which users that moved here from a live member are not taken over.
+     */
+    private volatile long handoffUntil;
+
+    /**
+     * How far back a sync of the changes reaches before the start of the previous sync, for coarse modification
+     * times and clock skew between the replicas and the store.
+     */
+    static final long SYNC_OVERLAP_MILLIS = 60_000;
+
+    /**
+     * Source of the current time in milliseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Constructor.
+     *
+     * @param users           User Registry.
+     * @param userStore       User Store.
+     * @param store           the shared store, present when clustered.
+     * @param leaderElection  Leader Election, also gives the id of this replica.
+     * @param memberTtlMillis time a heartbeat counts, in milliseconds.
+     * @param virtualNodes    number of nodes per member on the ring.
+     * @param fullSyncMillis  most time between two syncs reading every user, in milliseconds.
+     */
+    @Autowired
+    public ShardCoordinator(UserRegistry users, UserStore userStore, Optional<ClusterStore> store,
+                            LeaderElection leaderElection,
+                            @Value("${cluster.member-ttl-millis:30000}") long memberTtlMillis,
+                            @Value("${cluster.virtual-nodes:128}") int virtualNodes,
+                            @Value("${cluster.full-sync-millis:10800000}") long fullSyncMillis) {
+        this(users, userStore, store, leaderElection, memberTtlMillis, virtualNodes, fullSyncMillis,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor with a custom clock.
+     *
+     * @param users           User Registry.
+     * @param userStore       User Store.
+     * @param store           the shared store, present when clustered.
+     * @param leaderElection  Leader Election, also gives the id of this replica.
+     * @param memberTtlMillis time a heartbeat counts, in milliseconds.
+     * @param virtualNodes    number of nodes per member on the ring.
+     * @param fullSyncMillis  most time between two syncs reading every user, in milliseconds.
+     * @param clock           source of the current time in milliseconds.
+     */
+    ShardCoordinator(UserRegistry users, UserStore userStore, Optional<ClusterStore> store,
+                     LeaderElection leaderElection, long memberTtlMillis, int virtualNodes, long fullSyncMillis,
+                     LongSupplier clock) {
+        this.clock = clock;
+        this.users = users;
+        this.userStore = userStore;
+        this.store = store.orElse(null);
+        this.leaderElection = leaderElection;
+        this.memberId = leaderElection.getMemberId();
+        this.memberTtlMillis = memberTtlMillis;
+        this.virtualNodes = virtualNodes;
+        this.fullSyncMillis = fullSyncMillis;
+    }
+
+    /**
+     * Join the cluster, so the ring is known before the first sweep.
+     */
+    @PostConstruct
+    public void join() {
+        if (store != null) {
+            logger.info("Joining the cluster as {}", memberId);
+            heartbeat();
+        }
+    }
+
+    /**
+     * Leave the cluster, so the other replicas take over the users right away.
+     */
+    @PreDestroy
+    public void leave() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.leave(memberId);
+        } catch (RuntimeException e) {
+            logger.warn("Could not leave the cluster, the others take over once the heartbeat expires", e);
+        }
+    }
+
+    /**
+     * Announce this replica and rebuild the ring if the members changed, starting a handoff.
+     */
+    @Scheduled(fixedDelayString = "${cluster.heartbeat-millis:10000}")
+    public synchronized void heartbeat() {
+        if (store == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        Set<String> members;
+        try {
+            store.heartbeat(memberId, now + memberTtlMillis);
+            members = new TreeSet<>(store.members(now));
+        } catch (RuntimeException e) {
+            logger.error("Cluster heartbeat failed", e);
+            return;
+        }
+        members.add(memberId);
+        lastHeartbeatAt = now;
+        ConsistentHashRing current = ring;
+        if (current == null || !current.getMembers().equals(members)) {
+            if (now >= handoffUntil) {
+                // while a handoff runs, users are still handed off from the ring before it
+                handoffRing = current != null ? current : ringWithout(members, memberId);
+            }
+            handoffUntil = now + memberTtlMillis;
+            // written last, so a reader seeing the new ring sees its handoff
+            ring = new ConsistentHashRing(members, virtualNodes);
+            logger.info("Cluster members are now {}, users are rebalanced", members);
+        }
+    }
+
+    /**
+     * Whether this replica sweeps a user. While heartbeats fail for longer than they count, the other replicas
+     * may have taken over, so this replica owns nobody until the store is reachable again.
+     *
+     * @param username username of the user.
+     * @return whether this replica owns the user.
+     */
+    public boolean owns(String username) {
+        if (leaderElection.isEnabled()) {
+            return leaderElection.isLeader();
+        }
+        if (store == null) {
+            return true;
+        }
+        ConsistentHashRing current = ring;
+        long now = clock.getAsLong();
+        if (current == null || now - lastHeartbeatAt > memberTtlMillis) {
+            return false;
+        }
+        String key = UserRegistry.normalize(username);
+        if (!memberId.equals(current.ownerOf(key))) {
+            return false;
+        }
+        ConsistentHashRing from = handoffRing;
+        if (now >= handoffUntil || from == null) {
+            return true;
+        }
+        String previousOwner = from.ownerOf(key);
+        // the previous owner may still sweep the user until it sees the new ring
+        return memberId.equals(previousOwner) || !current.getMembers().contains(previousOwner);
+    }
+
+    /**
+     * Share a new user. A failure is logged; the user is shared again by the next {@link #sync()}.
+     *
+     * @param userDTO the user.
+     */
+    public void userAdded(UserDTO userDTO) {
+        share(userDTO);
+    }
+
+    /**
+     * Share the state of a user after it was swept. A failure is logged; the state is shared again after
+     * the next sweep of the user.
+     *
+     * @param userDTO the user.
+     */
+    public void userSwept(UserDTO userDTO) {
+        share(userDTO);
+    }
+
+    /**
+     * Share that a user was removed. A failure is thrown, otherwise the next {@link #sync()} would bring the
+     * user back.
+     *
+     * @param username username of the user.
+     */
+    public void userRemoved(String username) {
+        if (store != null) {
+            store.removeUser(username);
+        }
+    }
+
+    /**
+     * Bring the local users up to date with the store, before a sweep: shared users missing here are added,
+     * removed ones are removed, and a user whose shared cursor is ahead (it was swept by another replica)
+     * takes over the shared cursor and pending gists. Users only known here, e.g. from before clustering was
+     * enabled, are shared. Reads every shared user.
+     */
+    public void sync() {
+        sync(true);
+    }
+
+    /**
+     * Same as {@link #sync()}, reading only the users changed since the last sync, unless the last sync reading
+     * every user is {@code cluster.full-sync-millis} old. Users only known here are shared by the full syncs.
+     */
+    public void syncChanges() {
+        sync(false);
+    }
+
+    /**
+     * @param full whether to read every shared user, rather than the ones changed since the last sync.
+     */
+    private synchronized void sync(boolean full) {
+        if (store == null) {
+            return;
+        }
+        heartbeat();
+        long now = clock.getAsLong();
+        boolean readAll = full || lastFullSyncAt == Long.MIN_VALUE || now - lastFullSyncAt >= fullSyncMillis;
+        Map<String, SharedUser> shared;
+        try {
+            shared = readAll ? store.users() : store.usersChangedSince(lastSyncAt - SYNC_OVERLAP_MILLIS);
+        } catch (RuntimeException e) {
+            logger.error("Could not read the shared users, sweeping the local ones", e);
+            return;
+        }
+        int added = 0;
+        int removed = 0;
+        int adopted = 0;
+        for (SharedUser sharedUser : shared.values()) {
+            Optional<UserDTO> local = users.find(sharedUser.getUsername());
+            if (sharedUser.isRemoved()) {
+                if (local.isPresent() && users.remove(sharedUser.getUsername()).isPresent()) {
+                    userStore.removed(local.get().getUsername());
+                    removed++;
+                }
+                continue;
+            }
+            UserDTO userDTO = local.orElse(null);
+            if (userDTO == null) {
+                userDTO = new UserDTO();
+                userDTO.setUsername(sharedUser.getUsername());
+                if (!users.add(userDTO)) {
+                    continue;
+                }
+                userStore.added(userDTO);
+                added++;
+            }
+            if (adopt(userDTO, sharedUser)) {
+                adopted++;
+            }
+        }
+        lastSyncAt = now;
+        if (readAll) {
+            lastFullSyncAt = now;
+            for (UserDTO userDTO : users.snapshot()) {
+                if (!shared.containsKey(UserRegistry.normalize(userDTO.getUsername()))) {
+                    share(userDTO);
+                }
+            }
+        }
+        if (added + removed + adopted > 0) {
+            // runs before every poll, so only changes are worth a line
+            logger.info("Synced users with the cluster: {} added, {} removed, {} taken over", added, removed, adopted);
+        }
+    }
+
+    /**
+     * @return id of this replica.
+     */
+    public String getMemberId() {
+        return memberId;
+    }
+
+    /**
+     * @return ids of the live members as of the last heartbeat, empty when not clustered.
+     */
+    public Set<String> getMembers() {
+        ConsistentHashRing current = ring;
+        return current == null ? Collections.emptySet() : current.getMembers();
+    }
+
+    /**
+     * @param members  the members.
+     * @param memberId a member.
+     * @return the ring of the other members, {@code null} if there are none.
+     */
+    private ConsistentHashRing ringWithout(Set<String> members, String memberId) {
+        Set<String> others = new TreeSet<>(members);
+        others.remove(memberId);
+        return others.isEmpty() ? null : new ConsistentHashRing(others, virtualNodes);
+    }
+
+    /**
+     * Take over the shared state of a user if it is ahead of the local one.
+     *
+     * @param userDTO    the local user.
+     * @param sharedUser the shared state.
+     * @return whether the shared state was taken over.
+     */
+    private boolean adopt(UserDTO userDTO, SharedUser sharedUser) {
+        boolean adopted = false;
+        Date lastAdded = sharedUser.getLastAdded();
+        if (lastAdded != null && (userDTO.getLastAdded() == null || lastAdded.after(userDTO.getLastAdded()))) {
+            // swept elsewhere during the sweep being resumed, so it is not swept again
+            userDTO.setLastAdded(lastAdded);
+            userStore.swept(userDTO);
+            adopted = true;
+        }
+        Date cursor = sharedUser.getCursor();
+        if (cursor == null || (userDTO.getCursor() != null && !cursor.after(userDTO.getCursor()))) {
+            return adopted;
+        }
+        userDTO.setCursor(cursor);
+        userStore.cursorMoved(userDTO);
+        for (String gistId : userDTO.getPendingGists().keySet()) {
+            if (!sharedUser.getPendingGists().containsKey(gistId)) {
+                userDTO.getPendingGists().remove(gistId);
+                userStore.gistDelivered(userDTO, gistId);
+            }
+        }
+        sharedUser.getPendingGists().forEach((gistId, gistUrl) -> {
+            if (userDTO.getPendingGists().putIfAbsent(gistId, gistUrl) == null) {
+                userStore.gistPending(userDTO, gistId, gistUrl);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Share the state of a user, logging a failure.
+     *
+     * @param userDTO the user.
+     */
+    private void share(UserDTO userDTO) {
+        if (store == null) {
+            return;
+        }
+        SharedUser sharedUser = new SharedUser();
+        sharedUser.setUsername(userDTO.getUsername());
+        sharedUser.setCursor(userDTO.getCursor());
+        sharedUser.setLastAdded(userDTO.getLastAdded());
+        sharedUser.setPendingGists(new HashMap<>(userDTO.getPendingGists()));
+        try {
+            store.putUser(sharedUser);
+        } catch (RuntimeException e) {
+            logger.error(String.format("Could not share user %s with the cluster", userDTO.getUsername()), e);
+        }
+    }
+}
@@ -1,34 +1,100 @@
 package com.test.demo.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.test.demo.UserAlreadyExistsException;
+import com.test.demo.dto.SweepProgress;
 import com.test.demo.dto.UserDTO;
+import com.test.demo.dto.UserGists;
 import com.test.demo.service.MainService;
+import com.test.demo.service.UserBulkTransfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Controller to interact with users.
+ * Endpoints that may wait on Github are served asynchronously: the work runs on a pool of its own and the
+ * request thread is given back to Tomcat right away, so slow Github responses cannot hold up other requests.
  */
 @RestController
 public class MainController {
 
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(MainController.class);
+
+    /**
+     * Maximum number of users in a page of {@code GET /users}.
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+
     /**
      * Injected Main Service.
      */
     private final MainService mainService;
 
+    /**
+     * Injected User Bulk Transfer, imports and exports users one at a time.
+     */
+    private final UserBulkTransfer userBulkTransfer;
+
+    /**
+     * Runs the work of the endpoints that may wait on Github.
+     */
+    private final ThreadPoolExecutor upstreamExecutor;
+
+    /**
+     * Time a request may wait on Github before it is answered with 504 (Gateway Timeout), in milliseconds.
+     */
+    private final long deadlineMillis;
+
     /**
      * Constructor.
      *
-     * @param mainService Main Service.
+     * @param mainService      Main Service.
+     * @param userBulkTransfer User Bulk Transfer.
+     * @param upstreamThreads  number of threads serving requests that may wait on Github.
+     * @param queueCapacity    number of such requests waiting for a thread, more are refused with 503.
+     * @param deadlineMillis   time such a request may take, in milliseconds.
      */
     @Autowired
-    public MainController(MainService mainService) {
+    public MainController(MainService mainService, UserBulkTransfer userBulkTransfer,
+                          @Value("${http.request.upstream-threads:32}") int upstreamThreads,
+                          @Value("${http.request.upstream-queue-capacity:1000}") int queueCapacity,
+                          @Value("${http.request.deadline-millis:10000}") long deadlineMillis) {
         this.mainService = mainService;
+        this.userBulkTransfer = userBulkTransfer;
+        this.deadlineMillis = deadlineMillis;
+        AtomicInteger threads = new AtomicInteger();
+        this.upstreamExecutor = new ThreadPoolExecutor(upstreamThreads, upstreamThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "upstream-request-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        upstreamExecutor.allowCoreThreadTimeOut(true);
     }
 
     /**
@@ -44,14 +110,14 @@ public class MainController {
      * Endpoint to add users for screening.
      *
      * @param username Username of the new user.
-     * @return Http 201 (Created) if successful, 400 if duplicate username.
+     * @return Http 201 (Created) if successful, 400 if duplicate or not a Github username.
      */
     @PostMapping(value = "/add-user", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
     public ResponseEntity addUser(@RequestParam String username) {
         try {
             mainService.addUser(username);
             return ResponseEntity.status(HttpStatus.CREATED).build();
-        } catch (UserAlreadyExistsException e) {
+        } catch (UserAlreadyExistsException | IllegalArgumentException e) {
             return ResponseEntity.status(400).body(e.getMessage());
         }
     }
@@ -69,24 +135,151 @@ public class MainController {
     }
 
     /**
-     * Endpoint to get all screened users.
+     * Endpoint to get screened users. Without parameters all users are streamed as one json list.
+     * With {@code limit} and/or {@code after}, a page of users in username order is returned, and a
+     * {@code Link} header with {@code rel="next"} points to the next page.
      *
+     * @param after username of the last user of the previous page.
+     * @param limit maximum number of users in the page, capped at {@value #MAX_PAGE_SIZE}.
      * @return a json list of {@link UserDTO}.
      */
     @GetMapping("/users")
-    public ResponseEntity getUsers() {
-        return ResponseEntity.ok(mainService.getUsers());
+    public ResponseEntity<StreamingResponseBody> getUsers(@RequestParam(required = false) String after,
+                                                         @RequestParam(required = false) Integer limit) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8);
+        if (after == null && limit == null) {
+            return response.body(out -> userBulkTransfer.exportUsers(UserBulkTransfer.Format.JSON, out));
+        }
+        int size = limit == null ? MAX_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<UserDTO> page = mainService.getUsers(after, size);
+        if (page.size() == size) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.get(page.size() - 1).getUsername())
+                    .replaceQueryParam("limit", size)
+                    .build().encode().toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(out -> userBulkTransfer.writeJson(page, out));
+    }
+
+    /**
+     * Endpoint to export all screened users, streamed one user per line.
+     *
+     * @param format {@code ndjson} (default) or {@code csv}.
+     * @return users as ndjson, or as csv with a header line.
+     */
+    @GetMapping("/users/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = "ndjson") String format) {
+        UserBulkTransfer.Format exported = "csv".equalsIgnoreCase(format)
+                ? UserBulkTransfer.Format.CSV : UserBulkTransfer.Format.NDJSON;
+        StreamingResponseBody body = out -> userBulkTransfer.exportUsers(exported, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exported.getMediaType() + ";charset=UTF-8"))
+                .body(body);
+    }
+
+    /**
+     * Endpoint to add users for screening in bulk. The body is read line by line: ndjson objects with a
+     * {@code username} field, or csv with the username in the first column and an optional header line.
+     * The result of each line (ADDED, EXISTS or INVALID) is streamed back as ndjson while the body is read.
+     *
+     * @param contentType {@code application/x-ndjson} or {@code text/csv}.
+     * @param body        the users.
+     * @param response    receives the results.
+     * @throws IOException if reading the body or writing the results fails.
+     */
+    @PostMapping(value = "/users/import", consumes = {"application/x-ndjson", "text/csv"})
+    public void importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body,
+                            HttpServletResponse response) throws IOException {
+        UserBulkTransfer.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(
+                MediaType.parseMediaType(UserBulkTransfer.Format.CSV.getMediaType()))
+                ? UserBulkTransfer.Format.CSV : UserBulkTransfer.Format.NDJSON;
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(UserBulkTransfer.Format.NDJSON.getMediaType() + ";charset=UTF-8");
+        userBulkTransfer.importUsers(body, format, response.getOutputStream());
     }
 
     /**
      * Endpoint to get all gists of a user, since last visit.
+     * The gists are written straight from the gist cache to the response, without building it in memory first.
+     * The {@code X-Cache} header tells whether they were served from the gist cache (HIT), from a stale entry
+     * being revalidated (STALE) or fetched from Github (MISS), and the {@code Age} header how old they are.
+     * The request thread is released while the gists are looked up; a lookup taking longer than
+     * {@code http.request.deadline-millis} is answered with 504 (Gateway Timeout), and a request finding too many
+     * others waiting on Github with 503 (Service Unavailable).
      *
      * @param username username of the user.
      * @return a all gists since last visit.
-     * @throws JsonProcessingException if {@link UserDTO#lastVisit} is malformed.
      */
     @GetMapping(path = "/{username}/gists",produces = "application/json")
-    public ResponseEntity getUserGists(@PathVariable(name = "username") String username) throws JsonProcessingException {
-        return ResponseEntity.ok(mainService.getRawUserGists(username));
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> getUserGists(
+            @PathVariable(name = "username") String username) {
+        DeferredResult<ResponseEntity<StreamingResponseBody>> result = new DeferredResult<>(deadlineMillis);
+        Future<?> lookup;
+        try {
+            lookup = upstreamExecutor.submit(() -> {
+                try {
+                    result.setResult(gistsResponse(mainService.getUserGists(username)));
+                } catch (RuntimeException e) {
+                    result.setErrorResult(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Too many requests waiting on Github, refusing gists of {}", username);
+            result.setResult(error(HttpStatus.SERVICE_UNAVAILABLE, "Too many requests waiting on Github"));
+            return result;
+        }
+        result.onTimeout(() -> {
+            // not interrupted: an interrupt would close the file channels the lookup may be writing to
+            lookup.cancel(false);
+            logger.warn("Gists of {} took longer than {} ms", username, deadlineMillis);
+            result.setResult(error(HttpStatus.GATEWAY_TIMEOUT, "Timed out waiting on Github"));
+        });
+        return result;
+    }
+
+    /**
+     * Endpoint to get progress of the gist sweep.
+     *
+     * @return a json {@link SweepProgress}.
+     */
+    @GetMapping("/sweep")
+    public ResponseEntity<SweepProgress> getSweepProgress() {
+        return ResponseEntity.ok(mainService.getSweepProgress());
+    }
+
+    /**
+     * Stop the threads serving requests that may wait on Github, once the lookups started are done.
+     */
+    @PreDestroy
+    public void shutdown() {
+        upstreamExecutor.shutdown();
+    }
+
+    /**
+     * @param userGists gists of a user.
+     * @return response streaming the gists.
+     */
+    private static ResponseEntity<StreamingResponseBody> gistsResponse(UserGists userGists) {
+        if (userGists.getCacheStatus() == null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(userGists.getBody());
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .header("X-Cache", userGists.getCacheStatus())
+                .header(HttpHeaders.AGE, String.valueOf(userGists.getAgeSeconds()))
+                .body(userGists.getBody());
+    }
+
+    /**
+     * @param status  status of the response.
+     * @param message description of the error.
+     * @return json response with the error.
+     */
+    private static ResponseEntity<StreamingResponseBody> error(HttpStatus status, String message) {
+        byte[] body = ("{\"error\" : \"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(out -> out.write(body));
     }
 }
@@ -1,10 +1,15 @@
 package com.test.demo.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Date;
+
 /**
  * DTO to hold gist information.
  */
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class GistDto {
     /**
      * Id of the gist.
@@ -17,6 +22,18 @@ public class GistDto {
     @JsonProperty("html_url")
     private String url;
 
+    /**
+     * Timestamp that the gist was last updated.
+     */
+    @JsonProperty("updated_at")
+    private Date updatedAt;
+
+    /**
+     * The gist as returned by Github, compact json.
+     */
+    @JsonIgnore
+    private String json;
+
     /**
      * @return {@code id}
      * @see #id
@@ -48,4 +65,36 @@ public class GistDto {
     public void setUrl(String url) {
         this.url = url;
     }
+
+    /**
+     * @return {@code updatedAt}.
+     * @see #updatedAt
+     */
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * @param updatedAt {@code updatedAt}.
+     * @see #updatedAt
+     */
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * @return {@code json}.
+     * @see #json
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * @param json {@code json}.
+     * @see #json
+     */
+    public void setJson(String json) {
+        this.json = json;
+    }
 }
@@ -0,0 +1,73 @@
+package com.test.demo.dto;
+
+import java.util.Date;
+
+/**
+ * Lease of the sweep leader, held by one replica at a time, along with the checkpoint of the sweep so a new
+ * leader resumes it.
+ */
+public class LeaderLease {
+
+    /**
+     * Id of the replica holding the lease, {@code null} if never held.
+     */
+    private String holder;
+
+    /**
+     * Timestamp in epoch millis that the lease expires unless renewed.
+     */
+    private long expiresAt;
+
+    /**
+     * Start of the sweep the leader has not finished, {@code null} if none.
+     */
+    private Date sweepStartedAt;
+
+    /**
+     * @return {@code holder}
+     * @see #holder
+     */
+    public String getHolder() {
+        return holder;
+    }
+
+    /**
+     * @param holder {@code holder}.
+     * @see #holder
+     */
+    public void setHolder(String holder) {
+        this.holder = holder;
+    }
+
+    /**
+     * @return {@code expiresAt}
+     * @see #expiresAt
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @param expiresAt {@code expiresAt}.
+     * @see #expiresAt
+     */
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return {@code sweepStartedAt}
+     * @see #sweepStartedAt
+     */
+    public Date getSweepStartedAt() {
+        return sweepStartedAt;
+    }
+
+    /**
+     * @param sweepStartedAt {@code sweepStartedAt}.
+     * @see #sweepStartedAt
+     */
+    public void setSweepStartedAt(Date sweepStartedAt) {
+        this.sweepStartedAt = sweepStartedAt;
+    }
+}
@@ -0,0 +1,125 @@
+package com.test.demo.dto;
+
+/**
+ * A Pipe Drive activity in the outbox, waiting to be delivered or dead-lettered.
+ */
+public class OutboxEntry {
+
+    /**
+     * Id of the gist.
+     */
+    private String gistId;
+
+    /**
+     * Url of the gist.
+     */
+    private String gistUrl;
+
+    /**
+     * Number of failed attempts.
+     */
+    private int attempts;
+
+    /**
+     * Timestamp in epoch millis of the next attempt.
+     */
+    private long nextAttemptAt;
+
+    /**
+     * Whether every attempt failed and the activity is not retried anymore.
+     */
+    private boolean dead;
+
+    /**
+     * @return a copy of this entry.
+     */
+    public OutboxEntry copy() {
+        OutboxEntry copy = new OutboxEntry();
+        copy.gistId = gistId;
+        copy.gistUrl = gistUrl;
+        copy.attempts = attempts;
+        copy.nextAttemptAt = nextAttemptAt;
+        copy.dead = dead;
+        return copy;
+    }
+
+    /**
+     * @return {@code gistId}
+     * @see #gistId
+     */
+    public String getGistId() {
+        return gistId;
+    }
+
+    /**
+     * @param gistId {@code gistId}.
+     * @see #gistId
+     */
+    public void setGistId(String gistId) {
+        this.gistId = gistId;
+    }
+
+    /**
+     * @return {@code gistUrl}
+     * @see #gistUrl
+     */
+    public String getGistUrl() {
+        return gistUrl;
+    }
+
+    /**
+     * @param gistUrl {@code gistUrl}.
+     * @see #gistUrl
+     */
+    public void setGistUrl(String gistUrl) {
+        this.gistUrl = gistUrl;
+    }
+
+    /**
+     * @return {@code attempts}
+     * @see #attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param attempts {@code attempts}.
+     * @see #attempts
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return {@code nextAttemptAt}
+     * @see #nextAttemptAt
+     */
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    /**
+     * @param nextAttemptAt {@code nextAttemptAt}.
+     * @see #nextAttemptAt
+     */
+    public void setNextAttemptAt(long nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * @return {@code dead}
+     * @see #dead
+     */
+    public boolean isDead() {
+        return dead;
+    }
+
+    /**
+     * @param dead {@code dead}.
+     * @see #dead
+     */
+    public void setDead(boolean dead) {
+        this.dead = dead;
+    }
+}
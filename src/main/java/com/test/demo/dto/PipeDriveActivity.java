@@ -0,0 +1,105 @@
+package com.test.demo.dto;
+
+/**
+ * Body of a request to create a pipedrive activity for a gist.
+ */
+public class PipeDriveActivity {
+
+    /**
+     * Subject of the activity.
+     */
+    private String subject;
+
+    /**
+     * Whether the activity is done, "0" or "1".
+     */
+    private String done = "0";
+
+    /**
+     * Type of the activity.
+     */
+    private String type = "github-gist";
+
+    /**
+     * Note of the activity, the url of the gist.
+     */
+    private String note;
+
+    /**
+     * Create an activity for a gist.
+     *
+     * @param gistId  Id of the gist.
+     * @param gistUrl Url of the gist.
+     * @return the activity.
+     */
+    public static PipeDriveActivity forGist(String gistId, String gistUrl) {
+        PipeDriveActivity activity = new PipeDriveActivity();
+        activity.setSubject("Gitst #" + gistId);
+        activity.setNote(gistUrl);
+        return activity;
+    }
+
+    /**
+     * @return {@code subject}
+     * @see #subject
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @param subject {@code subject}.
+     * @see #subject
+     */
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    /**
+     * @return {@code done}
+     * @see #done
+     */
+    public String getDone() {
+        return done;
+    }
+
+    /**
+     * @param done {@code done}.
+     * @see #done
+     */
+    public void setDone(String done) {
+        this.done = done;
+    }
+
+    /**
+     * @return {@code type}
+     * @see #type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @param type {@code type}.
+     * @see #type
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * @return {@code note}
+     * @see #note
+     */
+    public String getNote() {
+        return note;
+    }
+
+    /**
+     * @param note {@code note}.
+     * @see #note
+     */
+    public void setNote(String note) {
+        this.note = note;
+    }
+}
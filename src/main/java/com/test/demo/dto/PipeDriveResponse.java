@@ -9,6 +9,11 @@ public class PipeDriveResponse {
      */
     private Boolean success;
 
+    /**
+     * Error message, if api call was not successful.
+     */
+    private String error;
+
     /**
      * @return {@code success}
      * @see #success
@@ -24,4 +29,20 @@ public class PipeDriveResponse {
     public void setSuccess(Boolean success) {
         this.success = success;
     }
+
+    /**
+     * @return {@code error}
+     * @see #error
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @param error {@code error}.
+     * @see #error
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
 }
@@ -0,0 +1,117 @@
+package com.test.demo.dto;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sweep state of a user as shared between replicas through the cluster store, so a user keeps its cursor
+ * and pending gists when it moves to another replica.
+ */
+public class SharedUser {
+
+    /**
+     * Username of the user.
+     */
+    private String username;
+
+    /**
+     * See {@link UserDTO#getCursor()}.
+     */
+    private Date cursor;
+
+    /**
+     * See {@link UserDTO#getLastAdded()}.
+     */
+    private Date lastAdded;
+
+    /**
+     * See {@link UserDTO#getPendingGists()}.
+     */
+    private Map<String, String> pendingGists = new HashMap<>();
+
+    /**
+     * Whether the user was removed; kept so replicas remove it too instead of sharing it again.
+     */
+    private boolean removed;
+
+    /**
+     * @return {@code username}
+     * @see #username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @param username {@code username}.
+     * @see #username
+     */
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    /**
+     * @return {@code cursor}
+     * @see #cursor
+     */
+    public Date getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @param cursor {@code cursor}.
+     * @see #cursor
+     */
+    public void setCursor(Date cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return {@code lastAdded}
+     * @see #lastAdded
+     */
+    public Date getLastAdded() {
+        return lastAdded;
+    }
+
+    /**
+     * @param lastAdded {@code lastAdded}.
+     * @see #lastAdded
+     */
+    public void setLastAdded(Date lastAdded) {
+        this.lastAdded = lastAdded;
+    }
+
+    /**
+     * @return {@code pendingGists}
+     * @see #pendingGists
+     */
+    public Map<String, String> getPendingGists() {
+        return pendingGists;
+    }
+
+    /**
+     * @param pendingGists {@code pendingGists}.
+     * @see #pendingGists
+     */
+    public void setPendingGists(Map<String, String> pendingGists) {
+        this.pendingGists = pendingGists;
+    }
+
+    /**
+     * @return {@code removed}
+     * @see #removed
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * @param removed {@code removed}.
+     * @see #removed
+     */
+    public void setRemoved(boolean removed) {
+        this.removed = removed;
+    }
+}
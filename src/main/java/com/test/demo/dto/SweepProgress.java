@@ -0,0 +1,147 @@
+package com.test.demo.dto;
+
+import java.util.Date;
+
+/**
+ * Snapshot of the progress of the current (or last) gist sweep.
+ */
+public class SweepProgress {
+
+    /**
+     * Whether a sweep is running right now.
+     */
+    private boolean running;
+
+    /**
+     * Number of users scheduled in the sweep.
+     */
+    private int total;
+
+    /**
+     * Number of users processed successfully.
+     */
+    private int completed;
+
+    /**
+     * Number of users whose processing failed.
+     */
+    private int failed;
+
+    /**
+     * Timestamp that the sweep started.
+     */
+    private Date startedAt;
+
+    /**
+     * Timestamp that the sweep ended, {@code null} while running.
+     */
+    private Date finishedAt;
+
+    /**
+     * @return {@code running}
+     * @see #running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @param running {@code running}.
+     * @see #running
+     */
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    /**
+     * @return {@code total}
+     * @see #total
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @param total {@code total}.
+     * @see #total
+     */
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * @return {@code completed}
+     * @see #completed
+     */
+    public int getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @param completed {@code completed}.
+     * @see #completed
+     */
+    public void setCompleted(int completed) {
+        this.completed = completed;
+    }
+
+    /**
+     * @return {@code failed}
+     * @see #failed
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @param failed {@code failed}.
+     * @see #failed
+     */
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    /**
+     * @return {@code startedAt}
+     * @see #startedAt
+     */
+    public Date getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @param startedAt {@code startedAt}.
+     * @see #startedAt
+     */
+    public void setStartedAt(Date startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * @return {@code finishedAt}
+     * @see #finishedAt
+     */
+    public Date getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * @param finishedAt {@code finishedAt}.
+     * @see #finishedAt
+     */
+    public void setFinishedAt(Date finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "SweepProgress{" +
+                "running=" + running +
+                ", total=" + total +
+                ", completed=" + completed +
+                ", failed=" + failed +
+                ", startedAt=" + startedAt +
+                ", finishedAt=" + finishedAt +
+                '}';
+    }
+}
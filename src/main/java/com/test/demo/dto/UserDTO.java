@@ -1,13 +1,23 @@
 package com.test.demo.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.io.Serializable;
 import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * DTO to hold values user information.
  */
 public class UserDTO implements Serializable {
 
+    /**
+     * Serial version of the class as first released, so old {@code users.data} files stay readable.
+     */
+    private static final long serialVersionUID = 5908765677393771494L;
+
     /**
      * Username of the user.
      */
@@ -16,12 +26,49 @@ public class UserDTO implements Serializable {
     /**
      * Last timestamp that the gists of this user has been retrieved.
      */
-    private Date lastVisit;
+    private volatile Date lastVisit;
 
     /**
      * Last timestamp that the gists of this user has been added as activity.
      */
-    private Date lastAdded;
+    private volatile Date lastAdded;
+
+    /**
+     * Newest {@code updated_at} of the gists of this user that were delivered to Pipe Drive
+     * (or queued in {@link #pendingGists}). The next sweep only fetches gists updated after it.
+     */
+    private volatile Date cursor;
+
+    /**
+     * Gists whose activity could not be added, by gist id, with their url. Retried on the next sweep
+     * without fetching them again.
+     */
+    private final Map<String, String> pendingGists = new ConcurrentHashMap<>();
+
+    /**
+     * @see #cursor
+     * @return {@code cursor}.
+     */
+    public Date getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @see #cursor
+     * @param cursor {@code cursor}.
+     */
+    public void setCursor(Date cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @see #pendingGists
+     * @return {@code pendingGists}, modifiable.
+     */
+    @JsonIgnore
+    public Map<String, String> getPendingGists() {
+        return pendingGists;
+    }
 
     /**
      * @see #lastAdded
@@ -67,12 +114,32 @@ public class UserDTO implements Serializable {
         this.lastVisit = lastVisit;
     }
 
+    /**
+     * Users are equal if their usernames are equal, ignoring case.
+     *
+     * @param o other object.
+     * @return whether both represent the same user.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UserDTO)) return false;
+        UserDTO other = (UserDTO) o;
+        return username == null ? other.username == null : username.equalsIgnoreCase(other.username);
+    }
+
+    @Override
+    public int hashCode() {
+        return username == null ? 0 : username.toLowerCase(Locale.ROOT).hashCode();
+    }
+
     @Override
     public String toString() {
         return "User{" +
                 "username='" + username + '\'' +
                 ", lastVisit=" + lastVisit +
                 ", lastAdded=" + lastAdded +
+                ", cursor=" + cursor +
                 '}';
     }
 }
@@ -0,0 +1,73 @@
+package com.test.demo.dto;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Gists of a user since the last visit, and how they were served.
+ */
+public class UserGists {
+
+    /**
+     * Writes the json array of the gists, as returned by Github, UTF-8 encoded. Writes nothing if the user
+     * is not screened.
+     */
+    private StreamingResponseBody body;
+
+    /**
+     * How the gists were served from the gist cache: HIT, STALE or MISS. {@code null} if the user is not screened.
+     */
+    private String cacheStatus;
+
+    /**
+     * Seconds since the gists were fetched from Github.
+     */
+    private long ageSeconds;
+
+    /**
+     * @return {@code body}.
+     * @see #body
+     */
+    public StreamingResponseBody getBody() {
+        return body;
+    }
+
+    /**
+     * @param body {@code body}.
+     * @see #body
+     */
+    public void setBody(StreamingResponseBody body) {
+        this.body = body;
+    }
+
+    /**
+     * @return {@code cacheStatus}.
+     * @see #cacheStatus
+     */
+    public String getCacheStatus() {
+        return cacheStatus;
+    }
+
+    /**
+     * @param cacheStatus {@code cacheStatus}.
+     * @see #cacheStatus
+     */
+    public void setCacheStatus(String cacheStatus) {
+        this.cacheStatus = cacheStatus;
+    }
+
+    /**
+     * @return {@code ageSeconds}.
+     * @see #ageSeconds
+     */
+    public long getAgeSeconds() {
+        return ageSeconds;
+    }
+
+    /**
+     * @param ageSeconds {@code ageSeconds}.
+     * @see #ageSeconds
+     */
+    public void setAgeSeconds(long ageSeconds) {
+        this.ageSeconds = ageSeconds;
+    }
+}
@@ -0,0 +1,77 @@
+package com.test.demo.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Result of one line of a bulk user import.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserImportResult {
+
+    /**
+     * Line number in the imported body, starting at 1.
+     */
+    private long line;
+
+    /**
+     * Username read from the line, {@code null} if it could not be read.
+     */
+    private String username;
+
+    /**
+     * ADDED, EXISTS or INVALID.
+     */
+    private String result;
+
+    /**
+     * Why the line is invalid, {@code null} otherwise.
+     */
+    private String error;
+
+    /**
+     * Constructor.
+     *
+     * @param line     line number in the imported body.
+     * @param username username read from the line.
+     * @param result   ADDED, EXISTS or INVALID.
+     * @param error    why the line is invalid.
+     */
+    public UserImportResult(long line, String username, String result, String error) {
+        this.line = line;
+        this.username = username;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return {@code line}.
+     * @see #line
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * @return {@code username}.
+     * @see #username
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return {@code result}.
+     * @see #result
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return {@code error}.
+     * @see #error
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,66 @@
+package com.test.demo.http;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration of the non-blocking HTTP client, used by the sweep when {@code sweep.client=non-blocking}.
+ * A few I/O threads multiplex all connections, so the number of requests in flight is bounded by the
+ * connection pool, not by the number of threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sweep.client", havingValue = "non-blocking")
+public class AsyncHttpClientConfiguration {
+
+    /**
+     * The non-blocking HTTP client, started.
+     *
+     * @param ioThreads      number of I/O threads.
+     * @param maxTotal       maximum number of connections.
+     * @param maxPerRoute    maximum number of connections per host.
+     * @param connectTimeout timeout to establish a connection, in milliseconds.
+     * @param readTimeout    timeout waiting for data, in milliseconds.
+     * @param poolTimeout    timeout waiting for a free connection of the pool, in milliseconds.
+     * @return the client.
+     * @throws IOReactorException if the I/O reactor cannot be created.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient httpAsyncClient(
+            @Value("${http.async.io-threads:2}") int ioThreads,
+            @Value("${http.async.max-total:2000}") int maxTotal,
+            @Value("${http.async.max-per-route:1000}") int maxPerRoute,
+            @Value("${http.client.connect-timeout-millis:5000}") int connectTimeout,
+            @Value("${http.client.read-timeout-millis:30000}") int readTimeout,
+            @Value("${http.client.pool-timeout-millis:10000}") int poolTimeout) throws IOReactorException {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(readTimeout)
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager =
+                new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(poolTimeout)
+                .build();
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .useSystemProperties()
+                .build();
+        client.start();
+        return client;
+    }
+}
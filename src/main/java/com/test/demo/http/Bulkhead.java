@@ -0,0 +1,104 @@
+package com.test.demo.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the calls of one kind of traffic in flight at once, so it cannot take every connection of the pool.
+ */
+public class Bulkhead {
+
+    /**
+     * Name of the traffic.
+     */
+    private final String name;
+
+    /**
+     * Maximum number of calls in flight.
+     */
+    private final int maxConcurrent;
+
+    /**
+     * Longest wait for a permit, in milliseconds.
+     */
+    private final long maxWaitMillis;
+
+    /**
+     * Free permits.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Number of calls refused after waiting too long.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param name          name of the traffic.
+     * @param maxConcurrent maximum number of calls in flight.
+     * @param maxWaitMillis longest wait for a permit, in milliseconds.
+     */
+    public Bulkhead(String name, int maxConcurrent, long maxWaitMillis) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Wait for a permit; every permit must be given back by {@link #release()}.
+     *
+     * @throws IOException if no permit was free in time, or the wait was interrupted.
+     */
+    public void acquire() throws IOException {
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                throw new IOException(String.format("Bulkhead %s is full: %d calls in flight", name, maxConcurrent));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for bulkhead %s", name));
+        }
+    }
+
+    /**
+     * Give back a permit.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * @return name of the traffic.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return maximum number of calls in flight.
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * @return number of free permits.
+     */
+    public int getAvailable() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * @return number of calls refused so far.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,116 @@
+package com.test.demo.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds a permit of the current {@link Bulkhead} while a call is sent and its response read: the permit is
+ * released when the response is closed, or right away if the call fails.
+ */
+public class BulkheadInterceptor implements ClientHttpRequestInterceptor {
+
+    /**
+     * The bulkheads.
+     */
+    private final Bulkheads bulkheads;
+
+    /**
+     * Constructor.
+     *
+     * @param bulkheads the bulkheads.
+     */
+    public BulkheadInterceptor(Bulkheads bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Bulkhead bulkhead = bulkheads.current();
+        bulkhead.acquire();
+        ClientHttpResponse response;
+        try {
+            response = execution.execute(request, body);
+        } catch (IOException | RuntimeException e) {
+            bulkhead.release();
+            throw e;
+        }
+        return new PermitClientHttpResponse(response, bulkhead);
+    }
+
+    /**
+     * A response holding a permit of a bulkhead until it is closed.
+     */
+    private static class PermitClientHttpResponse implements ClientHttpResponse {
+
+        /**
+         * The response.
+         */
+        private final ClientHttpResponse response;
+
+        /**
+         * Bulkhead of the permit.
+         */
+        private final Bulkhead bulkhead;
+
+        /**
+         * Whether the permit was released, so closing twice releases it once.
+         */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Constructor.
+         *
+         * @param response the response.
+         * @param bulkhead bulkhead of the permit.
+         */
+        PermitClientHttpResponse(ClientHttpResponse response, Bulkhead bulkhead) {
+            this.response = response;
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    bulkhead.release();
+                }
+            }
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+    }
+}
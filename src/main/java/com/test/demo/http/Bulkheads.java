@@ -0,0 +1,79 @@
+package com.test.demo.http;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Bulkheads of the two kinds of outbound traffic sharing the connection pool: the background sweep and the
+ * interactive requests (e.g. {@code /{username}/gists}). Calls belong to the sweep unless made inside
+ * {@link #interactive(Supplier)}. With both bounds together within the pool, neither can starve the other.
+ * The non-blocking client has a pool of its own and is not bounded here.
+ */
+public class Bulkheads {
+
+    /**
+     * Bulkhead of the calls of the current thread, the sweep unless set.
+     */
+    private final ThreadLocal<Bulkhead> current;
+
+    /**
+     * Bulkhead of the sweep.
+     */
+    private final Bulkhead sweep;
+
+    /**
+     * Bulkhead of interactive requests.
+     */
+    private final Bulkhead interactive;
+
+    /**
+     * Constructor.
+     *
+     * @param sweep       bulkhead of the sweep.
+     * @param interactive bulkhead of interactive requests.
+     */
+    public Bulkheads(Bulkhead sweep, Bulkhead interactive) {
+        this.sweep = sweep;
+        this.interactive = interactive;
+        this.current = ThreadLocal.withInitial(() -> sweep);
+    }
+
+    /**
+     * Make calls on behalf of an interactive request.
+     *
+     * @param calls makes the calls on this thread.
+     * @param <T>   type of the result.
+     * @return result of the calls.
+     */
+    public <T> T interactive(Supplier<T> calls) {
+        Bulkhead previous = current.get();
+        current.set(interactive);
+        try {
+            return calls.get();
+        } finally {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * @return bulkhead of the calls of the current thread.
+     */
+    public Bulkhead current() {
+        return current.get();
+    }
+
+    /**
+     * @return whether the calls of the current thread are made on behalf of an interactive request.
+     */
+    public boolean isInteractive() {
+        return current.get() == interactive;
+    }
+
+    /**
+     * @return all bulkheads.
+     */
+    public List<Bulkhead> getAll() {
+        return Arrays.asList(sweep, interactive);
+    }
+}
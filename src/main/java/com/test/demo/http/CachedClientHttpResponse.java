@@ -0,0 +1,52 @@
+package com.test.demo.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * A 200 (Ok) response served from {@link HttpResponseCache}.
+ */
+class CachedClientHttpResponse extends AbstractClientHttpResponse {
+
+    /**
+     * The cached entry.
+     */
+    private final HttpResponseCache.Entry entry;
+
+    /**
+     * Constructor.
+     *
+     * @param entry the cached entry.
+     */
+    CachedClientHttpResponse(HttpResponseCache.Entry entry) {
+        this.entry = entry;
+    }
+
+    @Override
+    public int getRawStatusCode() {
+        return HttpStatus.OK.value();
+    }
+
+    @Override
+    public String getStatusText() {
+        return HttpStatus.OK.getReasonPhrase();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public InputStream getBody() {
+        return new ByteArrayInputStream(entry.getBody());
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return entry.getHeaders();
+    }
+}
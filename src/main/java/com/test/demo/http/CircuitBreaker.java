@@ -0,0 +1,306 @@
+package com.test.demo.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of one upstream api, so calls to an api that is failing or slow fail fast instead of tying
+ * up threads and connections.
+ * <ul>
+ * <li>CLOSED: calls pass; the outcomes of the last {@code windowSize} calls are kept. Once at least
+ * {@code minimumCalls} were made and the failure rate or the slow call rate reaches its threshold, the breaker
+ * opens.</li>
+ * <li>OPEN: calls are refused for {@code openMillis}, then the breaker is half-open.</li>
+ * <li>HALF_OPEN: {@code halfOpenCalls} probe calls pass, further calls are refused. Depending on the rates of the
+ * probes, the breaker closes or opens again.</li>
+ * </ul>
+ * Outcomes of calls that were in flight when the breaker opened are ignored.
+ */
+public class CircuitBreaker {
+
+    /**
+     * State of a breaker.
+     */
+    public enum State {
+        /**
+         * Calls pass.
+         */
+        CLOSED,
+        /**
+         * Calls are refused.
+         */
+        OPEN,
+        /**
+         * A few probe calls pass.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Outcome bit of a failed call.
+     */
+    private static final byte FAILED = 1;
+
+    /**
+     * Outcome bit of a slow call.
+     */
+    private static final byte SLOW = 2;
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * Name of the upstream.
+     */
+    private final String name;
+
+    /**
+     * Minimum number of calls in the window before the rates count.
+     */
+    private final int minimumCalls;
+
+    /**
+     * Failure rate that opens the breaker, in percent.
+     */
+    private final int failureRateThreshold;
+
+    /**
+     * Calls taking this long or longer are slow, in nanoseconds.
+     */
+    private final long slowCallNanos;
+
+    /**
+     * Slow call rate that opens the breaker, in percent.
+     */
+    private final int slowCallRateThreshold;
+
+    /**
+     * Time the breaker stays open, in milliseconds.
+     */
+    private final long openMillis;
+
+    /**
+     * Number of probe calls while half-open.
+     */
+    private final int halfOpenCalls;
+
+    /**
+     * Outcomes of the last calls, a ring, guarded by {@code this}.
+     */
+    private final byte[] outcomes;
+
+    /**
+     * Next position in {@link #outcomes}, guarded by {@code this}.
+     */
+    private int next;
+
+    /**
+     * Number of outcomes in the window, guarded by {@code this}.
+     */
+    private int calls;
+
+    /**
+     * Number of failed calls in the window, guarded by {@code this}.
+     */
+    private int failedCalls;
+
+    /**
+     * Number of slow calls in the window, guarded by {@code this}.
+     */
+    private int slowCalls;
+
+    /**
+     * Current state, guarded by {@code this}.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * Timestamp in epoch millis that an open breaker turns half-open, guarded by {@code this}.
+     */
+    private long openUntil;
+
+    /**
+     * Number of probe calls let through while half-open, guarded by {@code this}.
+     */
+    private int probes;
+
+    /**
+     * Number of calls refused, guarded by {@code this}.
+     */
+    private long notPermittedCalls;
+
+    /**
+     * Constructor.
+     *
+     * @param name                  name of the upstream.
+     * @param windowSize            number of calls whose outcome is kept.
+     * @param minimumCalls          minimum number of calls in the window before the rates count.
+     * @param failureRateThreshold  failure rate that opens the breaker, in percent.
+     * @param slowCallMillis        calls taking this long or longer are slow, in milliseconds.
+     * @param slowCallRateThreshold slow call rate that opens the breaker, in percent.
+     * @param openMillis            time the breaker stays open, in milliseconds.
+     * @param halfOpenCalls         number of probe calls while half-open.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold,
+                          long slowCallMillis, int slowCallRateThreshold, long openMillis, int halfOpenCalls) {
+        this.name = name;
+        this.outcomes = new byte[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = slowCallMillis * 1_000_000;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = Math.min(halfOpenCalls, windowSize);
+    }
+
+    /**
+     * @param status status code of a response.
+     * @return whether the response counts as a failure of the upstream: a server error or too many requests.
+     */
+    public static boolean isFailure(int status) {
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * Take permission for a call; every permitted call must be followed by {@link #record(long, boolean)}.
+     *
+     * @return false if the call is refused.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil) {
+                notPermittedCalls++;
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probes >= halfOpenCalls) {
+                notPermittedCalls++;
+                return false;
+            }
+            probes++;
+        }
+        return true;
+    }
+
+    /**
+     * @return whether {@link #tryAcquire()} would permit a call now, without taking permission.
+     */
+    public synchronized boolean isCallPermitted() {
+        switch (state) {
+            case OPEN:
+                return System.currentTimeMillis() >= openUntil;
+            case HALF_OPEN:
+                return probes < halfOpenCalls;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Record the outcome of a permitted call.
+     *
+     * @param durationNanos duration of the call, in nanoseconds.
+     * @param failed        whether the call failed.
+     */
+    public synchronized void record(long durationNanos, boolean failed) {
+        if (state == State.OPEN) {
+            return;
+        }
+        byte outcome = (byte) ((failed ? FAILED : 0) | (durationNanos >= slowCallNanos ? SLOW : 0));
+        if (calls == outcomes.length) {
+            forget(outcomes[next]);
+        } else {
+            calls++;
+        }
+        outcomes[next] = outcome;
+        next = (next + 1) % outcomes.length;
+        failedCalls += outcome & FAILED;
+        slowCalls += (outcome & SLOW) >> 1;
+        if (state == State.HALF_OPEN) {
+            if (calls >= halfOpenCalls) {
+                transition(isTripped() ? State.OPEN : State.CLOSED);
+            }
+        } else if (calls >= minimumCalls && isTripped()) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * @return name of the upstream.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return current state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return failure rate of the calls in the window in percent, 0 if there are none.
+     */
+    public synchronized float getFailureRate() {
+        return calls == 0 ? 0 : failedCalls * 100f / calls;
+    }
+
+    /**
+     * @return slow call rate of the calls in the window in percent, 0 if there are none.
+     */
+    public synchronized float getSlowCallRate() {
+        return calls == 0 ? 0 : slowCalls * 100f / calls;
+    }
+
+    /**
+     * @return number of calls refused so far.
+     */
+    public synchronized long getNotPermittedCalls() {
+        return notPermittedCalls;
+    }
+
+    /**
+     * @return whether the rates of the window reach a threshold.
+     */
+    private boolean isTripped() {
+        return failedCalls * 100 >= failureRateThreshold * calls || slowCalls * 100 >= slowCallRateThreshold * calls;
+    }
+
+    /**
+     * Remove an outcome leaving the window from the counts.
+     *
+     * @param outcome the outcome.
+     */
+    private void forget(byte outcome) {
+        failedCalls -= outcome & FAILED;
+        slowCalls -= (outcome & SLOW) >> 1;
+    }
+
+    /**
+     * Change state, starting a new window.
+     *
+     * @param target the new state.
+     */
+    private void transition(State target) {
+        if (target == State.OPEN) {
+            logger.warn("Circuit breaker of {} is now OPEN (failure rate {}%, slow call rate {}%)", name,
+                    (int) getFailureRate(), (int) getSlowCallRate());
+        } else {
+            logger.info("Circuit breaker of {} is now {}", name, target);
+        }
+        state = target;
+        next = 0;
+        calls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        probes = 0;
+        if (target == State.OPEN) {
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.test.demo.http;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Passes every call through the {@link CircuitBreaker} of its host: refused calls fail right away with
+ * {@link CircuitBreakerOpenException}, the outcome of the others is recorded.
+ */
+public class CircuitBreakerInterceptor implements ClientHttpRequestInterceptor {
+
+    /**
+     * The breakers.
+     */
+    private final CircuitBreakers circuitBreakers;
+
+    /**
+     * Constructor.
+     *
+     * @param circuitBreakers the breakers.
+     */
+    public CircuitBreakerInterceptor(CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        CircuitBreaker breaker = circuitBreakers.forUri(request.getURI());
+        if (breaker == null) {
+            return execution.execute(request, body);
+        }
+        if (!breaker.tryAcquire()) {
+            throw new CircuitBreakerOpenException(breaker.getName());
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            failed = CircuitBreaker.isFailure(response.getRawStatusCode());
+            return response;
+        } finally {
+            breaker.record(System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.test.demo.http;
+
+import java.io.IOException;
+
+/**
+ * A call refused because the {@link CircuitBreaker} of its upstream is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    /**
+     * Constructor.
+     *
+     * @param name name of the upstream.
+     */
+    public CircuitBreakerOpenException(String name) {
+        super(String.format("Circuit breaker of %s is open", name));
+    }
+}
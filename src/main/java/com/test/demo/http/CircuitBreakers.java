@@ -0,0 +1,114 @@
+package com.test.demo.http;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * The {@link CircuitBreaker} of each upstream api, found by the host of a call like {@link OutboundMetrics}.
+ * Calls to other hosts have no breaker.
+ */
+public class CircuitBreakers {
+
+    /**
+     * Host of the Github api.
+     */
+    private final String gitHubHost;
+
+    /**
+     * Host of the Pipe Drive api.
+     */
+    private final String pipeDriveHost;
+
+    /**
+     * Breaker of the Github api.
+     */
+    private final CircuitBreaker gitHub;
+
+    /**
+     * Breaker of the Pipe Drive api.
+     */
+    private final CircuitBreaker pipeDrive;
+
+    /**
+     * Constructor.
+     *
+     * @param gitHubApiUrl    base url of the Github api.
+     * @param pipeDriveApiUrl base url of the Pipe Drive api.
+     * @param factory         creates the breaker of an upstream by its name.
+     */
+    public CircuitBreakers(String gitHubApiUrl, String pipeDriveApiUrl, Function<String, CircuitBreaker> factory) {
+        this.gitHubHost = URI.create(gitHubApiUrl).getHost();
+        this.pipeDriveHost = URI.create(pipeDriveApiUrl).getHost();
+        this.gitHub = factory.apply("github");
+        this.pipeDrive = factory.apply("pipedrive");
+    }
+
+    /**
+     * @param uri url of a call.
+     * @return the breaker of the host of the url, {@code null} if none.
+     */
+    public CircuitBreaker forUri(URI uri) {
+        String host = uri.getHost();
+        if (gitHubHost.equalsIgnoreCase(host)) {
+            return gitHub;
+        }
+        return pipeDriveHost.equalsIgnoreCase(host) ? pipeDrive : null;
+    }
+
+    /**
+     * Make a non-blocking call through the breaker of its host.
+     *
+     * @param uri      url of the call.
+     * @param call     sends the call.
+     * @param statusOf status code of a response.
+     * @param <T>      type of the response.
+     * @return the response, or fails with {@link CircuitBreakerOpenException} if the breaker refused the call.
+     */
+    public <T> CompletableFuture<T> call(URI uri, Supplier<CompletableFuture<T>> call, ToIntFunction<T> statusOf) {
+        CircuitBreaker breaker = forUri(uri);
+        if (breaker == null) {
+            return call.get();
+        }
+        if (!breaker.tryAcquire()) {
+            CompletableFuture<T> refused = new CompletableFuture<>();
+            refused.completeExceptionally(new CircuitBreakerOpenException(breaker.getName()));
+            return refused;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            breaker.record(System.nanoTime() - start, true);
+            throw e;
+        }
+        return result.whenComplete((response, e) -> breaker.record(System.nanoTime() - start,
+                response == null || CircuitBreaker.isFailure(statusOf.applyAsInt(response))));
+    }
+
+    /**
+     * @return breaker of the Github api.
+     */
+    public CircuitBreaker getGitHub() {
+        return gitHub;
+    }
+
+    /**
+     * @return breaker of the Pipe Drive api.
+     */
+    public CircuitBreaker getPipeDrive() {
+        return pipeDrive;
+    }
+
+    /**
+     * @return all breakers.
+     */
+    public List<CircuitBreaker> getAll() {
+        return Arrays.asList(gitHub, pipeDrive);
+    }
+}
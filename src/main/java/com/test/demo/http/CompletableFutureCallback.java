@@ -0,0 +1,29 @@
+package com.test.demo.http;
+
+import org.apache.http.concurrent.FutureCallback;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Callback of the non-blocking HTTP client that is itself the {@link CompletableFuture} of the result,
+ * so responses can be composed without a thread waiting for them.
+ *
+ * @param <T> type of the result.
+ */
+public class CompletableFutureCallback<T> extends CompletableFuture<T> implements FutureCallback<T> {
+
+    @Override
+    public void completed(T result) {
+        complete(result);
+    }
+
+    @Override
+    public void failed(Exception e) {
+        completeExceptionally(e);
+    }
+
+    @Override
+    public void cancelled() {
+        cancel(false);
+    }
+}
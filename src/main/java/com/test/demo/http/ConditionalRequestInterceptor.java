@@ -0,0 +1,159 @@
+package com.test.demo.http;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * Sends GET requests conditionally, using the ETag and Last-Modified of the previous response to the same url.
+ * A 304 (Not Modified) is answered from {@link HttpResponseCache} as if it were a 200 (Ok),
+ * so quiet resources cost an empty round trip instead of a full download.
+ * <p>
+ * Only bodies of at most {@link HttpResponseCache#getMaxEntryBytes()} bytes are buffered and stored; a larger
+ * body, by its Content-Length or once that many bytes were read, streams through to the caller uncached.
+ */
+public class ConditionalRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    /**
+     * Store of previous responses.
+     */
+    private final HttpResponseCache cache;
+
+    /**
+     * Constructor.
+     *
+     * @param cache store of previous responses.
+     */
+    public ConditionalRequestInterceptor(HttpResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        if (request.getMethod() != HttpMethod.GET) {
+            return execution.execute(request, body);
+        }
+        String url = request.getURI().toString();
+        HttpResponseCache.Entry entry = cache.get(url);
+        if (entry != null) {
+            if (entry.getETag() != null) {
+                request.getHeaders().setIfNoneMatch(entry.getETag());
+            }
+            if (entry.getLastModified() >= 0) {
+                request.getHeaders().setIfModifiedSince(entry.getLastModified());
+            }
+        }
+
+        ClientHttpResponse response = execution.execute(request, body);
+        if (entry != null && response.getRawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            response.close();
+            cache.recordHit();
+            return new CachedClientHttpResponse(cache.touch(url, entry));
+        }
+        cache.recordMiss();
+
+        HttpHeaders headers = response.getHeaders();
+        String eTag = headers.getETag();
+        long lastModified = headers.getLastModified();
+        if (response.getRawStatusCode() != HttpStatus.OK.value() || (eTag == null && lastModified < 0)) {
+            return response;
+        }
+        if (headers.getContentLength() > cache.getMaxEntryBytes()) {
+            return response;
+        }
+        boolean streaming = false;
+        try {
+            // reading one byte more than an entry holds tells whether the body fits
+            int limit = cache.getMaxEntryBytes() + 1;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                    (int) Math.min(limit, Math.max(headers.getContentLength() + 1, StreamUtils.BUFFER_SIZE)));
+            byte[] chunk = new byte[StreamUtils.BUFFER_SIZE];
+            InputStream in = response.getBody();
+            int read;
+            while (buffer.size() < limit
+                    && (read = in.read(chunk, 0, Math.min(chunk.length, limit - buffer.size()))) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            if (buffer.size() == limit) {
+                streaming = true;
+                return new StreamingClientHttpResponse(response, buffer.toByteArray());
+            }
+            HttpHeaders copy = new HttpHeaders();
+            copy.putAll(headers);
+            return new CachedClientHttpResponse(cache.put(url, eTag, lastModified, copy, buffer.toByteArray()));
+        } finally {
+            if (!streaming) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * A response too large to be cached: the bytes already read, then the rest of the body as it arrives.
+     */
+    private static class StreamingClientHttpResponse implements ClientHttpResponse {
+
+        /**
+         * The response being read.
+         */
+        private final ClientHttpResponse response;
+
+        /**
+         * Bytes of the body already read.
+         */
+        private final byte[] head;
+
+        /**
+         * Constructor.
+         *
+         * @param response the response being read.
+         * @param head     bytes of the body already read.
+         */
+        StreamingClientHttpResponse(ClientHttpResponse response, byte[] head) {
+            this.response = response;
+            this.head = head;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return new SequenceInputStream(new ByteArrayInputStream(head), response.getBody());
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+    }
+}
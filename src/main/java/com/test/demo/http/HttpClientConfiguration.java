@@ -0,0 +1,125 @@
+package com.test.demo.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Configuration of the outbound HTTP client.
+ * Connections to api.github.com and api.pipedrive.com are pooled and kept alive, so TLS handshakes
+ * are paid once per connection instead of once per call, and every call is bounded by timeouts.
+ */
+@Configuration
+public class HttpClientConfiguration {
+
+    /**
+     * Pool of keep-alive connections, shared by all routes.
+     *
+     * @param maxTotal          maximum number of connections.
+     * @param maxPerRoute       maximum number of connections per host.
+     * @param timeToLiveSeconds maximum lifetime of a connection.
+     * @return connection manager.
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager connectionManager(
+            @Value("${http.client.max-total:50}") int maxTotal,
+            @Value("${http.client.max-per-route:20}") int maxPerRoute,
+            @Value("${http.client.time-to-live-seconds:300}") long timeToLiveSeconds) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(timeToLiveSeconds, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+        return connectionManager;
+    }
+
+    /**
+     * The HTTP client.
+     *
+     * @param connectionManager  pool of connections.
+     * @param connectTimeout     timeout to establish a connection, in milliseconds.
+     * @param readTimeout        timeout waiting for data, in milliseconds.
+     * @param poolTimeout        timeout waiting for a free connection of the pool, in milliseconds.
+     * @param idleTimeoutSeconds idle connections are closed after this many seconds.
+     * @param compression        whether to ask for gzip/deflate responses.
+     * @return the client.
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager,
+                                          @Value("${http.client.connect-timeout-millis:5000}") int connectTimeout,
+                                          @Value("${http.client.read-timeout-millis:30000}") int readTimeout,
+                                          @Value("${http.client.pool-timeout-millis:10000}") int poolTimeout,
+                                          @Value("${http.client.idle-timeout-seconds:30}") long idleTimeoutSeconds,
+                                          @Value("${http.client.compression:true}") boolean compression) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(poolTimeout)
+                .setContentCompressionEnabled(compression)
+                .build();
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                .useSystemProperties()
+                .build();
+    }
+
+    /**
+     * Request factory backed by the pooled client.
+     *
+     * @param httpClient the client.
+     * @return request factory.
+     */
+    @Bean
+    public ClientHttpRequestFactory clientHttpRequestFactory(CloseableHttpClient httpClient) {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    /**
+     * Gauges of the connection pool: leased, available, pending and max connections.
+     *
+     * @param connectionManager pool of connections.
+     * @return meter binder.
+     */
+    @Bean
+    public MeterBinder connectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        return registry -> {
+            gauge(registry, connectionManager, "leased", PoolStats::getLeased);
+            gauge(registry, connectionManager, "available", PoolStats::getAvailable);
+            gauge(registry, connectionManager, "pending", PoolStats::getPending);
+            gauge(registry, connectionManager, "max", PoolStats::getMax);
+        };
+    }
+
+    /**
+     * Register a gauge of the pool totals.
+     *
+     * @param registry          meter registry.
+     * @param connectionManager pool of connections.
+     * @param state             name of the state.
+     * @param value             value of the state.
+     */
+    private static void gauge(MeterRegistry registry,
+                              PoolingHttpClientConnectionManager connectionManager,
+                              String state, ToDoubleFunction<PoolStats> value) {
+        Gauge.builder("http.client.pool.connections", connectionManager,
+                manager -> value.applyAsDouble(manager.getTotalStats()))
+                .tag("state", state)
+                .register(registry);
+    }
+}
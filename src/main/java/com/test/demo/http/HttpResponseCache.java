@@ -0,0 +1,309 @@
+package com.test.demo.http;
+
+import org.springframework.http.HttpHeaders;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory store of validated GET responses, keyed by URL.
+ * Entries are evicted when the store holds too many entries or too many body bytes (least recently used first),
+ * or when they are older than the TTL. Responses larger than {@link #getMaxEntryBytes()} are not stored at all.
+ */
+public class HttpResponseCache {
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int maxEntries;
+
+    /**
+     * Maximum number of body bytes of all entries.
+     */
+    private final long maxBytes;
+
+    /**
+     * Maximum number of body bytes of an entry.
+     */
+    private final int maxEntryBytes;
+
+    /**
+     * Time to live of an entry in milliseconds.
+     */
+    private final long ttlMillis;
+
+    /**
+     * Source of the current time in milliseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Entries in access order, guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Number of body bytes of all entries, guarded by {@code this}.
+     */
+    private long bytes;
+
+    /**
+     * Number of responses served from the cache after a 304.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of responses downloaded in full.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Number of entries evicted because of size or age.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries    maximum number of entries.
+     * @param maxBytes      maximum number of body bytes of all entries.
+     * @param maxEntryBytes maximum number of body bytes of an entry, larger responses are not stored.
+     * @param ttlMillis     time to live of an entry in milliseconds.
+     */
+    public HttpResponseCache(int maxEntries, long maxBytes, int maxEntryBytes, long ttlMillis) {
+        this(maxEntries, maxBytes, maxEntryBytes, ttlMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor with a custom clock.
+     *
+     * @param maxEntries    maximum number of entries.
+     * @param maxBytes      maximum number of body bytes of all entries.
+     * @param maxEntryBytes maximum number of body bytes of an entry, larger responses are not stored.
+     * @param ttlMillis     time to live of an entry in milliseconds.
+     * @param clock         source of the current time in milliseconds.
+     */
+    HttpResponseCache(int maxEntries, long maxBytes, int maxEntryBytes, long ttlMillis, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(maxEntryBytes, maxBytes);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Get a live entry.
+     *
+     * @param url the url.
+     * @return the entry, or {@code null} if there is none or it has expired.
+     */
+    public synchronized Entry get(String url) {
+        Entry entry = entries.get(url);
+        if (entry != null && clock.getAsLong() - entry.getStoredAt() > ttlMillis) {
+            entries.remove(url);
+            bytes -= entry.getBody().length;
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Store an entry, replacing any previous one for the same url, then evict least recently used entries
+     * until the store is within its bounds.
+     *
+     * @param url          the url.
+     * @param eTag         ETag of the response, may be {@code null}.
+     * @param lastModified Last-Modified of the response in epoch millis, or -1.
+     * @param headers      headers of the response.
+     * @param body         body of the response, at most {@link #getMaxEntryBytes()} bytes.
+     * @return the stored entry.
+     */
+    public synchronized Entry put(String url, String eTag, long lastModified, HttpHeaders headers, byte[] body) {
+        if (body.length > maxEntryBytes) {
+            throw new IllegalArgumentException("Body of " + body.length + " bytes is larger than " + maxEntryBytes);
+        }
+        Entry entry = new Entry(eTag, lastModified, headers, body, clock.getAsLong());
+        replace(url, entry);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= eldest.next().getBody().length;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Refresh the age of an entry after it has been revalidated.
+     *
+     * @param url   the url.
+     * @param entry the revalidated entry.
+     * @return the refreshed entry.
+     */
+    public synchronized Entry touch(String url, Entry entry) {
+        Entry refreshed = new Entry(entry.getETag(), entry.getLastModified(), entry.getHeaders(), entry.getBody(),
+                clock.getAsLong());
+        replace(url, refreshed);
+        return refreshed;
+    }
+
+    /**
+     * Store an entry, keeping {@link #bytes} up to date.
+     *
+     * @param url   the url.
+     * @param entry the entry.
+     */
+    private void replace(String url, Entry entry) {
+        Entry previous = entries.put(url, entry);
+        bytes += entry.getBody().length - (previous == null ? 0 : previous.getBody().length);
+    }
+
+    /**
+     * Count a response served from the cache.
+     */
+    public void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Count a response downloaded in full.
+     */
+    public void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * @return number of responses served from the cache after a 304.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of responses downloaded in full.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries evicted because of size or age.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of body bytes of all entries.
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return {@code maxEntryBytes}
+     * @see #maxEntryBytes
+     */
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * A cached response.
+     */
+    public static class Entry {
+
+        /**
+         * ETag of the response, may be {@code null}.
+         */
+        private final String eTag;
+
+        /**
+         * Last-Modified of the response in epoch millis, or -1.
+         */
+        private final long lastModified;
+
+        /**
+         * Headers of the response.
+         */
+        private final HttpHeaders headers;
+
+        /**
+         * Body of the response.
+         */
+        private final byte[] body;
+
+        /**
+         * Timestamp that the entry was stored or last revalidated.
+         */
+        private final long storedAt;
+
+        /**
+         * Constructor.
+         *
+         * @param eTag         ETag of the response.
+         * @param lastModified Last-Modified of the response.
+         * @param headers      headers of the response.
+         * @param body         body of the response.
+         * @param storedAt     timestamp that the entry was stored.
+         */
+        Entry(String eTag, long lastModified, HttpHeaders headers, byte[] body, long storedAt) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+            this.body = body;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * @return {@code eTag}
+         * @see #eTag
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return {@code lastModified}
+         * @see #lastModified
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return {@code headers}
+         * @see #headers
+         */
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return {@code body}
+         * @see #body
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return {@code storedAt}
+         * @see #storedAt
+         */
+        public long getStoredAt() {
+            return storedAt;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.test.demo.http;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Records every request of a {@link org.springframework.web.client.RestTemplate} in {@link OutboundMetrics}.
+ * Registered innermost, so each attempt is timed on its own, without time spent waiting for the rate limit.
+ */
+public class MeteredRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    /**
+     * Where requests are recorded.
+     */
+    private final OutboundMetrics metrics;
+
+    /**
+     * Constructor.
+     *
+     * @param metrics where requests are recorded.
+     */
+    public MeteredRequestInterceptor(OutboundMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        long start = System.nanoTime();
+        String status = OutboundMetrics.IO_ERROR;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            status = String.valueOf(response.getRawStatusCode());
+            return response;
+        } finally {
+            metrics.record(request.getURI(), request.getMethodValue(), status, start);
+        }
+    }
+}
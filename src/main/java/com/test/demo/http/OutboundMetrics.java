@@ -0,0 +1,85 @@
+package com.test.demo.http;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times calls to the Github and Pipe Drive apis, made by the blocking and the non-blocking clients alike.
+ * Calls are recorded in the {@code http.outbound.requests} timer, tagged with the {@code api} called
+ * ({@code github}, {@code pipedrive} or {@code other}), the {@code method} and the {@code status} code of the
+ * response ({@code IO_ERROR} if there was none). Every attempt is recorded: a call rejected because of the rate
+ * limit counts once with the status of the rejection, and its retry counts again.
+ */
+public class OutboundMetrics {
+
+    /**
+     * Name of the timer.
+     */
+    public static final String REQUESTS = "http.outbound.requests";
+
+    /**
+     * Status tag of calls that got no response.
+     */
+    public static final String IO_ERROR = "IO_ERROR";
+
+    /**
+     * Registry the timer is registered in.
+     */
+    private final MeterRegistry registry;
+
+    /**
+     * Host of the Github api.
+     */
+    private final String gitHubHost;
+
+    /**
+     * Host of the Pipe Drive api.
+     */
+    private final String pipeDriveHost;
+
+    /**
+     * Constructor.
+     *
+     * @param registry        registry the timer is registered in.
+     * @param gitHubApiUrl    base url of the Github api.
+     * @param pipeDriveApiUrl base url of the Pipe Drive api.
+     */
+    public OutboundMetrics(MeterRegistry registry, String gitHubApiUrl, String pipeDriveApiUrl) {
+        this.registry = registry;
+        this.gitHubHost = URI.create(gitHubApiUrl).getHost();
+        this.pipeDriveHost = URI.create(pipeDriveApiUrl).getHost();
+    }
+
+    /**
+     * Record a call.
+     *
+     * @param uri        url called.
+     * @param method     http method.
+     * @param status     status code of the response, or {@link #IO_ERROR}.
+     * @param startNanos {@link System#nanoTime()} when the call was sent.
+     */
+    public void record(URI uri, String method, String status, long startNanos) {
+        Timer.builder(REQUESTS)
+                .description("Calls to the Github and Pipe Drive apis")
+                .tag("api", apiOf(uri))
+                .tag("method", method)
+                .tag("status", status)
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param uri url called.
+     * @return name of the api the url belongs to.
+     */
+    private String apiOf(URI uri) {
+        String host = uri.getHost();
+        if (gitHubHost.equalsIgnoreCase(host)) {
+            return "github";
+        }
+        return pipeDriveHost.equalsIgnoreCase(host) ? "pipedrive" : "other";
+    }
+}
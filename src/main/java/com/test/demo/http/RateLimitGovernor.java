@@ -0,0 +1,261 @@
+package com.test.demo.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the Github rate limit from the {@code X-RateLimit-*} and {@code Retry-After} headers
+ * and paces requests so the remaining budget is spread evenly until the window resets.
+ * When the budget is exhausted, requests wait until the reset instead of failing. Interactive requests are not
+ * paced and may use the reserve, see {@link #acquireInteractive(long)}.
+ */
+public class RateLimitGovernor {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(RateLimitGovernor.class);
+
+    /**
+     * Number of requests paced requests leave in reserve for interactive ones.
+     */
+    private final long reserve;
+
+    /**
+     * Maximum time a single request may be held back, in milliseconds.
+     */
+    private final long maxWaitMillis;
+
+    /**
+     * Source of the current time in milliseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Sleeps for the given milliseconds.
+     */
+    private final Sleeper sleeper;
+
+    /**
+     * Remaining requests in the current window, -1 until the first response is seen.
+     */
+    private long remaining = -1;
+
+    /**
+     * Timestamp that the current window resets.
+     */
+    private long resetAt;
+
+    /**
+     * Requests are held back until this timestamp, after a rate limit response.
+     */
+    private long pausedUntil;
+
+    /**
+     * Earliest timestamp for the next request, used for pacing.
+     */
+    private long nextSlot;
+
+    /**
+     * Constructor.
+     *
+     * @param reserve       number of requests to keep in reserve.
+     * @param maxWaitMillis maximum time a single request may be held back.
+     */
+    public RateLimitGovernor(long reserve, long maxWaitMillis) {
+        this(reserve, maxWaitMillis, System::currentTimeMillis, TimeUnit.MILLISECONDS::sleep);
+    }
+
+    /**
+     * Constructor with a custom clock.
+     *
+     * @param reserve       number of requests to keep in reserve.
+     * @param maxWaitMillis maximum time a single request may be held back.
+     * @param clock         source of the current time in milliseconds.
+     * @param sleeper       sleeps for the given milliseconds.
+     */
+    RateLimitGovernor(long reserve, long maxWaitMillis, LongSupplier clock, Sleeper sleeper) {
+        this.reserve = reserve;
+        this.maxWaitMillis = maxWaitMillis;
+        this.clock = clock;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Wait until the next request may be sent.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserveDelay();
+        if (wait > 0) {
+            sleeper.sleep(wait);
+        }
+    }
+
+    /**
+     * Wait until an interactive request may be sent: right away while any budget is left, reserve included,
+     * unless requests are paused after a rate limit response. A request that would wait longer than its caller
+     * does is refused instead of holding a thread.
+     *
+     * @param maxWaitMillis longest the caller waits, in milliseconds.
+     * @return false if the request would have to wait longer, it must not be sent.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean acquireInteractive(long maxWaitMillis) throws InterruptedException {
+        long wait = reserveInteractive(maxWaitMillis);
+        if (wait > 0) {
+            sleeper.sleep(wait);
+        }
+        return wait >= 0;
+    }
+
+    /**
+     * Reserve the next slot without waiting, for non-blocking callers that schedule the request themselves.
+     *
+     * @return milliseconds to delay the request.
+     */
+    public long reserveDelay() {
+        return Math.min(reserveSlot(), maxWaitMillis);
+    }
+
+    /**
+     * Update the budget from the headers of a Github response.
+     *
+     * @param statusCode status code of the response.
+     * @param headers    headers of the response.
+     * @return true if the response was rejected because of the rate limit.
+     */
+    public synchronized boolean update(int statusCode, HttpHeaders headers) {
+        long now = clock.getAsLong();
+        String remainingHeader = headers.getFirst("X-RateLimit-Remaining");
+        String resetHeader = headers.getFirst("X-RateLimit-Reset");
+        String retryAfterHeader = headers.getFirst("Retry-After");
+        if (remainingHeader != null) {
+            remaining = Long.parseLong(remainingHeader.trim());
+        }
+        if (resetHeader != null) {
+            resetAt = TimeUnit.SECONDS.toMillis(Long.parseLong(resetHeader.trim()));
+        }
+
+        boolean limited = (statusCode == 403 || statusCode == 429)
+                && (remaining == 0 || retryAfterHeader != null);
+        if (limited) {
+            long retryAt = retryAfterHeader != null ? retryAt(retryAfterHeader.trim(), now) : -1;
+            long until = retryAt >= 0 ? retryAt : resetAt;
+            pausedUntil = Math.max(pausedUntil, until);
+            logger.warn("Github rate limit hit, pausing for {} ms", pausedUntil - now);
+        }
+        return limited;
+    }
+
+    /**
+     * @param retryAfter value of a Retry-After header, either delta-seconds or an HTTP-date.
+     * @param now        current time in milliseconds.
+     * @return timestamp that requests are allowed again in epoch millis, -1 if the value is not valid.
+     */
+    private static long retryAt(String retryAfter, long now) {
+        try {
+            return now + TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+        } catch (NumberFormatException e) {
+            // not delta-seconds, try an HTTP-date
+        }
+        try {
+            return ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return remaining requests in the current window, -1 if unknown.
+     */
+    public synchronized long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * @return timestamp that the current window resets, in epoch millis.
+     */
+    public synchronized long getResetAt() {
+        return resetAt;
+    }
+
+    /**
+     * @return milliseconds until requests are allowed again after a rate limit response, 0 if not paused.
+     */
+    public synchronized long getPausedFor() {
+        return Math.max(0, pausedUntil - clock.getAsLong());
+    }
+
+    /**
+     * Reserve the next slot and count it against the budget.
+     *
+     * @return milliseconds to wait before sending.
+     */
+    synchronized long reserveSlot() {
+        long now = clock.getAsLong();
+        if (now >= resetAt && resetAt > 0) {
+            // window has reset, the budget is unknown until the next response
+            remaining = -1;
+            nextSlot = now;
+        }
+        long start = Math.max(now, pausedUntil);
+        if (remaining < 0) {
+            return start - now;
+        }
+        long usable = remaining - reserve;
+        if (usable <= 0) {
+            start = Math.max(start, resetAt);
+            return start - now;
+        }
+        long slot = Math.max(start, nextSlot);
+        nextSlot = slot + Math.max(0, resetAt - slot) / usable;
+        remaining--;
+        return slot - now;
+    }
+
+    /**
+     * Count an interactive request against the budget, without pacing it.
+     *
+     * @param maxWaitMillis longest the caller waits, in milliseconds.
+     * @return milliseconds to wait before sending, -1 if that is longer than {@code maxWaitMillis}.
+     */
+    synchronized long reserveInteractive(long maxWaitMillis) {
+        long now = clock.getAsLong();
+        if (now >= resetAt && resetAt > 0) {
+            remaining = -1;
+            nextSlot = now;
+        }
+        long start = Math.max(now, pausedUntil);
+        if (remaining == 0) {
+            start = Math.max(start, resetAt);
+        }
+        if (start - now > maxWaitMillis) {
+            return -1;
+        }
+        if (remaining > 0) {
+            remaining--;
+        }
+        return start - now;
+    }
+
+    /**
+     * Sleeps for the given milliseconds.
+     */
+    @FunctionalInterface
+    interface Sleeper {
+        /**
+         * @param millis milliseconds to sleep.
+         * @throws InterruptedException if interrupted.
+         */
+        void sleep(long millis) throws InterruptedException;
+    }
+}
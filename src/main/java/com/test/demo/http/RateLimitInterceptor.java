@@ -0,0 +1,145 @@
+package com.test.demo.http;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.function.Supplier;
+
+/**
+ * Paces requests to the Github api with {@link RateLimitGovernor} and feeds it the headers of every response.
+ * A request rejected because of the rate limit fails with {@link RateLimitedException}; callers retry it with
+ * {@link #retryRateLimited(Supplier)}, so the retry goes through every interceptor again. An interceptor cannot
+ * retry itself: the execution it is given walks the rest of the chain only once.
+ * Requests to the GraphQL api have a budget of their own, kept by a second governor.
+ * Interactive requests, see {@link Bulkheads#interactive}, are not paced and may use the reserve, but never wait
+ * longer than their deadline: one that would is refused with {@link RateLimitedException}.
+ * Requests to other hosts pass through untouched.
+ */
+public class RateLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    /**
+     * The governor.
+     */
+    private final RateLimitGovernor governor;
+
+    /**
+     * Host of the Github api.
+     */
+    private final String host;
+
+    /**
+     * The governor of the GraphQL api.
+     */
+    private final RateLimitGovernor graphQlGovernor;
+
+    /**
+     * Url of the GraphQL api.
+     */
+    private final URI graphQlUri;
+
+    /**
+     * Tell interactive calls from those of the sweep.
+     */
+    private final Bulkheads bulkheads;
+
+    /**
+     * Longest an interactive call waits for the rate limit, in milliseconds.
+     */
+    private final long interactiveMaxWaitMillis;
+
+    /**
+     * Constructor.
+     *
+     * @param governor                 the governor.
+     * @param apiUrl                   base url of the Github api.
+     * @param graphQlGovernor          the governor of the GraphQL api.
+     * @param graphQlUrl               url of the GraphQL api.
+     * @param bulkheads                tell interactive calls from those of the sweep.
+     * @param interactiveMaxWaitMillis longest an interactive call waits for the rate limit, in milliseconds.
+     */
+    public RateLimitInterceptor(RateLimitGovernor governor, String apiUrl,
+                                RateLimitGovernor graphQlGovernor, String graphQlUrl,
+                                Bulkheads bulkheads, long interactiveMaxWaitMillis) {
+        this.governor = governor;
+        this.host = URI.create(apiUrl).getHost();
+        this.graphQlGovernor = graphQlGovernor;
+        this.graphQlUri = URI.create(graphQlUrl);
+        this.bulkheads = bulkheads;
+        this.interactiveMaxWaitMillis = interactiveMaxWaitMillis;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        URI uri = request.getURI();
+        RateLimitGovernor governor;
+        if (graphQlUri.getHost().equalsIgnoreCase(uri.getHost()) && graphQlUri.getPath().equals(uri.getPath())) {
+            governor = graphQlGovernor;
+        } else if (host.equalsIgnoreCase(uri.getHost())) {
+            governor = this.governor;
+        } else {
+            return execution.execute(request, body);
+        }
+        ClientHttpResponse response = paced(governor, request, body, execution);
+        int status = response.getRawStatusCode();
+        if (governor.update(status, response.getHeaders())) {
+            response.close();
+            throw new RateLimitedException(String.format("Github rate limit hit (%d)", status));
+        }
+        return response;
+    }
+
+    /**
+     * Make a call, and once more if Github rejected it because of the rate limit. The second attempt waits in
+     * this interceptor until the limit resets.
+     *
+     * @param call the call, through a rest template using this interceptor.
+     * @param <T>  type of the result.
+     * @return result of the call.
+     * @throws ResourceAccessException with a {@link RateLimitedException} cause if the second attempt is
+     *                                 rejected too.
+     */
+    public static <T> T retryRateLimited(Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (ResourceAccessException e) {
+            if (!(e.getCause() instanceof RateLimitedException)) {
+                throw e;
+            }
+            return call.get();
+        }
+    }
+
+    /**
+     * Wait for the governor, then send the request.
+     *
+     * @param governor  the governor.
+     * @param request   the request.
+     * @param body      body of the request.
+     * @param execution the execution.
+     * @return the response.
+     * @throws IOException if sending fails or the wait is interrupted.
+     */
+    private ClientHttpResponse paced(RateLimitGovernor governor, HttpRequest request, byte[] body,
+                                     ClientHttpRequestExecution execution)
+            throws IOException {
+        try {
+            if (!bulkheads.isInteractive()) {
+                governor.acquire();
+            } else if (!governor.acquireInteractive(interactiveMaxWaitMillis)) {
+                throw new RateLimitedException(String.format(
+                        "Github rate limit leaves no request within %d ms", interactiveMaxWaitMillis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Github rate limit");
+        }
+        return execution.execute(request, body);
+    }
+}
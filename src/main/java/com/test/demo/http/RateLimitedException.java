@@ -0,0 +1,20 @@
+package com.test.demo.http;
+
+import java.io.IOException;
+
+/**
+ * A call Github rejected because of its rate limit, after which the governor pauses requests until the limit
+ * resets, or an interactive call refused because it would have to wait longer than its deadline.
+ * See {@link RateLimitInterceptor#retryRateLimited}.
+ */
+public class RateLimitedException extends IOException {
+
+    /**
+     * Constructor.
+     *
+     * @param message description of the rejection.
+     */
+    public RateLimitedException(String message) {
+        super(message);
+    }
+}
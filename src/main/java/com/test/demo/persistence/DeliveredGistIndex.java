@@ -0,0 +1,211 @@
+package com.test.demo.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ids of the gists that already have a Pipe Drive activity, so a gist is never posted twice,
+ * whatever overlapping or retried sweeps fetch.
+ * <p>
+ * The exact ids are appended to {@code gists.delivered} (length (2 bytes) and UTF-8 bytes per id).
+ * In memory only a 64-bit fingerprint of every id, see {@link Hashing}, is kept in a {@link LongHashSet}, about
+ * 16 bytes per gist, and hits are not confirmed against the exact ids, which would mean keeping them in memory or
+ * reading the file. A gist whose id shares a fingerprint with a delivered one is taken as delivered and gets no
+ * activity. The odds are accepted: the probability that any two of n ids share a fingerprint is about
+ * n&sup2; / 2<sup>65</sup>, less than one in 300,000 for ten million gists.
+ * <p>
+ * Appended ids are forced to disk as {@code storage.fsync} says, as for {@link Journal}.
+ */
+@Component
+public class DeliveredGistIndex {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(DeliveredGistIndex.class);
+
+    /**
+     * Path of the file of delivered gist ids.
+     */
+    private final Path path;
+
+    /**
+     * When to force appended ids to disk.
+     */
+    private final FsyncPolicy fsyncPolicy;
+
+    /**
+     * Forces the file to disk periodically, for {@link FsyncPolicy#INTERVAL}; {@code null} otherwise.
+     */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Whether ids were appended since the file was last forced to disk, guarded by {@code this}.
+     */
+    private boolean dirty;
+
+    /**
+     * Fingerprints of the delivered gist ids, guarded by {@code this}.
+     */
+    private final LongHashSet fingerprints = new LongHashSet(1024);
+
+    /**
+     * Channel appending to the file, open after {@link #load()}, guarded by {@code this}.
+     */
+    private FileChannel channel;
+
+    /**
+     * Constructor.
+     *
+     * @param directory           directory of the file.
+     * @param fsyncPolicy         when to force appended ids to disk: always, interval or never.
+     * @param fsyncIntervalMillis interval of the periodic fsync, in milliseconds.
+     */
+    @Autowired
+    public DeliveredGistIndex(@Value("${storage.dir:.}") String directory,
+                              @Value("${storage.fsync:interval}") String fsyncPolicy,
+                              @Value("${storage.fsync-interval-millis:1000}") long fsyncIntervalMillis) {
+        this.path = Paths.get(directory, "gists.delivered");
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.toUpperCase(Locale.ROOT));
+        if (this.fsyncPolicy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gists-delivered-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::sync, fsyncIntervalMillis, fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Load the delivered ids. A torn id at the end (e.g. from a crash mid-write) is cut off.
+     *
+     * @throws IOException if the file cannot be read or opened.
+     */
+    @PostConstruct
+    public synchronized void load() throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        int valid = 0;
+        while (buffer.remaining() >= 2) {
+            int length = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < length) {
+                break;
+            }
+            fingerprints.add(Hashing.hash64(buffer.array(), buffer.position(), length));
+            buffer.position(buffer.position() + length);
+            valid = buffer.position();
+        }
+        if (valid < buffer.limit()) {
+            logger.warn("Cutting off {} corrupt bytes at the end of {}", buffer.limit() - valid, path);
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        logger.info("Loaded {} delivered gist ids.", fingerprints.size());
+    }
+
+    /**
+     * Force the file to disk and close it.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing delivered gist ids.", e);
+        }
+    }
+
+    /**
+     * @param gistId id of a gist.
+     * @return whether an activity was already added for the gist, or for one sharing its fingerprint.
+     */
+    public synchronized boolean contains(String gistId) {
+        return fingerprints.contains(fingerprint(gistId));
+    }
+
+    /**
+     * Record that an activity was added for a gist.
+     *
+     * @param gistId id of the gist.
+     */
+    public synchronized void add(String gistId) {
+        byte[] id = gistId.getBytes(StandardCharsets.UTF_8);
+        if (!fingerprints.add(Hashing.hash64(id, 0, id.length))) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 + id.length);
+        buffer.putShort((short) id.length);
+        buffer.put(id);
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            dirty = true;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                channel.force(false);
+                dirty = false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error appending to delivered gist ids", e);
+        }
+    }
+
+    /**
+     * Force appended ids to disk, if there are any.
+     */
+    public synchronized void sync() {
+        if (!dirty || !channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            logger.error("Error syncing delivered gist ids.", e);
+        }
+    }
+
+    /**
+     * @return number of delivered gists.
+     */
+    public synchronized int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * @param gistId id of a gist.
+     * @return fingerprint of the id.
+     */
+    static long fingerprint(String gistId) {
+        return Hashing.hash64(gistId);
+    }
+}
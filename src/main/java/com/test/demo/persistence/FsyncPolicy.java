@@ -0,0 +1,19 @@
+package com.test.demo.persistence;
+
+/**
+ * When records appended to a {@link Journal} are forced to disk.
+ */
+public enum FsyncPolicy {
+    /**
+     * After every record. Survives power loss, costs a disk flush per change.
+     */
+    ALWAYS,
+    /**
+     * Periodically. Survives process crashes; a power loss may lose the last interval.
+     */
+    INTERVAL,
+    /**
+     * Left to the operating system. Survives process crashes.
+     */
+    NEVER
+}
@@ -0,0 +1,46 @@
+package com.test.demo.persistence;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hash of strings, shared by the fingerprints of {@link DeliveredGistIndex} and the ring of
+ * {@code ConsistentHashRing}: FNV-1a of the UTF-8 bytes, followed by the final mix of MurmurHash3, so that
+ * similar strings (e.g. ids differing in the last character) land far apart.
+ */
+public final class Hashing {
+
+    /**
+     * Utility class.
+     */
+    private Hashing() {
+    }
+
+    /**
+     * @param value the value.
+     * @return hash of the UTF-8 bytes of the value.
+     */
+    public static long hash64(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return hash64(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes  buffer holding the value.
+     * @param offset start of the value.
+     * @param length length of the value.
+     * @return hash of the bytes.
+     */
+    public static long hash64(byte[] bytes, int offset, int length) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i] & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
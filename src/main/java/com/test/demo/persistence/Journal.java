@@ -0,0 +1,276 @@
+package com.test.demo.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of changes, in a file of its own per store. Every change is written to the file as soon as
+ * it happens, so it survives the process being killed. Whether (and when) it is also forced to disk is decided by
+ * the {@link FsyncPolicy}.
+ * <p>
+ * Record layout: type (1 byte), value (8 bytes, epoch millis or -1), key length (2 bytes),
+ * key (UTF-8), CRC32 of all previous bytes (4 bytes). The record types and what the key holds are up to the
+ * store, see {@link UserJournal}; the journal itself does not interpret them.
+ *
+ * @param <T> record types of the journal.
+ */
+public class Journal<T extends Enum<T> & JournalRecordType> implements Closeable {
+
+    /**
+     * Size of a record without the key.
+     */
+    private static final int FIXED_SIZE = 1 + 8 + 2 + 4;
+
+    /**
+     * Longest key in bytes, the largest length the 2 bytes hold.
+     */
+    static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    /**
+     * Path of the journal file.
+     */
+    private final Path path;
+
+    /**
+     * Name of the journal, for logs and the fsync thread.
+     */
+    private final String name;
+
+    /**
+     * Record types by code.
+     */
+    private final Map<Byte, T> types = new HashMap<>();
+
+    /**
+     * When to force appended records to disk.
+     */
+    private final FsyncPolicy fsyncPolicy;
+
+    /**
+     * Channel appending to the journal, guarded by {@code this}.
+     */
+    private FileChannel channel;
+
+    /**
+     * Number of records in the journal, guarded by {@code this}.
+     */
+    private long recordCount;
+
+    /**
+     * Whether records were appended since the last fsync, guarded by {@code this}.
+     */
+    private boolean dirty;
+
+    /**
+     * Forces the journal to disk periodically, for {@link FsyncPolicy#INTERVAL}.
+     */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Open a journal, creating the file if needed.
+     *
+     * @param path                path of the journal file.
+     * @param name                name of the journal, e.g. {@code user-journal}.
+     * @param recordType          enum of the record types.
+     * @param fsyncPolicy         when to force appended records to disk.
+     * @param fsyncIntervalMillis interval of the periodic fsync, for {@link FsyncPolicy#INTERVAL}.
+     * @throws IOException if the file cannot be opened.
+     */
+    public Journal(Path path, String name, Class<T> recordType, FsyncPolicy fsyncPolicy,
+                   long fsyncIntervalMillis) throws IOException {
+        this.path = path;
+        this.name = name;
+        for (T type : recordType.getEnumConstants()) {
+            if (types.put(type.getCode(), type) != null) {
+                throw new IllegalArgumentException("Duplicate code " + type.getCode() + " of " + recordType);
+            }
+        }
+        this.fsyncPolicy = fsyncPolicy;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name + "-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::sync, fsyncIntervalMillis, fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Append a record.
+     *
+     * @param type  type of the change.
+     * @param key   key of the change.
+     * @param value timestamp of the change, may be {@code null}.
+     * @throws IllegalArgumentException if the key is longer than {@value #MAX_KEY_LENGTH} bytes.
+     */
+    public synchronized void append(T type, String key, Date value) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Journal key of " + bytes.length + " bytes is longer than "
+                    + MAX_KEY_LENGTH);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + bytes.length);
+        buffer.put(type.getCode());
+        buffer.putLong(value == null ? -1 : value.getTime());
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            recordCount++;
+            dirty = true;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                channel.force(false);
+                dirty = false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error appending to " + name, e);
+        }
+    }
+
+    /**
+     * Replay all valid records. A torn or corrupt tail (e.g. from a crash mid-write) is cut off.
+     *
+     * @param visitor receives every record in order.
+     * @return number of records replayed.
+     * @throws IOException if the file cannot be read.
+     */
+    public synchronized long replay(Visitor<T> visitor) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        long count = 0;
+        int valid = 0;
+        while (buffer.remaining() >= FIXED_SIZE) {
+            int start = buffer.position();
+            byte code = buffer.get();
+            long value = buffer.getLong();
+            int length = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < length + 4) {
+                break;
+            }
+            byte[] key = new byte[length];
+            buffer.get(key);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), start, buffer.position() - start);
+            T type = types.get(code);
+            if (buffer.getInt() != (int) crc.getValue() || type == null) {
+                break;
+            }
+            visitor.visit(type, new String(key, StandardCharsets.UTF_8), value < 0 ? null : new Date(value));
+            valid = buffer.position();
+            count++;
+        }
+        if (valid < buffer.limit()) {
+            logger.warn("Cutting off {} corrupt bytes at the end of the {}", buffer.limit() - valid, name);
+            channel.truncate(valid);
+            channel.position(valid);
+        }
+        recordCount = count;
+        return count;
+    }
+
+    /**
+     * Write a snapshot and empty the journal, as one step with respect to appends.
+     * Appends made while the snapshot is written wait and go to the emptied journal.
+     *
+     * @param snapshotWriter writes a snapshot containing every change appended so far.
+     * @throws IOException if the snapshot or the journal cannot be written.
+     */
+    public synchronized void compact(SnapshotWriter snapshotWriter) throws IOException {
+        snapshotWriter.write();
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        recordCount = 0;
+        dirty = false;
+    }
+
+    /**
+     * @return number of records in the journal.
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Force appended records to disk, if there are any.
+     */
+    public synchronized void sync() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            logger.error("Error syncing " + name, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        sync();
+        channel.close();
+    }
+
+    /**
+     * Receives replayed records.
+     *
+     * @param <T> record types of the journal.
+     */
+    @FunctionalInterface
+    public interface Visitor<T> {
+        /**
+         * @param type  type of the change.
+         * @param key   key of the change.
+         * @param value timestamp of the change, may be {@code null}.
+         */
+        void visit(T type, String key, Date value);
+    }
+
+    /**
+     * Writes a snapshot during compaction.
+     */
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        /**
+         * @throws IOException if the snapshot cannot be written.
+         */
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,12 @@
+package com.test.demo.persistence;
+
+/**
+ * Type of a {@link Journal} record, implemented by an enum of the record types of each journal.
+ */
+public interface JournalRecordType {
+
+    /**
+     * @return code of the type in the file, unique among the types of a journal.
+     */
+    byte getCode();
+}
@@ -0,0 +1,128 @@
+package com.test.demo.persistence;
+
+/**
+ * Set of primitive longs with open addressing and linear probing, 8 bytes per slot and no boxing.
+ * The table is kept at most half full. Not thread safe.
+ */
+final class LongHashSet {
+
+    /**
+     * Marks an empty slot; the value 0 itself is tracked by {@link #containsZero}.
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     * Slots of the table, length is a power of two.
+     */
+    private long[] table;
+
+    /**
+     * Whether 0 is in the set.
+     */
+    private boolean containsZero;
+
+    /**
+     * Number of values in the set.
+     */
+    private int size;
+
+    /**
+     * @param expectedSize number of values to make room for.
+     */
+    LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        table = new long[capacity];
+    }
+
+    /**
+     * @param value a value.
+     * @return whether the value is in the set.
+     */
+    boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        for (int i = index(value, mask); ; i = (i + 1) & mask) {
+            long slot = table[i];
+            if (slot == value) {
+                return true;
+            }
+            if (slot == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param value a value.
+     * @return false if the value was already in the set.
+     */
+    boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        if ((size + 1) * 2 > table.length) {
+            grow();
+        }
+        if (!insert(table, value)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * @return number of values in the set.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Double the table and re-insert all values.
+     */
+    private void grow() {
+        long[] grown = new long[table.length * 2];
+        for (long value : table) {
+            if (value != EMPTY) {
+                insert(grown, value);
+            }
+        }
+        table = grown;
+    }
+
+    /**
+     * @param target table to insert into.
+     * @param value  a non-zero value.
+     * @return false if the value was already in the table.
+     */
+    private static boolean insert(long[] target, long value) {
+        int mask = target.length - 1;
+        for (int i = index(value, mask); ; i = (i + 1) & mask) {
+            long slot = target[i];
+            if (slot == value) {
+                return false;
+            }
+            if (slot == EMPTY) {
+                target[i] = value;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param value a value.
+     * @param mask  table length minus one.
+     * @return home slot of the value.
+     */
+    private static int index(long value, int mask) {
+        long mixed = value * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,418 @@
+package com.test.demo.persistence;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.OutboxEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Persists the outbox of Pipe Drive activities, see {@code ActivityOutbox}: a json snapshot plus a
+ * {@link Journal} of every change since, in {@code outbox.snapshot} and {@code outbox.journal}.
+ * On startup the snapshot is loaded and the journal replayed, so activities not delivered before a restart are
+ * delivered after it. Dead-lettered activities are kept apart, for inspection, so looking up the due activities
+ * only goes through the live ones, in the order of their next attempt.
+ */
+@Component
+public class OutboxStore {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(OutboxStore.class);
+
+    /**
+     * Separates gist id and url in the key of queued records.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /**
+     * Path of the snapshot file.
+     */
+    private final Path snapshotPath;
+
+    /**
+     * Path of the journal file.
+     */
+    private final Path journalPath;
+
+    /**
+     * When to force journal records to disk.
+     */
+    private final FsyncPolicy fsyncPolicy;
+
+    /**
+     * Interval of the periodic fsync, in milliseconds.
+     */
+    private final long fsyncIntervalMillis;
+
+    /**
+     * Number of journal records that triggers a compaction.
+     */
+    private final long compactAfterRecords;
+
+    /**
+     * Live entries by gist id, in the order they were queued, guarded by {@code this}.
+     */
+    private final Map<String, OutboxEntry> entries = new LinkedHashMap<>();
+
+    /**
+     * Live entries by next attempt, guarded by {@code this}. An entry is removed before its next attempt changes.
+     */
+    private final TreeSet<OutboxEntry> schedule = new TreeSet<>(
+            Comparator.comparingLong(OutboxEntry::getNextAttemptAt).thenComparing(OutboxEntry::getGistId));
+
+    /**
+     * Dead-lettered entries by gist id, in the order they died, guarded by {@code this}.
+     */
+    private final Map<String, OutboxEntry> deadEntries = new LinkedHashMap<>();
+
+    /**
+     * Jackson Object mapper.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The journal, open after {@link #load()}.
+     */
+    private Journal<RecordType> journal;
+
+    /**
+     * Constructor.
+     *
+     * @param directory           directory of the snapshot and journal files.
+     * @param fsyncPolicy         when to force journal records to disk: always, interval or never.
+     * @param fsyncIntervalMillis interval of the periodic fsync, in milliseconds.
+     * @param compactAfterRecords number of journal records that triggers a compaction.
+     */
+    @Autowired
+    public OutboxStore(@Value("${storage.dir:.}") String directory,
+                       @Value("${storage.fsync:interval}") String fsyncPolicy,
+                       @Value("${storage.fsync-interval-millis:1000}") long fsyncIntervalMillis,
+                       @Value("${storage.compact-after-records:100000}") long compactAfterRecords) {
+        this.snapshotPath = Paths.get(directory, "outbox.snapshot");
+        this.journalPath = Paths.get(directory, "outbox.journal");
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.toUpperCase(Locale.ROOT));
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.compactAfterRecords = compactAfterRecords;
+    }
+
+    /**
+     * Load the snapshot, then replay the journal on top of it. A snapshot that cannot be read is moved aside to
+     * {@code outbox.snapshot.corrupt}, so the next compaction does not overwrite the activities it holds.
+     *
+     * @throws IOException if the journal cannot be opened.
+     */
+    @PostConstruct
+    public synchronized void load() throws IOException {
+        if (Files.exists(snapshotPath)) {
+            try {
+                List<OutboxEntry> snapshot = mapper.readValue(snapshotPath.toFile(),
+                        new TypeReference<List<OutboxEntry>>() { });
+                snapshot.forEach(this::put);
+            } catch (IOException e) {
+                logger.error("Error loading the outbox snapshot.", e);
+                Path corrupt = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".corrupt");
+                Files.move(snapshotPath, corrupt, StandardCopyOption.REPLACE_EXISTING);
+                logger.warn("Moved the unreadable outbox snapshot to {}, its activities are not delivered.",
+                        corrupt);
+            }
+        }
+        Files.createDirectories(journalPath.toAbsolutePath().getParent());
+        journal = new Journal<>(journalPath, "outbox-journal", RecordType.class, fsyncPolicy, fsyncIntervalMillis);
+        long replayed = journal.replay(this::apply);
+        logger.info("Replayed {} outbox journal records, {} activities to deliver, {} dead-lettered.",
+                replayed, getPendingCount(), getDeadCount());
+    }
+
+    /**
+     * Compact the journal and close it.
+     */
+    @PreDestroy
+    public void close() {
+        try {
+            compact();
+        } catch (IOException e) {
+            logger.error("Error saving the outbox. Changes are kept in the journal.", e);
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Error closing outbox journal.", e);
+        }
+    }
+
+    /**
+     * Compact the journal if it has grown past the threshold.
+     */
+    @Scheduled(fixedDelayString = "${storage.compact-check-millis:60000}")
+    public void compactIfNeeded() {
+        if (journal.getRecordCount() < compactAfterRecords) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            logger.error("Error compacting outbox journal.", e);
+        }
+    }
+
+    /**
+     * Write a new snapshot and empty the journal.
+     *
+     * @throws IOException if writing fails.
+     */
+    public synchronized void compact() throws IOException {
+        journal.compact(this::saveSnapshot);
+    }
+
+    /**
+     * Write an activity to the outbox, before its first attempt. A dead-lettered activity is queued again, with
+     * all of its attempts left.
+     *
+     * @param gistId        id of the gist.
+     * @param gistUrl       url of the gist.
+     * @param nextAttemptAt timestamp in epoch millis of the first attempt.
+     * @return false if the activity was already waiting in the outbox.
+     */
+    public synchronized boolean queued(String gistId, String gistUrl, long nextAttemptAt) {
+        if (entries.containsKey(gistId)) {
+            return false;
+        }
+        String key = gistId + KEY_SEPARATOR + gistUrl;
+        journal.append(RecordType.QUEUED, key, new Date(nextAttemptAt));
+        apply(RecordType.QUEUED, key, new Date(nextAttemptAt));
+        return true;
+    }
+
+    /**
+     * Record a failed attempt.
+     *
+     * @param gistId        id of the gist.
+     * @param nextAttemptAt timestamp in epoch millis of the next attempt.
+     */
+    public synchronized void failed(String gistId, long nextAttemptAt) {
+        record(RecordType.FAILED, gistId, new Date(nextAttemptAt));
+    }
+
+    /**
+     * Record that an activity was delivered, removing it.
+     *
+     * @param gistId id of the gist.
+     */
+    public synchronized void delivered(String gistId) {
+        record(RecordType.DELIVERED, gistId, null);
+    }
+
+    /**
+     * Record that an activity failed every attempt.
+     *
+     * @param gistId id of the gist.
+     */
+    public synchronized void dead(String gistId) {
+        record(RecordType.DEAD, gistId, null);
+    }
+
+    /**
+     * @param now current timestamp in epoch millis.
+     * @return copies of the activities due for an attempt, the longest due first.
+     */
+    public synchronized List<OutboxEntry> due(long now) {
+        List<OutboxEntry> due = new ArrayList<>();
+        for (OutboxEntry entry : schedule) {
+            if (entry.getNextAttemptAt() > now) {
+                break;
+            }
+            due.add(entry.copy());
+        }
+        return due;
+    }
+
+    /**
+     * @param gistId id of the gist.
+     * @return a copy of the activity, {@code null} if not in the outbox.
+     */
+    public synchronized OutboxEntry find(String gistId) {
+        OutboxEntry entry = entries.containsKey(gistId) ? entries.get(gistId) : deadEntries.get(gistId);
+        return entry == null ? null : entry.copy();
+    }
+
+    /**
+     * @return number of activities waiting to be delivered.
+     */
+    public synchronized int getPendingCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of dead-lettered activities.
+     */
+    public synchronized int getDeadCount() {
+        return deadEntries.size();
+    }
+
+    /**
+     * Append a record for an activity in the outbox and apply it.
+     *
+     * @param type   type of the change.
+     * @param gistId id of the gist.
+     * @param value  timestamp of the change, may be {@code null}.
+     */
+    private void record(RecordType type, String gistId, Date value) {
+        if (!entries.containsKey(gistId) && !deadEntries.containsKey(gistId)) {
+            return;
+        }
+        journal.append(type, gistId, value);
+        apply(type, gistId, value);
+    }
+
+    /**
+     * Apply a record to the entries. Records of unknown activities are ignored.
+     *
+     * @param type  type of the change.
+     * @param key   gist id, and url for queued records.
+     * @param value timestamp of the change.
+     */
+    private void apply(RecordType type, String key, Date value) {
+        switch (type) {
+            case QUEUED:
+                String[] parts = key.split(String.valueOf(KEY_SEPARATOR), 2);
+                OutboxEntry entry = new OutboxEntry();
+                entry.setGistId(parts[0]);
+                entry.setGistUrl(parts.length > 1 ? parts[1] : null);
+                entry.setNextAttemptAt(value == null ? 0 : value.getTime());
+                if (!entries.containsKey(entry.getGistId())) {
+                    // revives a dead-lettered one
+                    deadEntries.remove(entry.getGistId());
+                    put(entry);
+                }
+                break;
+            case FAILED:
+                OutboxEntry failed = entries.get(key);
+                if (failed != null) {
+                    schedule.remove(failed);
+                    failed.setAttempts(failed.getAttempts() + 1);
+                    failed.setNextAttemptAt(value == null ? 0 : value.getTime());
+                    schedule.add(failed);
+                }
+                break;
+            case DELIVERED:
+                OutboxEntry delivered = entries.remove(key);
+                if (delivered != null) {
+                    schedule.remove(delivered);
+                }
+                deadEntries.remove(key);
+                break;
+            case DEAD:
+                OutboxEntry dead = entries.remove(key);
+                if (dead != null) {
+                    schedule.remove(dead);
+                    dead.setAttempts(dead.getAttempts() + 1);
+                    dead.setDead(true);
+                    deadEntries.put(key, dead);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Add an entry of the snapshot or a new one, live or dead-lettered.
+     *
+     * @param entry the entry.
+     */
+    private void put(OutboxEntry entry) {
+        if (entry.isDead()) {
+            deadEntries.put(entry.getGistId(), entry);
+        } else {
+            entries.put(entry.getGistId(), entry);
+            schedule.add(entry);
+        }
+    }
+
+    /**
+     * Write the snapshot to a temporary file and force it to disk, then move it over the previous one, so the
+     * journal is only emptied once the snapshot holding its records is durable.
+     *
+     * @throws IOException if writing fails.
+     */
+    private void saveSnapshot() throws IOException {
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        List<OutboxEntry> snapshot = new ArrayList<>(entries.size() + deadEntries.size());
+        snapshot.addAll(entries.values());
+        snapshot.addAll(deadEntries.values());
+        ByteBuffer json = ByteBuffer.wrap(mapper.writeValueAsBytes(snapshot));
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (json.hasRemaining()) {
+                channel.write(json);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Type of an outbox journal record; the key is the gist id.
+     */
+    enum RecordType implements JournalRecordType {
+        /**
+         * An activity was written to the outbox, or a dead-lettered one queued again, value is its first attempt;
+         * the key also holds the gist url.
+         */
+        QUEUED((byte) 10),
+        /**
+         * An attempt to deliver an activity failed, value is the next attempt.
+         */
+        FAILED((byte) 11),
+        /**
+         * An activity was delivered.
+         */
+        DELIVERED((byte) 12),
+        /**
+         * An activity failed every attempt and was dead-lettered.
+         */
+        DEAD((byte) 13);
+
+        /**
+         * Code of the type in the file, as written by earlier versions.
+         */
+        private final byte code;
+
+        /**
+         * @param code code of the type in the file.
+         */
+        RecordType(byte code) {
+            this.code = code;
+        }
+
+        @Override
+        public byte getCode() {
+            return code;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.test.demo.persistence;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Journal of changes to the screened users, see {@link UserStore}. The key of a record is the username, or empty
+ * for sweep records.
+ */
+public class UserJournal extends Journal<UserJournal.RecordType> {
+
+    /**
+     * Open the journal, creating the file if needed.
+     *
+     * @param path                path of the journal file.
+     * @param fsyncPolicy         when to force appended records to disk.
+     * @param fsyncIntervalMillis interval of the periodic fsync, for {@link FsyncPolicy#INTERVAL}.
+     * @throws IOException if the file cannot be opened.
+     */
+    public UserJournal(Path path, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) throws IOException {
+        super(path, "user-journal", RecordType.class, fsyncPolicy, fsyncIntervalMillis);
+    }
+
+    /**
+     * Type of a journal record.
+     */
+    public enum RecordType implements JournalRecordType {
+        /**
+         * A user was added.
+         */
+        ADD((byte) 1),
+        /**
+         * A user was removed.
+         */
+        REMOVE((byte) 2),
+        /**
+         * The gists of a user were visited, value is the new {@code lastVisit}.
+         */
+        LAST_VISIT((byte) 3),
+        /**
+         * The gists of a user were added as activities, value is the new {@code lastAdded}.
+         */
+        LAST_ADDED((byte) 4),
+        /**
+         * Gists of a user were delivered, value is the new {@code cursor}.
+         */
+        CURSOR((byte) 5),
+        /**
+         * Adding the activity of a gist failed, it is retried on the next sweep.
+         */
+        GIST_PENDING((byte) 6),
+        /**
+         * A pending gist was delivered.
+         */
+        GIST_DELIVERED((byte) 7),
+        /**
+         * A sweep started, value is its start.
+         */
+        SWEEP_STARTED((byte) 8),
+        /**
+         * The sweep finished, every user was processed.
+         */
+        SWEEP_FINISHED((byte) 9);
+
+        /**
+         * Code of the type in the file.
+         */
+        private final byte code;
+
+        /**
+         * @param code code of the type in the file.
+         */
+        RecordType(byte code) {
+            this.code = code;
+        }
+
+        @Override
+        public byte getCode() {
+            return code;
+        }
+    }
+}
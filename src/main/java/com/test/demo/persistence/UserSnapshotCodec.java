@@ -0,0 +1,343 @@
+package com.test.demo.persistence;
+
+import com.test.demo.dto.UserDTO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot format of the screened users.
+ * <p>
+ * Header (16 bytes): magic {@code PDUS}, version (2 bytes), reserved (2 bytes), user count (4 bytes),
+ * CRC32 of the payload (4 bytes). Strings are written as length (2 bytes) and UTF-8 bytes, timestamps as
+ * epoch millis (8 bytes, -1 if not set).
+ * <p>
+ * Version 1 payload, per user: username, {@code lastVisit}, {@code lastAdded}.
+ * <p>
+ * Version 2 payload: start of the unfinished sweep, then per user: username, {@code lastVisit},
+ * {@code lastAdded}, {@code cursor}, pending gist count (2 bytes) and the id and url of every pending gist.
+ * <p>
+ * Version 3 payload: same as version 2 with a pending gist count of 4 bytes, as a user may have more pending
+ * gists than 2 bytes hold.
+ * <p>
+ * Snapshots are written in the current version through a {@link FileChannel} and read by memory mapping
+ * the file. All versions can be read.
+ */
+public final class UserSnapshotCodec {
+
+    /**
+     * Magic number at the start of every snapshot, "PDUS".
+     */
+    static final int MAGIC = 0x50445553;
+
+    /**
+     * Current version of the format.
+     */
+    static final short VERSION = 3;
+
+    /**
+     * Size of the header.
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * Largest length of a string the 2 bytes of its length hold.
+     */
+    static final int MAX_LENGTH = 0xFFFF;
+
+    /**
+     * Size of the write buffer, which holds at least the longest string and its length.
+     */
+    private static final int BUFFER_SIZE = 128 * 1024;
+
+    /**
+     * Utility class.
+     */
+    private UserSnapshotCodec() {
+    }
+
+    /**
+     * Write users to a snapshot file, replacing its content, and force it to disk.
+     *
+     * @param path           path of the snapshot file.
+     * @param users          users to write.
+     * @param sweepStartedAt start of the sweep that has not finished yet, {@code null} if none.
+     * @throws IOException if writing fails, or a string is longer than {@value #MAX_LENGTH} UTF-8 bytes.
+     */
+    public static void write(Path path, Collection<UserDTO> users, Date sweepStartedAt) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(channel);
+            channel.position(HEADER_SIZE);
+            out.putLong(toMillis(sweepStartedAt));
+            int count = 0;
+            for (UserDTO userDTO : users) {
+                out.putString(userDTO.getUsername());
+                out.putLong(toMillis(userDTO.getLastVisit()));
+                out.putLong(toMillis(userDTO.getLastAdded()));
+                out.putLong(toMillis(userDTO.getCursor()));
+                // copied first, the map may change while the snapshot is written
+                List<Map.Entry<String, String>> pending = new ArrayList<>(userDTO.getPendingGists().entrySet());
+                out.putInt(pending.size());
+                for (Map.Entry<String, String> gist : pending) {
+                    out.putString(gist.getKey());
+                    out.putString(gist.getValue());
+                }
+                count++;
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) 0);
+            header.putInt(count);
+            header.putInt((int) out.crc.getValue());
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Read all users of a snapshot file.
+     *
+     * @param path     path of the snapshot file.
+     * @param consumer receives every user.
+     * @return what was read besides the users.
+     * @throws IOException if the file cannot be read, or is not a valid snapshot, including one whose payload
+     *                     passes the checksum but cannot be decoded.
+     */
+    public static Contents read(Path path, Consumer<UserDTO> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a user snapshot: " + path);
+            }
+            short version = buffer.getShort();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported user snapshot version " + version + ": " + path);
+            }
+            buffer.getShort();
+            int count = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("User snapshot checksum mismatch: " + path);
+            }
+            try {
+                return readPayload(buffer, version, count, consumer);
+            } catch (RuntimeException e) {
+                // e.g. BufferUnderflowException, a count or length past the end of the file
+                throw new IOException("User snapshot is corrupt: " + path, e);
+            }
+        }
+    }
+
+    /**
+     * @param buffer   buffer positioned at the payload.
+     * @param version  version of the format.
+     * @param count    number of users.
+     * @param consumer receives every user.
+     * @return what was read besides the users.
+     */
+    private static Contents readPayload(ByteBuffer buffer, short version, int count, Consumer<UserDTO> consumer) {
+        Contents contents = new Contents(count, version >= 2 ? toDate(buffer.getLong()) : null);
+        for (int i = 0; i < count; i++) {
+            UserDTO userDTO = new UserDTO();
+            userDTO.setUsername(getString(buffer));
+            userDTO.setLastVisit(toDate(buffer.getLong()));
+            userDTO.setLastAdded(toDate(buffer.getLong()));
+            if (version >= 2) {
+                userDTO.setCursor(toDate(buffer.getLong()));
+                int pending = version >= 3 ? buffer.getInt() : buffer.getShort() & 0xFFFF;
+                for (int j = 0; j < pending; j++) {
+                    userDTO.getPendingGists().put(getString(buffer), getString(buffer));
+                }
+            }
+            consumer.accept(userDTO);
+        }
+        return contents;
+    }
+
+    /**
+     * @param buffer buffer positioned at a string.
+     * @return the string.
+     */
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param date a date, may be {@code null}.
+     * @return epoch millis, or -1 for {@code null}.
+     */
+    private static long toMillis(Date date) {
+        return date == null ? -1 : date.getTime();
+    }
+
+    /**
+     * @param millis epoch millis, or -1.
+     * @return the date, or {@code null} for -1.
+     */
+    private static Date toDate(long millis) {
+        return millis < 0 ? null : new Date(millis);
+    }
+
+    /**
+     * What a snapshot holds besides the users.
+     */
+    public static final class Contents {
+
+        /**
+         * Number of users read.
+         */
+        private final int userCount;
+
+        /**
+         * Start of the sweep that had not finished when the snapshot was written, {@code null} if none.
+         */
+        private final Date sweepStartedAt;
+
+        /**
+         * @param userCount      number of users read.
+         * @param sweepStartedAt start of the unfinished sweep, may be {@code null}.
+         */
+        Contents(int userCount, Date sweepStartedAt) {
+            this.userCount = userCount;
+            this.sweepStartedAt = sweepStartedAt;
+        }
+
+        /**
+         * @return {@code userCount}.
+         * @see #userCount
+         */
+        public int getUserCount() {
+            return userCount;
+        }
+
+        /**
+         * @return {@code sweepStartedAt}.
+         * @see #sweepStartedAt
+         */
+        public Date getSweepStartedAt() {
+            return sweepStartedAt;
+        }
+    }
+
+    /**
+     * Buffered output to the snapshot channel, keeping the checksum of everything written.
+     */
+    private static final class Output {
+
+        /**
+         * The channel.
+         */
+        private final FileChannel channel;
+
+        /**
+         * Write buffer.
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /**
+         * Checksum of the payload.
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * @param channel the channel.
+         */
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @param value a long.
+         * @throws IOException if writing fails.
+         */
+        private void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        /**
+         * @param value an int.
+         * @throws IOException if writing fails.
+         */
+        private void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        /**
+         * @param value a string of at most 65535 UTF-8 bytes.
+         * @throws IOException if writing fails.
+         */
+        private void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            checkLength(bytes.length);
+            ensure(2 + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        /**
+         * @param length length of a string about to be written in 2 bytes.
+         * @throws IOException if the 2 bytes cannot hold it.
+         */
+        private void checkLength(int length) throws IOException {
+            if (length > MAX_LENGTH) {
+                throw new IOException("Length " + length + " does not fit a user snapshot, at most " + MAX_LENGTH);
+            }
+        }
+
+        /**
+         * Flush the buffer if it has less than the given space left.
+         *
+         * @param size bytes about to be written.
+         * @throws IOException if writing fails.
+         */
+        private void ensure(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+        }
+
+        /**
+         * Write the buffer to the channel, updating the checksum, and clear it.
+         *
+         * @throws IOException if writing fails.
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
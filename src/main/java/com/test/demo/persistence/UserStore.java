@@ -0,0 +1,387 @@
+package com.test.demo.persistence;
+
+import com.test.demo.dto.UserDTO;
+import com.test.demo.service.UserRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Persists the {@link UserRegistry}: a snapshot file plus a journal of every change made since the snapshot.
+ * On startup the snapshot is loaded and the journal replayed on top of it. The journal is compacted into a new
+ * snapshot once it grows past a threshold and on shutdown, so replay time stays bounded.
+ * <p>
+ * Besides the users, the store keeps the sweep checkpoint: the start of a sweep that has not finished,
+ * so a sweep interrupted by a restart can be resumed.
+ */
+@Component
+public class UserStore {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(UserStore.class);
+
+    /**
+     * The registry being persisted.
+     */
+    private final UserRegistry users;
+
+    /**
+     * Path of the snapshot file.
+     */
+    private final Path snapshotPath;
+
+    /**
+     * Path of the Java serialized snapshot of earlier versions, migrated on first load.
+     */
+    private final Path legacyPath;
+
+    /**
+     * Path of the journal file.
+     */
+    private final Path journalPath;
+
+    /**
+     * When to force journal records to disk.
+     */
+    private final FsyncPolicy fsyncPolicy;
+
+    /**
+     * Interval of the periodic fsync, in milliseconds.
+     */
+    private final long fsyncIntervalMillis;
+
+    /**
+     * Number of journal records that triggers a compaction.
+     */
+    private final long compactAfterRecords;
+
+    /**
+     * Separates username, gist id and url in the key of gist records.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /**
+     * The journal, open after {@link #load()}.
+     */
+    private UserJournal journal;
+
+    /**
+     * Start of the sweep that has not finished yet, {@code null} if none.
+     */
+    private volatile Date sweepStartedAt;
+
+    /**
+     * Constructor.
+     *
+     * @param users               the registry being persisted.
+     * @param directory           directory of the snapshot and journal files.
+     * @param fsyncPolicy         when to force journal records to disk: always, interval or never.
+     * @param fsyncIntervalMillis interval of the periodic fsync, in milliseconds.
+     * @param compactAfterRecords number of journal records that triggers a compaction.
+     */
+    @Autowired
+    public UserStore(UserRegistry users,
+                     @Value("${storage.dir:.}") String directory,
+                     @Value("${storage.fsync:interval}") String fsyncPolicy,
+                     @Value("${storage.fsync-interval-millis:1000}") long fsyncIntervalMillis,
+                     @Value("${storage.compact-after-records:100000}") long compactAfterRecords) {
+        this.users = users;
+        this.snapshotPath = Paths.get(directory, "users.snapshot");
+        this.legacyPath = Paths.get(directory, "users.data");
+        this.journalPath = Paths.get(directory, "users.journal");
+        this.fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicy.toUpperCase(Locale.ROOT));
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.compactAfterRecords = compactAfterRecords;
+    }
+
+    /**
+     * Load the snapshot, then replay the journal on top of it. A snapshot that cannot be decoded is moved aside
+     * to {@code users.snapshot.corrupt}, so the next compaction does not overwrite it, and the journal is
+     * replayed on an empty registry.
+     *
+     * @throws IOException if the journal cannot be opened.
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        try {
+            loadSnapshot();
+            logger.info("Loaded user data from file.");
+        } catch (NoSuchFileException e) {
+            logger.info("No user data file found. (Is this first run?)");
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            logger.error("Error loading users from file.", e);
+            // the users read before the error are not a consistent state
+            users.clear();
+            sweepStartedAt = null;
+            moveAsideCorrupt();
+        }
+        Files.createDirectories(journalPath.toAbsolutePath().getParent());
+        journal = new UserJournal(journalPath, fsyncPolicy, fsyncIntervalMillis);
+        long replayed = journal.replay(this::apply);
+        logger.info("Replayed {} user journal records, {} users screened.", replayed, users.size());
+    }
+
+    /**
+     * Compact the journal and close it.
+     */
+    @PreDestroy
+    public void close() {
+        try {
+            compact();
+            logger.info("Saved user data to file.");
+        } catch (IOException e) {
+            logger.error("Error saving users to file. Changes are kept in the journal.", e);
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("Error closing user journal.", e);
+        }
+    }
+
+    /**
+     * Compact the journal if it has grown past the threshold.
+     */
+    @Scheduled(fixedDelayString = "${storage.compact-check-millis:60000}")
+    public void compactIfNeeded() {
+        if (journal.getRecordCount() < compactAfterRecords) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            logger.error("Error compacting user journal.", e);
+        }
+    }
+
+    /**
+     * Write a new snapshot and empty the journal.
+     *
+     * @throws IOException if writing fails.
+     */
+    public void compact() throws IOException {
+        journal.compact(this::saveSnapshot);
+    }
+
+    /**
+     * Record that a user was added.
+     *
+     * @param userDTO the user.
+     */
+    public void added(UserDTO userDTO) {
+        journal.append(UserJournal.RecordType.ADD, userDTO.getUsername(), null);
+    }
+
+    /**
+     * Record that a user was removed.
+     *
+     * @param username username of the user.
+     */
+    public void removed(String username) {
+        journal.append(UserJournal.RecordType.REMOVE, username, null);
+    }
+
+    /**
+     * Record a new {@link UserDTO#getLastVisit()}.
+     *
+     * @param userDTO the user.
+     */
+    public void visited(UserDTO userDTO) {
+        journal.append(UserJournal.RecordType.LAST_VISIT, userDTO.getUsername(), userDTO.getLastVisit());
+    }
+
+    /**
+     * Record a new {@link UserDTO#getLastAdded()}.
+     *
+     * @param userDTO the user.
+     */
+    public void swept(UserDTO userDTO) {
+        journal.append(UserJournal.RecordType.LAST_ADDED, userDTO.getUsername(), userDTO.getLastAdded());
+    }
+
+    /**
+     * Record a new {@link UserDTO#getCursor()}.
+     *
+     * @param userDTO the user.
+     */
+    public void cursorMoved(UserDTO userDTO) {
+        journal.append(UserJournal.RecordType.CURSOR, userDTO.getUsername(), userDTO.getCursor());
+    }
+
+    /**
+     * Record a gist added to {@link UserDTO#getPendingGists()}.
+     *
+     * @param userDTO the user.
+     * @param gistId  id of the gist.
+     * @param gistUrl url of the gist.
+     */
+    public void gistPending(UserDTO userDTO, String gistId, String gistUrl) {
+        journal.append(UserJournal.RecordType.GIST_PENDING,
+                userDTO.getUsername() + KEY_SEPARATOR + gistId + KEY_SEPARATOR + gistUrl, null);
+    }
+
+    /**
+     * Record a gist removed from {@link UserDTO#getPendingGists()}.
+     *
+     * @param userDTO the user.
+     * @param gistId  id of the gist.
+     */
+    public void gistDelivered(UserDTO userDTO, String gistId) {
+        journal.append(UserJournal.RecordType.GIST_DELIVERED, userDTO.getUsername() + KEY_SEPARATOR + gistId, null);
+    }
+
+    /**
+     * Record the start of a sweep, the checkpoint until {@link #sweepFinished()}.
+     *
+     * @param startedAt start of the sweep.
+     */
+    public void sweepStarted(Date startedAt) {
+        sweepStartedAt = startedAt;
+        journal.append(UserJournal.RecordType.SWEEP_STARTED, "", startedAt);
+    }
+
+    /**
+     * Record that the sweep processed every user.
+     */
+    public void sweepFinished() {
+        sweepStartedAt = null;
+        journal.append(UserJournal.RecordType.SWEEP_FINISHED, "", null);
+    }
+
+    /**
+     * @return start of the sweep that has not finished (e.g. interrupted by a restart), {@code null} if none.
+     */
+    public Date getUnfinishedSweep() {
+        return sweepStartedAt;
+    }
+
+    /**
+     * Apply a replayed journal record to the registry. Records are idempotent.
+     *
+     * @param type     type of the change.
+     * @param key      username of the user, see {@link UserJournal.RecordType}.
+     * @param value    timestamp of the change.
+     */
+    private void apply(UserJournal.RecordType type, String key, Date value) {
+        String[] parts = key.split(String.valueOf(KEY_SEPARATOR), 3);
+        String username = parts[0];
+        switch (type) {
+            case ADD:
+                UserDTO userDTO = new UserDTO();
+                userDTO.setUsername(username);
+                users.add(userDTO);
+                break;
+            case REMOVE:
+                users.remove(username);
+                break;
+            case LAST_VISIT:
+                users.find(username).ifPresent(user -> user.setLastVisit(value));
+                break;
+            case LAST_ADDED:
+                users.find(username).ifPresent(user -> user.setLastAdded(value));
+                break;
+            case CURSOR:
+                users.find(username).ifPresent(user -> user.setCursor(value));
+                break;
+            case GIST_PENDING:
+                users.find(username).ifPresent(user -> user.getPendingGists().put(parts[1], parts[2]));
+                break;
+            case GIST_DELIVERED:
+                users.find(username).ifPresent(user -> user.getPendingGists().remove(parts[1]));
+                break;
+            case SWEEP_STARTED:
+                sweepStartedAt = value;
+                break;
+            case SWEEP_FINISHED:
+                sweepStartedAt = null;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Write the snapshot to a temporary file, then move it over the previous one.
+     *
+     * @throws IOException if writing fails.
+     */
+    private void saveSnapshot() throws IOException {
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        UserSnapshotCodec.write(tmp, users.snapshot(), sweepStartedAt);
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load users data from the snapshot. If there is none yet but a Java serialized {@code users.data}
+     * exists, it is loaded and converted to the binary snapshot once.
+     *
+     * @throws IOException            if file is not found or corrupt.
+     * @throws ClassNotFoundException if {@link UserDTO} is not found/loaded.
+     */
+    private void loadSnapshot() throws IOException, ClassNotFoundException {
+        if (Files.exists(snapshotPath) || !Files.exists(legacyPath)) {
+            sweepStartedAt = UserSnapshotCodec.read(snapshotPath, users::add).getSweepStartedAt();
+            return;
+        }
+        loadLegacySnapshot();
+        saveSnapshot();
+        Files.move(legacyPath, legacyPath.resolveSibling(legacyPath.getFileName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Migrated {} users from {} to {}.", users.size(), legacyPath, snapshotPath);
+    }
+
+    /**
+     * Move an unreadable snapshot out of the way of the next compaction, keeping it for inspection.
+     */
+    private void moveAsideCorrupt() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        Path corrupt = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".corrupt");
+        try {
+            Files.move(snapshotPath, corrupt, StandardCopyOption.REPLACE_EXISTING);
+            logger.warn("Moved the unreadable user snapshot to {}.", corrupt);
+        } catch (IOException e) {
+            logger.error("Error moving the unreadable user snapshot aside.", e);
+        }
+    }
+
+    /**
+     * Load users data from a Java serialized {@code users.data} file.
+     * Users are copied, as deserialization leaves fields unknown to the file uninitialized.
+     *
+     * @throws IOException            if file is not found or corrupt.
+     * @throws ClassNotFoundException if {@link UserDTO} is not found/loaded.
+     */
+    @SuppressWarnings("unchecked")
+    private void loadLegacySnapshot() throws IOException, ClassNotFoundException {
+        try (InputStream fis = Files.newInputStream(legacyPath); ObjectInputStream ois = new ObjectInputStream(fis)) {
+            for (UserDTO legacy : (Set<UserDTO>) ois.readObject()) {
+                UserDTO userDTO = new UserDTO();
+                userDTO.setUsername(legacy.getUsername());
+                userDTO.setLastVisit(legacy.getLastVisit());
+                userDTO.setLastAdded(legacy.getLastAdded());
+                users.add(userDTO);
+            }
+        }
+    }
+}
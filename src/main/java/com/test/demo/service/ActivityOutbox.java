@@ -0,0 +1,288 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.OutboxEntry;
+import com.test.demo.http.CircuitBreaker;
+import com.test.demo.http.CircuitBreakers;
+import com.test.demo.persistence.DeliveredGistIndex;
+import com.test.demo.persistence.OutboxStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Outbox of the Pipe Drive activities: every activity is written to {@link OutboxStore} before it is sent, and
+ * stays there until it is delivered. The first attempt is made right away; a failed one is retried by a worker
+ * with exponential backoff and jitter, and dead-lettered after {@code pipedrive.outbox.max-attempts}.
+ * Activities still in the outbox at a restart are retried after it, so a Pipe Drive outage delays activities
+ * instead of losing them.
+ * <p>
+ * Activities are sent through {@link AsyncPipeDriveActivityClient} if enabled, {@link PipeDriveActivityPipeline}
+ * otherwise. While the Pipe Drive {@link CircuitBreaker} refuses calls, activities wait in the outbox without
+ * using up their attempts.
+ */
+@Component
+public class ActivityOutbox {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(ActivityOutbox.class);
+
+    /**
+     * Injected {@link OutboxStore}.
+     */
+    private final OutboxStore store;
+
+    /**
+     * Injected {@link PipeDriveActivityPipeline}.
+     */
+    private final PipeDriveActivityPipeline activityPipeline;
+
+    /**
+     * Non-blocking Pipe Drive activity client, present when {@code sweep.client=non-blocking}.
+     */
+    private final AsyncPipeDriveActivityClient asyncActivityClient;
+
+    /**
+     * Injected {@link DeliveredGistIndex}.
+     */
+    private final DeliveredGistIndex deliveredGists;
+
+    /**
+     * Injected {@link SweepMetrics}.
+     */
+    private final SweepMetrics sweepMetrics;
+
+    /**
+     * Circuit breaker of the Pipe Drive api.
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Number of attempts before an activity is dead-lettered.
+     */
+    private final int maxAttempts;
+
+    /**
+     * Delay after the first failed attempt, in milliseconds; doubled after every further one.
+     */
+    private final long baseDelayMillis;
+
+    /**
+     * Longest delay between attempts, in milliseconds.
+     */
+    private final long maxDelayMillis;
+
+    /**
+     * Ids of the gists being sent, so the worker does not send them twice at once.
+     */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Retries the activities that are due, and records the outcomes of the non-blocking client.
+     */
+    private final ScheduledExecutorService worker;
+
+    /**
+     * Constructor.
+     *
+     * @param store               Outbox Store.
+     * @param activityPipeline    Pipe Drive Activity Pipeline.
+     * @param asyncActivityClient non-blocking Pipe Drive Activity Client, if enabled.
+     * @param deliveredGists      Delivered Gist Index.
+     * @param sweepMetrics        Sweep Metrics.
+     * @param circuitBreakers     Circuit Breakers.
+     * @param maxAttempts         number of attempts before an activity is dead-lettered.
+     * @param baseDelayMillis     delay after the first failed attempt, in milliseconds.
+     * @param maxDelayMillis      longest delay between attempts, in milliseconds.
+     * @param pollMillis          time between looking for activities due, in milliseconds.
+     */
+    @Autowired
+    public ActivityOutbox(OutboxStore store, PipeDriveActivityPipeline activityPipeline,
+                          Optional<AsyncPipeDriveActivityClient> asyncActivityClient,
+                          DeliveredGistIndex deliveredGists, SweepMetrics sweepMetrics,
+                          CircuitBreakers circuitBreakers,
+                          @Value("${pipedrive.outbox.max-attempts:10}") int maxAttempts,
+                          @Value("${pipedrive.outbox.base-delay-millis:1000}") long baseDelayMillis,
+                          @Value("${pipedrive.outbox.max-delay-millis:600000}") long maxDelayMillis,
+                          @Value("${pipedrive.outbox.poll-millis:1000}") long pollMillis) {
+        this.store = store;
+        this.activityPipeline = activityPipeline;
+        this.asyncActivityClient = asyncActivityClient.orElse(null);
+        this.deliveredGists = deliveredGists;
+        this.sweepMetrics = sweepMetrics;
+        this.circuitBreaker = circuitBreakers.getPipeDrive();
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipedrive-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(this::retryDue, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write an activity for a gist to the outbox and make the first attempt, unless Pipe Drive is refused by its
+     * circuit breaker; the worker makes it then. An activity dead-lettered earlier is queued again, rather than
+     * reported as written while it is never sent.
+     *
+     * @param gistId  id of the gist.
+     * @param gistUrl url of the gist.
+     * @return completes with true once the activity is delivered, or failed and queued for a retry; with false
+     * if it could not be written to the outbox, so the caller keeps it. Never completes exceptionally.
+     */
+    public CompletableFuture<Boolean> submit(String gistId, String gistUrl) {
+        if (!inFlight.add(gistId)) {
+            // being sent by the worker
+            return CompletableFuture.completedFuture(true);
+        }
+        // claimed before it is written, so the worker cannot take the first attempt from the caller
+        try {
+            if (!store.queued(gistId, gistUrl, System.currentTimeMillis())) {
+                // already in the outbox, the worker retries it
+                inFlight.remove(gistId);
+                return CompletableFuture.completedFuture(true);
+            }
+        } catch (RuntimeException e) {
+            inFlight.remove(gistId);
+            logger.error(String.format("Error writing the activity of gist id:%s to the outbox", gistId), e);
+            return CompletableFuture.completedFuture(false);
+        }
+        if (!circuitBreaker.isCallPermitted()) {
+            inFlight.remove(gistId);
+            return CompletableFuture.completedFuture(true);
+        }
+        return send(gistId, gistUrl, 0).thenApply(delivered -> true);
+    }
+
+    /**
+     * Attempt the activities that are due, as long as the circuit breaker permits calls. Runs on the worker.
+     */
+    public void retryDue() {
+        try {
+            for (OutboxEntry entry : store.due(System.currentTimeMillis())) {
+                if (!circuitBreaker.isCallPermitted()) {
+                    // left due, so they are attempted as soon as the breaker lets calls through
+                    break;
+                }
+                attempt(entry.getGistId(), entry.getGistUrl(), entry.getAttempts());
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error retrying the outbox", e);
+        }
+    }
+
+    /**
+     * Stop retrying; activities left are retried after the restart.
+     */
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Send an activity, unless it is being sent already, and record the outcome.
+     *
+     * @param gistId   id of the gist.
+     * @param gistUrl  url of the gist.
+     * @param attempts number of failed attempts so far.
+     * @return completes with whether the activity was delivered.
+     */
+    private CompletableFuture<Boolean> attempt(String gistId, String gistUrl, int attempts) {
+        if (!inFlight.add(gistId)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return send(gistId, gistUrl, attempts);
+    }
+
+    /**
+     * Send an activity claimed in {@link #inFlight}, and record the outcome.
+     *
+     * @param gistId   id of the gist.
+     * @param gistUrl  url of the gist.
+     * @param attempts number of failed attempts so far.
+     * @return completes with whether the activity was delivered.
+     */
+    private CompletableFuture<Boolean> send(String gistId, String gistUrl, int attempts) {
+        if (deliveredGists.contains(gistId)) {
+            settle(gistId, attempts, true);
+            return CompletableFuture.completedFuture(true);
+        }
+        CompletableFuture<Boolean> sent;
+        try {
+            sent = asyncActivityClient != null
+                    ? asyncActivityClient.submit(gistId, gistUrl)
+                    : activityPipeline.submit(gistId, gistUrl);
+        } catch (RuntimeException e) {
+            logger.error(String.format("Error sending the activity of gist id:%s", gistId), e);
+            sent = CompletableFuture.completedFuture(false);
+        }
+        Function<Boolean, Boolean> record = delivered -> {
+            sweepMetrics.activitySent(delivered);
+            if (delivered) {
+                deliveredGists.add(gistId);
+            }
+            settle(gistId, attempts, delivered);
+            return delivered;
+        };
+        // the non-blocking client completes on an I/O reactor thread, which must not wait on the disk
+        return asyncActivityClient != null ? sent.thenApplyAsync(record, worker) : sent.thenApply(record);
+    }
+
+    /**
+     * Record the outcome of an attempt: remove a delivered activity, schedule the next attempt of a failed one,
+     * or dead-letter it.
+     *
+     * @param gistId    id of the gist.
+     * @param attempts  number of failed attempts before this one.
+     * @param delivered whether the activity was delivered.
+     */
+    private void settle(String gistId, int attempts, boolean delivered) {
+        try {
+            if (delivered) {
+                store.delivered(gistId);
+            } else if (attempts + 1 >= maxAttempts) {
+                store.dead(gistId);
+                sweepMetrics.activityDeadLettered();
+                logger.error("Activity of gist id:{} failed {} times, dead-lettered.", gistId, attempts + 1);
+            } else {
+                long delay = backoff(attempts + 1);
+                store.failed(gistId, System.currentTimeMillis() + delay);
+                logger.warn("Activity of gist id:{} failed, attempt {} in {} ms.", gistId, attempts + 2, delay);
+            }
+        } catch (RuntimeException e) {
+            // the record of the last attempt stays, the activity is attempted again
+            logger.error(String.format("Error recording the outcome of gist id:%s in the outbox", gistId), e);
+        } finally {
+            inFlight.remove(gistId);
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay between half and all of
+     * {@code baseDelay * 2^(failures - 1)}, at most {@link #maxDelayMillis}, so retries of activities that
+     * failed together do not all hit Pipe Drive at the same time.
+     *
+     * @param failures number of failed attempts.
+     * @return delay before the next attempt, in milliseconds.
+     */
+    private long backoff(int failures) {
+        long delay = Math.min(maxDelayMillis, baseDelayMillis << Math.min(failures - 1, 30));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
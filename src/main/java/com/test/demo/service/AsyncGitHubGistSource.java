@@ -0,0 +1,319 @@
+package com.test.demo.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.GistDto;
+import com.test.demo.http.CircuitBreakers;
+import com.test.demo.http.CompletableFutureCallback;
+import com.test.demo.http.HttpResponseCache;
+import com.test.demo.http.OutboundMetrics;
+import com.test.demo.http.RateLimitGovernor;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Non-blocking counterpart of {@link GitHubGistSource}, used when {@code sweep.client=non-blocking}.
+ * Pages are fetched with the non-blocking HTTP client and handed to a page handler; the next page is only
+ * requested once the future returned by the handler completes, which gives backpressure between fetching
+ * gists and creating activities. Requests are paced by the {@link RateLimitGovernor} with timers instead
+ * of sleeping threads, and pass through the Github {@link com.test.demo.http.CircuitBreaker}.
+ * Like the blocking source through {@link com.test.demo.http.ConditionalRequestInterceptor}, pages are requested
+ * conditionally with the validators of {@link HttpResponseCache}, and a 304 (Not Modified) is answered from it.
+ */
+@Component
+@ConditionalOnProperty(name = "sweep.client", havingValue = "non-blocking")
+public class AsyncGitHubGistSource {
+
+    /**
+     * Type of a page of gists.
+     */
+    private static final TypeReference<List<JsonNode>> GIST_PAGE = new TypeReference<List<JsonNode>>() {
+    };
+
+    /**
+     * The non-blocking HTTP client.
+     */
+    private final CloseableHttpAsyncClient httpClient;
+
+    /**
+     * Builds the page urls, shared with the blocking source.
+     */
+    private final GitHubGistSource gistSource;
+
+    /**
+     * Paces requests to stay within the Github rate limit.
+     */
+    private final RateLimitGovernor governor;
+
+    /**
+     * Times the calls to Github.
+     */
+    private final OutboundMetrics metrics;
+
+    /**
+     * Circuit breakers of the upstream apis.
+     */
+    private final CircuitBreakers circuitBreakers;
+
+    /**
+     * Store of previous responses, shared with the blocking source.
+     */
+    private final HttpResponseCache responseCache;
+
+    /**
+     * Permits for concurrent calls to Github.
+     */
+    private final AsyncPermits gitHubPermits;
+
+    /**
+     * Delays requests held back by the {@link #governor}.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Jackson Object mapper, used to bind the gists of a page.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient        the non-blocking HTTP client.
+     * @param gistSource        Github Gist Source, builds the page urls.
+     * @param governor          Rate Limit Governor.
+     * @param metrics           Outbound Metrics.
+     * @param circuitBreakers   Circuit Breakers.
+     * @param responseCache     Http Response Cache.
+     * @param gitHubConcurrency maximum concurrent calls to Github.
+     */
+    @Autowired
+    public AsyncGitHubGistSource(CloseableHttpAsyncClient httpClient, GitHubGistSource gistSource,
+                                 RateLimitGovernor governor, OutboundMetrics metrics,
+                                 CircuitBreakers circuitBreakers, HttpResponseCache responseCache,
+                                 @Value("${sweep.github-concurrency:4}") int gitHubConcurrency) {
+        this.httpClient = httpClient;
+        this.gistSource = gistSource;
+        this.governor = governor;
+        this.metrics = metrics;
+        this.circuitBreakers = circuitBreakers;
+        this.responseCache = responseCache;
+        this.gitHubPermits = new AsyncPermits(gitHubConcurrency);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "github-pacer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Read all gists of a user, across all pages.
+     *
+     * @param username    Github username.
+     * @param since       only gists updated after this timestamp are read, {@code null} for all gists.
+     * @param pageHandler receives each page; the next page is requested when the returned future completes.
+     * @return completes with the number of gists read, or exceptionally if a page cannot be fetched or parsed.
+     */
+    public CompletableFuture<Integer> forEachPage(String username, Date since,
+                                                  Function<List<GistDto>, CompletableFuture<?>> pageHandler) {
+        return fetchPages(gistSource.firstPageUri(username, since), pageHandler, 0);
+    }
+
+    /**
+     * Stop the timer when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Fetch a page, hand it over, then continue with the next one.
+     *
+     * @param uri         url of the page.
+     * @param pageHandler receives the page.
+     * @param count       number of gists read so far.
+     * @return completes with the number of gists read.
+     */
+    private CompletableFuture<Integer> fetchPages(URI uri, Function<List<GistDto>, CompletableFuture<?>> pageHandler,
+                                                  int count) {
+        HttpResponseCache.Entry cached = responseCache.get(uri.toString());
+        return gitHubPermits.withPermit(() -> get(uri, cached, true)).thenCompose(response -> {
+            Page page = toPage(uri, cached, response);
+            List<GistDto> gists = readPage(uri, page.body);
+            URI next = GitHubGistSource.nextPageUri(page.headers.getFirst("Link"));
+            int total = count + gists.size();
+            return pageHandler.apply(gists).thenCompose(handled -> next == null
+                    ? CompletableFuture.completedFuture(total)
+                    : fetchPages(next, pageHandler, total));
+        });
+    }
+
+    /**
+     * Send a request once the governor allows it, retrying once if it was rejected by the rate limit.
+     *
+     * @param uri    url of the request.
+     * @param cached previous response to the same url, its validators make the request conditional; may be
+     *               {@code null}.
+     * @param retry  whether a rate limited response may be retried.
+     * @return the response.
+     */
+    private CompletableFuture<HttpResponse> get(URI uri, HttpResponseCache.Entry cached, boolean retry) {
+        return delay(governor.reserveDelay()).thenCompose(ready -> circuitBreakers.call(uri, () -> {
+            HttpGet request = new HttpGet(uri);
+            request.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+            if (cached != null && cached.getETag() != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+            }
+            if (cached != null && cached.getLastModified() >= 0) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE,
+                        DateUtils.formatDate(new Date(cached.getLastModified())));
+            }
+            CompletableFutureCallback<HttpResponse> callback = new CompletableFutureCallback<>();
+            long start = System.nanoTime();
+            httpClient.execute(request, callback);
+            return callback.whenComplete((response, e) -> metrics.record(uri, request.getMethod(),
+                    response == null ? OutboundMetrics.IO_ERROR
+                            : String.valueOf(response.getStatusLine().getStatusCode()), start));
+        }, response -> response.getStatusLine().getStatusCode())).thenCompose(response -> {
+            boolean limited = governor.update(response.getStatusLine().getStatusCode(), headersOf(response));
+            return limited && retry ? get(uri, cached, false) : CompletableFuture.completedFuture(response);
+        });
+    }
+
+    /**
+     * @param millis delay in milliseconds.
+     * @return completes after the delay.
+     */
+    private CompletableFuture<Void> delay(long millis) {
+        if (millis <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        timer.schedule(() -> delayed.complete(null), millis, TimeUnit.MILLISECONDS);
+        return delayed;
+    }
+
+    /**
+     * Answer a 304 (Not Modified) from the cached page, and store a 200 (Ok) carrying a validator that fits the
+     * cache.
+     *
+     * @param uri      url of the page.
+     * @param cached   previous response to the same url, may be {@code null}.
+     * @param response response of the page request, fully received.
+     * @return headers and body of the page.
+     */
+    private Page toPage(URI uri, HttpResponseCache.Entry cached, HttpResponse response) {
+        int statusCode = response.getStatusLine().getStatusCode();
+        String url = uri.toString();
+        if (cached != null && statusCode == HttpStatus.NOT_MODIFIED.value()) {
+            responseCache.recordHit();
+            HttpResponseCache.Entry entry = responseCache.touch(url, cached);
+            return new Page(entry.getHeaders(), entry.getBody());
+        }
+        responseCache.recordMiss();
+        if (statusCode < 200 || statusCode >= 300) {
+            throw new CompletionException(new RestClientException(
+                    String.format("Github responded %d for %s", statusCode, uri)));
+        }
+        byte[] body;
+        try {
+            body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+        } catch (IOException e) {
+            throw new CompletionException(new RestClientException("Error reading gists of " + uri, e));
+        }
+        HttpHeaders headers = headersOf(response);
+        String eTag = headers.getETag();
+        long lastModified = headers.getLastModified();
+        if (statusCode == HttpStatus.OK.value() && (eTag != null || lastModified >= 0)
+                && body.length <= responseCache.getMaxEntryBytes()) {
+            responseCache.put(url, eTag, lastModified, headers, body);
+        }
+        return new Page(headers, body);
+    }
+
+    /**
+     * @param uri  url of the page.
+     * @param body body of the page.
+     * @return gists of the page.
+     */
+    private List<GistDto> readPage(URI uri, byte[] body) {
+        if (body.length == 0) {
+            return Collections.emptyList();
+        }
+        try {
+            List<JsonNode> nodes = mapper.readValue(body, GIST_PAGE);
+            List<GistDto> gists = new ArrayList<>(nodes == null ? 0 : nodes.size());
+            if (nodes != null) {
+                for (JsonNode node : nodes) {
+                    gists.add(GitHubGistSource.toGist(mapper, node));
+                }
+            }
+            return gists;
+        } catch (IOException e) {
+            throw new CompletionException(new RestClientException("Error reading gists of " + uri, e));
+        }
+    }
+
+    /**
+     * @param response a response.
+     * @return headers of the response.
+     */
+    private static HttpHeaders headersOf(HttpResponse response) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : response.getAllHeaders()) {
+            headers.add(header.getName(), header.getValue());
+        }
+        return headers;
+    }
+
+    /**
+     * Headers and body of a page, as received or from the cache.
+     */
+    private static class Page {
+        /**
+         * Headers of the page.
+         */
+        private final HttpHeaders headers;
+
+        /**
+         * Body of the page.
+         */
+        private final byte[] body;
+
+        /**
+         * @param headers headers of the page.
+         * @param body    body of the page.
+         */
+        private Page(HttpHeaders headers, byte[] body) {
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
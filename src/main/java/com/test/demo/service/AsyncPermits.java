@@ -0,0 +1,87 @@
+package com.test.demo.service;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Semaphore for non-blocking callers: instead of parking a thread, acquiring returns a future
+ * that completes once a permit is free. Waiters are served in order.
+ */
+class AsyncPermits {
+
+    /**
+     * Waiters for a permit, guarded by {@code this}.
+     */
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    /**
+     * Free permits, guarded by {@code this}.
+     */
+    private int available;
+
+    /**
+     * @param permits number of permits.
+     */
+    AsyncPermits(int permits) {
+        this.available = permits;
+    }
+
+    /**
+     * @return completes once a permit was acquired.
+     */
+    synchronized CompletableFuture<Void> acquire() {
+        if (available > 0) {
+            available--;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Release a permit, handing it to the next waiter if there is one.
+     */
+    void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (next == null) {
+                available++;
+                return;
+            }
+        }
+        // completed outside the lock, the waiter continues on this thread
+        next.complete(null);
+    }
+
+    /**
+     * Start a call once a permit is free and release the permit when the call completes.
+     *
+     * @param call the call.
+     * @param <R>  result type.
+     * @return result of the call.
+     */
+    <R> CompletableFuture<R> withPermit(Supplier<? extends CompletionStage<R>> call) {
+        return acquire().thenCompose(acquired -> {
+            CompletionStage<R> result;
+            try {
+                result = call.get();
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+            return result.whenComplete((value, e) -> release());
+        });
+    }
+
+    /**
+     * @return number of callers waiting for a permit.
+     */
+    synchronized int getWaiting() {
+        return waiters.size();
+    }
+}
@@ -0,0 +1,180 @@
+package com.test.demo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.PipeDriveActivity;
+import com.test.demo.dto.PipeDriveResponse;
+import com.test.demo.http.CircuitBreakers;
+import com.test.demo.http.CompletableFutureCallback;
+import com.test.demo.http.OutboundMetrics;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking counterpart of {@link PipeDriveActivityPipeline}, used when {@code sweep.client=non-blocking}.
+ * Activities are posted with the non-blocking HTTP client; up to {@code pipedrive.non-blocking.max-in-flight}
+ * requests are in flight and the rest wait for a permit without holding a thread. Requests pass through the
+ * Pipe Drive {@link com.test.demo.http.CircuitBreaker}.
+ */
+@Component
+@ConditionalOnProperty(name = "sweep.client", havingValue = "non-blocking")
+public class AsyncPipeDriveActivityClient {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(AsyncPipeDriveActivityClient.class);
+
+    /**
+     * The non-blocking HTTP client.
+     */
+    private final CloseableHttpAsyncClient httpClient;
+
+    /**
+     * Url of the activities endpoint, including the api token. Built once.
+     */
+    private final URI activitiesUri;
+
+    /**
+     * Times the calls to Pipe Drive.
+     */
+    private final OutboundMetrics metrics;
+
+    /**
+     * Circuit breakers of the upstream apis.
+     */
+    private final CircuitBreakers circuitBreakers;
+
+    /**
+     * Permits for requests in flight.
+     */
+    private final AsyncPermits permits;
+
+    /**
+     * Number of requests in flight.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Jackson Object mapper, used for the request and response bodies.
+     */
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Constructor.
+     *
+     * @param httpClient     the non-blocking HTTP client.
+     * @param metrics        Outbound Metrics.
+     * @param circuitBreakers Circuit Breakers.
+     * @param apiUrl         base url of the Pipe Drive api.
+     * @param pipeDriveToken Pipe Drive api token.
+     * @param maxInFlight    maximum number of requests in flight.
+     */
+    @Autowired
+    public AsyncPipeDriveActivityClient(CloseableHttpAsyncClient httpClient, OutboundMetrics metrics,
+                                        CircuitBreakers circuitBreakers,
+                                        @Value("${pipedrive.api-url:https://api.pipedrive.com}") String apiUrl,
+                                        @Value("${PIPEDRIVE_TOKEN}") String pipeDriveToken,
+                                        @Value("${pipedrive.non-blocking.max-in-flight:1000}") int maxInFlight) {
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.circuitBreakers = circuitBreakers;
+        this.activitiesUri = UriComponentsBuilder.fromHttpUrl(apiUrl)
+                .path("/v1/activities")
+                .queryParam("api_token", pipeDriveToken)
+                .encode().build().toUri();
+        this.permits = new AsyncPermits(maxInFlight);
+    }
+
+    /**
+     * Post an activity for a gist once a permit is free. Never blocks.
+     *
+     * @param gistId  Id of the gist.
+     * @param gistUrl Url of the gist.
+     * @return completes with true if the activity was created, false otherwise. Never completes exceptionally.
+     */
+    public CompletableFuture<Boolean> submit(String gistId, String gistUrl) {
+        PipeDriveActivity activity = PipeDriveActivity.forGist(gistId, gistUrl);
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(activity);
+        } catch (JsonProcessingException e) {
+            logger.error(String.format("Error sending %s", activity.getSubject()), e);
+            return CompletableFuture.completedFuture(false);
+        }
+        return permits.withPermit(() -> circuitBreakers.call(activitiesUri, () -> post(body),
+                response -> response.getStatusLine().getStatusCode())).handle((response, e) -> {
+            if (e != null) {
+                logger.error(String.format("Error sending %s", activity.getSubject()), e);
+                return false;
+            }
+            return isSuccess(activity, response);
+        });
+    }
+
+    /**
+     * @return number of activities waiting for a permit or in flight.
+     */
+    public int getQueueDepth() {
+        return permits.getWaiting() + inFlight.get();
+    }
+
+    /**
+     * @param body json of the activity.
+     * @return the response.
+     */
+    private CompletableFuture<HttpResponse> post(byte[] body) {
+        HttpPost request = new HttpPost(activitiesUri);
+        request.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        CompletableFutureCallback<HttpResponse> callback = new CompletableFutureCallback<>();
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        httpClient.execute(request, callback);
+        return callback.whenComplete((response, e) -> {
+            inFlight.decrementAndGet();
+            metrics.record(activitiesUri, request.getMethod(), response == null ? OutboundMetrics.IO_ERROR
+                    : String.valueOf(response.getStatusLine().getStatusCode()), start);
+        });
+    }
+
+    /**
+     * @param activity the activity.
+     * @param response response of the post.
+     * @return true if the activity is added successfully.
+     */
+    private boolean isSuccess(PipeDriveActivity activity, HttpResponse response) {
+        PipeDriveResponse pipeDriveResponse = null;
+        if (response.getEntity() != null) {
+            try (InputStream content = response.getEntity().getContent()) {
+                pipeDriveResponse = mapper.readValue(content, PipeDriveResponse.class);
+            } catch (IOException e) {
+                logger.error(String.format("Error reading response for %s", activity.getSubject()), e);
+                return false;
+            }
+        }
+        if (pipeDriveResponse == null || !Boolean.TRUE.equals(pipeDriveResponse.getSuccess())) {
+            logger.error("Pipe Drive rejected {}: {}", activity.getSubject(),
+                    pipeDriveResponse == null ? null : pipeDriveResponse.getError());
+            return false;
+        }
+        return true;
+    }
+}
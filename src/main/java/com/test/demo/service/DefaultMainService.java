@@ -1,28 +1,34 @@
 package com.test.demo.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.test.demo.UserAlreadyExistsException;
+import com.test.demo.cluster.LeaderElection;
+import com.test.demo.cluster.ShardCoordinator;
 import com.test.demo.dto.GistDto;
-import com.test.demo.dto.PipeDriveResponse;
+import com.test.demo.dto.SweepProgress;
 import com.test.demo.dto.UserDTO;
+import com.test.demo.dto.UserGists;
+import com.test.demo.http.Bulkheads;
+import com.test.demo.persistence.DeliveredGistIndex;
+import com.test.demo.persistence.UserStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.io.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Primary implementation of the required methods.
@@ -36,81 +42,185 @@ public class DefaultMainService implements MainService {
     private Logger logger = LoggerFactory.getLogger(DefaultMainService.class);
 
     /**
-     * PipeDrive Token is held in this field.
-     * There will be an exception on the startup if required environment variable is not found.
+     * Injected {@link SweepEngine}, runs the scheduled sweep in parallel.
      */
-    @Value("${PIPEDRIVE_TOKEN}")
-    private String pipeDriveToken;
+    private final SweepEngine sweepEngine;
 
     /**
-     * Injected {@link RestTemplate}.
+     * Registry containing all user being screened.
      */
-    private final RestTemplate restTemplate;
+    private final UserRegistry users;
 
     /**
-     * Jackson Object mapper, used for date to ISO 8601 conversion.
+     * Injected {@link GitHubGistSource}, reads all pages of a user's gists.
      */
-    private ObjectMapper mapper = new ObjectMapper()
-            .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+    private final GitHubGistSource gistSource;
 
     /**
-     * A Set containing all user being screened.
+     * Injected {@link GraphQlGistSource}, reads the recent gists of many users at once when enabled.
      */
-    private Set<UserDTO> users = new HashSet<>();
+    private final GraphQlGistSource graphQlGistSource;
 
     /**
-     * Constructor.
-     *
-     * @param restTemplate Rest Template.
+     * Injected {@link ActivityOutbox}, delivers activities with retries.
+     * There will be an exception on the startup if the PipeDrive Token environment variable is not found.
      */
-    @Autowired
-    public DefaultMainService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
+    private final ActivityOutbox activityOutbox;
 
     /**
-     * Handler to run right after construction of this class.
-     * Used to load users data.
+     * Injected {@link UserStore}, journals every change of {@link #users}.
      */
-    @PostConstruct
-    private void postConstruct() {
-        try {
-            loadUsersFromFile();
-            logger.info("Loaded user data from file.");
-        } catch (IOException | ClassNotFoundException e) {
-            logger.error("Error loading users from file. (Is this first run?) ");
-        }
+    private final UserStore userStore;
+
+    /**
+     * Injected {@link DeliveredGistIndex}, keeps a gist from being posted twice.
+     */
+    private final DeliveredGistIndex deliveredGists;
+
+    /**
+     * Injected {@link GistCache}, serves user gists without a Github call per request.
+     */
+    private final GistCache gistCache;
+
+    /**
+     * Injected {@link SweepMetrics}, meters of the sweep.
+     */
+    private final SweepMetrics sweepMetrics;
+
+    /**
+     * Injected {@link ShardCoordinator}, picks the users this replica sweeps.
+     */
+    private final ShardCoordinator shardCoordinator;
+
+    /**
+     * Injected {@link LeaderElection}.
+     */
+    private final LeaderElection leaderElection;
+
+    /**
+     * Injected {@link PollScheduler}, decides when each user is polled.
+     */
+    private final PollScheduler pollScheduler;
+
+    /**
+     * Whether users are polled by {@link #pollScheduler} ({@code sweep.schedule=adaptive}) rather than all of
+     * them every 3 hours.
+     */
+    private final boolean adaptive;
+
+    /**
+     * Non-blocking Github gist source, present when {@code sweep.client=non-blocking}.
+     */
+    private final AsyncGitHubGistSource asyncGistSource;
+
+    /**
+     * Non-blocking Pipe Drive activity client, present when {@code sweep.client=non-blocking}.
+     */
+    private final AsyncPipeDriveActivityClient asyncActivityClient;
+
+    /**
+     * Maximum number of users swept at once by the non-blocking client path.
+     */
+    private final int maxConcurrentUsers;
+
+    /**
+     * Injected {@link Bulkheads}, keeps the calls of interactive requests apart from those of the sweep.
+     */
+    private final Bulkheads bulkheads;
+
+    /**
+     * Writes the outbox and the user store for the non-blocking client path; both force records to disk, which
+     * must not hold up the I/O reactor threads completing the Github calls.
+     */
+    private final ExecutorService storeExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param sweepEngine  Sweep Engine.
+     * @param users        User Registry.
+     * @param gistSource       Github Gist Source.
+     * @param graphQlGistSource Github GraphQL Gist Source.
+     * @param activityOutbox   Activity Outbox.
+     * @param userStore        User Store.
+     * @param deliveredGists   Delivered Gist Index.
+     * @param gistCache        Gist Cache.
+     * @param sweepMetrics     Sweep Metrics.
+     * @param shardCoordinator Shard Coordinator.
+     * @param leaderElection   Leader Election.
+     * @param pollScheduler    Poll Scheduler.
+     * @param bulkheads        Bulkheads.
+     * @param asyncGistSource     non-blocking Github Gist Source, if enabled.
+     * @param asyncActivityClient non-blocking Pipe Drive Activity Client, if enabled.
+     * @param maxConcurrentUsers  maximum number of users swept at once by the non-blocking client path.
+     * @param storeThreads        number of threads writing the outbox and the user store for the non-blocking
+     *                            client path.
+     * @param schedule            adaptive (users polled by {@link PollScheduler}) or fixed (every 3 hours).
+     */
+    @Autowired
+    public DefaultMainService(SweepEngine sweepEngine, UserRegistry users,
+                              GitHubGistSource gistSource, GraphQlGistSource graphQlGistSource,
+                              ActivityOutbox activityOutbox,
+                              UserStore userStore, DeliveredGistIndex deliveredGists, GistCache gistCache,
+                              SweepMetrics sweepMetrics, ShardCoordinator shardCoordinator,
+                              LeaderElection leaderElection, PollScheduler pollScheduler, Bulkheads bulkheads,
+                              Optional<AsyncGitHubGistSource> asyncGistSource,
+                              Optional<AsyncPipeDriveActivityClient> asyncActivityClient,
+                              @Value("${sweep.non-blocking.max-users:1000}") int maxConcurrentUsers,
+                              @Value("${sweep.non-blocking.store-threads:4}") int storeThreads,
+                              @Value("${sweep.schedule:adaptive}") String schedule) {
+        this.sweepEngine = sweepEngine;
+        this.users = users;
+        this.gistSource = gistSource;
+        this.graphQlGistSource = graphQlGistSource;
+        this.activityOutbox = activityOutbox;
+        this.userStore = userStore;
+        this.deliveredGists = deliveredGists;
+        this.gistCache = gistCache;
+        this.sweepMetrics = sweepMetrics;
+        this.shardCoordinator = shardCoordinator;
+        this.leaderElection = leaderElection;
+        this.pollScheduler = pollScheduler;
+        this.bulkheads = bulkheads;
+        this.adaptive = "adaptive".equals(schedule);
+        this.asyncGistSource = asyncGistSource.orElse(null);
+        this.asyncActivityClient = asyncActivityClient.orElse(null);
+        this.maxConcurrentUsers = maxConcurrentUsers;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.storeExecutor = Executors.newFixedThreadPool(storeThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sweep-store-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
-     * Handler to run just before destruction of this class.
-     * Used to save users data.
+     * Stop the threads writing for the non-blocking client path.
      */
     @PreDestroy
-    private void preDestroy() {
-        try {
-            saveUsersAsFile();
-            logger.info("Saved user data to file.");
-        } catch (IOException e) {
-            logger.error("Error saving users to file. Changes are lost.");
-        }
+    public void shutdown() {
+        storeExecutor.shutdown();
     }
 
     /**
-     * Add user to {@link #users} if it does not exist.
+     * Add user to {@link #users} if it does not exist (ignoring case).
      *
      * @param username name of the new user.
      * @throws UserAlreadyExistsException when username is already added.
+     * @throws IllegalArgumentException   when username is not a Github username.
      */
     @Override
     public void addUser(String username) throws UserAlreadyExistsException {
-        if (users.stream().noneMatch(userDTO -> userDTO.getUsername().equalsIgnoreCase(username))) {
-            UserDTO userDTO = new UserDTO();
-            userDTO.setUsername(username);
-            users.add(userDTO);
-        }else {
+        if (username == null || !UserBulkTransfer.GITHUB_USERNAME.matcher(username).matches()) {
+            throw new IllegalArgumentException("Not a Github username");
+        }
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        if (!users.add(userDTO)) {
             throw new UserAlreadyExistsException("Username already exists");
         }
+        userStore.added(userDTO);
+        shardCoordinator.userAdded(userDTO);
     }
 
     /**
@@ -120,7 +230,11 @@ public class DefaultMainService implements MainService {
      */
     @Override
     public void removeUser(String username) {
-        users.removeIf(userDTO -> userDTO.getUsername().equalsIgnoreCase(username));
+        users.remove(username).ifPresent(removed -> {
+            userStore.removed(removed.getUsername());
+            gistCache.invalidate(removed.getUsername());
+            shardCoordinator.userRemoved(removed.getUsername());
+        });
     }
 
     /**
@@ -131,138 +245,559 @@ public class DefaultMainService implements MainService {
      */
     @Override
     public Set<UserDTO> getUsers() {
-        return new HashSet<>(users);
+        return new HashSet<>(users.snapshot());
+    }
+
+    /**
+     * Return a page of users from {@link #users}, in username order (ignoring case).
+     *
+     * @param after username of the last user of the previous page, {@code null} for the first page.
+     * @param limit maximum number of users.
+     * @return users after {@code after}, at most {@code limit}.
+     */
+    @Override
+    public List<UserDTO> getUsers(String after, int limit) {
+        return users.page(after, limit);
     }
 
     /**
-     * Get gists of the user since last visit from github and return raw response.
+     * Pass every user of {@link #users} to the given action. Users added or removed meanwhile may or may not
+     * be seen.
+     *
+     * @param action receives each user.
+     */
+    @Override
+    public void forEachUser(Consumer<UserDTO> action) {
+        users.snapshot().forEach(action);
+    }
+
+    /**
+     * Get gists of the user since last visit and return them as raw json.
      *
      * @param username Github username.
      * @return raw string containing user gists.
-     * @throws JsonProcessingException if user last visit date is malformed.
      */
     @Override
-    public String getRawUserGists(String username) throws JsonProcessingException {
-        Optional<UserDTO> first = users.stream().filter(userDTO -> userDTO.getUsername().equalsIgnoreCase(username)).findFirst();
-        if (!first.isPresent()) return "";
+    public String getRawUserGists(String username) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            getUserGists(username).getBody().writeTo(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get gists of the user since last visit from {@link GistCache}, which only calls Github when the user's
+     * gists are missing or stale. The body writes the cached json straight to the response.
+     * The last visit moves to the time the served gists were fetched, not to now: a cached entry may be minutes
+     * old, and gists created since must still be served by the next visit. It only moves once the body was
+     * written, so gists of a response that was never delivered (e.g. answered with 504) are served again.
+     *
+     * @param username Github username.
+     * @return user gists and how they were served.
+     */
+    @Override
+    public UserGists getUserGists(String username) {
+        UserGists userGists = new UserGists();
+        Optional<UserDTO> first = users.find(username);
+        if (!first.isPresent()) {
+            userGists.setBody(out -> {
+            });
+            return userGists;
+        }
         UserDTO userDTO = first.get();
-        String since = "";
-        if (userDTO.getLastVisit() != null) {
-            since = mapper.writeValueAsString(first.get().getLastVisit());
+        GistCache.Lookup lookup = gistCache.get(username, () -> fetchAllGists(username));
+        Date since = userDTO.getLastVisit();
+        // Github timestamps have whole seconds, a gist updated in the second of the fetch is served again
+        Date fetchedAt = new Date(lookup.getFetchedAt() / 1000 * 1000);
+        userGists.setBody(out -> {
+            lookup.writeTo(since, out);
+            out.flush();
+            visited(userDTO, fetchedAt);
+        });
+        userGists.setCacheStatus(lookup.getStatus().name());
+        userGists.setAgeSeconds(lookup.getAgeSeconds());
+        return userGists;
+    }
+
+    /**
+     * Move the last visit of a user forward, once gists fetched at {@code fetchedAt} were delivered. A visit
+     * delivered late does not move it back past a newer one.
+     *
+     * @param userDTO   the user.
+     * @param fetchedAt when the delivered gists were fetched.
+     */
+    private void visited(UserDTO userDTO, Date fetchedAt) {
+        Date lastVisit = userDTO.getLastVisit();
+        if (lastVisit == null || fetchedAt.after(lastVisit)) {
+            userDTO.setLastVisit(fetchedAt);
+            userStore.visited(userDTO);
         }
-        String url = getGitHubUrl(username, since);
-        ResponseEntity<String> responseEntity = restTemplate.getForEntity(url, String.class);
-        users.remove(userDTO);
-        userDTO.setLastVisit(new Date());
-        users.add(userDTO);
-        return responseEntity.getBody();
+    }
+
+    /**
+     * Return progress of the current sweep, or of the last one if none is running.
+     *
+     * @return sweep progress.
+     */
+    @Override
+    public SweepProgress getSweepProgress() {
+        return sweepEngine.getProgress();
     }
 
     /**
      * For all users added to {@link #users} list, get their new gists and
      * for each gist create a pipedrive activity.
+     * Users are processed in parallel by {@link SweepEngine}; a sweep is skipped if the previous one is still running.
+     * The start of the sweep is kept by {@link UserStore} until every user was processed, so a sweep interrupted
+     * by a restart resumes with the users it had not reached yet.
+     * With several replicas, each sweeps the users {@link ShardCoordinator} assigns to it, or only the leader
+     * elected by {@link LeaderElection} sweeps.
+     * Only with {@code sweep.schedule=fixed}, see {@link #pollDueUsers()} otherwise.
+     */
+    @Scheduled(fixedRate = 3 * 60 * 60 * 1000) // run every  3 hour, skipped while last run is not finished
+    private void processGists() {
+        if (adaptive) {
+            return;
+        }
+        if (!sweep()) {
+            logger.warn("Previous sweep is still running, skipping this one.");
+        }
+    }
+
+    /**
+     * Poll the users that are due according to {@link PollScheduler}, within its request budget, rather than
+     * every user every 3 hours. Skipped while a sweep is running.
+     */
+    @Scheduled(fixedDelayString = "${sweep.adaptive.tick-millis:60000}")
+    private void pollDueUsers() {
+        if (!adaptive || sweepEngine.isRunning() || !leaderElection.isLeader()) {
+            return;
+        }
+        long start = System.nanoTime();
+        // every tick, so only the users changed since the last one are read
+        shardCoordinator.syncChanges();
+        List<UserDTO> due = pollScheduler.due(System.currentTimeMillis(), shardCoordinator::owns);
+        if (due.isEmpty() || !process(due)) {
+            return;
+        }
+        SweepProgress progress = sweepEngine.getProgress();
+        sweepMetrics.sweepEnded(start, progress.getCompleted() + progress.getFailed() == progress.getTotal());
+        logger.info("Polled due users... {}", progress);
+    }
+
+    /**
+     * Resume the sweep of a previous leader that died or left mid-sweep, soon after this replica took over,
+     * rather than at the next scheduled sweep.
+     */
+    @Scheduled(fixedDelayString = "${cluster.leader.renew-millis:5000}")
+    private void resumeSweep() {
+        if (leaderElection.isEnabled() && leaderElection.getUnfinishedSweep() != null
+                && leaderElection.isLeader() && !sweepEngine.isRunning()) {
+            sweep();
+        }
+    }
+
+    /**
+     * Run a sweep now, see {@link #processGists()}.
+     *
+     * @return false if skipped because another sweep is running.
+     */
+    @Override
+    public boolean sweep() {
+        if (sweepEngine.isRunning()) {
+            return false;
+        }
+        if (!leaderElection.isLeader()) {
+            logger.info("Not the sweep leader, {} sweeps.", leaderElection.getLeader());
+            return true;
+        }
+        // the checkpoint of an elected leader is shared, so a new leader resumes the sweep of the previous one
+        Date startedAt = leaderElection.isEnabled()
+                ? leaderElection.getUnfinishedSweep() : userStore.getUnfinishedSweep();
+        if (startedAt == null) {
+            startedAt = new Date();
+            userStore.sweepStarted(startedAt);
+            leaderElection.sweepStarted(startedAt);
+            logger.info("Started processing users...");
+        } else {
+            logger.info("Resuming sweep started at {}...", startedAt);
+        }
+        long start = System.nanoTime();
+        shardCoordinator.sync();
+        Date since = startedAt;
+        List<UserDTO> pending = users.snapshot().stream()
+                .filter(userDTO -> shardCoordinator.owns(userDTO.getUsername()))
+                .filter(userDTO -> userDTO.getLastAdded() == null || userDTO.getLastAdded().before(since))
+                .collect(Collectors.toList());
+        if (!process(pending)) {
+            return false;
+        }
+        SweepProgress progress = sweepEngine.getProgress();
+        // failed users are retried by the next sweep through their cursor; an interrupted sweep is resumed
+        boolean complete = progress.getCompleted() + progress.getFailed() == progress.getTotal();
+        if (complete) {
+            userStore.sweepFinished();
+            leaderElection.sweepFinished();
+        }
+        sweepMetrics.sweepEnded(start, complete);
+        logger.info("Ended processing users... {}", progress);
+        return true;
+    }
+
+    /**
+     * Process users with {@link SweepEngine}, on the blocking or the non-blocking client path.
+     * With {@link GraphQlGistSource} enabled, the blocking path reads the recent gists of the users in batches.
      *
-     * @throws JsonProcessingException if {@link UserDTO#lastAdded} is malformed.
-     */
-    @Scheduled(fixedRate = 3 * 60 * 60 * 1000) // run every  3 hour, whether last run is finished or not
-    private void processGists() throws JsonProcessingException {
-        logger.info("Started processing users...");
-        for (UserDTO userDTO : users) {
-            logger.info("/**********************************");
-            String since = "";
-            if (userDTO.getLastAdded() != null) {
-                since = mapper.writeValueAsString(userDTO.getLastAdded());
+     * @param pending the users.
+     * @return false if another sweep is running.
+     */
+    private boolean process(List<UserDTO> pending) {
+        if (isNonBlocking()) {
+            return sweepEngine.runAsync(pending, sweepMetrics.timed(this::processUserAsync), maxConcurrentUsers);
+        }
+        GraphQlGistSource.Batches batches = null;
+        if (graphQlGistSource.isEnabled()) {
+            Map<String, Date> sinceByUsername = new LinkedHashMap<>();
+            for (UserDTO userDTO : pending) {
+                sinceByUsername.put(userDTO.getUsername(), sinceOf(cursorOf(userDTO)));
             }
-            List<GistDto> gistDtos = getGitHubGists(userDTO.getUsername(), since);
-            logger.info("User: "+userDTO);
-            logger.info("Gists count since last visit: {}",gistDtos.size());
-            for (GistDto gistDto : gistDtos) {
-                if (!addPipeDriveActivity(gistDto.getId(), gistDto.getUrl())) {
-                    logger.error(String.format("Error adding activity for gist id:%s", gistDto.getId()));
-                }else {
-                    logger.info("Pipe Drive activity added.");
-                }
+            batches = graphQlGistSource.batches(sinceByUsername);
+        }
+        GraphQlGistSource.Batches sweepBatches = batches;
+        SweepEngine.Task<UserDTO> task = userDTO -> processUser(userDTO, sweepBatches);
+        return sweepEngine.run(pending, sweepMetrics.timed(task));
+    }
+
+    /**
+     * Deliver the new gists of a single user as pipedrive activities.
+     * Gists that failed in an earlier sweep are retried first, then gists updated after the user's cursor are
+     * fetched page by page and each page is written to {@link ActivityOutbox} once its response is closed.
+     * Gists that cannot be written to the outbox are kept as pending, so the cursor can move past them without
+     * losing them.
+     *
+     * @param userDTO the user.
+     * @param batches batches of the sweep read through {@link GraphQlGistSource}, {@code null} if not enabled;
+     *                a user missing from its batch is read through {@link GitHubGistSource}.
+     */
+    private void processUser(UserDTO userDTO, GraphQlGistSource.Batches batches) {
+        if (!shardCoordinator.owns(userDTO.getUsername())) {
+            // moved to another replica since the sweep started
+            return;
+        }
+        Map<String, CompletableFuture<Boolean>> retried = retryPending(userDTO);
+        Date cursor = cursorOf(userDTO);
+        Date fetchedAt = new Date();
+        Fetched fetched = new Fetched();
+        Consumer<List<GistDto>> pageHandler = page -> submitPage(userDTO, page, retried, cursor, fetched);
+        int count;
+        long added;
+        try {
+            List<GistDto> batched = batches == null ? null : batches.take(userDTO.getUsername());
+            if (batched != null) {
+                // gists are as of the batch request, which may have been sent well before this user's turn
+                fetchedAt = batches.requestedAt(userDTO.getUsername());
+                pageHandler.accept(batched);
+                count = batched.size();
+            } else {
+                // a page is written to the outbox once its response is closed, not while holding a Github permit
+                count = gistSource.forEachPage(userDTO.getUsername(), sinceOf(cursor), sweepEngine::callGitHub,
+                        pageHandler);
             }
-            userDTO.setLastAdded(new Date());
-            logger.info("**********************************/");
+        } finally {
+            // retries are settled even if fetching fails, so delivered ones are not sent again
+            added = settleRetried(userDTO, retried);
+        }
+        // only reached when every page was fetched; a failed or rate limited fetch leaves the cursor untouched
+        settleFetched(userDTO, cursor, fetchedAt, fetched, count, added);
+    }
 
+    /**
+     * Same as {@link #processUser(UserDTO, GraphQlGistSource.Batches)} without blocking: pages are fetched by {@link AsyncGitHubGistSource}
+     * and the next page is requested once the activities of the previous one are settled.
+     *
+     * @param userDTO the user.
+     * @return completes when the user is processed.
+     */
+    private CompletableFuture<Void> processUserAsync(UserDTO userDTO) {
+        if (!shardCoordinator.owns(userDTO.getUsername())) {
+            return CompletableFuture.completedFuture(null);
         }
-        logger.info("Ended processing users...");
+        // the outbox and the user store are only touched on the store executor, never on a reactor thread
+        return CompletableFuture.supplyAsync(() -> retryPending(userDTO), storeExecutor)
+                .thenCompose(retried -> fetchAsync(userDTO, retried));
     }
 
     /**
-     * Get new gists from github.
+     * Fetch the gists of a user page by page, writing each page to the outbox on {@link #storeExecutor}, then
+     * settle the user there.
      *
-     * @param username Github username.
-     * @param since    Defines the timestamp since which the data should be queried.
-     * @return a list of {@link GistDto}
+     * @param userDTO the user.
+     * @param retried results of the retried pending gists by gist id.
+     * @return completes when the user is processed.
      */
-    private List<GistDto> getGitHubGists(String username, String since) {
-        String url = getGitHubUrl(username, since);
-        ResponseEntity<GistDto[]> responseEntity = restTemplate.getForEntity(url, GistDto[].class);
-        return Arrays.asList(responseEntity.getBody());
+    private CompletableFuture<Void> fetchAsync(UserDTO userDTO, Map<String, CompletableFuture<Boolean>> retried) {
+        Date cursor = cursorOf(userDTO);
+        Date fetchedAt = new Date();
+        Fetched fetched = new Fetched();
+        CompletableFuture<Integer> fetch = asyncGistSource.forEachPage(userDTO.getUsername(), sinceOf(cursor),
+                page -> CompletableFuture.supplyAsync(() -> submitPage(userDTO, page, retried, cursor, fetched),
+                        storeExecutor).thenCompose(pageResults ->
+                        CompletableFuture.allOf(pageResults.toArray(new CompletableFuture<?>[0]))));
+        CompletableFuture<Void> retries =
+                CompletableFuture.allOf(retried.values().toArray(new CompletableFuture<?>[0]));
+        return CompletableFuture.allOf(fetch.exceptionally(e -> null), retries).thenRunAsync(() -> {
+            long added = settleRetried(userDTO, retried);
+            // rethrows a failed fetch, leaving the cursor untouched
+            int count = fetch.join();
+            settleFetched(userDTO, cursor, fetchedAt, fetched, count, added);
+        }, storeExecutor);
     }
 
     /**
-     * Add an activity to Pipe Drive, containing the id and url of a gist.
+     * Write the new gists of a page to the outbox and merge them into {@link GistCache}. Only what
+     * {@link #settleFetched} needs is kept of them, not their json.
      *
-     * @param gistId  Id of the gist.
-     * @param gistUrl Url of the gist.
-     * @return true if the activity is added successfully.
-     */
-    private boolean addPipeDriveActivity(String gistId, String gistUrl) {
-        String url = String.format("https://api.pipedrive.com/v1/activities?api_token=%s", pipeDriveToken);
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
-
-        Map<String, String> body = new HashMap<>();
-        body.put("subject", String.format("Gitst #%s", gistId));
-        body.put("done", "0");
-        body.put("type", "github-gist");
-        body.put("note", gistUrl);
-        HttpEntity<Map> entity = new HttpEntity<>(body, headers);
-        ResponseEntity<PipeDriveResponse> responseEntity = restTemplate.postForEntity(url, entity, PipeDriveResponse.class);
-
-        return responseEntity.getBody().getSuccess();
+     * @param userDTO the user.
+     * @param page    gists of the page.
+     * @param retried results of the retried pending gists by gist id, those are not written again.
+     * @param cursor  cursor of the user before the fetch.
+     * @param fetched gists fetched so far.
+     * @return results of the gists of the page.
+     */
+    private List<CompletableFuture<Boolean>> submitPage(UserDTO userDTO, List<GistDto> page,
+                                                        Map<String, CompletableFuture<Boolean>> retried, Date cursor,
+                                                        Fetched fetched) {
+        List<GistDto> added = new ArrayList<>(page.size());
+        List<CompletableFuture<Boolean>> pageResults = new ArrayList<>(page.size());
+        for (GistDto gistDto : page) {
+            if (!retried.containsKey(gistDto.getId()) && !isReadAgain(gistDto, cursor)) {
+                CompletableFuture<Boolean> result = submit(gistDto.getId(), gistDto.getUrl());
+                fetched.add(gistDto, result);
+                added.add(gistDto);
+                pageResults.add(result);
+            }
+        }
+        gistCache.merge(userDTO.getUsername(), added);
+        return pageResults;
     }
 
     /**
-     * Prepare a url to get data from github.
+     * Queue the pending gists of a user again.
      *
-     * @param username Github username.
-     * @param since    Defines the timestamp since which the data should be queried.
-     * @return prepared url.
+     * @param userDTO the user.
+     * @return results by gist id.
      */
-    private String getGitHubUrl(String username, String since) {
-        String url = String.format("https://api.github.com/users/%s/gists", username);
-        if (since != null) {
-            url = url.concat("?since=").concat(since);
+    private Map<String, CompletableFuture<Boolean>> retryPending(UserDTO userDTO) {
+        Map<String, CompletableFuture<Boolean>> retried = new LinkedHashMap<>();
+        userDTO.getPendingGists().forEach((gistId, gistUrl) -> retried.put(gistId, submit(gistId, gistUrl)));
+        return retried;
+    }
+
+    /**
+     * @param userDTO the user.
+     * @return the cursor of the user; older users have no cursor yet, their last sweep is the best bound.
+     */
+    private Date cursorOf(UserDTO userDTO) {
+        return userDTO.getCursor() != null ? userDTO.getCursor() : userDTO.getLastAdded();
+    }
+
+    /**
+     * @param cursor cursor of a user, may be {@code null}.
+     * @return {@code since} for Github, which compares inclusively and with second precision: the second of the
+     * cursor, so a gist updated later in that second is not missed. Gists of that second read again are dropped,
+     * see {@link #isReadAgain(GistDto, Date)}.
+     */
+    private Date sinceOf(Date cursor) {
+        return cursor == null ? null : new Date(cursor.getTime() / 1000 * 1000);
+    }
+
+    /**
+     * @param gistDto a fetched gist.
+     * @param cursor  cursor of the user before the fetch, may be {@code null}.
+     * @return whether the gist was read by an earlier fetch, because {@code since} includes the cursor's second,
+     * and already has an activity.
+     */
+    private boolean isReadAgain(GistDto gistDto, Date cursor) {
+        return cursor != null && gistDto.getUpdatedAt() != null && !gistDto.getUpdatedAt().after(cursor)
+                && deliveredGists.contains(gistDto.getId());
+    }
+
+    /**
+     * Remove retried gists that were delivered from the pending ones.
+     *
+     * @param userDTO the user.
+     * @param retried results of the retried gists by gist id.
+     * @return number of retried gists delivered.
+     */
+    private long settleRetried(UserDTO userDTO, Map<String, CompletableFuture<Boolean>> retried) {
+        long added = 0;
+        for (Map.Entry<String, CompletableFuture<Boolean>> entry : retried.entrySet()) {
+            if (entry.getValue().join()) {
+                userDTO.getPendingGists().remove(entry.getKey());
+                userStore.gistDelivered(userDTO, entry.getKey());
+                added++;
+            }
         }
-        return url;
+        return added;
+    }
+
+    /**
+     * Keep failed gists as pending and move the cursor past every fetched gist.
+     *
+     * @param userDTO   the user.
+     * @param cursor    cursor of the user before the fetch.
+     * @param fetchedAt timestamp that the fetch started.
+     * @param fetched   fetched gists.
+     * @param count     number of gists read.
+     * @param added     number of activities added so far.
+     */
+    private void settleFetched(UserDTO userDTO, Date cursor, Date fetchedAt, Fetched fetched, int count,
+                               long added) {
+        sweepMetrics.gistsDiscovered(fetched.size);
+        for (Map.Entry<String, Fetched.Result> entry : fetched.results.entrySet()) {
+            Fetched.Result result = entry.getValue();
+            if (result.delivered.join()) {
+                added++;
+            } else {
+                userDTO.getPendingGists().put(entry.getKey(), result.url);
+                userStore.gistPending(userDTO, entry.getKey(), result.url);
+            }
+        }
+        Date newest = fetched.newestSince(cursor, fetchedAt);
+        logger.info("User: {}, gists count since last visit: {}, activities added: {}, pending: {}",
+                userDTO, count, added, userDTO.getPendingGists().size());
+        if (newest != null && !newest.equals(userDTO.getCursor())) {
+            userDTO.setCursor(newest);
+            userStore.cursorMoved(userDTO);
+        }
+        userDTO.setLastAdded(fetchedAt);
+        userStore.swept(userDTO);
+        shardCoordinator.userSwept(userDTO);
+        pollScheduler.polled(userDTO.getUsername(), fetched.size, fetchedAt.getTime());
+    }
+
+    /**
+     * @return whether the sweep uses the non-blocking client path.
+     */
+    private boolean isNonBlocking() {
+        return asyncGistSource != null && asyncActivityClient != null;
     }
 
     /**
-     * A simple way to persist current user data to a local file.
+     * Write a gist to {@link ActivityOutbox}, unless it already has an activity.
      *
-     * @throws IOException if file does not exist.
+     * @param gistId  id of the gist.
+     * @param gistUrl url of the gist.
+     * @return whether the gist has an activity now or is in the outbox; otherwise it is kept pending.
      */
-    private void saveUsersAsFile() throws IOException {
-        FileOutputStream fos = new FileOutputStream("users.data");
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(users);
-        oos.close();
+    private CompletableFuture<Boolean> submit(String gistId, String gistUrl) {
+        if (deliveredGists.contains(gistId)) {
+            logger.debug("Gist id:{} already has an activity, skipping it.", gistId);
+            sweepMetrics.activitySkipped();
+            return CompletableFuture.completedFuture(true);
+        }
+        return activityOutbox.submit(gistId, gistUrl);
     }
 
     /**
-     * Load users data from file.
+     * Fetch all gists of a user, with their json, for {@link GistCache}. The calls count against the interactive
+     * bulkhead, so a running sweep cannot hold up a user waiting for the response.
      *
-     * @throws IOException            if file is not found or corrupt.
-     * @throws ClassNotFoundException if {@link UserDTO} is not found/loaded.
-     */
-    private void loadUsersFromFile() throws IOException, ClassNotFoundException {
-        FileInputStream fis = new FileInputStream("users.data");
-        ObjectInputStream ois = new ObjectInputStream(fis);
-        users = (Set<UserDTO>) ois.readObject();
-        ois.close();
+     * @param username Github username.
+     * @return all gists of the user.
+     */
+    private List<GistDto> fetchAllGists(String username) {
+        return bulkheads.interactive(() -> {
+            List<GistDto> gists = new ArrayList<>();
+            gistSource.forEachGist(username, null, gists::add);
+            return gists;
+        });
+    }
+
+    /**
+     * What is kept of the gists fetched for a user until it is settled: their results and urls, and the newest
+     * update timestamp, but not the gists with their json.
+     */
+    private static class Fetched {
+        /**
+         * Number of gists fetched.
+         */
+        private int size;
+
+        /**
+         * Newest update timestamp of the fetched gists, {@code null} if none has one.
+         */
+        private Date newest;
+
+        /**
+         * Whether a fetched gist has no update timestamp; it counts as updated when the fetch started.
+         */
+        private boolean undated;
+
+        /**
+         * Results of the fetched gists by gist id.
+         */
+        private final Map<String, Result> results = new LinkedHashMap<>();
+
+        /**
+         * @param gistDto a fetched gist.
+         * @param result  whether it has an activity or is in the outbox.
+         */
+        private void add(GistDto gistDto, CompletableFuture<Boolean> result) {
+            size++;
+            results.put(gistDto.getId(), new Result(gistDto.getUrl(), result));
+            Date updatedAt = gistDto.getUpdatedAt();
+            if (updatedAt == null) {
+                undated = true;
+            } else if (newest == null || updatedAt.after(newest)) {
+                newest = updatedAt;
+            }
+        }
+
+        /**
+         * @param cursor    cursor of the user before the fetch, may be {@code null}.
+         * @param fetchedAt timestamp that the fetch started.
+         * @return the newest of the cursor and the update timestamps of the fetched gists.
+         */
+        private Date newestSince(Date cursor, Date fetchedAt) {
+            Date since = later(cursor, newest);
+            return undated ? later(since, fetchedAt) : since;
+        }
+
+        /**
+         * @param a a timestamp, may be {@code null}.
+         * @param b a timestamp, may be {@code null}.
+         * @return the later one.
+         */
+        private static Date later(Date a, Date b) {
+            return a == null || (b != null && b.after(a)) ? b : a;
+        }
+
+        /**
+         * Result of a fetched gist.
+         */
+        private static class Result {
+            /**
+             * Url of the gist, kept as pending if it fails.
+             */
+            private final String url;
+
+            /**
+             * Whether the gist has an activity or is in the outbox.
+             */
+            private final CompletableFuture<Boolean> delivered;
+
+            /**
+             * @param url       url of the gist.
+             * @param delivered whether the gist has an activity or is in the outbox.
+             */
+            private Result(String url, CompletableFuture<Boolean> delivered) {
+                this.url = url;
+                this.delivered = delivered;
+            }
+        }
     }
 }
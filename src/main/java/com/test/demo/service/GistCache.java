@@ -0,0 +1,479 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.GistDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the gists of each user, so serving them does not cost a Github call per request.
+ * <ul>
+ * <li>Fresh entries (younger than {@code ttl}) are served as they are.</li>
+ * <li>Stale entries (up to {@code ttl + maxStale} old) are served right away while a single background
+ * fetch revalidates them.</li>
+ * <li>Older or missing entries are fetched before answering; concurrent requests for the same user share
+ * that fetch. If it fails, a stale entry is served rather than the error.</li>
+ * </ul>
+ * Gists are kept as UTF-8 encoded json, so they are written to a response as they are, without building
+ * the whole response first. Entries are evicted least recently used first once their total size exceeds the limit.
+ * The sweep merges the gists it fetches into existing entries.
+ */
+@Component
+public class GistCache {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(GistCache.class);
+
+    /**
+     * Entries by normalized username, in access order, guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Fetches in progress by normalized username. A fetch only stores its entry while it is still the one here,
+     * see {@link #invalidate(String)}.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs background revalidation.
+     */
+    private final ExecutorService refresher;
+
+    /**
+     * Maximum total json size of all entries, in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * Entries younger than this are fresh, in milliseconds.
+     */
+    private final long ttlMillis;
+
+    /**
+     * How long after {@link #ttlMillis} an entry may still be served while it is revalidated, in milliseconds.
+     */
+    private final long maxStaleMillis;
+
+    /**
+     * Source of the current time in milliseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * Total json size of all entries in bytes, guarded by {@code this}.
+     */
+    private long bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes        maximum total json size of all entries, in bytes.
+     * @param ttlSeconds      entries younger than this are fresh.
+     * @param maxStaleSeconds how long after the ttl an entry may still be served while it is revalidated.
+     */
+    @Autowired
+    public GistCache(@Value("${gist-cache.max-bytes:67108864}") long maxBytes,
+                     @Value("${gist-cache.ttl-seconds:300}") long ttlSeconds,
+                     @Value("${gist-cache.max-stale-seconds:3600}") long maxStaleSeconds) {
+        this(maxBytes, ttlSeconds, maxStaleSeconds, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor with a custom clock.
+     *
+     * @param maxBytes        maximum total json size of all entries, in bytes.
+     * @param ttlSeconds      entries younger than this are fresh.
+     * @param maxStaleSeconds how long after the ttl an entry may still be served while it is revalidated.
+     * @param clock           source of the current time in milliseconds.
+     */
+    GistCache(long maxBytes, long ttlSeconds, long maxStaleSeconds, LongSupplier clock) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.maxStaleMillis = TimeUnit.SECONDS.toMillis(maxStaleSeconds);
+        this.clock = clock;
+        AtomicInteger count = new AtomicInteger();
+        this.refresher = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "gist-cache-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the gists of a user.
+     *
+     * @param username username of the user.
+     * @param loader   fetches all gists of the user from Github, with their json.
+     * @return the gists and how they were served.
+     * @throws RuntimeException thrown by the loader, if there is no entry to fall back to.
+     */
+    public Lookup get(String username, Supplier<List<GistDto>> loader) {
+        String key = UserRegistry.normalize(username);
+        Entry entry = find(key);
+        long now = clock.getAsLong();
+        if (entry != null && now - entry.fetchedAt < ttlMillis) {
+            return new Lookup(entry, Status.HIT, now);
+        }
+        if (entry != null && now - entry.fetchedAt < ttlMillis + maxStaleMillis) {
+            if (!inFlight.containsKey(key)) {
+                refresher.execute(() -> {
+                    try {
+                        load(key, loader);
+                    } catch (RuntimeException e) {
+                        logger.warn("Error revalidating gists of {}: {}", username, e.toString());
+                    }
+                });
+            }
+            return new Lookup(entry, Status.STALE, now);
+        }
+        try {
+            return new Lookup(load(key, loader), Status.MISS, clock.getAsLong());
+        } catch (RuntimeException e) {
+            if (entry == null) {
+                throw e;
+            }
+            logger.warn("Error fetching gists of {}, serving stale ones: {}", username, e.toString());
+            return new Lookup(entry, Status.STALE, now);
+        }
+    }
+
+    /**
+     * Put gists fetched by the sweep into the entry of a user, replacing older versions of the same gists.
+     * Users without an entry are left alone; they are fetched in full when first requested.
+     *
+     * @param username username of the user.
+     * @param gists    fetched gists, with their json.
+     */
+    public void merge(String username, List<GistDto> gists) {
+        if (gists.isEmpty()) {
+            return;
+        }
+        String key = UserRegistry.normalize(username);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return;
+            }
+            List<Gist> merged = new ArrayList<>(entry.gists.size() + gists.size());
+            Set<String> ids = new HashSet<>();
+            for (GistDto gistDto : gists) {
+                if (gistDto.getJson() != null && ids.add(gistDto.getId())) {
+                    merged.add(new Gist(gistDto));
+                }
+            }
+            for (Gist gist : entry.gists) {
+                if (!ids.contains(gist.id)) {
+                    merged.add(gist);
+                }
+            }
+            store(key, new Entry(merged, entry.fetchedAt));
+        }
+    }
+
+    /**
+     * Drop the entry of a user. A fetch in progress for the user still answers its callers, but its entry is not
+     * stored.
+     *
+     * @param username username of the user.
+     */
+    public synchronized void invalidate(String username) {
+        String key = UserRegistry.normalize(username);
+        inFlight.remove(key);
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * @return number of cached users.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stop background revalidation when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * @param key normalized username.
+     * @return the entry, or {@code null}.
+     */
+    private synchronized Entry find(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Fetch the gists of a user, or join the fetch already in progress.
+     *
+     * @param key    normalized username.
+     * @param loader fetches all gists of the user.
+     * @return the new entry.
+     */
+    private Entry load(String key, Supplier<List<GistDto>> loader) {
+        CompletableFuture<Entry> created = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            long fetchedAt = clock.getAsLong();
+            List<Gist> gists = new ArrayList<>();
+            for (GistDto gistDto : loader.get()) {
+                gists.add(new Gist(gistDto));
+            }
+            Entry entry = new Entry(gists, fetchedAt);
+            synchronized (this) {
+                // not if the user was invalidated meanwhile
+                if (inFlight.get(key) == created) {
+                    store(key, entry);
+                }
+            }
+            created.complete(entry);
+            return entry;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    /**
+     * Store an entry and evict the least recently used ones beyond the size limit. Caller holds {@code this}.
+     *
+     * @param key   normalized username.
+     * @param entry the entry.
+     */
+    private void store(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += entry.bytes;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            bytes -= eldest.getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * How a lookup was served, sent to clients in the {@code X-Cache} header.
+     */
+    public enum Status {
+        /**
+         * Served from a fresh entry.
+         */
+        HIT,
+        /**
+         * Served from a stale entry, revalidated in the background.
+         */
+        STALE,
+        /**
+         * Fetched from Github.
+         */
+        MISS
+    }
+
+    /**
+     * Result of {@link #get(String, Supplier)}.
+     */
+    public static final class Lookup {
+
+        /**
+         * The entry served.
+         */
+        private final Entry entry;
+
+        /**
+         * How it was served.
+         */
+        private final Status status;
+
+        /**
+         * Time of the lookup.
+         */
+        private final long now;
+
+        /**
+         * @param entry  the entry served.
+         * @param status how it was served.
+         * @param now    time of the lookup.
+         */
+        private Lookup(Entry entry, Status status, long now) {
+            this.entry = entry;
+            this.status = status;
+            this.now = now;
+        }
+
+        /**
+         * @return {@code status}.
+         * @see #status
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return time the fetch of the gists served started, in epoch millis; gists created after it may be
+         * missing from them.
+         */
+        public long getFetchedAt() {
+            return entry.fetchedAt;
+        }
+
+        /**
+         * @return seconds since the gists were fetched from Github.
+         */
+        public long getAgeSeconds() {
+            return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(now - entry.fetchedAt));
+        }
+
+        /**
+         * Write the gists as a UTF-8 json array, in the order Github returned them, one gist at a time.
+         *
+         * @param since only gists updated at or after this timestamp, {@code null} for all.
+         * @param out   receives the json.
+         * @throws IOException if writing fails.
+         */
+        public void writeTo(Date since, OutputStream out) throws IOException {
+            out.write('[');
+            boolean first = true;
+            for (Gist gist : entry.gists) {
+                if (since != null && gist.updatedAt < since.getTime()) {
+                    continue;
+                }
+                if (!first) {
+                    out.write(',');
+                }
+                out.write(gist.json);
+                first = false;
+            }
+            out.write(']');
+        }
+
+        /**
+         * @param since only gists updated at or after this timestamp, {@code null} for all.
+         * @return json array of the gists, in the order Github returned them.
+         */
+        public String toJson(Date since) {
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            try {
+                writeTo(since, json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new String(json.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Cached gists of a user. Immutable.
+     */
+    private static final class Entry {
+
+        /**
+         * The gists.
+         */
+        private final List<Gist> gists;
+
+        /**
+         * Time the gists were fetched from Github.
+         */
+        private final long fetchedAt;
+
+        /**
+         * Total json size of the gists, in bytes.
+         */
+        private final long bytes;
+
+        /**
+         * @param gists     the gists.
+         * @param fetchedAt time the gists were fetched from Github.
+         */
+        private Entry(List<Gist> gists, long fetchedAt) {
+            this.gists = Collections.unmodifiableList(gists);
+            this.fetchedAt = fetchedAt;
+            long size = 0;
+            for (Gist gist : gists) {
+                size += gist.json.length;
+            }
+            this.bytes = size;
+        }
+    }
+
+    /**
+     * A cached gist.
+     */
+    private static final class Gist {
+
+        /**
+         * Id of the gist.
+         */
+        private final String id;
+
+        /**
+         * Timestamp that the gist was last updated, epoch millis, 0 if unknown.
+         */
+        private final long updatedAt;
+
+        /**
+         * The gist as returned by Github, UTF-8 encoded.
+         */
+        private final byte[] json;
+
+        /**
+         * @param gistDto the gist, with its json.
+         */
+        private Gist(GistDto gistDto) {
+            this.id = gistDto.getId();
+            this.updatedAt = gistDto.getUpdatedAt() == null ? 0 : gistDto.getUpdatedAt().getTime();
+            this.json = (gistDto.getJson() == null ? "{}" : gistDto.getJson()).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.test.demo.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.GistDto;
+import com.test.demo.http.RateLimitInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads all gists of a Github user, following {@code Link: rel="next"} headers page by page.
+ * Each page is parsed incrementally and every gist is handed to the consumer as soon as it is read,
+ * so only one gist is held in memory at a time. Gists keep their json, see {@link GistDto#getJson()}.
+ */
+@Component
+public class GitHubGistSource {
+
+    /**
+     * Maximum page size allowed by Github.
+     */
+    static final int PAGE_SIZE = 100;
+
+    /**
+     * Pattern of the next page url in a {@code Link} header.
+     */
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+
+    /**
+     * Injected {@link RestTemplate}.
+     */
+    private final RestTemplate restTemplate;
+
+    /**
+     * Base url of the Github api.
+     */
+    private final String apiUrl;
+
+    /**
+     * Jackson Object mapper, used to bind each gist of the stream.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Constructor.
+     *
+     * @param restTemplate Rest Template.
+     * @param apiUrl       base url of the Github api.
+     */
+    @Autowired
+    public GitHubGistSource(RestTemplate restTemplate, @Value("${github.api-url:https://api.github.com}") String apiUrl) {
+        this.restTemplate = restTemplate;
+        this.apiUrl = apiUrl;
+    }
+
+    /**
+     * Read all gists of a user, across all pages.
+     *
+     * @param username Github username.
+     * @param since    only gists updated after this timestamp are read, {@code null} for all gists.
+     * @param consumer receives each gist as soon as it is parsed.
+     * @return number of gists read.
+     * @throws RestClientException if a page cannot be fetched or parsed.
+     */
+    public int forEachGist(String username, Date since, Consumer<GistDto> consumer) {
+        URI next = firstPageUri(username, since);
+        int count = 0;
+        while (next != null) {
+            URI uri = next;
+            // a page rejected because of the rate limit is read again once it resets, nothing was consumed
+            Page page = RateLimitInterceptor.retryRateLimited(() -> restTemplate.execute(uri, HttpMethod.GET, null,
+                    response -> readPage(response, consumer)));
+            count += page.count;
+            next = page.next;
+        }
+        return count;
+    }
+
+    /**
+     * Read all gists of a user page by page, handing each page over once its response is closed, so the handler
+     * holds neither a connection nor anything taken by {@code runner} for the request.
+     *
+     * @param username    Github username.
+     * @param since       only gists updated after this timestamp are read, {@code null} for all gists.
+     * @param runner      runs each page request, e.g. under a permit.
+     * @param pageHandler receives the gists of each page.
+     * @return number of gists read.
+     * @throws RestClientException if a page cannot be fetched or parsed.
+     */
+    public int forEachPage(String username, Date since, RequestRunner runner, Consumer<List<GistDto>> pageHandler) {
+        URI next = firstPageUri(username, since);
+        int count = 0;
+        while (next != null) {
+            URI uri = next;
+            List<GistDto> gists = new ArrayList<>(PAGE_SIZE);
+            Page page = runner.run(() -> RateLimitInterceptor.retryRateLimited(() -> {
+                // a retried page starts over
+                gists.clear();
+                return restTemplate.execute(uri, HttpMethod.GET, null, response -> readPage(response, gists::add));
+            }));
+            pageHandler.accept(gists);
+            count += page.count;
+            next = page.next;
+        }
+        return count;
+    }
+
+    /**
+     * Prepare the url of the first page.
+     *
+     * @param username Github username.
+     * @param since    only gists updated after this timestamp are read, may be {@code null}.
+     * @return prepared url.
+     */
+    URI firstPageUri(String username, Date since) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(apiUrl)
+                .pathSegment("users", username, "gists")
+                .queryParam("per_page", PAGE_SIZE);
+        if (since != null) {
+            builder.queryParam("since", since.toInstant().toString());
+        }
+        return builder.encode().build().toUri();
+    }
+
+    /**
+     * Stream the gists of a page to the consumer.
+     *
+     * @param response response of the page request.
+     * @param consumer receives each gist.
+     * @return number of gists and url of the next page.
+     * @throws IOException if the body is not a json array of gists.
+     */
+    private Page readPage(ClientHttpResponse response, Consumer<GistDto> consumer) throws IOException {
+        Page page = new Page();
+        page.next = nextPageUri(response.getHeaders().getFirst("Link"));
+        try (InputStream body = response.getBody(); JsonParser parser = mapper.getFactory().createParser(body)) {
+            JsonToken first = parser.nextToken();
+            if (first == null) {
+                return page;
+            }
+            if (first != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a json array of gists");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                consumer.accept(toGist(mapper, mapper.readTree(parser)));
+                page.count++;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Bind a gist, keeping its json.
+     *
+     * @param mapper Jackson Object mapper.
+     * @param node   the gist as returned by Github.
+     * @return the gist.
+     * @throws IOException if the gist cannot be bound.
+     */
+    static GistDto toGist(ObjectMapper mapper, JsonNode node) throws IOException {
+        GistDto gistDto = mapper.treeToValue(node, GistDto.class);
+        gistDto.setJson(node.toString());
+        return gistDto;
+    }
+
+    /**
+     * Extract the next page url from a {@code Link} header.
+     *
+     * @param link value of the header, may be {@code null}.
+     * @return next page url, or {@code null} on the last page.
+     */
+    static URI nextPageUri(String link) {
+        if (link == null) {
+            return null;
+        }
+        Matcher matcher = NEXT_LINK.matcher(link);
+        return matcher.find() ? URI.create(matcher.group(1)) : null;
+    }
+
+    /**
+     * Runs a request of {@link #forEachPage}.
+     */
+    @FunctionalInterface
+    public interface RequestRunner {
+        /**
+         * @param request the request.
+         * @param <R>     type of the result.
+         * @return result of the request.
+         */
+        <R> R run(Supplier<R> request);
+    }
+
+    /**
+     * Result of reading a single page.
+     */
+    private static class Page {
+        /**
+         * Number of gists in the page.
+         */
+        private int count;
+
+        /**
+         * Url of the next page, {@code null} on the last page.
+         */
+        private URI next;
+    }
+}
@@ -0,0 +1,351 @@
+package com.test.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.test.demo.dto.GistDto;
+import com.test.demo.http.RateLimitInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the recent gists of many Github users in a single request to the Github GraphQL api, instead of one
+ * REST request per user. Each user is an aliased {@code user(login:)} block asking for its newest
+ * {@code github.graphql.gists-per-user} public gists. At most 100 users are asked at once, so a request costs a
+ * single point of the GraphQL rate limit.
+ * <p>
+ * A user is left out of the result, so the caller falls back to {@link GitHubGistSource}, when Github reports
+ * an error for it (e.g. it does not exist) or when it has more new gists than were asked for.
+ * Gists have no json, see {@link GistDto#getJson()}; {@link GistCache} gets the full ones from the REST api.
+ * <p>
+ * Used by the blocking sweep when {@code sweep.gist-source=graphql}; the GraphQL api needs a token,
+ * {@code github.token}.
+ */
+@Component
+public class GraphQlGistSource {
+
+    /**
+     * Most users asked in a request; the cost of a request is a point per 100 gist connections.
+     */
+    static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Most gists asked for a user, the largest page the GraphQL api allows.
+     */
+    static final int MAX_GISTS_PER_USER = 100;
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(GraphQlGistSource.class);
+
+    /**
+     * Injected {@link RestTemplate}.
+     */
+    private final RestTemplate restTemplate;
+
+    /**
+     * Url of the GraphQL api.
+     */
+    private final URI graphQlUri;
+
+    /**
+     * Headers of every request, including the token.
+     */
+    private final HttpHeaders headers = new HttpHeaders();
+
+    /**
+     * Whether the sweep reads gists through this source.
+     */
+    private final boolean enabled;
+
+    /**
+     * Number of users asked in a request.
+     */
+    private final int batchSize;
+
+    /**
+     * Number of gists asked for each user.
+     */
+    private final int gistsPerUser;
+
+    /**
+     * Jackson Object mapper, used for the request and response bodies.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Constructor.
+     *
+     * @param restTemplate Rest Template.
+     * @param graphQlUrl   url of the GraphQL api.
+     * @param token        Github api token, the GraphQL api refuses anonymous requests.
+     * @param gistSource   rest (one request per user) or graphql (this source).
+     * @param batchSize    number of users asked in a request, at most {@value #MAX_BATCH_SIZE}.
+     * @param gistsPerUser number of gists asked for each user, at most {@value #MAX_GISTS_PER_USER}.
+     */
+    @Autowired
+    public GraphQlGistSource(RestTemplate restTemplate,
+                             @Value("${github.graphql-url:https://api.github.com/graphql}") String graphQlUrl,
+                             @Value("${github.token:}") String token,
+                             @Value("${sweep.gist-source:rest}") String gistSource,
+                             @Value("${github.graphql.batch-size:50}") int batchSize,
+                             @Value("${github.graphql.gists-per-user:10}") int gistsPerUser) {
+        this.restTemplate = restTemplate;
+        this.graphQlUri = URI.create(graphQlUrl);
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.gistsPerUser = Math.max(1, Math.min(gistsPerUser, MAX_GISTS_PER_USER));
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        if (!token.isEmpty()) {
+            headers.set(HttpHeaders.AUTHORIZATION, "bearer " + token);
+        }
+        boolean graphQl = "graphql".equals(gistSource);
+        if (graphQl && token.isEmpty()) {
+            logger.warn("sweep.gist-source=graphql needs github.token, reading gists through the REST api");
+        }
+        this.enabled = graphQl && !token.isEmpty();
+    }
+
+    /**
+     * @return whether the sweep reads gists through this source.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Plan the requests of a sweep, see {@link Batches}.
+     *
+     * @param sinceByUsername {@code since} of each user as for {@link GitHubGistSource#forEachGist}, in the
+     *                        order the users are swept.
+     * @return the batches.
+     */
+    public Batches batches(Map<String, Date> sinceByUsername) {
+        return new Batches(sinceByUsername);
+    }
+
+    /**
+     * Read the recent gists of users in a single request.
+     *
+     * @param sinceByUsername {@code since} of each user, {@code null} for all gists; at most
+     *                        {@value #MAX_BATCH_SIZE} users.
+     * @return gists updated at or after {@code since} by username, for the users whose new gists were all read.
+     * @throws RestClientException if the request fails or the response is not a GraphQL result.
+     */
+    public Map<String, List<GistDto>> fetchRecent(Map<String, Date> sinceByUsername) {
+        List<String> usernames = new ArrayList<>(sinceByUsername.keySet());
+        HttpEntity<ObjectNode> entity = new HttpEntity<>(request(usernames), headers);
+        JsonNode response = RateLimitInterceptor.retryRateLimited(() -> restTemplate.postForObject(graphQlUri,
+                entity, JsonNode.class));
+        JsonNode data = response == null ? null : response.get("data");
+        if (data == null || !data.isObject()) {
+            throw new RestClientException("Github GraphQL api responded without data: "
+                    + (response == null ? null : response.get("errors")));
+        }
+        Map<String, List<GistDto>> result = new HashMap<>();
+        for (int i = 0; i < usernames.size(); i++) {
+            String username = usernames.get(i);
+            JsonNode gists = data.path("u" + i).path("gists");
+            if (gists.isMissingNode() || gists.isNull()) {
+                // not found, or an error reported for this user only
+                continue;
+            }
+            List<GistDto> recent = recent(gists, sinceByUsername.get(username));
+            if (recent != null) {
+                result.put(username, recent);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build the request: one aliased block per user, with the logins as variables.
+     *
+     * @param usernames the users.
+     * @return body of the request.
+     */
+    private ObjectNode request(List<String> usernames) {
+        StringBuilder declarations = new StringBuilder();
+        StringBuilder selections = new StringBuilder();
+        ObjectNode variables = mapper.createObjectNode();
+        for (int i = 0; i < usernames.size(); i++) {
+            declarations.append(i == 0 ? "" : ", ").append("$l").append(i).append(": String!");
+            selections.append(" u").append(i).append(": user(login: $l").append(i).append(") { gists(first: ")
+                    .append(gistsPerUser)
+                    .append(", privacy: PUBLIC, orderBy: {field: UPDATED_AT, direction: DESC})")
+                    .append(" { pageInfo { hasNextPage } nodes { name url updatedAt } } }");
+            variables.put("l" + i, usernames.get(i));
+        }
+        ObjectNode body = mapper.createObjectNode();
+        body.put("query", "query(" + declarations + ") {" + selections + " }");
+        body.set("variables", variables);
+        return body;
+    }
+
+    /**
+     * @param gists the gist connection of a user, newest first.
+     * @param since only gists updated at or after it are kept, {@code null} for all.
+     * @return the gists updated at or after {@code since}, or {@code null} if there may be more than were read.
+     */
+    private List<GistDto> recent(JsonNode gists, Date since) {
+        List<GistDto> recent = new ArrayList<>();
+        boolean reachedSince = false;
+        for (JsonNode node : gists.path("nodes")) {
+            GistDto gistDto = new GistDto();
+            gistDto.setId(node.path("name").asText(null));
+            gistDto.setUrl(node.path("url").asText(null));
+            gistDto.setUpdatedAt(parseDate(node.path("updatedAt").asText(null)));
+            if (since != null && gistDto.getUpdatedAt() != null && gistDto.getUpdatedAt().before(since)) {
+                reachedSince = true;
+                break;
+            }
+            recent.add(gistDto);
+        }
+        return reachedSince || !gists.path("pageInfo").path("hasNextPage").asBoolean(false) ? recent : null;
+    }
+
+    /**
+     * @param value an ISO-8601 timestamp, may be {@code null}.
+     * @return the timestamp, {@code null} if missing or not valid.
+     */
+    private static Date parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Date.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The users of a sweep split into batches of {@code github.graphql.batch-size}. A batch is fetched when the
+     * first of its users is taken, so only the batches being swept are held in memory, and workers taking other
+     * users of the batch wait for that one request.
+     */
+    public class Batches {
+
+        /**
+         * {@code since} of the users of each batch.
+         */
+        private final List<Map<String, Date>> batches = new ArrayList<>();
+
+        /**
+         * Index of the batch of each user.
+         */
+        private final Map<String, Integer> batchOf = new HashMap<>();
+
+        /**
+         * Gists of the users not taken yet, by batch index; empty if the batch could not be fetched.
+         */
+        private final Map<Integer, CompletableFuture<Map<String, List<GistDto>>>> fetched =
+                new ConcurrentHashMap<>();
+
+        /**
+         * When the request of each batch was sent, by batch index.
+         */
+        private final Map<Integer, Date> requestedAt = new ConcurrentHashMap<>();
+
+        /**
+         * Constructor.
+         *
+         * @param sinceByUsername {@code since} of each user, in the order the users are swept.
+         */
+        private Batches(Map<String, Date> sinceByUsername) {
+            Map<String, Date> batch = null;
+            for (Map.Entry<String, Date> entry : sinceByUsername.entrySet()) {
+                if (batch == null || batch.size() == batchSize) {
+                    batch = new LinkedHashMap<>();
+                    batches.add(batch);
+                }
+                batch.put(entry.getKey(), entry.getValue());
+                batchOf.put(entry.getKey(), batches.size() - 1);
+            }
+        }
+
+        /**
+         * Take the recent gists of a user, fetching its batch first if no other worker did.
+         *
+         * @param username username as given to {@link #batches(Map)}.
+         * @return gists updated at or after the user's {@code since}, or {@code null} if they must be read
+         * through the REST api.
+         */
+        public List<GistDto> take(String username) {
+            Integer index = batchOf.get(username);
+            if (index == null) {
+                return null;
+            }
+            CompletableFuture<Map<String, List<GistDto>>> created = new CompletableFuture<>();
+            CompletableFuture<Map<String, List<GistDto>>> batch = fetched.putIfAbsent(index, created);
+            if (batch == null) {
+                batch = created;
+                requestedAt.put(index, new Date());
+                created.complete(fetch(batches.get(index)));
+            }
+            return batch.join().remove(username);
+        }
+
+        /**
+         * When the batch of a user was requested, so gists created while it was in flight are not skipped by the
+         * next sweep.
+         *
+         * @param username username as given to {@link #batches(Map)}.
+         * @return when the request of its batch was sent, {@code null} if the batch was not taken.
+         */
+        public Date requestedAt(String username) {
+            Integer index = batchOf.get(username);
+            return index == null ? null : requestedAt.get(index);
+        }
+
+        /**
+         * @return number of batches.
+         */
+        public int size() {
+            return batches.size();
+        }
+
+        /**
+         * Fetch a batch, logging a failure.
+         *
+         * @param batch {@code since} of the users of the batch.
+         * @return gists by username, empty if the batch could not be fetched.
+         */
+        private Map<String, List<GistDto>> fetch(Map<String, Date> batch) {
+            try {
+                Map<String, List<GistDto>> gists = new ConcurrentHashMap<>(fetchRecent(batch));
+                if (gists.size() < batch.size()) {
+                    logger.debug("{} of {} users read through the REST api", batch.size() - gists.size(),
+                            batch.size());
+                }
+                return gists;
+            } catch (RuntimeException e) {
+                logger.warn("Error reading gists of {} users through the GraphQL api, falling back to the REST api: {}",
+                        batch.size(), e.toString());
+                return new ConcurrentHashMap<>();
+            }
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.test.demo.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.test.demo.UserAlreadyExistsException;
+import com.test.demo.dto.SweepProgress;
 import com.test.demo.dto.UserDTO;
+import com.test.demo.dto.UserGists;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Main service interface.
@@ -17,6 +20,7 @@ public interface MainService {
      *
      * @param username name of the new user.
      * @throws UserAlreadyExistsException when username is already added.
+     * @throws IllegalArgumentException   when username is not a Github username.
      */
     void addUser(String username) throws UserAlreadyExistsException;
 
@@ -35,12 +39,51 @@ public interface MainService {
     Set<UserDTO> getUsers();
 
     /**
-     * Get gists of the user since last visit from github and return raw response.
+     * Return a page of users in username order (ignoring case).
+     *
+     * @param after username of the last user of the previous page, {@code null} for the first page.
+     * @param limit maximum number of users.
+     * @return users after {@code after}, at most {@code limit}.
+     */
+    List<UserDTO> getUsers(String after, int limit);
+
+    /**
+     * Pass every user to the given action, one at a time, without copying the list.
+     *
+     * @param action receives each user.
+     */
+    void forEachUser(Consumer<UserDTO> action);
+
+    /**
+     * Get gists of the user since last visit and return them as raw json.
      *
      * @param username Github username.
      * @return raw string containing user gists.
-     * @throws JsonProcessingException if user last visit date is malformed.
      */
-    String getRawUserGists(String username) throws JsonProcessingException;
+    String getRawUserGists(String username);
+
+    /**
+     * Get gists of the user since last visit, served from the gist cache. The last visit moves once the body
+     * was written, so the gists are served again if the response is never delivered.
+     *
+     * @param username Github username.
+     * @return user gists and how they were served.
+     */
+    UserGists getUserGists(String username);
+
+    /**
+     * Return progress of the current sweep, or of the last one if none is running.
+     *
+     * @return sweep progress.
+     */
+    SweepProgress getSweepProgress();
+
+    /**
+     * Run a sweep now, unless one is running; returns once it ended. A replica that is not the elected leader
+     * returns right away.
+     *
+     * @return false if skipped because another sweep is running.
+     */
+    boolean sweep();
 
 }
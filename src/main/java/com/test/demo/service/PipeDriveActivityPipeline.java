@@ -0,0 +1,170 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.PipeDriveActivity;
+import com.test.demo.dto.PipeDriveResponse;
+import com.test.demo.http.CircuitBreakerOpenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue of pipedrive activities to be created, delivered by a pool of senders
+ * so several requests are in flight at once instead of one after another.
+ * The queue is bounded; submitting blocks while it is full.
+ */
+@Component
+public class PipeDriveActivityPipeline {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(PipeDriveActivityPipeline.class);
+
+    /**
+     * Injected {@link RestTemplate}.
+     */
+    private final RestTemplate restTemplate;
+
+    /**
+     * Url of the activities endpoint, including the api token. Built once.
+     */
+    private final URI activitiesUri;
+
+    /**
+     * Headers shared by all requests.
+     */
+    private final HttpHeaders headers;
+
+    /**
+     * Senders, the pool size is the maximum number of requests in flight.
+     */
+    private final ExecutorService senders;
+
+    /**
+     * Free places in the queue.
+     */
+    private final Semaphore queuePermits;
+
+    /**
+     * Maximum number of activities waiting or in flight.
+     */
+    private final int queueCapacity;
+
+    /**
+     * Constructor.
+     *
+     * @param restTemplate   Rest Template.
+     * @param apiUrl         base url of the Pipe Drive api.
+     * @param pipeDriveToken Pipe Drive api token.
+     * @param maxInFlight    maximum number of requests in flight.
+     * @param queueCapacity  maximum number of activities waiting or in flight.
+     */
+    @Autowired
+    public PipeDriveActivityPipeline(RestTemplate restTemplate,
+                                     @Value("${pipedrive.api-url:https://api.pipedrive.com}") String apiUrl,
+                                     @Value("${PIPEDRIVE_TOKEN}") String pipeDriveToken,
+                                     @Value("${sweep.pipedrive-concurrency:4}") int maxInFlight,
+                                     @Value("${pipedrive.queue-capacity:1000}") int queueCapacity) {
+        this.restTemplate = restTemplate;
+        this.activitiesUri = UriComponentsBuilder.fromHttpUrl(apiUrl)
+                .path("/v1/activities")
+                .queryParam("api_token", pipeDriveToken)
+                .encode().build().toUri();
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+        this.headers = HttpHeaders.readOnlyHttpHeaders(httpHeaders);
+        AtomicInteger count = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "pipedrive-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queuePermits = new Semaphore(queueCapacity);
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Queue an activity for a gist. Blocks while the queue is full.
+     *
+     * @param gistId  Id of the gist.
+     * @param gistUrl Url of the gist.
+     * @return completes with true if the activity was created, false otherwise. Never completes exceptionally.
+     */
+    public CompletableFuture<Boolean> submit(String gistId, String gistUrl) {
+        queuePermits.acquireUninterruptibly();
+        PipeDriveActivity activity = PipeDriveActivity.forGist(gistId, gistUrl);
+        CompletableFuture<Boolean> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> send(activity), senders);
+        } catch (RuntimeException e) {
+            queuePermits.release();
+            throw e;
+        }
+        return result.whenComplete((success, e) -> queuePermits.release());
+    }
+
+    /**
+     * @return number of activities waiting or in flight.
+     */
+    public int getQueueDepth() {
+        return queueCapacity - queuePermits.availablePermits();
+    }
+
+    /**
+     * Let queued activities be delivered before the application shuts down.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        senders.shutdown();
+        if (!senders.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.error("Pipe Drive activities still queued at shutdown: {}", getQueueDepth());
+            senders.shutdownNow();
+        }
+    }
+
+    /**
+     * Create an activity.
+     *
+     * @param activity the activity.
+     * @return true if the activity is added successfully.
+     */
+    private boolean send(PipeDriveActivity activity) {
+        try {
+            ResponseEntity<PipeDriveResponse> responseEntity = restTemplate.postForEntity(activitiesUri,
+                    new HttpEntity<>(activity, headers), PipeDriveResponse.class);
+            PipeDriveResponse response = responseEntity.getBody();
+            if (response == null || !Boolean.TRUE.equals(response.getSuccess())) {
+                logger.error("Pipe Drive rejected {}: {}", activity.getSubject(),
+                        response == null ? null : response.getError());
+                return false;
+            }
+            return true;
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof CircuitBreakerOpenException) {
+                logger.warn("Not sending {}: {}", activity.getSubject(), e.getCause().getMessage());
+            } else {
+                logger.error(String.format("Error sending %s", activity.getSubject()), e);
+            }
+            return false;
+        }
+    }
+}
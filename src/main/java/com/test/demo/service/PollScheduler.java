@@ -0,0 +1,201 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.UserDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Decides when each user is polled, so Github requests go where new gists appear.
+ * Every user has a next poll time and a polling interval; users are kept ordered by next poll time and each
+ * tick polls the ones that are due, earliest first, at most {@code budget-per-hour} users an hour.
+ * A poll that finds new gists halves the interval of the user, down to {@code min-interval}; one that finds
+ * none doubles it, up to {@code max-interval}, so dormant users back off exponentially.
+ * <p>
+ * The schedule is kept in memory: after a restart every user starts again from {@code initial-interval}
+ * after its last sweep.
+ */
+@Component
+public class PollScheduler {
+
+    /**
+     * Entries ordered by next poll time, guarded by {@code this}.
+     */
+    private final TreeSet<Entry> schedule = new TreeSet<>(
+            Comparator.comparingLong((Entry entry) -> entry.nextPollAt).thenComparing(entry -> entry.key));
+
+    /**
+     * Entries by normalized username, guarded by {@code this}.
+     */
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Registry containing all user being screened.
+     */
+    private final UserRegistry users;
+
+    /**
+     * Shortest polling interval, in milliseconds.
+     */
+    private final long minIntervalMillis;
+
+    /**
+     * Longest polling interval, in milliseconds.
+     */
+    private final long maxIntervalMillis;
+
+    /**
+     * Polling interval of a user not polled yet, in milliseconds.
+     */
+    private final long initialIntervalMillis;
+
+    /**
+     * Maximum number of users polled by a tick.
+     */
+    private final int usersPerTick;
+
+    /**
+     * Constructor.
+     *
+     * @param users                  User Registry.
+     * @param minIntervalMinutes     shortest polling interval, in minutes.
+     * @param maxIntervalMinutes     longest polling interval, in minutes.
+     * @param initialIntervalMinutes polling interval of a user not polled yet, in minutes.
+     * @param budgetPerHour          maximum number of users polled an hour; each poll costs at least one request.
+     * @param tickMillis             time between ticks, in milliseconds.
+     */
+    @Autowired
+    public PollScheduler(UserRegistry users,
+                         @Value("${sweep.adaptive.min-interval-minutes:15}") long minIntervalMinutes,
+                         @Value("${sweep.adaptive.max-interval-minutes:1440}") long maxIntervalMinutes,
+                         @Value("${sweep.adaptive.initial-interval-minutes:180}") long initialIntervalMinutes,
+                         @Value("${sweep.adaptive.budget-per-hour:3000}") int budgetPerHour,
+                         @Value("${sweep.adaptive.tick-millis:60000}") long tickMillis) {
+        this.users = users;
+        this.minIntervalMillis = TimeUnit.MINUTES.toMillis(minIntervalMinutes);
+        this.maxIntervalMillis = TimeUnit.MINUTES.toMillis(maxIntervalMinutes);
+        this.initialIntervalMillis = TimeUnit.MINUTES.toMillis(initialIntervalMinutes);
+        this.usersPerTick = (int) Math.max(1, budgetPerHour * tickMillis / TimeUnit.HOURS.toMillis(1));
+    }
+
+    /**
+     * Take the users due for a poll, within the budget of a tick. Each is rescheduled after its current interval,
+     * which {@link #polled(String, int, long)} adjusts; a poll that fails is retried after that interval.
+     * Users not owned by this replica are looked at again after the shortest interval, in case they move here.
+     *
+     * @param now  current timestamp in epoch millis.
+     * @param owns whether this replica polls a user, by username.
+     * @return the users to poll now, earliest due first.
+     */
+    public synchronized List<UserDTO> due(long now, Predicate<String> owns) {
+        for (UserDTO userDTO : users.snapshot()) {
+            String key = UserRegistry.normalize(userDTO.getUsername());
+            if (!entries.containsKey(key)) {
+                long nextPollAt = userDTO.getLastAdded() == null ? now
+                        : userDTO.getLastAdded().getTime() + initialIntervalMillis;
+                Entry entry = new Entry(key, nextPollAt, initialIntervalMillis);
+                entries.put(key, entry);
+                schedule.add(entry);
+            }
+        }
+        List<UserDTO> due = new ArrayList<>();
+        List<Entry> rescheduled = new ArrayList<>();
+        while (due.size() < usersPerTick && !schedule.isEmpty() && schedule.first().nextPollAt <= now) {
+            Entry entry = schedule.pollFirst();
+            Optional<UserDTO> userDTO = users.find(entry.key);
+            if (!userDTO.isPresent()) {
+                entries.remove(entry.key);
+                continue;
+            }
+            if (owns.test(entry.key)) {
+                entry.nextPollAt = now + entry.intervalMillis;
+                due.add(userDTO.get());
+            } else {
+                entry.nextPollAt = now + minIntervalMillis;
+            }
+            rescheduled.add(entry);
+        }
+        schedule.addAll(rescheduled);
+        return due;
+    }
+
+    /**
+     * Adjust the interval of a user after a poll.
+     *
+     * @param username username of the user.
+     * @param newGists number of new gists found.
+     * @param now      current timestamp in epoch millis.
+     */
+    public synchronized void polled(String username, int newGists, long now) {
+        Entry entry = entries.get(UserRegistry.normalize(username));
+        if (entry == null) {
+            return;
+        }
+        schedule.remove(entry);
+        entry.intervalMillis = newGists > 0
+                ? Math.max(minIntervalMillis, entry.intervalMillis / 2)
+                : Math.min(maxIntervalMillis, entry.intervalMillis * 2);
+        entry.nextPollAt = now + entry.intervalMillis;
+        schedule.add(entry);
+    }
+
+    /**
+     * @param username username of a user.
+     * @return polling interval of the user in milliseconds, {@code null} if not scheduled yet.
+     */
+    public synchronized Long getIntervalMillis(String username) {
+        Entry entry = entries.get(UserRegistry.normalize(username));
+        return entry == null ? null : entry.intervalMillis;
+    }
+
+    /**
+     * @return number of users scheduled.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Schedule of a user. Ordering fields are only changed while out of {@link #schedule}.
+     */
+    private static class Entry {
+
+        /**
+         * Normalized username of the user.
+         */
+        private final String key;
+
+        /**
+         * Timestamp in epoch millis that the user is due.
+         */
+        private long nextPollAt;
+
+        /**
+         * Polling interval, in milliseconds.
+         */
+        private long intervalMillis;
+
+        /**
+         * Constructor.
+         *
+         * @param key            normalized username of the user.
+         * @param nextPollAt     timestamp in epoch millis that the user is due.
+         * @param intervalMillis polling interval, in milliseconds.
+         */
+        private Entry(String key, long nextPollAt, long intervalMillis) {
+            this.key = key;
+            this.nextPollAt = nextPollAt;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+}
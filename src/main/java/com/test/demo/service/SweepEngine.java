@@ -0,0 +1,293 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.SweepProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs a sweep over a collection of items on a bounded worker pool.
+ * Calls to Github are capped separately from the pool size, and only one sweep may run at a time.
+ * Calls to Pipe Drive are capped by {@link PipeDriveActivityPipeline}.
+ */
+@Component
+public class SweepEngine {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(SweepEngine.class);
+
+    /**
+     * Pool of workers processing the items of a sweep.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Permits for concurrent calls to Github.
+     */
+    private final Semaphore gitHubPermits;
+
+    /**
+     * Set while a sweep is running, guarantees sweeps never overlap.
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Number of items scheduled in the current sweep.
+     */
+    private final AtomicInteger total = new AtomicInteger();
+
+    /**
+     * Number of items processed successfully in the current sweep.
+     */
+    private final AtomicInteger completed = new AtomicInteger();
+
+    /**
+     * Number of items failed in the current sweep.
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Timestamp that the current sweep started.
+     */
+    private volatile Date startedAt;
+
+    /**
+     * Timestamp that the last sweep ended.
+     */
+    private volatile Date finishedAt;
+
+    /**
+     * Constructor.
+     *
+     * @param workerCount       size of the worker pool.
+     * @param gitHubConcurrency maximum concurrent calls to Github.
+     */
+    @Autowired
+    public SweepEngine(@Value("${sweep.workers:8}") int workerCount,
+                       @Value("${sweep.github-concurrency:4}") int gitHubConcurrency) {
+        this.workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "sweep-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.gitHubPermits = new Semaphore(gitHubConcurrency, true);
+    }
+
+    /**
+     * Process all items on the worker pool and wait for them to finish.
+     * A failure of one item is logged and counted, it does not stop the others.
+     *
+     * @param items items to process.
+     * @param task  processing of a single item.
+     * @param <T>   type of the items.
+     * @return false if another sweep is still running, in which case nothing is done.
+     */
+    public <T> boolean run(Collection<T> items, Task<T> task) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            reset(items.size());
+
+            List<Future<?>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(workers.submit(() -> {
+                    try {
+                        task.process(item);
+                        completed.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        logger.error(String.format("Error processing %s", item), e);
+                    }
+                }));
+            }
+            awaitAll(futures);
+        } finally {
+            finishedAt = new Date();
+            running.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * Process all items without a thread per item and wait for them to finish.
+     * At most {@code maxConcurrent} items are in progress at once; the others wait for a permit as futures.
+     * A failure of one item is logged and counted, it does not stop the others.
+     *
+     * @param items         items to process.
+     * @param task          non-blocking processing of a single item.
+     * @param maxConcurrent maximum number of items in progress.
+     * @param <T>           type of the items.
+     * @return false if another sweep is still running, in which case nothing is done.
+     */
+    public <T> boolean runAsync(Collection<T> items, AsyncTask<T> task, int maxConcurrent) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            reset(items.size());
+
+            AsyncPermits permits = new AsyncPermits(maxConcurrent);
+            List<Future<?>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(permits.withPermit(() -> task.process(item).thenApply(done -> null)).handle((result, e) -> {
+                    if (e == null) {
+                        completed.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                        logger.error(String.format("Error processing %s", item), e);
+                    }
+                    return null;
+                }));
+            }
+            awaitAll(futures);
+        } finally {
+            finishedAt = new Date();
+            running.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * Run a call to Github, waiting for a free permit first.
+     *
+     * @param call the call.
+     * @param <R>  result type.
+     * @return result of the call.
+     */
+    public <R> R callGitHub(Supplier<R> call) {
+        return withPermit(gitHubPermits, call);
+    }
+
+    /**
+     * @return whether a sweep is running right now.
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return progress of the current sweep, or of the last one if none is running.
+     */
+    public SweepProgress getProgress() {
+        SweepProgress progress = new SweepProgress();
+        progress.setRunning(running.get());
+        progress.setTotal(total.get());
+        progress.setCompleted(completed.get());
+        progress.setFailed(failed.get());
+        progress.setStartedAt(startedAt);
+        progress.setFinishedAt(finishedAt);
+        return progress;
+    }
+
+    /**
+     * Stop the workers when the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Reset the progress for a new sweep.
+     *
+     * @param size number of items of the sweep.
+     */
+    private void reset(int size) {
+        total.set(size);
+        completed.set(0);
+        failed.set(0);
+        startedAt = new Date();
+        finishedAt = null;
+    }
+
+    /**
+     * Wait for all futures. If interrupted, cancel the remaining ones.
+     *
+     * @param futures futures of the sweep.
+     */
+    private void awaitAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // item failures are handled inside the task wrapper
+                logger.error("Unexpected sweep failure", e);
+            }
+        }
+    }
+
+    /**
+     * Run a call while holding a permit of the given semaphore.
+     *
+     * @param permits semaphore of the upstream.
+     * @param call    the call.
+     * @param <R>     result type.
+     * @return result of the call.
+     */
+    private <R> R withPermit(Semaphore permits, Supplier<R> call) {
+        permits.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Processing of a single item of a sweep.
+     *
+     * @param <T> type of the item.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        /**
+         * @param item item to process.
+         * @throws Exception if processing fails.
+         */
+        void process(T item) throws Exception;
+    }
+
+    /**
+     * Non-blocking processing of a single item of a sweep.
+     *
+     * @param <T> type of the item.
+     */
+    @FunctionalInterface
+    public interface AsyncTask<T> {
+        /**
+         * @param item item to process.
+         * @return completes when the item is processed, exceptionally if processing fails.
+         */
+        CompletableFuture<?> process(T item);
+    }
+}
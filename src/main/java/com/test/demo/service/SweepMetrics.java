@@ -0,0 +1,246 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.SweepProgress;
+import com.test.demo.dto.UserDTO;
+import com.test.demo.persistence.OutboxStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters of the gist sweep, on {@code /actuator/metrics} and {@code /actuator/prometheus}:
+ * <ul>
+ * <li>{@code sweep.duration}: timer of whole sweeps, tagged {@code outcome} complete or partial.</li>
+ * <li>{@code sweep.user.duration}: timer of each user, tagged {@code outcome} success or failure.</li>
+ * <li>{@code sweep.gists.discovered}: counter of new gists fetched from Github.</li>
+ * <li>{@code sweep.activities}: counter of gists, tagged {@code result} created, failed or skipped
+ * (already had an activity).</li>
+ * <li>{@code sweep.users}: gauge of the users of the current sweep, tagged {@code state}.</li>
+ * <li>{@code sweep.lag}: gauge of the seconds since the least recently swept user was swept.</li>
+ * <li>{@code pipedrive.queue.depth}: gauge of the activities waiting or in flight, tagged {@code client}.</li>
+ * </ul>
+ */
+@Component
+public class SweepMetrics {
+
+    /**
+     * Registry the meters are registered in.
+     */
+    private final MeterRegistry registry;
+
+    /**
+     * New gists fetched from Github.
+     */
+    private final Counter gistsDiscovered;
+
+    /**
+     * Activities created.
+     */
+    private final Counter activitiesCreated;
+
+    /**
+     * Activities that could not be created.
+     */
+    private final Counter activitiesFailed;
+
+    /**
+     * Gists skipped because they already had an activity.
+     */
+    private final Counter activitiesSkipped;
+
+    /**
+     * Activities dead-lettered by the outbox.
+     */
+    private final Counter activitiesDead;
+
+    /**
+     * Constructor.
+     *
+     * @param registry            registry the meters are registered in.
+     * @param sweepEngine         Sweep Engine, for the progress of the current sweep.
+     * @param users               User Registry, for the sweep lag.
+     * @param activityPipeline    Pipe Drive Activity Pipeline, for its queue depth.
+     * @param asyncActivityClient non-blocking Pipe Drive Activity Client, for its queue depth, if enabled.
+     * @param outboxStore         Outbox Store, for the activities waiting in the outbox.
+     */
+    @Autowired
+    public SweepMetrics(MeterRegistry registry, SweepEngine sweepEngine, UserRegistry users,
+                        PipeDriveActivityPipeline activityPipeline,
+                        Optional<AsyncPipeDriveActivityClient> asyncActivityClient, OutboxStore outboxStore) {
+        this.registry = registry;
+        this.gistsDiscovered = Counter.builder("sweep.gists.discovered")
+                .description("New gists fetched from Github")
+                .register(registry);
+        this.activitiesCreated = activities("created");
+        this.activitiesFailed = activities("failed");
+        this.activitiesSkipped = activities("skipped");
+        this.activitiesDead = activities("dead");
+        usersGauge(sweepEngine, "pending", progress -> progress.isRunning()
+                ? progress.getTotal() - progress.getCompleted() - progress.getFailed() : 0);
+        usersGauge(sweepEngine, "completed", SweepProgress::getCompleted);
+        usersGauge(sweepEngine, "failed", SweepProgress::getFailed);
+        Gauge.builder("sweep.lag", users, SweepMetrics::lagSeconds)
+                .description("Seconds since the least recently swept user was swept")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("pipedrive.queue.depth", activityPipeline, PipeDriveActivityPipeline::getQueueDepth)
+                .description("Activities waiting or in flight")
+                .tag("client", "blocking")
+                .register(registry);
+        asyncActivityClient.ifPresent(client ->
+                Gauge.builder("pipedrive.queue.depth", client, AsyncPipeDriveActivityClient::getQueueDepth)
+                        .description("Activities waiting or in flight")
+                        .tag("client", "non-blocking")
+                        .register(registry));
+        Gauge.builder("pipedrive.outbox", outboxStore, OutboxStore::getPendingCount)
+                .description("Activities in the outbox")
+                .tag("state", "pending")
+                .register(registry);
+        Gauge.builder("pipedrive.outbox", outboxStore, OutboxStore::getDeadCount)
+                .description("Activities in the outbox")
+                .tag("state", "dead")
+                .register(registry);
+    }
+
+    /**
+     * Time each user processed by a task.
+     *
+     * @param task processes a user.
+     * @return the same task, timed.
+     */
+    public SweepEngine.Task<UserDTO> timed(SweepEngine.Task<UserDTO> task) {
+        return userDTO -> {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                task.process(userDTO);
+                success = true;
+            } finally {
+                userSwept(start, success);
+            }
+        };
+    }
+
+    /**
+     * Time each user processed by a non-blocking task, until its future completes.
+     *
+     * @param task processes a user.
+     * @return the same task, timed.
+     */
+    public SweepEngine.AsyncTask<UserDTO> timed(SweepEngine.AsyncTask<UserDTO> task) {
+        return userDTO -> {
+            long start = System.nanoTime();
+            CompletableFuture<?> processed;
+            try {
+                processed = task.process(userDTO);
+            } catch (RuntimeException e) {
+                userSwept(start, false);
+                throw e;
+            }
+            return processed.whenComplete((done, e) -> userSwept(start, e == null));
+        };
+    }
+
+    /**
+     * Record a sweep.
+     *
+     * @param startNanos {@link System#nanoTime()} when the sweep started.
+     * @param complete   whether every user was processed.
+     */
+    public void sweepEnded(long startNanos, boolean complete) {
+        Timer.builder("sweep.duration")
+                .description("Duration of gist sweeps")
+                .tag("outcome", complete ? "complete" : "partial")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param count number of new gists fetched from Github.
+     */
+    public void gistsDiscovered(int count) {
+        gistsDiscovered.increment(count);
+    }
+
+    /**
+     * @param created whether an activity was created, or could not be.
+     */
+    public void activitySent(boolean created) {
+        (created ? activitiesCreated : activitiesFailed).increment();
+    }
+
+    /**
+     * Count an activity that failed every attempt, see {@link ActivityOutbox}.
+     */
+    public void activityDeadLettered() {
+        activitiesDead.increment();
+    }
+
+    /**
+     * Count a gist skipped because it already had an activity.
+     */
+    public void activitySkipped() {
+        activitiesSkipped.increment();
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when processing the user started.
+     * @param success    whether the user was processed.
+     */
+    private void userSwept(long startNanos, boolean success) {
+        Timer.builder("sweep.user.duration")
+                .description("Duration of processing a user in a gist sweep")
+                .tag("outcome", success ? "success" : "failure")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param result result tag.
+     * @return counter of gists with that result.
+     */
+    private Counter activities(String result) {
+        return Counter.builder("sweep.activities")
+                .description("Gists sent to Pipe Drive as activities")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * @param sweepEngine Sweep Engine.
+     * @param state       state tag.
+     * @param value       number of users in that state.
+     */
+    private void usersGauge(SweepEngine sweepEngine, String state, ToDoubleFunction<SweepProgress> value) {
+        Gauge.builder("sweep.users", sweepEngine, engine -> value.applyAsDouble(engine.getProgress()))
+                .description("Users of the current (or last) gist sweep")
+                .tag("state", state)
+                .register(registry);
+    }
+
+    /**
+     * Users that were never swept are left out, the lag is 0 if there are none.
+     *
+     * @param users User Registry.
+     * @return seconds since the least recently swept user was swept.
+     */
+    private static double lagSeconds(UserRegistry users) {
+        long oldest = Long.MAX_VALUE;
+        for (UserDTO userDTO : users.snapshot()) {
+            Date lastAdded = userDTO.getLastAdded();
+            if (lastAdded != null && lastAdded.getTime() < oldest) {
+                oldest = lastAdded.getTime();
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : (System.currentTimeMillis() - oldest) / 1000.0;
+    }
+}
@@ -0,0 +1,302 @@
+package com.test.demo.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.UserAlreadyExistsException;
+import com.test.demo.dto.UserDTO;
+import com.test.demo.dto.UserImportResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Imports and exports users in bulk. Both directions work one record at a time: the imported body is read
+ * line by line and the result of each line is written as soon as it is known, and exports write each user
+ * straight from {@link UserRegistry}, so the full list is never held in memory.
+ */
+@Component
+public class UserBulkTransfer {
+
+    /**
+     * Github usernames: alphanumerics and single hyphens between them, at most 39 characters.
+     */
+    static final Pattern GITHUB_USERNAME =
+            Pattern.compile("[A-Za-z0-9](?:[A-Za-z0-9]|-(?=[A-Za-z0-9])){0,38}");
+
+    /**
+     * Header line of csv exports; a csv import may start with it.
+     */
+    private static final String CSV_HEADER = "username,lastVisit,lastAdded,cursor";
+
+    /**
+     * Results are flushed to the client every this many lines.
+     */
+    private static final int FLUSH_EVERY = 100;
+
+    /**
+     * Injected Main Service.
+     */
+    private final MainService mainService;
+
+    /**
+     * Jackson Object mapper, configured like the one of the controllers.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Constructor.
+     *
+     * @param mainService Main Service.
+     * @param mapper      Jackson Object mapper of the application.
+     */
+    @Autowired
+    public UserBulkTransfer(MainService mainService, ObjectMapper mapper) {
+        this.mainService = mainService;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Add a user for every line of the body, skipping blank lines and a leading csv header.
+     * Writes one json result per line, see {@link UserImportResult}.
+     *
+     * @param body   ndjson objects with a {@code username} field, or csv with the username in the first column.
+     * @param format format of the body, {@link Format#NDJSON} or {@link Format#CSV}.
+     * @param out    receives the results as ndjson.
+     * @return number of users added.
+     * @throws IOException if reading the body or writing the results fails.
+     */
+    public long importUsers(InputStream body, Format format, OutputStream out) throws IOException {
+        if (format == Format.JSON) {
+            throw new IllegalArgumentException("Users are imported from ndjson or csv");
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long added = 0;
+        long line = 0;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.trim().isEmpty() || (format == Format.CSV && line == 1 && isCsvHeader(text))) {
+                continue;
+            }
+            UserImportResult result = importLine(line, text, format);
+            if ("ADDED".equals(result.getResult())) {
+                added++;
+            }
+            writer.write(mapper.writeValueAsString(result));
+            writer.write('\n');
+            if (line % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return added;
+    }
+
+    /**
+     * Write all users.
+     *
+     * @param format {@link Format#JSON} for a json array, {@link Format#NDJSON} for a json object per line,
+     *               or {@link Format#CSV} with a header line.
+     * @param out    receives the users.
+     * @throws IOException if writing fails.
+     */
+    public void exportUsers(Format format, OutputStream out) throws IOException {
+        try {
+            if (format == Format.JSON) {
+                writeJson(mainService::forEachUser, out);
+                return;
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+            mainService.forEachUser(userDTO -> write(() -> {
+                writer.write(format == Format.CSV ? toCsv(userDTO) : mapper.writeValueAsString(userDTO));
+                writer.write('\n');
+            }));
+            writer.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write some users as a json array.
+     *
+     * @param userDTOs the users.
+     * @param out      receives the users.
+     * @throws IOException if writing fails.
+     */
+    public void writeJson(Collection<UserDTO> userDTOs, OutputStream out) throws IOException {
+        try {
+            writeJson(userDTOs::forEach, out);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param users passes each user to the given action.
+     * @param out   receives the users as a json array.
+     * @throws IOException if writing fails.
+     */
+    private void writeJson(Consumer<Consumer<UserDTO>> users, OutputStream out) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(out);
+        generator.writeStartArray();
+        users.accept(userDTO -> write(() -> generator.writeObject(userDTO)));
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    /**
+     * @param line   line number.
+     * @param text   the line.
+     * @param format format of the line.
+     * @return result of adding the user of the line.
+     */
+    private UserImportResult importLine(long line, String text, Format format) {
+        String username;
+        try {
+            username = format == Format.CSV ? fromCsv(text) : fromNdjson(text);
+        } catch (IOException e) {
+            return new UserImportResult(line, null, "INVALID", "Malformed json");
+        }
+        if (username == null || !GITHUB_USERNAME.matcher(username).matches()) {
+            return new UserImportResult(line, username, "INVALID", "Not a Github username");
+        }
+        try {
+            mainService.addUser(username);
+            return new UserImportResult(line, username, "ADDED", null);
+        } catch (UserAlreadyExistsException e) {
+            return new UserImportResult(line, username, "EXISTS", null);
+        }
+    }
+
+    /**
+     * @param text a json object.
+     * @return its {@code username} field, {@code null} if missing.
+     * @throws IOException if the line is not json.
+     */
+    private String fromNdjson(String text) throws IOException {
+        JsonNode username = mapper.readTree(text).path("username");
+        return username.isTextual() ? username.asText().trim() : null;
+    }
+
+    /**
+     * @param text a csv line.
+     * @return its first column, unquoted.
+     */
+    private static String fromCsv(String text) {
+        int comma = text.indexOf(',');
+        String username = (comma < 0 ? text : text.substring(0, comma)).trim();
+        if (username.length() >= 2 && username.startsWith("\"") && username.endsWith("\"")) {
+            username = username.substring(1, username.length() - 1).trim();
+        }
+        return username;
+    }
+
+    /**
+     * @param text first line of a csv body.
+     * @return whether it is a header rather than a user.
+     */
+    private static boolean isCsvHeader(String text) {
+        return fromCsv(text).toLowerCase(Locale.ROOT).equals("username");
+    }
+
+    /**
+     * @param userDTO a user.
+     * @return the user as a csv line, dates as ISO 8601 instants.
+     */
+    private static String toCsv(UserDTO userDTO) {
+        return userDTO.getUsername() + ',' + toCsv(userDTO.getLastVisit()) + ','
+                + toCsv(userDTO.getLastAdded()) + ',' + toCsv(userDTO.getCursor());
+    }
+
+    /**
+     * @param date a date, may be {@code null}.
+     * @return the date as an ISO 8601 instant, empty if {@code null}.
+     */
+    private static String toCsv(Date date) {
+        return date == null ? "" : date.toInstant().toString();
+    }
+
+    /**
+     * Run a write inside a lambda that cannot throw checked exceptions.
+     *
+     * @param write the write.
+     */
+    private static void write(IoAction write) {
+        try {
+            write.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A write that may fail.
+     */
+    private interface IoAction {
+
+        /**
+         * @throws IOException if writing fails.
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Formats of bulk transfers.
+     */
+    public enum Format {
+        /**
+         * A json array, export only.
+         */
+        JSON("application/json"),
+        /**
+         * A json object per line.
+         */
+        NDJSON("application/x-ndjson"),
+        /**
+         * Comma separated values with a header line.
+         */
+        CSV("text/csv");
+
+        /**
+         * Media type of the format.
+         */
+        private final String mediaType;
+
+        /**
+         * @param mediaType media type of the format.
+         */
+        Format(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        /**
+         * @return {@code mediaType}.
+         * @see #mediaType
+         */
+        public String getMediaType() {
+            return mediaType;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.UserDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Registry of the users being screened.
+ * Users are keyed by their lower-cased username, so add, remove and lookup are constant time
+ * and case-insensitive. Safe to be used by the controller and the scheduled sweep at the same time.
+ * The keys are also kept sorted, so the users can be read page by page with a cursor.
+ */
+@Component
+public class UserRegistry {
+
+    /**
+     * Users, keyed by normalized username.
+     */
+    private final ConcurrentMap<String, UserDTO> users = new ConcurrentHashMap<>();
+
+    /**
+     * Keys of {@link #users} in order, changed together with them under the lock of their map entry.
+     */
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+
+    /**
+     * Normalize a username to be used as a key.
+     *
+     * @param username Github username.
+     * @return lower-cased username.
+     */
+    public static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Add a user if no user with the same (case-insensitive) username exists.
+     *
+     * @param userDTO the user.
+     * @return true if the user was added, false if it already existed.
+     */
+    public boolean add(UserDTO userDTO) {
+        boolean[] added = new boolean[1];
+        users.computeIfAbsent(normalize(userDTO.getUsername()), key -> {
+            keys.add(key);
+            added[0] = true;
+            return userDTO;
+        });
+        return added[0];
+    }
+
+    /**
+     * Remove a user.
+     *
+     * @param username username of the user.
+     * @return the removed user, or empty if it did not exist.
+     */
+    public Optional<UserDTO> remove(String username) {
+        UserDTO[] removed = new UserDTO[1];
+        users.computeIfPresent(normalize(username), (key, userDTO) -> {
+            keys.remove(key);
+            removed[0] = userDTO;
+            return null;
+        });
+        return Optional.ofNullable(removed[0]);
+    }
+
+    /**
+     * Find a user.
+     *
+     * @param username username of the user.
+     * @return the user, or empty if it does not exist.
+     */
+    public Optional<UserDTO> find(String username) {
+        return Optional.ofNullable(users.get(normalize(username)));
+    }
+
+    /**
+     * @param username username of the user.
+     * @return whether the user exists.
+     */
+    public boolean contains(String username) {
+        return users.containsKey(normalize(username));
+    }
+
+    /**
+     * @return number of users.
+     */
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * A read-only, weakly consistent view of all users.
+     * Iterating it never throws {@link java.util.ConcurrentModificationException} and does not copy the users.
+     *
+     * @return all users.
+     */
+    public Collection<UserDTO> snapshot() {
+        return Collections.unmodifiableCollection(users.values());
+    }
+
+    /**
+     * A page of users in username order (ignoring case), weakly consistent like {@link #snapshot()}.
+     *
+     * @param after username of the last user of the previous page, {@code null} for the first page.
+     * @param limit maximum number of users.
+     * @return users after {@code after}, at most {@code limit}.
+     */
+    public List<UserDTO> page(String after, int limit) {
+        NavigableSet<String> tail = after == null ? keys : keys.tailSet(normalize(after), false);
+        List<UserDTO> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String key : tail) {
+            if (page.size() >= limit) {
+                break;
+            }
+            UserDTO userDTO = users.get(key);
+            if (userDTO != null) {
+                page.add(userDTO);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Add all given users, skipping duplicates.
+     *
+     * @param userDTOs users to add.
+     */
+    public void addAll(Collection<UserDTO> userDTOs) {
+        userDTOs.forEach(this::add);
+    }
+
+    /**
+     * Remove all users.
+     */
+    public void clear() {
+        users.clear();
+        keys.clear();
+    }
+}
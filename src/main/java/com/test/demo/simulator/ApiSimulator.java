@@ -0,0 +1,570 @@
+package com.test.demo.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embeddable stand-in for the parts of the Github and Pipe Drive apis used by the sweep, for load tests
+ * without real accounts. Both apis are served on the same port:
+ * <ul>
+ * <li>{@code GET /users/{username}/gists} with {@code per_page}, {@code page} and {@code since}, {@code Link}
+ * headers, weak ETags answered with 304 (Not Modified), and {@code X-RateLimit-*} headers of a fixed window,
+ * answering 403 once it is used up.</li>
+ * <li>{@code POST /v1/activities}, which needs an {@code api_token} and answers like Pipe Drive.</li>
+ * </ul>
+ * Every user has {@link #setGistsPerUser(int) a number of gists} from the start and, if
+ * {@link #setNewGistIntervalMillis(long) enabled}, a new one per interval, so nothing is stored per user.
+ * Latency and error rates of both apis can be changed while running. Handler threads are daemons and
+ * unbounded, so latency does not limit throughput.
+ */
+public class ApiSimulator implements AutoCloseable {
+
+    static {
+        // without it the server's small writes wait for delayed acks, adding ~40ms to every response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(ApiSimulator.class);
+
+    /**
+     * Page size when {@code per_page} is missing, as on Github.
+     */
+    static final int DEFAULT_PAGE_SIZE = 30;
+
+    /**
+     * Maximum page size, as on Github.
+     */
+    static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * The server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Handler threads of the server.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Timestamp that the gist timelines start from, in epoch millis.
+     */
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * Number of gists every user has from the start.
+     */
+    private volatile int gistsPerUser = 10;
+
+    /**
+     * Every user gets a new gist per this many milliseconds, 0 for none.
+     */
+    private volatile long newGistIntervalMillis;
+
+    /**
+     * Latency of a Github response, in milliseconds.
+     */
+    private volatile long gitHubLatencyMillis;
+
+    /**
+     * Latency of a Pipe Drive response, in milliseconds.
+     */
+    private volatile long pipeDriveLatencyMillis;
+
+    /**
+     * Random latency added to every response, up to this many milliseconds.
+     */
+    private volatile long latencyJitterMillis;
+
+    /**
+     * Share of Github requests failing with 502 (Bad Gateway), between 0 and 1.
+     */
+    private volatile double gitHubErrorRate;
+
+    /**
+     * Share of Pipe Drive requests failing with 500 (Internal Server Error), between 0 and 1.
+     */
+    private volatile double pipeDriveErrorRate;
+
+    /**
+     * Github requests allowed per rate limit window.
+     */
+    private volatile int rateLimit = 5000;
+
+    /**
+     * Length of a rate limit window, in seconds.
+     */
+    private volatile long rateLimitWindowSeconds = 3600;
+
+    /**
+     * Timestamp that the current rate limit window started, in epoch millis.
+     */
+    private long windowStartedAt = startedAt;
+
+    /**
+     * Github requests counted against the current window.
+     */
+    private int windowUsed;
+
+    /**
+     * Gist pages served with 200 (Ok).
+     */
+    private final AtomicLong gistPages = new AtomicLong();
+
+    /**
+     * Gist pages answered with 304 (Not Modified).
+     */
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Github requests rejected because of the rate limit.
+     */
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    /**
+     * Github requests failed on purpose.
+     */
+    private final AtomicLong gitHubErrors = new AtomicLong();
+
+    /**
+     * Activities created.
+     */
+    private final AtomicLong activities = new AtomicLong();
+
+    /**
+     * Pipe Drive requests failed on purpose or rejected.
+     */
+    private final AtomicLong pipeDriveErrors = new AtomicLong();
+
+    /**
+     * Start the simulator.
+     *
+     * @param host host to bind to.
+     * @param port port to listen on, 0 for any free port.
+     * @throws IOException if the server cannot be started.
+     */
+    public ApiSimulator(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 1024);
+        server.createContext("/users/", this::handleGists);
+        server.createContext("/v1/activities", this::handleActivity);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("api-simulator-");
+        threadFactory.setDaemon(true);
+        executor = Executors.newCachedThreadPool(threadFactory);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Github and Pipe Drive simulator listening on {}", getBaseUrl());
+    }
+
+    /**
+     * @return base url of both apis, e.g. for {@code github.api-url} and {@code pipedrive.api-url}.
+     */
+    public String getBaseUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    /**
+     * @return port the simulator listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the simulator.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * A gist shaped like the ones of the Github api, about 1.5 KB of json.
+     *
+     * @param id        id of the gist.
+     * @param updatedAt timestamp that the gist was last updated.
+     * @return json of the gist.
+     */
+    public static String gistJson(String id, Instant updatedAt) {
+        String url = "https://api.github.com/gists/" + id;
+        return "{\"url\":\"" + url + "\",\"forks_url\":\"" + url + "/forks\",\"commits_url\":\"" + url
+                + "/commits\",\"id\":\"" + id + "\",\"node_id\":\"MDQ6R2lzdA" + id + "\",\"git_pull_url\":"
+                + "\"https://gist.github.com/" + id + ".git\",\"git_push_url\":\"https://gist.github.com/" + id
+                + ".git\",\"html_url\":\"https://gist.github.com/" + id + "\",\"files\":{\"notes.md\":{"
+                + "\"filename\":\"notes.md\",\"type\":\"text/markdown\",\"language\":\"Markdown\",\"raw_url\":"
+                + "\"https://gist.githubusercontent.com/octocat/" + id + "/raw/notes.md\",\"size\":1024}},"
+                + "\"public\":true,\"created_at\":\"2019-01-01T00:00:00Z\",\"updated_at\":\""
+                + Instant.ofEpochSecond(updatedAt.getEpochSecond()) + "\",\"description\":\"Simulated gist " + id
+                + "\",\"comments\":0,\"user\":null,\"comments_url\":\"" + url + "/comments\",\"owner\":{"
+                + "\"login\":\"octocat\",\"id\":583231,\"node_id\":\"MDQ6VXNlcjU4MzIzMQ==\",\"avatar_url\":"
+                + "\"https://avatars.githubusercontent.com/u/583231?v=4\",\"gravatar_id\":\"\",\"url\":"
+                + "\"https://api.github.com/users/octocat\",\"html_url\":\"https://github.com/octocat\","
+                + "\"type\":\"User\",\"site_admin\":false},\"truncated\":false}";
+    }
+
+    /**
+     * Serve a page of a user's gists, newest first.
+     *
+     * @param exchange the exchange.
+     * @throws IOException if the response cannot be written.
+     */
+    private void handleGists(HttpExchange exchange) throws IOException {
+        String[] segments = exchange.getRequestURI().getPath().split("/");
+        if (segments.length != 4 || !"gists".equals(segments[3]) || !"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 404, "{\"message\":\"Not Found\"}");
+            return;
+        }
+        delay(gitHubLatencyMillis);
+        long now = System.currentTimeMillis();
+        if (!withinRateLimit(now)) {
+            rateLimited.incrementAndGet();
+            rateLimitHeaders(exchange, false);
+            respond(exchange, 403, "{\"message\":\"API rate limit exceeded\"}");
+            return;
+        }
+        if (ThreadLocalRandom.current().nextDouble() < gitHubErrorRate) {
+            gitHubErrors.incrementAndGet();
+            rateLimitHeaders(exchange, false);
+            respond(exchange, 502, "{\"message\":\"Server Error\"}");
+            return;
+        }
+
+        Map<String, String> query = UriComponentsBuilder.fromUri(exchange.getRequestURI()).build()
+                .getQueryParams().toSingleValueMap();
+        String username = segments[2];
+        int perPage = Math.max(1, Math.min(MAX_PAGE_SIZE, intParam(query.get("per_page"), DEFAULT_PAGE_SIZE)));
+        int page = Math.max(1, intParam(query.get("page"), 1));
+        long sinceSecond = query.containsKey("since")
+                ? OffsetDateTime.parse(query.get("since")).toEpochSecond() : Long.MIN_VALUE;
+
+        // gists are numbered oldest first; those updated at or after since are the newest ones
+        long count = gistCount(now);
+        long matching = 0;
+        while (matching < count && updatedSecond(count - 1 - matching) >= sinceSecond) {
+            matching++;
+        }
+        long first = (long) (page - 1) * perPage;
+        long last = Math.min(matching, first + perPage);
+
+        // the page holds the gists numbered count - 1 - first down to count - last
+        String eTag = "W/\"" + Integer.toHexString(Objects.hash(username.toLowerCase(), count, first, last)) + "\"";
+        exchange.getResponseHeaders().add("ETag", eTag);
+        if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            rateLimitHeaders(exchange, false);
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        rateLimitHeaders(exchange, true);
+        if (last < matching) {
+            exchange.getResponseHeaders().add("Link", "<" + pageUrl(exchange, page + 1) + ">; rel=\"next\", <"
+                    + pageUrl(exchange, (int) ((matching + perPage - 1) / perPage)) + ">; rel=\"last\"");
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (long i = first; i < last; i++) {
+            long number = count - 1 - i;
+            json.append(i == first ? "" : ",")
+                    .append(gistJson(gistId(username, number), Instant.ofEpochSecond(updatedSecond(number))));
+        }
+        gistPages.incrementAndGet();
+        respond(exchange, 200, json.append(']').toString());
+    }
+
+    /**
+     * Create an activity.
+     *
+     * @param exchange the exchange.
+     * @throws IOException if the response cannot be written.
+     */
+    private void handleActivity(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "{\"success\":false,\"error\":\"Method not allowed\"}");
+            return;
+        }
+        try (InputStream body = exchange.getRequestBody()) {
+            StreamUtils.drain(body);
+        }
+        delay(pipeDriveLatencyMillis);
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || !query.contains("api_token=")) {
+            pipeDriveErrors.incrementAndGet();
+            respond(exchange, 401, "{\"success\":false,\"error\":\"unauthorized access\"}");
+            return;
+        }
+        if (ThreadLocalRandom.current().nextDouble() < pipeDriveErrorRate) {
+            pipeDriveErrors.incrementAndGet();
+            respond(exchange, 500, "{\"success\":false,\"error\":\"Simulated failure\"}");
+            return;
+        }
+        respond(exchange, 201, "{\"success\":true,\"data\":{\"id\":" + activities.incrementAndGet() + "}}");
+    }
+
+    /**
+     * Start a new rate limit window if the current one is over.
+     *
+     * @param now current timestamp.
+     * @return false if the window is used up.
+     */
+    private synchronized boolean withinRateLimit(long now) {
+        if (now >= windowStartedAt + TimeUnit.SECONDS.toMillis(rateLimitWindowSeconds)) {
+            windowStartedAt = now;
+            windowUsed = 0;
+        }
+        return windowUsed < rateLimit;
+    }
+
+    /**
+     * Add the rate limit headers of the current window.
+     *
+     * @param exchange the exchange.
+     * @param counted  whether the request counts against the window; 304 responses are free, as on Github.
+     */
+    private synchronized void rateLimitHeaders(HttpExchange exchange, boolean counted) {
+        if (counted) {
+            windowUsed++;
+        }
+        long resetAt = windowStartedAt + TimeUnit.SECONDS.toMillis(rateLimitWindowSeconds);
+        exchange.getResponseHeaders().add("X-RateLimit-Limit", String.valueOf(rateLimit));
+        exchange.getResponseHeaders().add("X-RateLimit-Remaining",
+                String.valueOf(Math.max(0, rateLimit - windowUsed)));
+        exchange.getResponseHeaders().add("X-RateLimit-Used", String.valueOf(windowUsed));
+        exchange.getResponseHeaders().add("X-RateLimit-Reset",
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(resetAt + 999)));
+        exchange.getResponseHeaders().add("X-RateLimit-Resource", "core");
+    }
+
+    /**
+     * @param now current timestamp.
+     * @return number of gists every user has now.
+     */
+    private long gistCount(long now) {
+        long interval = newGistIntervalMillis;
+        return gistsPerUser + (interval > 0 ? (now - startedAt) / interval : 0);
+    }
+
+    /**
+     * @param number number of the gist, 0 for the oldest.
+     * @return epoch second that the gist was last updated; the first gists are a minute apart before the start.
+     */
+    private long updatedSecond(long number) {
+        long initial = gistsPerUser;
+        long millis = number < initial
+                ? startedAt - TimeUnit.MINUTES.toMillis(initial - number)
+                : startedAt + (number - initial + 1) * newGistIntervalMillis;
+        return TimeUnit.MILLISECONDS.toSeconds(millis);
+    }
+
+    /**
+     * @param username Github username.
+     * @param number   number of the gist.
+     * @return id of the gist, unique across users.
+     */
+    private static String gistId(String username, long number) {
+        return String.format("%016x%08x", username.toLowerCase().hashCode() * 0x9E3779B97F4A7C15L, number);
+    }
+
+    /**
+     * @param exchange the exchange.
+     * @param page     number of the page.
+     * @return url of the page, keeping the other query parameters.
+     */
+    private static String pageUrl(HttpExchange exchange, int page) {
+        URI uri = exchange.getRequestURI();
+        return UriComponentsBuilder.fromHttpUrl("http://" + exchange.getRequestHeaders().getFirst("Host"))
+                .path(uri.getRawPath())
+                .query(uri.getRawQuery())
+                .replaceQueryParam("page", page)
+                .build()
+                .toUriString();
+    }
+
+    /**
+     * @param value        value of the parameter, may be {@code null}.
+     * @param defaultValue value if missing or not a number.
+     * @return the parameter.
+     */
+    private static int intParam(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Wait for the given latency plus jitter.
+     *
+     * @param latencyMillis latency in milliseconds.
+     */
+    private void delay(long latencyMillis) {
+        long jitter = latencyJitterMillis;
+        long millis = latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param exchange   the exchange.
+     * @param statusCode status code of the response.
+     * @param json       json body.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void respond(HttpExchange exchange, int statusCode, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getRequestBody().close();
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * @param gistsPerUser number of gists every user has from the start.
+     * @see #gistsPerUser
+     */
+    public void setGistsPerUser(int gistsPerUser) {
+        this.gistsPerUser = gistsPerUser;
+    }
+
+    /**
+     * @param newGistIntervalMillis every user gets a new gist per this many milliseconds, 0 for none;
+     *                              Github timestamps have second precision, so keep it at 1000 or more.
+     * @see #newGistIntervalMillis
+     */
+    public void setNewGistIntervalMillis(long newGistIntervalMillis) {
+        this.newGistIntervalMillis = newGistIntervalMillis;
+    }
+
+    /**
+     * @param gitHubLatencyMillis latency of a Github response, in milliseconds.
+     * @see #gitHubLatencyMillis
+     */
+    public void setGitHubLatencyMillis(long gitHubLatencyMillis) {
+        this.gitHubLatencyMillis = gitHubLatencyMillis;
+    }
+
+    /**
+     * @param pipeDriveLatencyMillis latency of a Pipe Drive response, in milliseconds.
+     * @see #pipeDriveLatencyMillis
+     */
+    public void setPipeDriveLatencyMillis(long pipeDriveLatencyMillis) {
+        this.pipeDriveLatencyMillis = pipeDriveLatencyMillis;
+    }
+
+    /**
+     * @param latencyJitterMillis random latency added to every response, up to this many milliseconds.
+     * @see #latencyJitterMillis
+     */
+    public void setLatencyJitterMillis(long latencyJitterMillis) {
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    /**
+     * @param gitHubErrorRate share of Github requests failing, between 0 and 1.
+     * @see #gitHubErrorRate
+     */
+    public void setGitHubErrorRate(double gitHubErrorRate) {
+        this.gitHubErrorRate = gitHubErrorRate;
+    }
+
+    /**
+     * @param pipeDriveErrorRate share of Pipe Drive requests failing, between 0 and 1.
+     * @see #pipeDriveErrorRate
+     */
+    public void setPipeDriveErrorRate(double pipeDriveErrorRate) {
+        this.pipeDriveErrorRate = pipeDriveErrorRate;
+    }
+
+    /**
+     * @param rateLimit              Github requests allowed per window.
+     * @param rateLimitWindowSeconds length of a window, in seconds; a new window starts now.
+     */
+    public synchronized void setRateLimit(int rateLimit, long rateLimitWindowSeconds) {
+        this.rateLimit = rateLimit;
+        this.rateLimitWindowSeconds = rateLimitWindowSeconds;
+        windowStartedAt = System.currentTimeMillis();
+        windowUsed = 0;
+    }
+
+    /**
+     * @return {@code gistPages}
+     * @see #gistPages
+     */
+    public long getGistPages() {
+        return gistPages.get();
+    }
+
+    /**
+     * @return {@code notModified}
+     * @see #notModified
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return {@code rateLimited}
+     * @see #rateLimited
+     */
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    /**
+     * @return {@code gitHubErrors}
+     * @see #gitHubErrors
+     */
+    public long getGitHubErrors() {
+        return gitHubErrors.get();
+    }
+
+    /**
+     * @return {@code activities}
+     * @see #activities
+     */
+    public long getActivities() {
+        return activities.get();
+    }
+
+    /**
+     * @return {@code pipeDriveErrors}
+     * @see #pipeDriveErrors
+     */
+    public long getPipeDriveErrors() {
+        return pipeDriveErrors.get();
+    }
+}
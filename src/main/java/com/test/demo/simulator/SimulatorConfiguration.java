@@ -0,0 +1,85 @@
+package com.test.demo.simulator;
+
+import com.test.demo.service.MainService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.io.IOException;
+
+/**
+ * Runs the application against {@link ApiSimulator} instead of the real apis, with the {@code simulator} profile.
+ * {@code application-simulator.properties} points {@code github.api-url} and {@code pipedrive.api-url} at it.
+ * With {@code simulator.load.users} above 0, {@link SweepLoadHarness} runs once the application started.
+ */
+@Configuration
+@Profile("simulator")
+public class SimulatorConfiguration {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(SimulatorConfiguration.class);
+
+    @Bean(destroyMethod = "close")
+    public ApiSimulator apiSimulator(@Value("${simulator.host:127.0.0.1}") String host,
+                                     @Value("${simulator.port:8089}") int port,
+                                     @Value("${simulator.gists-per-user:10}") int gistsPerUser,
+                                     @Value("${simulator.new-gist-interval-millis:0}") long newGistIntervalMillis,
+                                     @Value("${simulator.github.latency-millis:0}") long gitHubLatencyMillis,
+                                     @Value("${simulator.github.error-rate:0}") double gitHubErrorRate,
+                                     @Value("${simulator.github.rate-limit:10000000}") int rateLimit,
+                                     @Value("${simulator.github.rate-limit-window-seconds:3600}") long rateLimitWindowSeconds,
+                                     @Value("${simulator.pipedrive.latency-millis:0}") long pipeDriveLatencyMillis,
+                                     @Value("${simulator.pipedrive.error-rate:0}") double pipeDriveErrorRate,
+                                     @Value("${simulator.latency-jitter-millis:0}") long latencyJitterMillis)
+            throws IOException {
+        ApiSimulator simulator = new ApiSimulator(host, port);
+        simulator.setGistsPerUser(gistsPerUser);
+        simulator.setNewGistIntervalMillis(newGistIntervalMillis);
+        simulator.setGitHubLatencyMillis(gitHubLatencyMillis);
+        simulator.setGitHubErrorRate(gitHubErrorRate);
+        simulator.setRateLimit(rateLimit, rateLimitWindowSeconds);
+        simulator.setPipeDriveLatencyMillis(pipeDriveLatencyMillis);
+        simulator.setPipeDriveErrorRate(pipeDriveErrorRate);
+        simulator.setLatencyJitterMillis(latencyJitterMillis);
+        return simulator;
+    }
+
+    /**
+     * Run the load test once the application started, and stop the application afterwards if asked to.
+     *
+     * @param mainService  service running the sweeps.
+     * @param apiSimulator the simulator.
+     * @param registry     registry holding the timers.
+     * @param context      the application.
+     * @param userCount    number of synthetic users, 0 to not run the load test.
+     * @param sweeps       number of sweeps.
+     * @param exit         whether to stop the application afterwards.
+     * @return runner of the load test.
+     */
+    @Bean
+    public ApplicationRunner sweepLoadRunner(MainService mainService, ApiSimulator apiSimulator,
+                                             MeterRegistry registry, ConfigurableApplicationContext context,
+                                             @Value("${simulator.load.users:0}") int userCount,
+                                             @Value("${simulator.load.sweeps:3}") int sweeps,
+                                             @Value("${simulator.load.exit:false}") boolean exit) {
+        return args -> {
+            if (userCount <= 0) {
+                return;
+            }
+            logger.info("Load test: {} users, {} sweeps", userCount, sweeps);
+            new SweepLoadHarness(mainService, apiSimulator, registry).run(userCount, sweeps);
+            if (exit) {
+                System.exit(SpringApplication.exit(context));
+            }
+        };
+    }
+}
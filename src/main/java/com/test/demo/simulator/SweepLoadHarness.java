@@ -0,0 +1,324 @@
+package com.test.demo.simulator;
+
+import com.test.demo.UserAlreadyExistsException;
+import com.test.demo.dto.SweepProgress;
+import com.test.demo.http.OutboundMetrics;
+import com.test.demo.service.MainService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the sweep: adds synthetic users, runs sweeps one after the other against {@link ApiSimulator}
+ * and reports the throughput of each sweep, with latency percentiles of the users and of the calls to both
+ * apis. Percentiles are those of the {@code sweep.user.duration} and {@code http.outbound.requests} timers,
+ * so they need {@code management.metrics.distribution.percentiles.*} to be set, and cover the last minutes.
+ */
+public class SweepLoadHarness {
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(SweepLoadHarness.class);
+
+    /**
+     * Prefix of the synthetic usernames.
+     */
+    static final String USERNAME_PREFIX = "load-user-";
+
+    /**
+     * Service running the sweeps.
+     */
+    private final MainService mainService;
+
+    /**
+     * The simulator the sweeps run against.
+     */
+    private final ApiSimulator simulator;
+
+    /**
+     * Registry holding the timers.
+     */
+    private final MeterRegistry registry;
+
+    /**
+     * Constructor.
+     *
+     * @param mainService service running the sweeps.
+     * @param simulator   the simulator the sweeps run against.
+     * @param registry    registry holding the timers.
+     */
+    public SweepLoadHarness(MainService mainService, ApiSimulator simulator, MeterRegistry registry) {
+        this.mainService = mainService;
+        this.simulator = simulator;
+        this.registry = registry;
+    }
+
+    /**
+     * Add the synthetic users and run the sweeps.
+     *
+     * @param userCount number of synthetic users; users added by an earlier run are kept.
+     * @param sweeps    number of sweeps.
+     * @return a report per sweep.
+     * @throws InterruptedException if interrupted while waiting for a running sweep.
+     */
+    public List<Report> run(int userCount, int sweeps) throws InterruptedException {
+        for (int i = 0; i < userCount; i++) {
+            try {
+                mainService.addUser(String.format("%s%06d", USERNAME_PREFIX, i));
+            } catch (UserAlreadyExistsException e) {
+                // kept from an earlier run
+            }
+        }
+        List<Report> reports = new ArrayList<>(sweeps);
+        for (int i = 1; i <= sweeps; i++) {
+            Report report = sweep(i);
+            logger.info("{}", report);
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    /**
+     * Run a single sweep, waiting for a running one (e.g. the scheduled one) to end first.
+     *
+     * @param number number of the sweep.
+     * @return report of the sweep.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private Report sweep(int number) throws InterruptedException {
+        while (mainService.getSweepProgress().isRunning()) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        long activities = simulator.getActivities();
+        long pages = simulator.getGistPages();
+        long notModified = simulator.getNotModified();
+        long errors = simulator.getGitHubErrors() + simulator.getPipeDriveErrors() + simulator.getRateLimited();
+        long start = System.nanoTime();
+        if (!mainService.sweep()) {
+            // the scheduled sweep started meanwhile
+            return sweep(number);
+        }
+        Report report = new Report();
+        report.number = number;
+        report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        report.progress = mainService.getSweepProgress();
+        report.activities = simulator.getActivities() - activities;
+        report.gistPages = simulator.getGistPages() - pages;
+        report.notModified = simulator.getNotModified() - notModified;
+        report.errors = simulator.getGitHubErrors() + simulator.getPipeDriveErrors() + simulator.getRateLimited()
+                - errors;
+        report.userPercentiles = percentiles(registry.find("sweep.user.duration").tag("outcome", "success")
+                .timers());
+        report.gitHubPercentiles = percentiles(registry.find(OutboundMetrics.REQUESTS).tag("api", "github")
+                .timers());
+        report.pipeDrivePercentiles = percentiles(registry.find(OutboundMetrics.REQUESTS).tag("api", "pipedrive")
+                .timers());
+        return report;
+    }
+
+    /**
+     * @param timers timers of a meter, one per set of tags.
+     * @return percentiles of the busiest timer (usually the successful calls), empty if not configured.
+     */
+    private static ValueAtPercentile[] percentiles(Collection<Timer> timers) {
+        Optional<Timer> busiest = timers.stream().max(Comparator.comparingLong(Timer::count));
+        return busiest.map(timer -> timer.takeSnapshot().percentileValues()).orElse(new ValueAtPercentile[0]);
+    }
+
+    /**
+     * Throughput and latency of a single sweep.
+     */
+    public static class Report {
+
+        /**
+         * Number of the sweep, from 1.
+         */
+        private int number;
+
+        /**
+         * Duration of the sweep, in milliseconds.
+         */
+        private long elapsedMillis;
+
+        /**
+         * Progress of the sweep once it ended.
+         */
+        private SweepProgress progress;
+
+        /**
+         * Activities created by the simulator.
+         */
+        private long activities;
+
+        /**
+         * Gist pages served by the simulator.
+         */
+        private long gistPages;
+
+        /**
+         * Gist pages answered with 304 (Not Modified).
+         */
+        private long notModified;
+
+        /**
+         * Failed, rejected and rate limited requests.
+         */
+        private long errors;
+
+        /**
+         * Percentiles of the duration of a user.
+         */
+        private ValueAtPercentile[] userPercentiles;
+
+        /**
+         * Percentiles of a Github call.
+         */
+        private ValueAtPercentile[] gitHubPercentiles;
+
+        /**
+         * Percentiles of a Pipe Drive call.
+         */
+        private ValueAtPercentile[] pipeDrivePercentiles;
+
+        /**
+         * @return {@code number}
+         * @see #number
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * @return {@code elapsedMillis}
+         * @see #elapsedMillis
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return {@code progress}
+         * @see #progress
+         */
+        public SweepProgress getProgress() {
+            return progress;
+        }
+
+        /**
+         * @return {@code activities}
+         * @see #activities
+         */
+        public long getActivities() {
+            return activities;
+        }
+
+        /**
+         * @return {@code gistPages}
+         * @see #gistPages
+         */
+        public long getGistPages() {
+            return gistPages;
+        }
+
+        /**
+         * @return {@code notModified}
+         * @see #notModified
+         */
+        public long getNotModified() {
+            return notModified;
+        }
+
+        /**
+         * @return {@code errors}
+         * @see #errors
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return users swept per second.
+         */
+        public double getUsersPerSecond() {
+            return perSecond(progress.getCompleted() + progress.getFailed());
+        }
+
+        /**
+         * @return activities created per second.
+         */
+        public double getActivitiesPerSecond() {
+            return perSecond(activities);
+        }
+
+        /**
+         * @return {@code userPercentiles}
+         * @see #userPercentiles
+         */
+        public ValueAtPercentile[] getUserPercentiles() {
+            return userPercentiles;
+        }
+
+        /**
+         * @return {@code gitHubPercentiles}
+         * @see #gitHubPercentiles
+         */
+        public ValueAtPercentile[] getGitHubPercentiles() {
+            return gitHubPercentiles;
+        }
+
+        /**
+         * @return {@code pipeDrivePercentiles}
+         * @see #pipeDrivePercentiles
+         */
+        public ValueAtPercentile[] getPipeDrivePercentiles() {
+            return pipeDrivePercentiles;
+        }
+
+        /**
+         * @param count number of things done during the sweep.
+         * @return things done per second.
+         */
+        private double perSecond(long count) {
+            return elapsedMillis == 0 ? 0 : count * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * @param percentiles percentiles of a timer.
+         * @return percentiles in milliseconds, e.g. {@code p50=12.0 p99=80.5}, or {@code n/a}.
+         */
+        private static String format(ValueAtPercentile[] percentiles) {
+            if (percentiles.length == 0) {
+                return "n/a";
+            }
+            StringBuilder text = new StringBuilder();
+            for (ValueAtPercentile percentile : percentiles) {
+                text.append(text.length() == 0 ? "" : " ")
+                        .append('p')
+                        .append(BigDecimal.valueOf(percentile.percentile() * 100).stripTrailingZeros().toPlainString())
+                        .append(String.format("=%.1f", percentile.value(TimeUnit.MILLISECONDS)));
+            }
+            return text.append(" ms").toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Sweep %d: %d users (%d failed) in %d ms, %.1f users/s, %d activities, "
+                            + "%.1f activities/s, %d gist pages, %d not modified, %d errors; user latency %s; "
+                            + "Github latency %s; Pipe Drive latency %s",
+                    number, progress.getTotal(), progress.getFailed(), elapsedMillis, getUsersPerSecond(),
+                    activities, getActivitiesPerSecond(), gistPages, notModified, errors,
+                    format(userPercentiles), format(gitHubPercentiles), format(pipeDrivePercentiles));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.test.demo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.GistDto;
+import com.test.demo.service.GitHubGistSource;
+import com.test.demo.simulator.ApiSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a page of gists: binding the whole page to {@code GistDto[]} in memory, against
+ * {@link GitHubGistSource} streaming it one gist at a time (with its json) from an in-process stub server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GistPageBenchmark {
+
+    /**
+     * Number of gists in the page; Github returns at most 100.
+     */
+    @Param({"30", "100"})
+    public int gistsPerPage;
+
+    /**
+     * Jackson Object mapper.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * A page of gists.
+     */
+    private byte[] page;
+
+    /**
+     * Stub of the Github api.
+     */
+    private StubApis stub;
+
+    /**
+     * Source under test.
+     */
+    private GitHubGistSource gistSource;
+
+    /**
+     * Build the page and start the stub.
+     *
+     * @throws IOException if the stub cannot be started.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < gistsPerPage; i++) {
+            json.append(i == 0 ? "" : ",").append(ApiSimulator.gistJson(Integer.toHexString(i), Instant.now()));
+        }
+        page = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        stub = new StubApis(gistsPerPage);
+        gistSource = new GitHubGistSource(new RestTemplate(), stub.getBaseUrl());
+    }
+
+    /**
+     * Stop the stub.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    /**
+     * @return the bound page.
+     * @throws IOException if the page is malformed.
+     */
+    @Benchmark
+    public GistDto[] bindArray() throws IOException {
+        return mapper.readValue(page, GistDto[].class);
+    }
+
+    /**
+     * @param blackhole receives the gists.
+     * @return number of gists read.
+     */
+    @Benchmark
+    public int streamFromStub(Blackhole blackhole) {
+        return gistSource.forEachGist("octocat", null, blackhole::consume);
+    }
+}
@@ -0,0 +1,113 @@
+package com.test.demo.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.test.demo.simulator.ApiSimulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stub of the Github and Pipe Drive apis for the benchmarks. Unlike {@link ApiSimulator}, every
+ * gist page holds new gists (fresh ids, updated now), so each sweep has the same work to do.
+ */
+class StubApis implements AutoCloseable {
+
+    static {
+        // without it the server's small writes wait for delayed acks, adding ~40ms to every response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /**
+     * Activity creation response.
+     */
+    private static final byte[] ACTIVITY_CREATED =
+            "{\"success\":true,\"data\":{\"id\":1}}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Handler threads of the server.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Source of gist ids.
+     */
+    private final AtomicLong gistIds = new AtomicLong();
+
+    /**
+     * Number of gists per page.
+     */
+    private final int gistsPerPage;
+
+    /**
+     * Start the stub.
+     *
+     * @param gistsPerPage number of gists in the page of every user.
+     * @throws IOException if the server cannot be started.
+     */
+    StubApis(int gistsPerPage) throws IOException {
+        this.gistsPerPage = gistsPerPage;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/users/", exchange -> respond(exchange, page()));
+        server.createContext("/v1/activities", exchange -> respond(exchange, ACTIVITY_CREATED));
+        executor = Executors.newFixedThreadPool(64);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return base url of both apis.
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the stub.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return a page of new gists.
+     */
+    private byte[] page() {
+        StringBuilder json = new StringBuilder("[");
+        Instant now = Instant.now();
+        for (int i = 0; i < gistsPerPage; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(ApiSimulator.gistJson(Long.toHexString(gistIds.incrementAndGet()), now));
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param exchange the exchange.
+     * @param body     json body.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
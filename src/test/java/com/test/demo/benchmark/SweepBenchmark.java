@@ -0,0 +1,140 @@
+package com.test.demo.benchmark;
+
+import com.test.demo.DemoApplication;
+import com.test.demo.UserAlreadyExistsException;
+import com.test.demo.dto.SweepProgress;
+import com.test.demo.service.MainService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A full scheduled sweep ({@code processGists}) of the application context against an in-process stub of
+ * the Github and Pipe Drive apis, with the blocking and the non-blocking client. Every user has a page of
+ * new gists on each sweep, and every gist becomes an activity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SweepBenchmark {
+
+    /**
+     * Number of screened users.
+     */
+    @Param({"100", "1000"})
+    public int userCount;
+
+    /**
+     * New gists per user and sweep.
+     */
+    @Param({"10"})
+    public int gistsPerUser;
+
+    /**
+     * Value of {@code sweep.client}.
+     */
+    @Param({"blocking", "non-blocking"})
+    public String client;
+
+    /**
+     * Stub of the Github and Pipe Drive apis.
+     */
+    private StubApis stub;
+
+    /**
+     * Directory of the user files.
+     */
+    private Path storageDir;
+
+    /**
+     * The application.
+     */
+    private ConfigurableApplicationContext context;
+
+    /**
+     * The service running the sweep.
+     */
+    private MainService mainService;
+
+    /**
+     * Start the stub and the application, and add the users.
+     *
+     * @throws IOException                if the stub or the storage directory cannot be created.
+     * @throws UserAlreadyExistsException never, users are distinct.
+     * @throws InterruptedException       if interrupted while waiting for the startup sweep.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException, UserAlreadyExistsException, InterruptedException {
+        stub = new StubApis(gistsPerUser);
+        storageDir = Files.createTempDirectory("sweep-benchmark");
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                // arguments rather than default properties, so they win over application.properties
+                .run("--github.api-url=" + stub.getBaseUrl(),
+                        "--pipedrive.api-url=" + stub.getBaseUrl(),
+                        "--PIPEDRIVE_TOKEN=benchmark",
+                        "--storage.dir=" + storageDir,
+                        "--sweep.client=" + client,
+                        "--sweep.schedule=fixed",
+                        "--logging.level.com.test.demo=WARN");
+        mainService = context.getBean(MainService.class);
+        // the scheduler sweeps the empty user list once at startup
+        while (mainService.getSweepProgress().getFinishedAt() == null) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        for (int i = 0; i < userCount; i++) {
+            mainService.addUser("github-user-" + i);
+        }
+    }
+
+    /**
+     * Stop the application and the stub.
+     *
+     * @throws IOException if the storage directory cannot be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        stub.close();
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * @return progress of the sweep.
+     */
+    @Benchmark
+    public SweepProgress sweep() {
+        ReflectionTestUtils.invokeMethod(mainService, "processGists");
+        SweepProgress progress = mainService.getSweepProgress();
+        if (progress.getCompleted() != userCount) {
+            throw new IllegalStateException("Sweep did not complete: " + progress);
+        }
+        return progress;
+    }
+}
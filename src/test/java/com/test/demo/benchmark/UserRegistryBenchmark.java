@@ -0,0 +1,93 @@
+package com.test.demo.benchmark;
+
+import com.test.demo.dto.UserDTO;
+import com.test.demo.service.UserRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Add, remove, lookup and paging of {@link UserRegistry} at large user counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserRegistryBenchmark {
+
+    /**
+     * Number of users in the registry.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int userCount;
+
+    /**
+     * Registry under test.
+     */
+    private UserRegistry registry;
+
+    /**
+     * Fill the registry.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        registry = new UserRegistry();
+        for (int i = 0; i < userCount; i++) {
+            registry.add(user("github-user-" + i));
+        }
+    }
+
+    /**
+     * @return a random user, looked up with a different case.
+     */
+    @Benchmark
+    public Optional<UserDTO> find() {
+        return registry.find("GitHub-User-" + ThreadLocalRandom.current().nextInt(userCount));
+    }
+
+    /**
+     * Add a new user and remove it again, so the size stays the same.
+     *
+     * @return the removed user.
+     */
+    @Benchmark
+    public Optional<UserDTO> addAndRemove() {
+        String username = "new-user-" + ThreadLocalRandom.current().nextInt();
+        registry.add(user(username));
+        return registry.remove(username);
+    }
+
+    /**
+     * @return a page of 100 users after a random cursor.
+     */
+    @Benchmark
+    public List<UserDTO> page() {
+        return registry.page("github-user-" + ThreadLocalRandom.current().nextInt(userCount), 100);
+    }
+
+    /**
+     * @param username username of the user.
+     * @return a new user.
+     */
+    private static UserDTO user(String username) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        return userDTO;
+    }
+}
@@ -0,0 +1,161 @@
+package com.test.demo.benchmark;
+
+import com.test.demo.dto.UserDTO;
+import com.test.demo.persistence.UserSnapshotCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save and load time of the user snapshot: the binary {@link UserSnapshotCodec} against
+ * Java serialization of a {@code HashSet<UserDTO>} (the {@code users.data} format).
+ * File sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserSnapshotBenchmark {
+
+    /**
+     * Number of users in the snapshot.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int userCount;
+
+    /**
+     * Users to save.
+     */
+    private List<UserDTO> users;
+
+    /**
+     * Binary snapshot, written once for the load benchmarks.
+     */
+    private Path binaryFile;
+
+    /**
+     * Java serialized snapshot, written once for the load benchmarks.
+     */
+    private Path javaFile;
+
+    /**
+     * Scratch file for the save benchmarks.
+     */
+    private Path scratchFile;
+
+    /**
+     * Create the users and the files to load.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        users = new ArrayList<>(userCount);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < userCount; i++) {
+            UserDTO userDTO = new UserDTO();
+            userDTO.setUsername("github-user-" + i);
+            userDTO.setLastVisit(new Date(now - i));
+            userDTO.setLastAdded(new Date(now - 2L * i));
+            users.add(userDTO);
+        }
+        binaryFile = Files.createTempFile("users", ".snapshot");
+        javaFile = Files.createTempFile("users", ".data");
+        scratchFile = Files.createTempFile("users", ".scratch");
+        UserSnapshotCodec.write(binaryFile, users, null);
+        writeJava(javaFile, users);
+        System.out.printf("%n%d users: binary %d bytes, java serialization %d bytes%n",
+                userCount, Files.size(binaryFile), Files.size(javaFile));
+    }
+
+    /**
+     * Remove the files.
+     *
+     * @throws IOException if files cannot be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(binaryFile);
+        Files.deleteIfExists(javaFile);
+        Files.deleteIfExists(scratchFile);
+    }
+
+    /**
+     * @throws IOException if writing fails.
+     */
+    @Benchmark
+    public void saveBinary() throws IOException {
+        UserSnapshotCodec.write(scratchFile, users, null);
+    }
+
+    /**
+     * @throws IOException if writing fails.
+     */
+    @Benchmark
+    public void saveJavaSerialization() throws IOException {
+        writeJava(scratchFile, users);
+    }
+
+    /**
+     * @return loaded users.
+     * @throws IOException if reading fails.
+     */
+    @Benchmark
+    public List<UserDTO> loadBinary() throws IOException {
+        List<UserDTO> loaded = new ArrayList<>(userCount);
+        UserSnapshotCodec.read(binaryFile, loaded::add);
+        return loaded;
+    }
+
+    /**
+     * @return loaded users.
+     * @throws IOException            if reading fails.
+     * @throws ClassNotFoundException if {@link UserDTO} is not found.
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Set<UserDTO> loadJavaSerialization() throws IOException, ClassNotFoundException {
+        try (InputStream in = Files.newInputStream(javaFile); ObjectInputStream ois = new ObjectInputStream(in)) {
+            return (Set<UserDTO>) ois.readObject();
+        }
+    }
+
+    /**
+     * Write users the way {@code users.data} was written.
+     *
+     * @param path  the file.
+     * @param users the users.
+     * @throws IOException if writing fails.
+     */
+    private static void writeJava(Path path, List<UserDTO> users) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path); ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(new HashSet<>(users));
+        }
+    }
+}
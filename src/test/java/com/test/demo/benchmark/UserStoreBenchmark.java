@@ -0,0 +1,168 @@
+package com.test.demo.benchmark;
+
+import com.test.demo.dto.UserDTO;
+import com.test.demo.persistence.FsyncPolicy;
+import com.test.demo.persistence.UserJournal;
+import com.test.demo.persistence.UserStore;
+import com.test.demo.service.UserRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Persistence of the user list through {@link UserStore}: journaling single changes, replaying the journal
+ * at startup, and compacting the journal into a new snapshot. Reading the snapshot itself is measured by
+ * {@link UserSnapshotBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UserStoreBenchmark {
+
+    /**
+     * Number of users in the snapshot.
+     */
+    @Param({"10000", "100000"})
+    public int userCount;
+
+    /**
+     * When journal records are forced to disk.
+     */
+    @Param({"never", "interval", "always"})
+    public String fsync;
+
+    /**
+     * Directory holding the files of {@link #store}.
+     */
+    private Path directory;
+
+    /**
+     * Registry persisted by {@link #store}.
+     */
+    private UserRegistry registry;
+
+    /**
+     * Store under test.
+     */
+    private UserStore store;
+
+    /**
+     * Journal of a change for each of {@link #userCount} users, for replaying.
+     */
+    private Path replayJournal;
+
+    /**
+     * Create the files.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("user-store");
+        registry = new UserRegistry();
+        store = new UserStore(registry, directory.toString(), fsync, 1000, Long.MAX_VALUE);
+        store.load();
+        for (int i = 0; i < userCount; i++) {
+            registry.add(user("github-user-" + i));
+        }
+        store.compact();
+        replayJournal = Files.createTempFile("users", ".journal");
+        Date now = new Date();
+        try (UserJournal journal = new UserJournal(replayJournal, FsyncPolicy.NEVER, 1000)) {
+            for (int i = 0; i < userCount; i++) {
+                journal.append(UserJournal.RecordType.LAST_VISIT, "github-user-" + i, now);
+            }
+        }
+    }
+
+    /**
+     * Remove the files.
+     *
+     * @throws IOException if files cannot be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        delete(directory);
+        Files.deleteIfExists(replayJournal);
+    }
+
+    /**
+     * Journal adding a user and removing it again.
+     */
+    @Benchmark
+    public void journalAddAndRemove() {
+        UserDTO userDTO = user("new-user");
+        registry.add(userDTO);
+        store.added(userDTO);
+        registry.remove("new-user");
+        store.removed("new-user");
+    }
+
+    /**
+     * Replay a journal of a change per user, as done at startup after reading the snapshot.
+     *
+     * @return number of replayed records.
+     * @throws IOException if reading fails.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long replayJournal() throws IOException {
+        try (UserJournal journal = new UserJournal(replayJournal, FsyncPolicy.NEVER, 1000)) {
+            return journal.replay((type, username, value) -> {
+            });
+        }
+    }
+
+    /**
+     * Write a new snapshot and truncate the journal.
+     *
+     * @throws IOException if writing fails.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void compact() throws IOException {
+        store.compact();
+    }
+
+    /**
+     * @param username username of the user.
+     * @return a new user.
+     */
+    private static UserDTO user(String username) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        return userDTO;
+    }
+
+    /**
+     * @param directory directory to delete with its files.
+     * @throws IOException if deleting fails.
+     */
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
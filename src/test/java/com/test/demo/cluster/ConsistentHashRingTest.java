@@ -0,0 +1,57 @@
+package com.test.demo.cluster;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests related to {@link ConsistentHashRing}.
+ */
+public class ConsistentHashRingTest {
+
+    /**
+     * Number of keys placed on the rings.
+     */
+    private static final int KEYS = 30000;
+
+    /**
+     * Keys must be spread about evenly over the members.
+     */
+    @Test
+    public void ownerOf_ThreeMembers_ShouldSpreadKeys() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            owned.merge(ring.ownerOf("user-" + i), 1, Integer::sum);
+        }
+
+        Assertions.assertThat(owned).containsOnlyKeys("a", "b", "c");
+        Assertions.assertThat(owned.values()).allSatisfy(count ->
+                Assertions.assertThat(count).isBetween(KEYS / 3 * 8 / 10, KEYS / 3 * 12 / 10));
+    }
+
+    /**
+     * A joining member must only take keys, about its share, and leave the others where they were.
+     */
+    @Test
+    public void ownerOf_MemberJoins_ShouldOnlyMoveKeysToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("c", "b", "a", "d"), 128);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user-" + i;
+            String owner = after.ownerOf(key);
+            if (!owner.equals(before.ownerOf(key))) {
+                Assertions.assertThat(owner).isEqualTo("d");
+                moved++;
+            }
+        }
+
+        Assertions.assertThat(moved).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+    }
+}
@@ -0,0 +1,120 @@
+package com.test.demo.cluster;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Tests related to {@link LeaderElection} and {@link FileLeaseStore}, with two replicas in one JVM.
+ */
+public class LeaderElectionTest {
+
+    /**
+     * Shared directory.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The shared directory.
+     */
+    private String directory;
+
+    /**
+     * Create the shared directory.
+     *
+     * @throws IOException if the directory cannot be created.
+     */
+    @Before
+    public void before() throws IOException {
+        directory = folder.newFolder("cluster").toString();
+    }
+
+    /**
+     * Only the first replica to run must lead.
+     */
+    @Test
+    public void join_TwoReplicas_ShouldElectOne() {
+        LeaderElection first = replica("first", 15000);
+        LeaderElection second = replica("second", 15000);
+
+        Assertions.assertThat(first.isLeader()).isTrue();
+        Assertions.assertThat(second.isLeader()).isFalse();
+        Assertions.assertThat(second.getLeader()).isEqualTo("first");
+
+        second.renew();
+        Assertions.assertThat(second.isLeader()).isFalse();
+    }
+
+    /**
+     * A leader leaving mid-sweep must hand over the lease and the checkpoint of its sweep.
+     */
+    @Test
+    public void leave_MidSweep_ShouldHandOverCheckpoint() {
+        LeaderElection first = replica("first", 15000);
+        LeaderElection second = replica("second", 15000);
+        first.sweepStarted(new Date(5000));
+        second.sweepStarted(new Date(6000));
+
+        first.leave();
+        second.renew();
+
+        Assertions.assertThat(second.isLeader()).isTrue();
+        Assertions.assertThat(second.getUnfinishedSweep()).isEqualTo(new Date(5000));
+
+        second.sweepFinished();
+        Assertions.assertThat(second.getUnfinishedSweep()).isNull();
+    }
+
+    /**
+     * A leader that stops renewing must be replaced once its lease expires, and stop leading.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void renew_LeaseExpired_ShouldFailOver() throws InterruptedException {
+        LeaderElection first = replica("first", 100);
+        LeaderElection second = replica("second", 100);
+        Assertions.assertThat(second.isLeader()).isFalse();
+
+        Thread.sleep(150);
+        Assertions.assertThat(first.isLeader()).isFalse();
+        second.renew();
+        first.renew();
+
+        Assertions.assertThat(second.isLeader()).isTrue();
+        Assertions.assertThat(first.isLeader()).isFalse();
+        Assertions.assertThat(first.getLeader()).isEqualTo("second");
+    }
+
+    /**
+     * Without a store, every replica must lead.
+     */
+    @Test
+    public void isLeader_NoStore_ShouldLead() {
+        LeaderElection election = new LeaderElection(Optional.empty(), "", 15000);
+        election.join();
+
+        Assertions.assertThat(election.isEnabled()).isFalse();
+        Assertions.assertThat(election.isLeader()).isTrue();
+        Assertions.assertThat(election.getLeader()).isEqualTo(election.getMemberId());
+    }
+
+    /**
+     * @param memberId    id of the replica.
+     * @param leaseMillis time the lease is held unless renewed.
+     * @return a replica that ran for leader.
+     */
+    private LeaderElection replica(String memberId, long leaseMillis) {
+        LeaderElection election =
+                new LeaderElection(Optional.of(new FileLeaseStore(directory)), memberId, leaseMillis);
+        election.join();
+        return election;
+    }
+}
@@ -0,0 +1,316 @@
+package com.test.demo.cluster;
+
+import com.test.demo.dto.SharedUser;
+import com.test.demo.dto.UserDTO;
+import com.test.demo.persistence.UserStore;
+import com.test.demo.service.UserRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests related to {@link ShardCoordinator} and {@link FileClusterStore}, with two replicas in one JVM.
+ */
+public class ShardCoordinatorTest {
+
+    /**
+     * Shared directory and the directories of the replicas.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Time a heartbeat counts, also the length of a handoff.
+     */
+    private static final long MEMBER_TTL_MILLIS = 30_000;
+
+    /**
+     * Most time between two syncs reading every user.
+     */
+    private static final long FULL_SYNC_MILLIS = TimeUnit.HOURS.toMillis(3);
+
+    /**
+     * Current time seen by the replicas.
+     */
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * The shared store.
+     */
+    private FileClusterStore clusterStore;
+
+    /**
+     * First replica.
+     */
+    private Replica first;
+
+    /**
+     * Second replica.
+     */
+    private Replica second;
+
+    /**
+     * Start both replicas.
+     *
+     * @throws IOException if the files cannot be created.
+     */
+    @Before
+    public void before() throws IOException {
+        clusterStore = new FileClusterStore(folder.newFolder("cluster").toString());
+        first = new Replica("first");
+        second = new Replica("second");
+        first.coordinator.heartbeat();
+    }
+
+    /**
+     * Stop both replicas.
+     */
+    @After
+    public void after() {
+        first.userStore.close();
+        second.userStore.close();
+    }
+
+    /**
+     * Every user must be owned by exactly one of the replicas, and each must own some.
+     */
+    @Test
+    public void owns_TwoReplicas_ShouldSplitUsers() {
+        settle();
+        int ownedByFirst = 0;
+        for (int i = 0; i < 1000; i++) {
+            String username = "user-" + i;
+            boolean firstOwns = first.coordinator.owns(username);
+            Assertions.assertThat(second.coordinator.owns(username)).isNotEqualTo(firstOwns);
+            ownedByFirst += firstOwns ? 1 : 0;
+        }
+
+        Assertions.assertThat(ownedByFirst).isBetween(300, 700);
+        Assertions.assertThat(first.coordinator.getMembers()).containsExactly("first", "second");
+    }
+
+    /**
+     * A replica that joins must not sweep the users it takes over while their previous owners may not have seen
+     * it yet, so no user is ever owned by two replicas; it takes them over once the handoff is over.
+     *
+     * @throws IOException if the files cannot be created.
+     */
+    @Test
+    public void owns_ReplicaJoined_ShouldWaitForHandoff() throws IOException {
+        settle();
+
+        Replica third = new Replica("third");
+        String movedUser = null;
+        for (int i = 0; i < 1000 && movedUser == null; i++) {
+            String username = "user-" + i;
+            Assertions.assertThat(owners(username, third)).isEqualTo(1);
+            if (!third.coordinator.owns(username) && (first.coordinator.owns(username)
+                    && !ownsAfterHeartbeat(first, username) || second.coordinator.owns(username)
+                    && !ownsAfterHeartbeat(second, username))) {
+                movedUser = username;
+            }
+        }
+        Assertions.assertThat(movedUser).isNotNull();
+
+        // the previous owners have seen the new ring, the handoff is not over yet
+        first.coordinator.heartbeat();
+        second.coordinator.heartbeat();
+        Assertions.assertThat(owners(movedUser, third)).isZero();
+
+        settle(third);
+        Assertions.assertThat(third.coordinator.owns(movedUser)).isTrue();
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertThat(owners("user-" + i, third)).isEqualTo(1);
+        }
+        third.userStore.close();
+    }
+
+    /**
+     * A user added through one replica must reach the other, and a removal must follow.
+     */
+    @Test
+    public void sync_UserAddedElsewhere_ShouldAddAndRemoveIt() {
+        first.add("octocat");
+
+        second.coordinator.sync();
+        Assertions.assertThat(second.registry.find("OctoCat")).isPresent();
+
+        first.registry.remove("octocat");
+        first.coordinator.userRemoved("octocat");
+        second.coordinator.sync();
+        Assertions.assertThat(second.registry.find("octocat")).isNotPresent();
+    }
+
+    /**
+     * When a replica leaves, the other must own all users and take over their cursor and pending gists.
+     */
+    @Test
+    public void sync_ReplicaLeft_ShouldTakeOverSweepState() {
+        UserDTO octocat = first.add("octocat");
+        second.coordinator.sync();
+        octocat.setCursor(new Date(5000));
+        octocat.setLastAdded(new Date(6000));
+        octocat.getPendingGists().put("gist", "url");
+        first.coordinator.userSwept(octocat);
+
+        first.coordinator.leave();
+        second.coordinator.sync();
+
+        Assertions.assertThat(second.coordinator.getMembers()).containsExactly("second");
+        Assertions.assertThat(second.coordinator.owns("octocat")).isTrue();
+        UserDTO takenOver = second.registry.find("octocat").get();
+        Assertions.assertThat(takenOver.getCursor()).isEqualTo(new Date(5000));
+        Assertions.assertThat(takenOver.getLastAdded()).isEqualTo(new Date(6000));
+        Assertions.assertThat(takenOver.getPendingGists()).containsEntry("gist", "url");
+    }
+
+    /**
+     * Polls must only read the users changed since the last sync, and every user once a full sync is due.
+     *
+     * @throws IOException if the file of a user cannot be changed.
+     */
+    @Test
+    public void syncChanges_UnchangedUser_ShouldWaitForFullSync() throws IOException {
+        second.coordinator.sync();
+        SharedUser unchanged = new SharedUser();
+        unchanged.setUsername("unchanged");
+        clusterStore.putUser(unchanged);
+        // as if it were shared long before the last sync
+        Files.setLastModifiedTime(folder.getRoot().toPath().resolve("cluster/users/unchanged.json"),
+                FileTime.fromMillis(now.get() - TimeUnit.HOURS.toMillis(1)));
+        first.add("octocat");
+
+        second.coordinator.syncChanges();
+        Assertions.assertThat(second.registry.find("octocat")).isPresent();
+        Assertions.assertThat(second.registry.find("unchanged")).isNotPresent();
+
+        now.addAndGet(FULL_SYNC_MILLIS);
+        second.coordinator.syncChanges();
+        Assertions.assertThat(second.registry.find("unchanged")).isPresent();
+    }
+
+    /**
+     * Users known before clustering was enabled must be shared by the first sync.
+     */
+    @Test
+    public void sync_LocalOnlyUser_ShouldShareIt() {
+        UserDTO legacy = new UserDTO();
+        legacy.setUsername("legacy");
+        first.registry.add(legacy);
+
+        first.coordinator.sync();
+
+        Assertions.assertThat(clusterStore.users()).containsKey("legacy");
+    }
+
+    /**
+     * Expired heartbeats must not count as members.
+     */
+    @Test
+    public void members_ExpiredHeartbeat_ShouldBeGone() {
+        clusterStore.heartbeat("stale", System.currentTimeMillis() - 1);
+
+        Assertions.assertThat(clusterStore.members(System.currentTimeMillis())).containsOnly("first", "second");
+    }
+
+    /**
+     * Let a handoff pass, in two half steps so heartbeats keep counting.
+     *
+     * @param others other replicas heartbeating.
+     */
+    private void settle(Replica... others) {
+        for (int step = 0; step < 2; step++) {
+            now.addAndGet(MEMBER_TTL_MILLIS / 2);
+            first.coordinator.heartbeat();
+            second.coordinator.heartbeat();
+            for (Replica other : others) {
+                other.coordinator.heartbeat();
+            }
+        }
+    }
+
+    /**
+     * @param username a user.
+     * @param third    a third replica.
+     * @return number of the replicas owning the user.
+     */
+    private int owners(String username, Replica third) {
+        return (first.coordinator.owns(username) ? 1 : 0) + (second.coordinator.owns(username) ? 1 : 0)
+                + (third.coordinator.owns(username) ? 1 : 0);
+    }
+
+    /**
+     * Whether a replica would still own a user with the current members, without heartbeating it.
+     *
+     * @param replica  the replica.
+     * @param username the user.
+     * @return whether the replica owns the user on the ring of the live members.
+     */
+    private boolean ownsAfterHeartbeat(Replica replica, String username) {
+        return replica.coordinator.getMemberId().equals(
+                new ConsistentHashRing(clusterStore.members(now.get()), 128).ownerOf(username));
+    }
+
+    /**
+     * A replica with its own users and files, sharing {@link #clusterStore}.
+     */
+    private class Replica {
+
+        /**
+         * Users of the replica.
+         */
+        private final UserRegistry registry = new UserRegistry();
+
+        /**
+         * Journal of the users of the replica.
+         */
+        private final UserStore userStore;
+
+        /**
+         * Coordinator under test.
+         */
+        private final ShardCoordinator coordinator;
+
+        /**
+         * Start the replica and join the cluster.
+         *
+         * @param memberId id of the replica.
+         * @throws IOException if the files cannot be created.
+         */
+        private Replica(String memberId) throws IOException {
+            userStore = new UserStore(registry, folder.newFolder(memberId).toString(), "never", 1000,
+                    Long.MAX_VALUE);
+            userStore.load();
+            coordinator = new ShardCoordinator(registry, userStore, Optional.of(clusterStore),
+                    new LeaderElection(Optional.empty(), memberId, 15000), MEMBER_TTL_MILLIS, 128,
+                    FULL_SYNC_MILLIS, now::get);
+            coordinator.join();
+        }
+
+        /**
+         * Add a user like the service does.
+         *
+         * @param username username of the user.
+         * @return the user.
+         */
+        private UserDTO add(String username) {
+            UserDTO userDTO = new UserDTO();
+            userDTO.setUsername(username);
+            registry.add(userDTO);
+            userStore.added(userDTO);
+            coordinator.userAdded(userDTO);
+            return userDTO;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.test.demo.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.test.demo.dto.SweepProgress;
+import com.test.demo.dto.UserDTO;
+import com.test.demo.dto.UserGists;
+import com.test.demo.service.MainService;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests related to the asynchronous endpoints of {@link MainController}, against a main service whose gist
+ * lookups wait for {@link #github}.
+ */
+public class MainControllerTest {
+
+    /**
+     * Released when Github answers.
+     */
+    private final CountDownLatch github = new CountDownLatch(1);
+
+    /**
+     * Released when a lookup returns.
+     */
+    private final CountDownLatch lookedUp = new CountDownLatch(1);
+
+    /**
+     * Whether the gists of a lookup were written to a response, which moves the last visit.
+     */
+    private final AtomicBoolean written = new AtomicBoolean();
+
+    /**
+     * Controller under test, with one thread and one waiting request.
+     */
+    private final MainController controller = new MainController(new WaitingMainService(), null, 1, 1, 100);
+
+    /**
+     * Mock MVC of the controller.
+     */
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    /**
+     * Release the lookups and stop the controller.
+     */
+    @After
+    public void after() {
+        github.countDown();
+        controller.shutdown();
+    }
+
+    /**
+     * The gists must be served once the lookup completes, after the request thread was released.
+     *
+     * @throws Exception if the request fails.
+     */
+    @Test
+    public void getUserGists_Found_ShouldServeAsync() throws Exception {
+        MvcResult result = mockMvc.perform(get("/octocat/gists")).andExpect(request().asyncStarted()).andReturn();
+        github.countDown();
+
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Cache", "MISS"))
+                .andReturn();
+        Assertions.assertThat(body(dispatched)).isEqualTo("[{\"id\":\"1\"}]");
+    }
+
+    /**
+     * A lookup outliving the deadline must be answered with 504, and the index must not wait for it.
+     *
+     * @throws Exception if the request fails.
+     */
+    @Test
+    public void getUserGists_DeadlinePassed_ShouldReturnGatewayTimeout() throws Exception {
+        MvcResult result = mockMvc.perform(get("/octocat/gists")).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(get("/")).andExpect(status().isOk());
+
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isGatewayTimeout())
+                .andReturn();
+        Assertions.assertThat(new ObjectMapper().readTree(body(dispatched)).get("error").asText())
+                .isEqualTo("Timed out waiting on Github");
+    }
+
+    /**
+     * A lookup finishing after its request was answered with 504 must not write its gists, so the last visit
+     * stays and they are served again.
+     *
+     * @throws Exception if the request fails.
+     */
+    @Test
+    public void getUserGists_DeadlinePassed_ShouldNotWriteLateGists() throws Exception {
+        MvcResult result = mockMvc.perform(get("/octocat/gists")).andExpect(request().asyncStarted()).andReturn();
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isGatewayTimeout());
+
+        github.countDown();
+        Assertions.assertThat(lookedUp.await(5, TimeUnit.SECONDS)).isTrue();
+        // the result of the lookup is set right after it returns
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        Assertions.assertThat(written.get()).isFalse();
+        Assertions.assertThat(body(result)).doesNotContain("\"id\"");
+    }
+
+    /**
+     * With the thread busy and the queue full, a request must be refused with 503 right away.
+     *
+     * @throws Exception if the request fails.
+     */
+    @Test
+    public void getUserGists_QueueFull_ShouldReturnServiceUnavailable() throws Exception {
+        mockMvc.perform(get("/octocat/gists"));
+        mockMvc.perform(get("/octocat/gists"));
+
+        MvcResult result = mockMvc.perform(get("/octocat/gists")).andExpect(request().asyncStarted()).andReturn();
+
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andReturn();
+        Assertions.assertThat(new ObjectMapper().readTree(body(dispatched)).get("error").asText())
+                .isEqualTo("Too many requests waiting on Github");
+    }
+
+    /**
+     * @param result a dispatched result.
+     * @return body of the response, once streamed.
+     * @throws Exception if the body cannot be read.
+     */
+    private static String body(MvcResult result) throws Exception {
+        if (result.getRequest().isAsyncStarted()) {
+            result.getAsyncResult(TimeUnit.SECONDS.toMillis(5));
+        }
+        return result.getResponse().getContentAsString();
+    }
+
+    /**
+     * Main service looking up gists once {@link #github} is released.
+     */
+    private class WaitingMainService implements MainService {
+
+        @Override
+        public UserGists getUserGists(String username) {
+            try {
+                github.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            UserGists userGists = new UserGists();
+            userGists.setBody(out -> {
+                out.write("[{\"id\":\"1\"}]".getBytes(StandardCharsets.UTF_8));
+                written.set(true);
+            });
+            userGists.setCacheStatus("MISS");
+            lookedUp.countDown();
+            return userGists;
+        }
+
+        @Override
+        public void addUser(String username) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeUser(String username) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<UserDTO> getUsers() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<UserDTO> getUsers(String after, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void forEachUser(Consumer<UserDTO> action) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getRawUserGists(String username) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SweepProgress getSweepProgress() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean sweep() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
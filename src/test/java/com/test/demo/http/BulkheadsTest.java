@@ -0,0 +1,104 @@
+package com.test.demo.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Tests related to {@link Bulkheads}, {@link Bulkhead} and {@link BulkheadInterceptor}.
+ */
+public class BulkheadsTest {
+
+    /**
+     * Bulkhead of the sweep, 2 calls at once.
+     */
+    private final Bulkhead sweep = new Bulkhead("sweep", 2, 10);
+
+    /**
+     * Bulkhead of interactive requests, 1 call at once.
+     */
+    private final Bulkhead interactive = new Bulkhead("interactive", 1, 10);
+
+    /**
+     * Bulkheads under test.
+     */
+    private final Bulkheads bulkheads = new Bulkheads(sweep, interactive);
+
+    /**
+     * A sweep holding all of its permits must not hold up an interactive call.
+     *
+     * @throws IOException if a permit is refused.
+     */
+    @Test
+    public void interactive_SweepFull_ShouldStillGetPermit() throws IOException {
+        bulkheads.current().acquire();
+        bulkheads.current().acquire();
+
+        Bulkhead used = bulkheads.interactive(() -> {
+            try {
+                bulkheads.current().acquire();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return bulkheads.current();
+        });
+
+        Assertions.assertThat(used).isSameAs(interactive);
+        Assertions.assertThat(bulkheads.current()).isSameAs(sweep);
+        Assertions.assertThat(sweep.getAvailable()).isEqualTo(0);
+        Assertions.assertThat(interactive.getAvailable()).isEqualTo(0);
+    }
+
+    /**
+     * A full bulkhead must refuse a call after its wait, and count it.
+     *
+     * @throws IOException if the first permit is refused.
+     */
+    @Test
+    public void acquire_Full_ShouldReject() throws IOException {
+        interactive.acquire();
+
+        Assertions.assertThatThrownBy(interactive::acquire).isInstanceOf(IOException.class);
+        Assertions.assertThat(interactive.getRejected()).isEqualTo(1);
+        interactive.release();
+        interactive.acquire();
+    }
+
+    /**
+     * The permit of a call must be held until its response is closed, and released once however often it is
+     * closed.
+     *
+     * @throws IOException if a permit is refused.
+     */
+    @Test
+    public void intercept_ResponseOpen_ShouldHoldPermit() throws IOException {
+        BulkheadInterceptor interceptor = new BulkheadInterceptor(bulkheads);
+
+        ClientHttpResponse response = interceptor.intercept(new MockClientHttpRequest(), new byte[0],
+                (request, body) -> new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+        Assertions.assertThat(sweep.getAvailable()).isEqualTo(1);
+
+        response.close();
+        response.close();
+        Assertions.assertThat(sweep.getAvailable()).isEqualTo(2);
+    }
+
+    /**
+     * A failed call must release its permit right away.
+     */
+    @Test
+    public void intercept_CallFails_ShouldReleasePermit() {
+        BulkheadInterceptor interceptor = new BulkheadInterceptor(bulkheads);
+
+        Assertions.assertThatThrownBy(() -> interceptor.intercept(new MockClientHttpRequest(), new byte[0],
+                (request, body) -> {
+                    throw new IOException("Connection refused");
+                })).isInstanceOf(IOException.class);
+        Assertions.assertThat(sweep.getAvailable()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,107 @@
+package com.test.demo.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests related to {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * Breaker under test: a window of 10 calls counting from 4, opening at 50% failed or slow calls of 100 ms
+     * or more, for 50 milliseconds, then letting 2 probes through.
+     */
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 10, 4, 50, 100, 50, 50, 2);
+
+    /**
+     * Failures below the minimum number of calls must not open the breaker, reaching the rate then must.
+     */
+    @Test
+    public void record_FailureRateReached_ShouldOpen() {
+        call(true, 0);
+        call(true, 0);
+        call(true, 0);
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        call(false, 0);
+
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        Assertions.assertThat(breaker.tryAcquire()).isFalse();
+        Assertions.assertThat(breaker.getNotPermittedCalls()).isEqualTo(1);
+    }
+
+    /**
+     * Successful but slow calls must open the breaker too.
+     */
+    @Test
+    public void record_SlowCallRateReached_ShouldOpen() {
+        for (int i = 0; i < 4; i++) {
+            call(false, i % 2 == 0 ? 200 : 0);
+        }
+
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    /**
+     * Once open long enough, only the probes must be let through, and their success must close the breaker.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void tryAcquire_OpenExpired_ShouldProbeThenClose() throws InterruptedException {
+        open();
+        Thread.sleep(60);
+
+        Assertions.assertThat(breaker.isCallPermitted()).isTrue();
+        Assertions.assertThat(breaker.tryAcquire()).isTrue();
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        Assertions.assertThat(breaker.tryAcquire()).isTrue();
+        Assertions.assertThat(breaker.tryAcquire()).isFalse();
+        breaker.record(0, false);
+        breaker.record(0, false);
+
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        Assertions.assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    /**
+     * A failing probe must open the breaker again.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void record_ProbeFails_ShouldOpenAgain() throws InterruptedException {
+        open();
+        Thread.sleep(60);
+
+        call(true, 0);
+        call(false, 0);
+
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        Assertions.assertThat(breaker.isCallPermitted()).isFalse();
+    }
+
+    /**
+     * Open the breaker with failed calls.
+     */
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true, 0);
+        }
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    /**
+     * Make a call through the breaker.
+     *
+     * @param failed         whether the call fails.
+     * @param durationMillis duration of the call, in milliseconds.
+     */
+    private void call(boolean failed, long durationMillis) {
+        Assertions.assertThat(breaker.tryAcquire()).isTrue();
+        breaker.record(TimeUnit.MILLISECONDS.toNanos(durationMillis), failed);
+    }
+}
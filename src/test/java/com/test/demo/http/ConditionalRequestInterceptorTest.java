@@ -0,0 +1,177 @@
+package com.test.demo.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests related to {@link ConditionalRequestInterceptor}.
+ */
+public class ConditionalRequestInterceptorTest {
+
+    /**
+     * Body served by the stub server.
+     */
+    private static final String BODY = "[{\"id\":\"1\"}]";
+
+    /**
+     * Body larger than an entry of the cache.
+     */
+    private static final String LARGE = String.join("", Collections.nCopies(100, "x"));
+
+    /**
+     * Stub server answering with an ETag and honoring If-None-Match.
+     */
+    private HttpServer server;
+
+    /**
+     * Number of full (200) responses sent by the stub server.
+     */
+    private final AtomicInteger fullResponses = new AtomicInteger();
+
+    /**
+     * Cache under test.
+     */
+    private final HttpResponseCache cache = new HttpResponseCache(10, 1024, 64, 60_000);
+
+    /**
+     * Rest template using the interceptor.
+     */
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    /**
+     * Start the stub server.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/large", exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            byte[] bytes = LARGE.getBytes(StandardCharsets.UTF_8);
+            fullResponses.incrementAndGet();
+            // chunked, the size is only known once read
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.createContext("/gists", exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+                fullResponses.incrementAndGet();
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        restTemplate.getInterceptors().add(new ConditionalRequestInterceptor(cache));
+    }
+
+    /**
+     * Stop the stub server.
+     */
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    /**
+     * Second request must be conditional and served from the cache.
+     */
+    @Test
+    public void get_Twice_ShouldServeSecondFromCache() {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/gists";
+
+        String first = restTemplate.getForObject(url, String.class);
+        String second = restTemplate.getForObject(url, String.class);
+
+        Assertions.assertThat(first).isEqualTo(BODY);
+        Assertions.assertThat(second).isEqualTo(BODY);
+        Assertions.assertThat(fullResponses.get()).isEqualTo(1);
+        Assertions.assertThat(cache.getMisses()).isEqualTo(1);
+        Assertions.assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    /**
+     * A body larger than an entry must be served whole, without being stored.
+     */
+    @Test
+    public void get_LargeBody_ShouldStreamUncached() {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/large";
+
+        Assertions.assertThat(restTemplate.getForObject(url, String.class)).isEqualTo(LARGE);
+        Assertions.assertThat(restTemplate.getForObject(url, String.class)).isEqualTo(LARGE);
+        Assertions.assertThat(fullResponses.get()).isEqualTo(2);
+        Assertions.assertThat(cache.size()).isZero();
+    }
+
+    /**
+     * Least recently used entries must be evicted when the bodies outgrow the cache.
+     */
+    @Test
+    public void put_BytesFull_ShouldEvictLeastRecentlyUsed() {
+        HttpResponseCache small = new HttpResponseCache(10, 100, 64, 60_000);
+        HttpHeaders headers = new HttpHeaders();
+        small.put("a", "\"a\"", -1, headers, new byte[40]);
+        small.put("b", "\"b\"", -1, headers, new byte[40]);
+        small.put("b", "\"b\"", -1, headers, new byte[50]);
+        small.put("c", "\"c\"", -1, headers, new byte[30]);
+
+        Assertions.assertThat(small.get("a")).isNull();
+        Assertions.assertThat(small.get("b")).isNotNull();
+        Assertions.assertThat(small.bytes()).isEqualTo(80);
+        Assertions.assertThat(small.getEvictions()).isEqualTo(1);
+    }
+
+    /**
+     * Entries older than the TTL must not be used.
+     */
+    @Test
+    public void get_ExpiredEntry_ShouldReturnNull() {
+        AtomicInteger now = new AtomicInteger();
+        HttpResponseCache expiring = new HttpResponseCache(10, 1024, 64, 100, now::get);
+        expiring.put("url", "\"v1\"", -1, new HttpHeaders(), new byte[0]);
+
+        now.set(50);
+        Assertions.assertThat(expiring.get("url")).isNotNull();
+        now.set(200);
+        Assertions.assertThat(expiring.get("url")).isNull();
+        Assertions.assertThat(expiring.getEvictions()).isEqualTo(1);
+    }
+
+    /**
+     * Least recently used entries must be evicted when the cache is full.
+     */
+    @Test
+    public void put_CacheFull_ShouldEvictLeastRecentlyUsed() {
+        HttpResponseCache small = new HttpResponseCache(2, 1024, 64, 60_000);
+        HttpHeaders headers = new HttpHeaders();
+        small.put("a", "\"a\"", -1, headers, new byte[0]);
+        small.put("b", "\"b\"", -1, headers, new byte[0]);
+        small.get("a");
+        small.put("c", "\"c\"", -1, headers, new byte[0]);
+
+        Assertions.assertThat(small.size()).isEqualTo(2);
+        Assertions.assertThat(small.get("a")).isNotNull();
+        Assertions.assertThat(small.get("b")).isNull();
+    }
+}
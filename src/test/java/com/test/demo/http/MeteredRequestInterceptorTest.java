@@ -0,0 +1,93 @@
+package com.test.demo.http;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Tests related to {@link MeteredRequestInterceptor} and {@link OutboundMetrics}.
+ */
+public class MeteredRequestInterceptorTest {
+
+    /**
+     * Stub server, standing for Github: 200 on /gists, 404 elsewhere.
+     */
+    private HttpServer server;
+
+    /**
+     * Registry under test.
+     */
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    /**
+     * Rest template using the interceptor.
+     */
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    /**
+     * Base url of the stub.
+     */
+    private String baseUrl;
+
+    /**
+     * Start the stub server.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/gists") ? 200 : 404, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        OutboundMetrics metrics = new OutboundMetrics(registry, baseUrl, "https://api.pipedrive.com");
+        restTemplate.getInterceptors().add(new MeteredRequestInterceptor(metrics));
+    }
+
+    /**
+     * Stop the stub server.
+     */
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    /**
+     * Requests must be timed by api and status, failed ones included.
+     */
+    @Test
+    public void intercept_MixedResponses_ShouldTimeByStatus() {
+        restTemplate.getForEntity(baseUrl + "/gists", String.class);
+        restTemplate.getForEntity(baseUrl + "/gists", String.class);
+        Assertions.assertThatThrownBy(() -> restTemplate.getForEntity(baseUrl + "/missing", String.class))
+                .isInstanceOf(HttpClientErrorException.class);
+        Assertions.assertThatThrownBy(() -> restTemplate.getForEntity("http://localhost:1/", String.class))
+                .isInstanceOf(ResourceAccessException.class);
+
+        Assertions.assertThat(count("github", "200")).isEqualTo(2);
+        Assertions.assertThat(count("github", "404")).isEqualTo(1);
+        Assertions.assertThat(count("other", OutboundMetrics.IO_ERROR)).isEqualTo(1);
+    }
+
+    /**
+     * @param api    api tag.
+     * @param status status tag.
+     * @return number of requests recorded with those tags.
+     */
+    private long count(String api, String status) {
+        return registry.get(OutboundMetrics.REQUESTS).tag("api", api).tag("method", "GET").tag("status", status)
+                .timer().count();
+    }
+}
@@ -0,0 +1,173 @@
+package com.test.demo.http;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests related to {@link RateLimitGovernor}.
+ */
+public class RateLimitGovernorTest {
+
+    /**
+     * Current time seen by the governor.
+     */
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    /**
+     * Sleeps requested by the governor; sleeping advances {@link #now}.
+     */
+    private final List<Long> sleeps = new ArrayList<>();
+
+    /**
+     * Governor under test, keeping 10 requests in reserve.
+     */
+    private final RateLimitGovernor governor = new RateLimitGovernor(10, 3_600_000, now::get, millis -> {
+        sleeps.add(millis);
+        now.addAndGet(millis);
+    });
+
+    /**
+     * Before any response is seen, requests are not held back.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void acquire_BudgetUnknown_ShouldNotWait() throws InterruptedException {
+        governor.acquire();
+        Assertions.assertThat(sleeps).isEmpty();
+    }
+
+    /**
+     * The remaining budget must be spread evenly until the reset.
+     */
+    @Test
+    public void reserveSlot_BudgetKnown_ShouldPaceEvenly() {
+        // 110 remaining, 10 in reserve, window resets in 100 seconds: one request per second
+        governor.update(200, headers(110, now.get() + 100_000));
+
+        Assertions.assertThat(governor.reserveSlot()).isEqualTo(0);
+        Assertions.assertThat(governor.reserveSlot()).isEqualTo(1000);
+        Assertions.assertThat(governor.reserveSlot()).isEqualTo(2000);
+    }
+
+    /**
+     * With only the reserve left, requests must wait for the reset.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void acquire_BudgetExhausted_ShouldWaitForReset() throws InterruptedException {
+        governor.update(200, headers(10, now.get() + 30_000));
+
+        governor.acquire();
+
+        Assertions.assertThat(sleeps).containsExactly(30_000L);
+    }
+
+    /**
+     * A rate limit response must be recognized and pause requests until the reset.
+     */
+    @Test
+    public void update_RateLimited_ShouldPause() {
+        boolean limited = governor.update(403, headers(0, now.get() + 60_000));
+
+        Assertions.assertThat(limited).isTrue();
+        Assertions.assertThat(governor.getPausedFor()).isEqualTo(60_000);
+    }
+
+    /**
+     * A Retry-After header must pause requests for that many seconds.
+     */
+    @Test
+    public void update_RetryAfter_ShouldPause() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Retry-After", "5");
+
+        Assertions.assertThat(governor.update(429, headers)).isTrue();
+        Assertions.assertThat(governor.reserveSlot()).isEqualTo(5000);
+    }
+
+    /**
+     * A Retry-After header holding an HTTP-date must pause requests until that date.
+     */
+    @Test
+    public void update_RetryAfterDate_ShouldPauseUntilDate() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Retry-After", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Instant.ofEpochMilli(now.get() + 7000).atZone(ZoneOffset.UTC)));
+
+        Assertions.assertThat(governor.update(429, headers)).isTrue();
+        Assertions.assertThat(governor.getPausedFor()).isEqualTo(7000);
+    }
+
+    /**
+     * A Retry-After header that cannot be parsed must pause requests until the window resets.
+     */
+    @Test
+    public void update_RetryAfterInvalid_ShouldPauseUntilReset() {
+        HttpHeaders headers = headers(0, now.get() + 60_000);
+        headers.set("Retry-After", "soon");
+
+        Assertions.assertThat(governor.update(429, headers)).isTrue();
+        Assertions.assertThat(governor.getPausedFor()).isEqualTo(60_000);
+    }
+
+    /**
+     * A forbidden response with budget left is not a rate limit.
+     */
+    @Test
+    public void update_ForbiddenWithBudget_ShouldNotPause() {
+        Assertions.assertThat(governor.update(403, headers(100, now.get() + 60_000))).isFalse();
+        Assertions.assertThat(governor.getPausedFor()).isEqualTo(0);
+    }
+
+    /**
+     * With only the reserve left, an interactive request must still go right away.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void acquireInteractive_OnlyReserveLeft_ShouldNotWait() throws InterruptedException {
+        governor.update(200, headers(10, now.get() + 30_000));
+
+        Assertions.assertThat(governor.acquireInteractive(10_000)).isTrue();
+
+        Assertions.assertThat(sleeps).isEmpty();
+        Assertions.assertThat(governor.getRemaining()).isEqualTo(9);
+    }
+
+    /**
+     * While paused for longer than the caller waits, an interactive request must be refused without waiting.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void acquireInteractive_PausedPastDeadline_ShouldRefuse() throws InterruptedException {
+        governor.update(403, headers(0, now.get() + 60_000));
+
+        Assertions.assertThat(governor.acquireInteractive(10_000)).isFalse();
+        Assertions.assertThat(governor.acquireInteractive(60_000)).isTrue();
+
+        Assertions.assertThat(sleeps).containsExactly(60_000L);
+    }
+
+    /**
+     * @param remaining remaining requests.
+     * @param resetAt   reset timestamp in millis.
+     * @return rate limit headers.
+     */
+    private HttpHeaders headers(long remaining, long resetAt) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-RateLimit-Remaining", String.valueOf(remaining));
+        headers.set("X-RateLimit-Reset", String.valueOf(resetAt / 1000));
+        return headers;
+    }
+}
@@ -0,0 +1,137 @@
+package com.test.demo.http;
+
+import com.sun.net.httpserver.HttpServer;
+import com.test.demo.service.GitHubGistSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests related to {@link RateLimitInterceptor}, in the interceptor chain of the application, against a stub of
+ * the Github api rejecting the first request because of the rate limit.
+ */
+public class RateLimitInterceptorTest {
+
+    /**
+     * Stub of the Github api.
+     */
+    private HttpServer server;
+
+    /**
+     * Requests received by the stub.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Permits taken from the sweep bulkhead.
+     */
+    private final AtomicInteger permits = new AtomicInteger();
+
+    /**
+     * Outcomes recorded by the Github circuit breaker.
+     */
+    private final AtomicInteger outcomes = new AtomicInteger();
+
+    /**
+     * Registry of the outbound metrics.
+     */
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    /**
+     * Source reading gists through the chain.
+     */
+    private GitHubGistSource gistSource;
+
+    /**
+     * Start the stub server and build the chain as {@code Configurations} does.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] bytes;
+            if (requests.incrementAndGet() == 1) {
+                bytes = "{\"message\":\"API rate limit exceeded\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                exchange.sendResponseHeaders(429, bytes.length);
+            } else {
+                bytes = "[]".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+            }
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        String apiUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        Bulkhead sweep = new Bulkhead("sweep", 2, 10) {
+            @Override
+            public void acquire() throws IOException {
+                permits.incrementAndGet();
+                super.acquire();
+            }
+        };
+        CircuitBreakers circuitBreakers = new CircuitBreakers(apiUrl, "https://api.pipedrive.com",
+                name -> new CircuitBreaker(name, 10, 10, 50, 1000, 50, 1000, 1) {
+                    @Override
+                    public synchronized void record(long durationNanos, boolean failed) {
+                        outcomes.incrementAndGet();
+                        super.record(durationNanos, failed);
+                    }
+                });
+        RestTemplate restTemplate = new RestTemplate();
+        Bulkheads bulkheads = new Bulkheads(sweep, new Bulkhead("interactive", 1, 10));
+        restTemplate.getInterceptors().add(new RateLimitInterceptor(new RateLimitGovernor(0, 1000), apiUrl,
+                new RateLimitGovernor(0, 1000), apiUrl + "/graphql", bulkheads, 1000));
+        restTemplate.getInterceptors().add(new BulkheadInterceptor(bulkheads));
+        restTemplate.getInterceptors().add(new CircuitBreakerInterceptor(circuitBreakers));
+        restTemplate.getInterceptors().add(new MeteredRequestInterceptor(new OutboundMetrics(registry, apiUrl,
+                "https://api.pipedrive.com")));
+        gistSource = new GitHubGistSource(restTemplate, apiUrl);
+    }
+
+    /**
+     * Stop the stub server.
+     */
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    /**
+     * A request retried after a rate limit response must go through every interceptor on each attempt, and
+     * both attempts must be timed.
+     */
+    @Test
+    public void forEachGist_RateLimited_ShouldRetryThroughChain() {
+        int count = gistSource.forEachGist("octocat", null, gistDto -> {
+        });
+
+        Assertions.assertThat(count).isZero();
+        Assertions.assertThat(requests.get()).isEqualTo(2);
+        Assertions.assertThat(permits.get()).isEqualTo(2);
+        Assertions.assertThat(outcomes.get()).isEqualTo(2);
+        Assertions.assertThat(count("429")).isEqualTo(1);
+        Assertions.assertThat(count("200")).isEqualTo(1);
+    }
+
+    /**
+     * @param status status tag.
+     * @return number of Github requests timed with that status.
+     */
+    private long count(String status) {
+        return registry.get(OutboundMetrics.REQUESTS).tag("api", "github").tag("status", status).timer().count();
+    }
+}
@@ -0,0 +1,98 @@
+package com.test.demo.persistence;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tests related to {@link DeliveredGistIndex} and {@link LongHashSet}.
+ */
+public class DeliveredGistIndexTest {
+
+    /**
+     * Directory of the index file.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Delivered ids must be found again after a restart, even without a clean close.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @Test
+    public void load_AfterCrash_ShouldKnowDeliveredGists() throws IOException {
+        DeliveredGistIndex index = index();
+        index.add("aa5a315d61ae9438b18d");
+        index.add("aa5a315d61ae9438b18d");
+        index.add("42");
+        // no close(): simulate a crash
+
+        DeliveredGistIndex reloaded = index();
+
+        Assertions.assertThat(reloaded.size()).isEqualTo(2);
+        Assertions.assertThat(reloaded.contains("aa5a315d61ae9438b18d")).isTrue();
+        Assertions.assertThat(reloaded.contains("42")).isTrue();
+        Assertions.assertThat(reloaded.contains("43")).isFalse();
+    }
+
+    /**
+     * A torn id at the end of the file must be cut off, keeping the ids before it.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    @Test
+    public void load_TornTail_ShouldKeepValidIds() throws IOException {
+        DeliveredGistIndex index = index();
+        index.add("kept");
+        index.add("torn");
+        index.close();
+        Path path = folder.getRoot().toPath().resolve("gists.delivered");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        DeliveredGistIndex reloaded = index();
+        reloaded.add("after");
+        reloaded.close();
+
+        DeliveredGistIndex again = index();
+        Assertions.assertThat(again.contains("kept")).isTrue();
+        Assertions.assertThat(again.contains("torn")).isFalse();
+        Assertions.assertThat(again.contains("after")).isTrue();
+        again.close();
+    }
+
+    /**
+     * The set must keep every value while it grows, including 0.
+     */
+    @Test
+    public void longHashSet_Grow_ShouldKeepAllValues() {
+        LongHashSet set = new LongHashSet(1);
+        for (long i = 0; i < 10_000; i++) {
+            Assertions.assertThat(set.add(i * 31)).isTrue();
+        }
+        Assertions.assertThat(set.add(0)).isFalse();
+        Assertions.assertThat(set.size()).isEqualTo(10_000);
+        for (long i = 0; i < 10_000; i++) {
+            Assertions.assertThat(set.contains(i * 31)).isTrue();
+            Assertions.assertThat(set.contains(i * 31 + 1)).isFalse();
+        }
+    }
+
+    /**
+     * @return a loaded index in the temporary folder.
+     * @throws IOException if the file cannot be opened.
+     */
+    private DeliveredGistIndex index() throws IOException {
+        DeliveredGistIndex index = new DeliveredGistIndex(folder.getRoot().getPath(), "always", 1000);
+        index.load();
+        return index;
+    }
+}
@@ -0,0 +1,349 @@
+package com.test.demo.persistence;
+
+import com.test.demo.dto.UserDTO;
+import com.test.demo.service.UserRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests related to {@link UserStore}, {@link UserJournal} and {@link UserSnapshotCodec}.
+ */
+public class UserStoreTest {
+
+    /**
+     * Directory of the snapshot and journal files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Changes must be recovered from the journal even if the store was never closed (e.g. pod killed).
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void load_AfterCrash_ShouldReplayJournal() throws IOException {
+        UserRegistry registry = new UserRegistry();
+        UserStore store = store(registry);
+        store.load();
+        UserDTO octocat = add(registry, store, "octocat");
+        add(registry, store, "removed");
+        registry.remove("removed");
+        store.removed("removed");
+        octocat.setLastAdded(new Date(1234));
+        store.swept(octocat);
+        // no close(): simulate a crash
+
+        UserRegistry recovered = new UserRegistry();
+        store(recovered).load();
+
+        Assertions.assertThat(recovered.size()).isEqualTo(1);
+        Assertions.assertThat(recovered.find("OctoCat").get().getLastAdded()).isEqualTo(new Date(1234));
+    }
+
+    /**
+     * After compaction the journal is empty and the snapshot holds everything.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void compact_ShouldMoveJournalIntoSnapshot() throws IOException {
+        UserRegistry registry = new UserRegistry();
+        UserStore store = store(registry);
+        store.load();
+        add(registry, store, "first");
+        add(registry, store, "second");
+
+        store.close();
+
+        Assertions.assertThat(folder.getRoot().toPath().resolve("users.journal").toFile().length()).isEqualTo(0);
+        UserRegistry recovered = new UserRegistry();
+        store(recovered).load();
+        Assertions.assertThat(recovered.size()).isEqualTo(2);
+    }
+
+    /**
+     * A torn record at the end of the journal must be cut off, keeping the records before it.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void replay_TornTail_ShouldKeepValidRecords() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("users.journal");
+        UserJournal journal = new UserJournal(path, FsyncPolicy.NEVER, 0);
+        journal.append(UserJournal.RecordType.ADD, "kept", null);
+        journal.append(UserJournal.RecordType.ADD, "torn", null);
+        journal.close();
+        long size = path.toFile().length();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        UserJournal reopened = new UserJournal(path, FsyncPolicy.NEVER, 0);
+        StringBuilder replayed = new StringBuilder();
+        long count = reopened.replay((type, username, value) -> replayed.append(username));
+        reopened.append(UserJournal.RecordType.ADD, "after", null);
+        reopened.close();
+
+        Assertions.assertThat(count).isEqualTo(1);
+        Assertions.assertThat(replayed.toString()).isEqualTo("kept");
+        UserJournal again = new UserJournal(path, FsyncPolicy.NEVER, 0);
+        Assertions.assertThat(again.replay((type, username, value) -> {
+        })).isEqualTo(2);
+        again.close();
+    }
+
+    /**
+     * A key whose length does not fit the record must be refused rather than written truncated.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void append_KeyTooLong_ShouldThrow() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("users.journal");
+        UserJournal journal = new UserJournal(path, FsyncPolicy.NEVER, 0);
+        char[] name = new char[UserJournal.MAX_KEY_LENGTH + 1];
+        Arrays.fill(name, 'a');
+
+        Assertions.assertThatThrownBy(() -> journal.append(UserJournal.RecordType.ADD, new String(name), null))
+                .isInstanceOf(IllegalArgumentException.class);
+        journal.close();
+        Assertions.assertThat(path.toFile().length()).isZero();
+    }
+
+    /**
+     * Cursors, pending gists and the sweep checkpoint must be recovered from the journal.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void load_AfterCrashMidSweep_ShouldRestoreCursorAndCheckpoint() throws IOException {
+        UserRegistry registry = new UserRegistry();
+        UserStore store = store(registry);
+        store.load();
+        UserDTO octocat = add(registry, store, "octocat");
+        store.sweepStarted(new Date(5000));
+        octocat.setCursor(new Date(4000));
+        store.cursorMoved(octocat);
+        store.gistPending(octocat, "1", "https://gist.github.com/1");
+        store.gistPending(octocat, "2", "https://gist.github.com/2");
+        store.gistDelivered(octocat, "1");
+        // no close(): simulate a crash
+
+        UserRegistry recovered = new UserRegistry();
+        UserStore reopened = store(recovered);
+        reopened.load();
+
+        UserDTO user = recovered.find("octocat").get();
+        Assertions.assertThat(user.getCursor()).isEqualTo(new Date(4000));
+        Assertions.assertThat(user.getPendingGists()).containsOnlyKeys("2");
+        Assertions.assertThat(user.getPendingGists().get("2")).isEqualTo("https://gist.github.com/2");
+        Assertions.assertThat(reopened.getUnfinishedSweep()).isEqualTo(new Date(5000));
+
+        reopened.sweepFinished();
+        reopened.close();
+        UserStore again = store(new UserRegistry());
+        again.load();
+        Assertions.assertThat(again.getUnfinishedSweep()).isNull();
+    }
+
+    /**
+     * Users must survive a round trip through the binary snapshot, including unset dates.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void snapshot_RoundTrip_ShouldKeepAllFields() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("users.snapshot");
+        UserDTO visited = user("visited", new Date(1000), new Date(2000));
+        visited.setCursor(new Date(1500));
+        visited.getPendingGists().put("42", "https://gist.github.com/42");
+        UserDTO fresh = user("fresh", null, null);
+
+        UserSnapshotCodec.write(path, Arrays.asList(visited, fresh), new Date(3000));
+        List<UserDTO> read = new ArrayList<>();
+        UserSnapshotCodec.Contents contents = UserSnapshotCodec.read(path, read::add);
+
+        Assertions.assertThat(contents.getUserCount()).isEqualTo(2);
+        Assertions.assertThat(contents.getSweepStartedAt()).isEqualTo(new Date(3000));
+        Assertions.assertThat(read.get(0).getUsername()).isEqualTo("visited");
+        Assertions.assertThat(read.get(0).getLastVisit()).isEqualTo(new Date(1000));
+        Assertions.assertThat(read.get(0).getLastAdded()).isEqualTo(new Date(2000));
+        Assertions.assertThat(read.get(0).getCursor()).isEqualTo(new Date(1500));
+        Assertions.assertThat(read.get(0).getPendingGists()).containsEntry("42", "https://gist.github.com/42");
+        Assertions.assertThat(read.get(1).getUsername()).isEqualTo("fresh");
+        Assertions.assertThat(read.get(1).getLastVisit()).isNull();
+        Assertions.assertThat(read.get(1).getLastAdded()).isNull();
+        Assertions.assertThat(read.get(1).getCursor()).isNull();
+    }
+
+    /**
+     * A snapshot with a flipped payload byte must be rejected rather than loaded half-way.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test(expected = IOException.class)
+    public void snapshot_Corrupt_ShouldFailChecksum() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("users.snapshot");
+        UserSnapshotCodec.write(path, Arrays.asList(user("octocat", null, null)), null);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), UserSnapshotCodec.HEADER_SIZE + 2);
+        }
+
+        UserSnapshotCodec.read(path, userDTO -> {
+        });
+    }
+
+    /**
+     * A Java serialized {@code users.data} of earlier versions must be migrated to the binary snapshot.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void load_LegacyData_ShouldMigrateToSnapshot() throws IOException {
+        Path legacy = folder.getRoot().toPath().resolve("users.data");
+        try (OutputStream out = Files.newOutputStream(legacy); ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(new HashSet<>(Arrays.asList(user("octocat", new Date(1000), null))));
+        }
+
+        UserRegistry registry = new UserRegistry();
+        store(registry).load();
+
+        Assertions.assertThat(registry.find("octocat").get().getLastVisit()).isEqualTo(new Date(1000));
+        Assertions.assertThat(Files.exists(legacy)).isFalse();
+        Assertions.assertThat(Files.exists(folder.getRoot().toPath().resolve("users.snapshot"))).isTrue();
+        UserRegistry reloaded = new UserRegistry();
+        store(reloaded).load();
+        Assertions.assertThat(reloaded.size()).isEqualTo(1);
+    }
+
+    /**
+     * A snapshot that passes the checksum but cannot be decoded must be moved aside, not loaded half-way.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void load_SnapshotUndecodable_ShouldMoveAside() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("users.snapshot");
+        UserSnapshotCodec.write(path, Arrays.asList(user("first", null, null), user("second", null, null)), null);
+        // the count is in the header, outside of the checksum
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 3), 8);
+        }
+
+        UserRegistry registry = new UserRegistry();
+        store(registry).load();
+
+        Assertions.assertThat(registry.size()).isZero();
+        Assertions.assertThat(Files.exists(path)).isFalse();
+        Assertions.assertThat(Files.exists(path.resolveSibling("users.snapshot.corrupt"))).isTrue();
+    }
+
+    /**
+     * A string too long for its length must be refused rather than written truncated.
+     */
+    @Test
+    public void snapshot_StringTooLong_ShouldThrow() {
+        char[] name = new char[UserSnapshotCodec.MAX_LENGTH + 1];
+        Arrays.fill(name, 'a');
+        Path path = folder.getRoot().toPath().resolve("users.snapshot");
+
+        Assertions.assertThatThrownBy(() -> UserSnapshotCodec.write(path,
+                Arrays.asList(user(new String(name), null, null)), null)).isInstanceOf(IOException.class);
+    }
+
+    /**
+     * A string of the largest length must be written whole, even though it fills most of the write buffer.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void snapshot_StringOfMaxLength_ShouldRoundTrip() throws IOException {
+        char[] name = new char[UserSnapshotCodec.MAX_LENGTH];
+        Arrays.fill(name, 'a');
+        Path path = folder.getRoot().toPath().resolve("users.snapshot");
+
+        UserSnapshotCodec.write(path, Arrays.asList(user("first", null, null), user(new String(name), null, null)),
+                null);
+        List<UserDTO> read = new ArrayList<>();
+        UserSnapshotCodec.read(path, read::add);
+
+        Assertions.assertThat(read).hasSize(2);
+        Assertions.assertThat(read.get(1).getUsername()).isEqualTo(new String(name));
+    }
+
+    /**
+     * More pending gists than 2 bytes hold must be written, so compaction does not fail for such a user.
+     *
+     * @throws IOException if files cannot be written.
+     */
+    @Test
+    public void snapshot_PendingGistsOverShortCount_ShouldRoundTrip() throws IOException {
+        UserDTO userDTO = user("octocat", null, null);
+        for (int i = 0; i <= 0xFFFF; i++) {
+            userDTO.getPendingGists().put(Integer.toString(i), "https://gist.github.com/" + i);
+        }
+        Path path = folder.getRoot().toPath().resolve("users.snapshot");
+
+        UserSnapshotCodec.write(path, Arrays.asList(userDTO), null);
+        List<UserDTO> read = new ArrayList<>();
+        UserSnapshotCodec.read(path, read::add);
+
+        Assertions.assertThat(read.get(0).getPendingGists()).hasSize(0xFFFF + 1)
+                .containsEntry("65535", "https://gist.github.com/65535");
+    }
+
+    /**
+     * @param username  username.
+     * @param lastVisit last visit, may be {@code null}.
+     * @param lastAdded last added, may be {@code null}.
+     * @return the user.
+     */
+    private UserDTO user(String username, Date lastVisit, Date lastAdded) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        userDTO.setLastVisit(lastVisit);
+        userDTO.setLastAdded(lastAdded);
+        return userDTO;
+    }
+
+    /**
+     * @param registry registry to persist.
+     * @return a store in the temporary folder.
+     */
+    private UserStore store(UserRegistry registry) {
+        return new UserStore(registry, folder.getRoot().getPath(), "always", 1000, 100);
+    }
+
+    /**
+     * Add a user and journal it, like the service does.
+     *
+     * @param registry the registry.
+     * @param store    the store.
+     * @param username username.
+     * @return the user.
+     */
+    private UserDTO add(UserRegistry registry, UserStore store, String username) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        registry.add(userDTO);
+        store.added(userDTO);
+        return userDTO;
+    }
+}
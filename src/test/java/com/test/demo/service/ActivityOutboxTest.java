@@ -0,0 +1,315 @@
+package com.test.demo.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.test.demo.dto.OutboxEntry;
+import com.test.demo.http.CircuitBreaker;
+import com.test.demo.http.CircuitBreakerInterceptor;
+import com.test.demo.http.CircuitBreakers;
+import com.test.demo.persistence.DeliveredGistIndex;
+import com.test.demo.persistence.OutboxStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tests related to {@link ActivityOutbox} and {@link OutboxStore}, against a local stub of the activities
+ * endpoint that fails a number of requests first.
+ */
+public class ActivityOutboxTest {
+
+    /**
+     * Directory of the outbox files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Stub of the Pipe Drive api.
+     */
+    private HttpServer server;
+
+    /**
+     * Number of requests the stub fails before it succeeds.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Requests received by the stub.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Gists that already have an activity.
+     */
+    private DeliveredGistIndex deliveredGists;
+
+    /**
+     * Circuit breakers, the Pipe Drive one opening after 2 failed calls out of 2 for 300 milliseconds.
+     */
+    private CircuitBreakers circuitBreakers;
+
+    /**
+     * The pipeline sending to the stub through {@link #circuitBreakers}.
+     */
+    private PipeDriveActivityPipeline pipeline;
+
+    /**
+     * Start the stub server.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/activities", exchange -> {
+            StreamUtils.copyToByteArray(exchange.getRequestBody());
+            requests.incrementAndGet();
+            boolean fail = failures.getAndDecrement() > 0;
+            byte[] bytes = (fail ? "{\"success\":false,\"error\":\"down\"}" : "{\"success\":true}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(fail ? 500 : 201, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        deliveredGists = new DeliveredGistIndex(folder.getRoot().getPath(), "never", 1000);
+        deliveredGists.load();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        circuitBreakers = new CircuitBreakers("http://github.invalid", baseUrl,
+                name -> new CircuitBreaker(name, 2, 2, 100, 60000, 100, 300, 1));
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.getInterceptors().add(new CircuitBreakerInterceptor(circuitBreakers));
+        pipeline = new PipeDriveActivityPipeline(restTemplate, baseUrl, "token", 2, 100);
+    }
+
+    /**
+     * Stop the stub server.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @After
+    public void after() throws InterruptedException {
+        pipeline.shutdown();
+        deliveredGists.close();
+        server.stop(0);
+    }
+
+    /**
+     * An activity failing at first must be retried until delivered, without failing the submit.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void submit_PipeDriveDown_ShouldRetryUntilDelivered() throws Exception {
+        failures.set(2);
+        OutboxStore store = store();
+        ActivityOutbox outbox = outbox(store, 5);
+
+        Assertions.assertThat(outbox.submit("1", "https://gist/1").get()).isTrue();
+
+        await(() -> store.getPendingCount() == 0);
+        Assertions.assertThat(requests.get()).isEqualTo(3);
+        Assertions.assertThat(deliveredGists.contains("1")).isTrue();
+        outbox.shutdown();
+        store.close();
+    }
+
+    /**
+     * While the breaker is open, a due activity must wait without using up its attempts, then be delivered by
+     * the half-open probe.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void retryDue_BreakerOpen_ShouldWaitWithoutAttempts() throws Exception {
+        failures.set(2);
+        OutboxStore store = store();
+        ActivityOutbox outbox = outbox(store, 3);
+
+        outbox.submit("1", "https://gist/1").get();
+
+        await(() -> store.find("1").getAttempts() == 2);
+        Assertions.assertThat(circuitBreakers.getPipeDrive().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        await(() -> store.getPendingCount() == 0);
+        Assertions.assertThat(store.getDeadCount()).isEqualTo(0);
+        Assertions.assertThat(requests.get()).isEqualTo(3);
+        Assertions.assertThat(deliveredGists.contains("1")).isTrue();
+        Assertions.assertThat(circuitBreakers.getPipeDrive().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        outbox.shutdown();
+        store.close();
+    }
+
+    /**
+     * An activity failing every attempt must be dead-lettered, and kept as such after a restart.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void submit_AlwaysFailing_ShouldDeadLetter() throws Exception {
+        failures.set(Integer.MAX_VALUE);
+        OutboxStore store = store();
+        ActivityOutbox outbox = outbox(store, 3);
+
+        outbox.submit("1", "https://gist/1").get();
+
+        await(() -> store.getDeadCount() == 1);
+        Thread.sleep(100);
+        Assertions.assertThat(requests.get()).isEqualTo(3);
+        outbox.shutdown();
+        store.close();
+
+        OutboxStore reloaded = store();
+        Assertions.assertThat(reloaded.getDeadCount()).isEqualTo(1);
+        Assertions.assertThat(reloaded.find("1").getAttempts()).isEqualTo(3);
+        reloaded.close();
+    }
+
+    /**
+     * Submitting a dead-lettered activity again must queue it again with all of its attempts, not report it as
+     * written while it is never sent.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void submit_DeadLettered_ShouldQueueAgain() throws Exception {
+        failures.set(Integer.MAX_VALUE);
+        OutboxStore store = store();
+        ActivityOutbox outbox = outbox(store, 2);
+        outbox.submit("1", "https://gist/1").get();
+        await(() -> store.getDeadCount() == 1);
+        failures.set(0);
+
+        Assertions.assertThat(outbox.submit("1", "https://gist/1").get()).isTrue();
+
+        await(() -> store.find("1") == null);
+        Assertions.assertThat(deliveredGists.contains("1")).isTrue();
+        Assertions.assertThat(store.getDeadCount()).isZero();
+        outbox.shutdown();
+        store.close();
+    }
+
+    /**
+     * An activity written to the outbox before a crash must be delivered after the restart.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void retryDue_AfterRestart_ShouldDeliverQueued() throws Exception {
+        OutboxStore crashed = store();
+        crashed.queued("1", "https://gist/1", 0);
+        crashed.failed("1", 0);
+
+        OutboxStore store = store();
+        Assertions.assertThat(store.find("1").getAttempts()).isEqualTo(1);
+        ActivityOutbox outbox = outbox(store, 5);
+
+        await(() -> store.getPendingCount() == 0);
+        Assertions.assertThat(deliveredGists.contains("1")).isTrue();
+        outbox.shutdown();
+        store.close();
+        crashed.close();
+    }
+
+    /**
+     * Only live activities whose attempt is due must be returned, the longest due first, also after a compaction
+     * and a restart.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void due_LiveAndDead_ShouldReturnDueLiveInAttemptOrder() throws Exception {
+        OutboxStore store = store();
+        store.queued("1", "https://gist/1", 300);
+        store.queued("2", "https://gist/2", 100);
+        store.queued("3", "https://gist/3", 200);
+        store.queued("4", "https://gist/4", 50);
+        store.dead("4");
+        store.failed("2", 1000);
+
+        Assertions.assertThat(store.due(500)).extracting(OutboxEntry::getGistId).containsExactly("3", "1");
+        store.compact();
+        store.close();
+
+        OutboxStore reloaded = store();
+        Assertions.assertThat(reloaded.due(2000)).extracting(OutboxEntry::getGistId).containsExactly("3", "1", "2");
+        Assertions.assertThat(reloaded.getPendingCount()).isEqualTo(3);
+        Assertions.assertThat(reloaded.getDeadCount()).isEqualTo(1);
+        Assertions.assertThat(reloaded.find("4").isDead()).isTrue();
+        reloaded.close();
+    }
+
+    /**
+     * An unreadable snapshot must be moved aside rather than overwritten by the next compaction.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void load_CorruptSnapshot_ShouldMoveItAside() throws Exception {
+        Path snapshot = folder.getRoot().toPath().resolve("outbox.snapshot");
+        Files.write(snapshot, "[{\"gistId\":".getBytes(StandardCharsets.UTF_8));
+
+        OutboxStore store = store();
+        store.queued("2", "https://gist/2", 0);
+        store.compact();
+        store.close();
+
+        Assertions.assertThat(Files.readAllBytes(snapshot.resolveSibling("outbox.snapshot.corrupt")))
+                .isEqualTo("[{\"gistId\":".getBytes(StandardCharsets.UTF_8));
+        OutboxStore reloaded = store();
+        Assertions.assertThat(reloaded.find("2")).isNotNull();
+        reloaded.close();
+    }
+
+    /**
+     * @return an outbox store in {@link #folder}, loaded.
+     * @throws IOException if the files cannot be opened.
+     */
+    private OutboxStore store() throws IOException {
+        OutboxStore store = new OutboxStore(folder.getRoot().getPath(), "never", 1000, 1000);
+        store.load();
+        return store;
+    }
+
+    /**
+     * @param store       the store.
+     * @param maxAttempts number of attempts before dead-lettering.
+     * @return an outbox retrying after 10 to 40 milliseconds.
+     */
+    private ActivityOutbox outbox(OutboxStore store, int maxAttempts) {
+        SweepMetrics sweepMetrics = new SweepMetrics(new SimpleMeterRegistry(), new SweepEngine(1, 1),
+                new UserRegistry(), pipeline, Optional.empty(), store);
+        return new ActivityOutbox(store, pipeline, Optional.empty(), deliveredGists, sweepMetrics,
+                circuitBreakers, maxAttempts, 20, 40, 10);
+    }
+
+    /**
+     * Wait up to 5 seconds for a condition.
+     *
+     * @param condition the condition.
+     * @throws InterruptedException if interrupted.
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        Assertions.assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,264 @@
+package com.test.demo.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.test.demo.dto.GistDto;
+import com.test.demo.http.AsyncHttpClientConfiguration;
+import com.test.demo.http.CircuitBreaker;
+import com.test.demo.http.CircuitBreakers;
+import com.test.demo.http.HttpResponseCache;
+import com.test.demo.http.OutboundMetrics;
+import com.test.demo.http.RateLimitGovernor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests related to {@link AsyncGitHubGistSource} and {@link AsyncPipeDriveActivityClient},
+ * against a local stub of both apis.
+ */
+public class AsyncClientTest {
+
+    /**
+     * Maximum number of Pipe Drive requests in flight.
+     */
+    private static final int MAX_IN_FLIGHT = 20;
+
+    /**
+     * Stub of the Github and Pipe Drive apis.
+     */
+    private HttpServer server;
+
+    /**
+     * Handler threads of the stub.
+     */
+    private ExecutorService serverExecutor;
+
+    /**
+     * The non-blocking HTTP client.
+     */
+    private CloseableHttpAsyncClient httpClient;
+
+    /**
+     * Number of gist pages requested.
+     */
+    private final AtomicInteger pagesRequested = new AtomicInteger();
+
+    /**
+     * Pipe Drive requests currently being handled by the stub.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Number of page requests answered with 304 (Not Modified).
+     */
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    /**
+     * Maximum number of Pipe Drive requests handled by the stub at the same time.
+     */
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * Base url of the stub.
+     */
+    private String baseUrl;
+
+    /**
+     * Meters of the calls, Github and Pipe Drive both being the stub.
+     */
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    /**
+     * Records the calls in {@link #registry}.
+     */
+    private OutboundMetrics metrics;
+
+    /**
+     * Circuit breakers of the stub server, never opening.
+     */
+    private CircuitBreakers circuitBreakers;
+
+    /**
+     * Start the stub server and the client.
+     *
+     * @throws IOException if the server or client cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext("/users/octocat/gists", exchange -> {
+            pagesRequested.incrementAndGet();
+            if (exchange.getRequestURI().getQuery().contains("page=2")) {
+                respond(exchange, "[{\"id\":\"3\",\"html_url\":\"u3\"}]");
+            } else {
+                exchange.getResponseHeaders().add("Link",
+                        "<" + baseUrl + "/users/octocat/gists?per_page=100&page=2>; rel=\"next\"");
+                respond(exchange, "[{\"id\":\"1\",\"html_url\":\"u1\"},{\"id\":\"2\",\"html_url\":\"u2\"}]");
+            }
+        });
+        server.createContext("/users/hubot/gists", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            respond(exchange, "[{\"id\":\"4\",\"html_url\":\"u4\"}]");
+        });
+        server.createContext("/v1/activities", exchange -> {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            respond(exchange, "{\"success\":true,\"data\":{\"id\":1}}");
+        });
+        serverExecutor = Executors.newFixedThreadPool(64);
+        server.setExecutor(serverExecutor);
+        server.start();
+        metrics = new OutboundMetrics(registry, "http://github.invalid", baseUrl);
+        circuitBreakers = new CircuitBreakers("http://github.invalid", baseUrl,
+                name -> new CircuitBreaker(name, 10, 10, 100, 60000, 100, 1000, 1));
+        httpClient = new AsyncHttpClientConfiguration().httpAsyncClient(1, 200, 100, 5000, 5000, 5000);
+    }
+
+    /**
+     * Stop the client and the stub server.
+     *
+     * @throws IOException if the client cannot be closed.
+     */
+    @After
+    public void after() throws IOException {
+        httpClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * All pages must be read, and the next page must wait until the previous one was handled.
+     */
+    @Test
+    public void forEachPage_TwoPages_ShouldWaitForHandler() {
+        AsyncGitHubGistSource gistSource = new AsyncGitHubGistSource(httpClient,
+                new GitHubGistSource(new RestTemplate(), baseUrl), new RateLimitGovernor(0, 1000), metrics, circuitBreakers,
+                new HttpResponseCache(100, 1 << 20, 1 << 16, 60000), 2);
+        List<String> ids = new ArrayList<>();
+        CompletableFuture<Void> firstPageHandled = new CompletableFuture<>();
+
+        CompletableFuture<Integer> count = gistSource.forEachPage("octocat", null, page -> {
+            page.stream().map(GistDto::getId).forEach(ids::add);
+            return ids.size() == 2 ? firstPageHandled : CompletableFuture.completedFuture(null);
+        });
+
+        sleep(200);
+        Assertions.assertThat(pagesRequested.get()).isEqualTo(1);
+        firstPageHandled.complete(null);
+        Assertions.assertThat(count.join()).isEqualTo(3);
+        Assertions.assertThat(ids).containsExactly("1", "2", "3");
+        Assertions.assertThat(pagesRequested.get()).isEqualTo(2);
+        gistSource.shutdown();
+    }
+
+    /**
+     * A page read before must be requested conditionally and served from the cache once Github answers 304.
+     */
+    @Test
+    public void forEachPage_NotModified_ShouldServeFromCache() {
+        HttpResponseCache responseCache = new HttpResponseCache(100, 1 << 20, 1 << 16, 60000);
+        AsyncGitHubGistSource gistSource = new AsyncGitHubGistSource(httpClient,
+                new GitHubGistSource(new RestTemplate(), baseUrl), new RateLimitGovernor(0, 1000), metrics,
+                circuitBreakers, responseCache, 2);
+        List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            gistSource.forEachPage("hubot", null, page -> {
+                page.stream().map(GistDto::getId).forEach(ids::add);
+                return CompletableFuture.completedFuture(null);
+            }).join();
+        }
+
+        Assertions.assertThat(ids).containsExactly("4", "4");
+        Assertions.assertThat(notModified.get()).isEqualTo(1);
+        Assertions.assertThat(responseCache.getHits()).isEqualTo(1);
+        Assertions.assertThat(responseCache.getMisses()).isEqualTo(1);
+        gistSource.shutdown();
+    }
+
+    /**
+     * All activities must be posted without a thread per request, never more than the limit at once.
+     */
+    @Test
+    public void submit_ManyActivities_ShouldCapRequestsInFlight() {
+        AsyncPipeDriveActivityClient client = new AsyncPipeDriveActivityClient(httpClient, metrics, circuitBreakers, baseUrl, "token",
+                MAX_IN_FLIGHT);
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            results.add(client.submit(String.valueOf(i), "u" + i));
+        }
+
+        Assertions.assertThat(results.stream().allMatch(CompletableFuture::join)).isTrue();
+        Assertions.assertThat(maxInFlight.get()).isBetween(2, MAX_IN_FLIGHT);
+        Assertions.assertThat(client.getQueueDepth()).isEqualTo(0);
+        Assertions.assertThat(registry.get(OutboundMetrics.REQUESTS).tag("api", "pipedrive").tag("status", "200")
+                .timer().count()).isEqualTo(200);
+    }
+
+    /**
+     * A failing endpoint must complete with false, not exceptionally.
+     */
+    @Test
+    public void submit_Unreachable_ShouldReturnFalse() {
+        AsyncPipeDriveActivityClient client = new AsyncPipeDriveActivityClient(httpClient, metrics, circuitBreakers,
+                "http://127.0.0.1:1", "token", MAX_IN_FLIGHT);
+
+        Assertions.assertThat(client.submit("1", "u1").join()).isFalse();
+    }
+
+    /**
+     * @param exchange the exchange.
+     * @param body     json body.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * @param millis milliseconds to sleep.
+     */
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.test.demo.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.test.demo.UserAlreadyExistsException;
+import com.test.demo.dto.GistDto;
 import com.test.demo.dto.UserDTO;
 import org.assertj.core.api.Assertions;
 import org.junit.After;
@@ -13,7 +14,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests related to {@link DefaultMainService}.
@@ -37,6 +44,12 @@ public class DefaultMainServiceTest {
     @Autowired
     private MainService mainService;
 
+    /**
+     * Injected cache of the service.
+     */
+    @Autowired
+    private GistCache gistCache;
+
     /**
      * Preparation of data before running tests.
      */
@@ -92,6 +105,16 @@ public class DefaultMainServiceTest {
         mainService.addUser(EXISTING_USER_USERNAME);
     }
 
+    /**
+     * Add a user which cannot exist on Github, should throw exception.
+     *
+     * @throws UserAlreadyExistsException if user exists.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void addUser_InvalidUsername_ShouldThrowException() throws UserAlreadyExistsException {
+        mainService.addUser("not/a-user");
+    }
+
     /**
      * Remove a user which is not screened. should succeed.
      */
@@ -148,6 +171,70 @@ public class DefaultMainServiceTest {
 
     }
 
+    /**
+     * A gist created between the fetch of the cached gists and a visit served from them must be served by the
+     * next visit: the last visit moves to the fetch, not to the visit.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @Test
+    public void getRawUserGists_GistCreatedAfterFetch_ShouldServeItNextVisit() throws InterruptedException {
+        GistCache.Lookup primed = gistCache.get(EXISTING_USER_USERNAME,
+                () -> Collections.singletonList(gist("1", new Date(0))));
+        GistDto created = gist("2", new Date(primed.getFetchedAt()));
+        TimeUnit.MILLISECONDS.sleep(10);
+
+        Assertions.assertThat(mainService.getRawUserGists(EXISTING_USER_USERNAME)).isEqualTo("[{\"id\":\"1\"}]");
+        Date lastVisit = mainService.getUsers().stream()
+                .filter(userDTO -> userDTO.getUsername().equals(EXISTING_USER_USERNAME))
+                .findFirst().get().getLastVisit();
+        Assertions.assertThat(lastVisit).isBeforeOrEqualsTo(new Date(primed.getFetchedAt()));
+
+        gistCache.merge(EXISTING_USER_USERNAME, Collections.singletonList(created));
+        Assertions.assertThat(mainService.getRawUserGists(EXISTING_USER_USERNAME)).isEqualTo("[{\"id\":\"2\"}]");
+    }
+
+    /**
+     * Gists looked up but never written, e.g. the response timed out, must be served by the next visit.
+     *
+     * @throws IOException if the gists cannot be written.
+     */
+    @Test
+    public void getUserGists_BodyNotWritten_ShouldKeepLastVisit() throws IOException {
+        gistCache.invalidate(EXISTING_USER_USERNAME);
+        gistCache.get(EXISTING_USER_USERNAME, () -> Collections.singletonList(gist("1", new Date(0))));
+
+        mainService.getUserGists(EXISTING_USER_USERNAME);
+        Assertions.assertThat(lastVisit()).isNull();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        mainService.getUserGists(EXISTING_USER_USERNAME).getBody().writeTo(body);
+        Assertions.assertThat(new String(body.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("[{\"id\":\"1\"}]");
+        Assertions.assertThat(lastVisit()).isNotNull();
+    }
+
+    /**
+     * @return last visit of {@link #EXISTING_USER_USERNAME}.
+     */
+    private Date lastVisit() {
+        return mainService.getUsers().stream()
+                .filter(userDTO -> userDTO.getUsername().equals(EXISTING_USER_USERNAME))
+                .findFirst().get().getLastVisit();
+    }
+
+    /**
+     * @param id        id of the gist.
+     * @param updatedAt timestamp that the gist was last updated.
+     * @return the gist.
+     */
+    private static GistDto gist(String id, Date updatedAt) {
+        GistDto gistDto = new GistDto();
+        gistDto.setId(id);
+        gistDto.setUpdatedAt(updatedAt);
+        gistDto.setJson("{\"id\":\"" + id + "\"}");
+        return gistDto;
+    }
+
     /**
      * Get gists for a user not being screened. Empty result is expected.
      *
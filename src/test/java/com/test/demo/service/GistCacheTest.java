@@ -0,0 +1,270 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.GistDto;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Tests related to {@link GistCache}.
+ */
+public class GistCacheTest {
+
+    /**
+     * Current time of the cache clock, in milliseconds.
+     */
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    /**
+     * Number of loader calls.
+     */
+    private final AtomicInteger loads = new AtomicInteger();
+
+    /**
+     * Cache under test: 60 seconds fresh, then 600 seconds stale.
+     */
+    private GistCache cache = new GistCache(1_000_000, 60, 600, now::get);
+
+    /**
+     * Stop background revalidation.
+     */
+    @After
+    public void after() {
+        cache.shutdown();
+    }
+
+    /**
+     * The first lookup must fetch, the next ones within the ttl must not.
+     */
+    @Test
+    public void get_Fresh_ShouldHitWithoutLoading() {
+        Assertions.assertThat(cache.get("octocat", this::load).getStatus()).isEqualTo(GistCache.Status.MISS);
+        now.addAndGet(30_000);
+
+        GistCache.Lookup lookup = cache.get("OctoCat", this::load);
+
+        Assertions.assertThat(lookup.getStatus()).isEqualTo(GistCache.Status.HIT);
+        Assertions.assertThat(lookup.getAgeSeconds()).isEqualTo(30);
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+    }
+
+    /**
+     * A stale entry must be served right away and revalidated in the background.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @Test
+    public void get_Stale_ShouldServeAndRevalidate() throws InterruptedException {
+        cache.get("octocat", this::load);
+        now.addAndGet(120_000);
+
+        Assertions.assertThat(cache.get("octocat", this::load).getStatus()).isEqualTo(GistCache.Status.STALE);
+
+        // the revalidated entry is stored after the loader returns; polling must not load it again
+        Supplier<List<GistDto>> noLoad = () -> {
+            throw new IllegalStateException("Not loaded again");
+        };
+        for (int i = 0; i < 100 && cache.get("octocat", noLoad).getStatus() != GistCache.Status.HIT; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        Assertions.assertThat(cache.get("octocat", noLoad).getStatus()).isEqualTo(GistCache.Status.HIT);
+        Assertions.assertThat(loads.get()).isEqualTo(2);
+    }
+
+    /**
+     * An expired entry must be served when fetching it again fails.
+     */
+    @Test
+    public void get_ExpiredAndLoaderFails_ShouldServeStale() {
+        cache.get("octocat", this::load);
+        now.addAndGet(3_600_000);
+
+        GistCache.Lookup lookup = cache.get("octocat", () -> {
+            throw new IllegalStateException("Github is down");
+        });
+
+        Assertions.assertThat(lookup.getStatus()).isEqualTo(GistCache.Status.STALE);
+        Assertions.assertThat(lookup.toJson(null)).isEqualTo("[{\"id\":\"1\"},{\"id\":\"2\"}]");
+    }
+
+    /**
+     * Concurrent lookups of a missing user must share one fetch.
+     *
+     * @throws Exception if a lookup fails.
+     */
+    @Test
+    public void get_ConcurrentMisses_ShouldLoadOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<GistCache.Lookup>> lookups = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                lookups.add(executor.submit(() -> cache.get("octocat", () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return load();
+                })));
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+            release.countDown();
+            for (Future<GistCache.Lookup> lookup : lookups) {
+                Assertions.assertThat(lookup.get().toJson(null)).contains("\"id\":\"1\"");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+    }
+
+    /**
+     * Gists loaded for a user invalidated while they were being loaded must not be stored.
+     *
+     * @throws Exception if the test fails.
+     */
+    @Test
+    public void invalidate_DuringLoad_ShouldNotStoreLoadedGists() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<GistCache.Lookup> lookup = executor.submit(() -> cache.get("octocat", () -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return load();
+        }));
+        loading.await();
+
+        cache.invalidate("OctoCat");
+        release.countDown();
+
+        Assertions.assertThat(lookup.get().getStatus()).isEqualTo(GistCache.Status.MISS);
+        Assertions.assertThat(cache.size()).isZero();
+        Assertions.assertThat(cache.get("octocat", this::load).getStatus()).isEqualTo(GistCache.Status.MISS);
+        Assertions.assertThat(cache.size()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    /**
+     * The least recently used user must be evicted once the size limit is exceeded.
+     */
+    @Test
+    public void get_OverSizeLimit_ShouldEvictLeastRecentlyUsed() {
+        cache.shutdown();
+        cache = new GistCache(40, 60, 600, now::get);
+        cache.get("a", this::load);
+        cache.get("b", this::load);
+        cache.get("a", this::load);
+
+        cache.get("c", this::load);
+
+        Assertions.assertThat(cache.size()).isEqualTo(2);
+        Assertions.assertThat(cache.get("a", this::load).getStatus()).isEqualTo(GistCache.Status.HIT);
+        Assertions.assertThat(cache.get("b", this::load).getStatus()).isEqualTo(GistCache.Status.MISS);
+    }
+
+    /**
+     * Gists merged by the sweep must replace older versions, and only gists since the given date are returned.
+     */
+    @Test
+    public void merge_UpdatedGist_ShouldReplaceItAndFilterBySince() {
+        cache.get("octocat", this::load);
+
+        cache.merge("octocat", Collections.singletonList(gist("2", 5_000, "{\"id\":\"2\",\"v\":2}")));
+
+        GistCache.Lookup lookup = cache.get("octocat", this::load);
+        Assertions.assertThat(lookup.toJson(null)).isEqualTo("[{\"id\":\"2\",\"v\":2},{\"id\":\"1\"}]");
+        Assertions.assertThat(lookup.toJson(new Date(2_000))).isEqualTo("[{\"id\":\"2\",\"v\":2}]");
+        Assertions.assertThat(loads.get()).isEqualTo(1);
+    }
+
+    /**
+     * A gist created after an entry was fetched must be served to a visit since that fetch, once the entry is
+     * refreshed, even though the entry was served later than it was fetched.
+     */
+    @Test
+    public void getFetchedAt_GistCreatedAfterFetch_ShouldBeServedNextVisit() {
+        long fetchedAt = now.get();
+        cache.get("octocat", this::load);
+        // created after the fetch, visited from the cache after that
+        long createdAt = now.addAndGet(10_000);
+        now.addAndGet(20_000);
+        GistCache.Lookup visit = cache.get("octocat", this::load);
+        Assertions.assertThat(visit.getStatus()).isEqualTo(GistCache.Status.HIT);
+        Assertions.assertThat(visit.getFetchedAt()).isEqualTo(fetchedAt);
+
+        now.addAndGet(TimeUnit.HOURS.toMillis(1));
+        GistCache.Lookup next = cache.get("octocat", () -> {
+            List<GistDto> gists = load();
+            gists.add(0, gist("3", createdAt, "{\"id\":\"3\"}"));
+            return gists;
+        });
+
+        Assertions.assertThat(next.toJson(new Date(visit.getFetchedAt()))).isEqualTo("[{\"id\":\"3\"}]");
+    }
+
+    /**
+     * Writing must produce the same UTF-8 json as {@link GistCache.Lookup#toJson(Date)}.
+     *
+     * @throws IOException if writing fails.
+     */
+    @Test
+    public void writeTo_NonAsciiGist_ShouldWriteUtf8Json() throws IOException {
+        GistCache.Lookup lookup = cache.get("octocat", () -> Collections.singletonList(
+                gist("1", 1_000, "{\"description\":\"caf\u00e9 \u2615\"}")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        lookup.writeTo(null, out);
+
+        Assertions.assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8))
+                .isEqualTo("[{\"description\":\"caf\u00e9 \u2615\"}]")
+                .isEqualTo(lookup.toJson(null));
+        Assertions.assertThat(out.size()).isEqualTo(29);
+    }
+
+    /**
+     * @return two gists, counting the call.
+     */
+    private List<GistDto> load() {
+        loads.incrementAndGet();
+        List<GistDto> gists = new ArrayList<>();
+        gists.add(gist("1", 1_000, "{\"id\":\"1\"}"));
+        gists.add(gist("2", 1_000, "{\"id\":\"2\"}"));
+        return gists;
+    }
+
+    /**
+     * @param id        id of the gist.
+     * @param updatedAt timestamp that the gist was last updated, epoch millis.
+     * @param json      json of the gist.
+     * @return the gist.
+     */
+    private static GistDto gist(String id, long updatedAt, String json) {
+        GistDto gistDto = new GistDto();
+        gistDto.setId(id);
+        gistDto.setUpdatedAt(new Date(updatedAt));
+        gistDto.setJson(json);
+        return gistDto;
+    }
+}
@@ -0,0 +1,144 @@
+package com.test.demo.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.test.demo.dto.GistDto;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Tests related to {@link GitHubGistSource}.
+ */
+public class GitHubGistSourceTest {
+
+    /**
+     * Stub server serving two pages of gists.
+     */
+    private HttpServer server;
+
+    /**
+     * Query string of the first request received by the stub server.
+     */
+    private final AtomicReference<String> firstQuery = new AtomicReference<>();
+
+    /**
+     * Source under test.
+     */
+    private GitHubGistSource gistSource;
+
+    /**
+     * Start the stub server.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext("/users/octocat/gists", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            firstQuery.compareAndSet(null, query);
+            String body;
+            if (query.contains("page=2")) {
+                body = "[{\"id\":\"3\",\"html_url\":\"u3\",\"files\":{},\"updated_at\":\"2019-08-20T10:00:00Z\"}]";
+            } else {
+                exchange.getResponseHeaders().add("Link",
+                        "<" + baseUrl + "/users/octocat/gists?per_page=100&page=2>; rel=\"next\", "
+                                + "<" + baseUrl + "/users/octocat/gists?per_page=100&page=2>; rel=\"last\"");
+                body = "[{\"id\":\"1\",\"html_url\":\"u1\",\"public\":true},{\"id\":\"2\",\"html_url\":\"u2\"}]";
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        gistSource = new GitHubGistSource(new RestTemplate(), baseUrl);
+    }
+
+    /**
+     * Stop the stub server.
+     */
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    /**
+     * All pages must be followed and gists delivered in order.
+     */
+    @Test
+    public void forEachGist_TwoPages_ShouldReadAllGists() {
+        List<String> ids = new ArrayList<>();
+        List<GistDto> gists = new ArrayList<>();
+
+        int count = gistSource.forEachGist("octocat", null, (GistDto gistDto) -> {
+            ids.add(gistDto.getId());
+            gists.add(gistDto);
+        });
+
+        Assertions.assertThat(count).isEqualTo(3);
+        Assertions.assertThat(ids).containsExactly("1", "2", "3");
+        Assertions.assertThat(gists.get(2).getUpdatedAt()).isEqualTo(Date.from(Instant.parse("2019-08-20T10:00:00Z")));
+        Assertions.assertThat(firstQuery.get()).contains("per_page=100");
+    }
+
+    /**
+     * Each page must be handed over once its request returned, outside of the runner.
+     */
+    @Test
+    public void forEachPage_TwoPages_ShouldHandlePagesOutsideRunner() {
+        AtomicBoolean inRequest = new AtomicBoolean();
+        List<List<String>> pages = new ArrayList<>();
+        GitHubGistSource.RequestRunner runner = new GitHubGistSource.RequestRunner() {
+            @Override
+            public <R> R run(Supplier<R> request) {
+                inRequest.set(true);
+                try {
+                    return request.get();
+                } finally {
+                    inRequest.set(false);
+                }
+            }
+        };
+
+        int count = gistSource.forEachPage("octocat", null, runner, page -> {
+            Assertions.assertThat(inRequest).isFalse();
+            List<String> ids = new ArrayList<>();
+            page.forEach(gistDto -> ids.add(gistDto.getId()));
+            pages.add(ids);
+        });
+
+        Assertions.assertThat(count).isEqualTo(3);
+        Assertions.assertThat(pages).containsExactly(Arrays.asList("1", "2"),
+                Collections.singletonList("3"));
+    }
+
+    /**
+     * Only a link with rel="next" must be followed.
+     */
+    @Test
+    public void nextPageUri_LastPage_ShouldReturnNull() {
+        Assertions.assertThat(GitHubGistSource.nextPageUri("<https://x/gists?page=1>; rel=\"first\"")).isNull();
+        Assertions.assertThat(GitHubGistSource.nextPageUri(null)).isNull();
+        Assertions.assertThat(GitHubGistSource.nextPageUri("<https://x/gists?page=3>; rel=\"next\"").toString())
+                .isEqualTo("https://x/gists?page=3");
+    }
+}
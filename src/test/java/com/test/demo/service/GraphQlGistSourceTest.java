@@ -0,0 +1,269 @@
+package com.test.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import com.test.demo.dto.GistDto;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Tests related to {@link GraphQlGistSource}, against a local stub of the GraphQL api serving a canned user
+ * block for each login asked.
+ */
+public class GraphQlGistSourceTest {
+
+    /**
+     * Canned blocks by login; logins without one are not found.
+     */
+    private static final Map<String, String> USERS = new HashMap<>();
+
+    static {
+        // two new gists, then one older than the cursor
+        USERS.put("alice", gists(true, gist("a3", "2020-03-01T00:00:00Z"), gist("a2", "2020-02-01T00:00:00Z"),
+                gist("a1", "2019-12-01T00:00:00Z")));
+        // every gist asked for is new, there may be more
+        USERS.put("carol", gists(true, gist("c2", "2020-03-01T00:00:00Z"), gist("c1", "2020-02-01T00:00:00Z")));
+        // all of its gists
+        USERS.put("dave", gists(false, gist("d1", "2019-01-01T00:00:00Z")));
+        USERS.put("erin", gists(false));
+    }
+
+    /**
+     * Stub of the GraphQL api.
+     */
+    private HttpServer server;
+
+    /**
+     * Requests received by the stub.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Whether the stub fails every request.
+     */
+    private final AtomicBoolean down = new AtomicBoolean();
+
+    /**
+     * Authorization header of the last request.
+     */
+    private volatile String authorization;
+
+    /**
+     * Jackson Object mapper.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Source under test, 2 users a request.
+     */
+    private GraphQlGistSource source;
+
+    /**
+     * Start the stub server.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/graphql", exchange -> {
+            requests.incrementAndGet();
+            authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            byte[] bytes = down.get()
+                    ? "{\"message\":\"Bad gateway\"}".getBytes(StandardCharsets.UTF_8)
+                    : respond(request).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(down.get() ? 502 : 200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        source = new GraphQlGistSource(new RestTemplate(),
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/graphql", "token", "graphql", 2, 3);
+    }
+
+    /**
+     * Stop the stub server.
+     */
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    /**
+     * Users whose new gists were all read must get them, the others must be left out for the REST api.
+     */
+    @Test
+    public void fetchRecent_MixedUsers_ShouldKeepCompleteOnes() {
+        Map<String, Date> since = new LinkedHashMap<>();
+        since.put("alice", date("2020-01-01T00:00:00Z"));
+        since.put("bob", date("2020-01-01T00:00:00Z"));
+        since.put("carol", date("2020-01-01T00:00:00Z"));
+        since.put("dave", null);
+
+        Map<String, List<GistDto>> recent = source.fetchRecent(since);
+
+        Assertions.assertThat(requests.get()).isEqualTo(1);
+        Assertions.assertThat(authorization).isEqualTo("bearer token");
+        Assertions.assertThat(recent.keySet()).containsExactlyInAnyOrder("alice", "dave");
+        Assertions.assertThat(ids(recent.get("alice"))).containsExactly("a3", "a2");
+        Assertions.assertThat(recent.get("alice").get(0).getUrl()).isEqualTo("https://gist.github.com/a3");
+        Assertions.assertThat(recent.get("alice").get(0).getUpdatedAt()).isEqualTo(date("2020-03-01T00:00:00Z"));
+        Assertions.assertThat(ids(recent.get("dave"))).containsExactly("d1");
+    }
+
+    /**
+     * A batch must be fetched once, by the first user taken, and every user must be taken once.
+     */
+    @Test
+    public void take_SeveralBatches_ShouldFetchEachOnce() {
+        Map<String, Date> since = new LinkedHashMap<>();
+        for (String username : new String[]{"alice", "dave", "erin", "bob", "carol"}) {
+            since.put(username, date("2018-01-01T00:00:00Z"));
+        }
+        GraphQlGistSource.Batches batches = source.batches(since);
+
+        Assertions.assertThat(batches.size()).isEqualTo(3);
+        Assertions.assertThat(ids(batches.take("dave"))).containsExactly("d1");
+        // every gist asked for is newer than the cursor
+        Assertions.assertThat(batches.take("alice")).isNull();
+        Assertions.assertThat(requests.get()).isEqualTo(1);
+        Assertions.assertThat(batches.take("dave")).isNull();
+        Assertions.assertThat(batches.take("erin")).isEmpty();
+        Assertions.assertThat(batches.take("bob")).isNull();
+        Assertions.assertThat(batches.take("carol")).isNull();
+        Assertions.assertThat(batches.take("frank")).isNull();
+        Assertions.assertThat(requests.get()).isEqualTo(3);
+    }
+
+    /**
+     * Every user of a batch must be as of the batch request, however late it is taken.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @Test
+    public void requestedAt_TakenLater_ShouldBeBatchRequest() throws InterruptedException {
+        Map<String, Date> since = new LinkedHashMap<>();
+        since.put("alice", date("2020-01-01T00:00:00Z"));
+        since.put("dave", null);
+        GraphQlGistSource.Batches batches = source.batches(since);
+        Assertions.assertThat(batches.requestedAt("alice")).isNull();
+
+        Date before = new Date();
+        batches.take("alice");
+        Date after = new Date();
+        Thread.sleep(20);
+        batches.take("dave");
+
+        Assertions.assertThat(batches.requestedAt("dave")).isBetween(before, after);
+        Assertions.assertThat(batches.requestedAt("dave")).isEqualTo(batches.requestedAt("alice"));
+        Assertions.assertThat(batches.requestedAt("frank")).isNull();
+    }
+
+    /**
+     * When the GraphQL api fails, every user of the batch must fall back to the REST api.
+     */
+    @Test
+    public void take_ApiDown_ShouldFallBack() {
+        down.set(true);
+        Map<String, Date> since = new LinkedHashMap<>();
+        since.put("alice", null);
+        since.put("dave", null);
+        GraphQlGistSource.Batches batches = source.batches(since);
+
+        Assertions.assertThat(batches.take("alice")).isNull();
+        Assertions.assertThat(batches.take("dave")).isNull();
+        Assertions.assertThat(requests.get()).isEqualTo(1);
+    }
+
+    /**
+     * Without a token the source must stay disabled.
+     */
+    @Test
+    public void isEnabled_NoToken_ShouldBeDisabled() {
+        Assertions.assertThat(source.isEnabled()).isTrue();
+        Assertions.assertThat(new GraphQlGistSource(new RestTemplate(), "http://127.0.0.1/graphql", "", "graphql",
+                2, 3).isEnabled()).isFalse();
+    }
+
+    /**
+     * Answer a request with the canned block of each login asked, as the GraphQL api does: a missing user is
+     * {@code null} with an error.
+     *
+     * @param request body of the request.
+     * @return body of the response.
+     */
+    private static String respond(JsonNode request) {
+        StringBuilder data = new StringBuilder();
+        StringBuilder errors = new StringBuilder();
+        Iterator<Map.Entry<String, JsonNode>> variables = request.path("variables").fields();
+        while (variables.hasNext()) {
+            Map.Entry<String, JsonNode> variable = variables.next();
+            String alias = "u" + variable.getKey().substring(1);
+            String block = USERS.get(variable.getValue().asText());
+            data.append(data.length() == 0 ? "" : ",").append('"').append(alias).append("\":").append(block);
+            if (block == null) {
+                errors.append(errors.length() == 0 ? "" : ",").append("{\"type\":\"NOT_FOUND\",\"path\":[\"")
+                        .append(alias).append("\"]}");
+            }
+        }
+        return "{\"data\":{" + data + "}" + (errors.length() == 0 ? "" : ",\"errors\":[" + errors + "]") + "}";
+    }
+
+    /**
+     * @param hasNextPage whether there are more gists.
+     * @param nodes       json of the gists, newest first.
+     * @return json of a user block.
+     */
+    private static String gists(boolean hasNextPage, String... nodes) {
+        return "{\"gists\":{\"pageInfo\":{\"hasNextPage\":" + hasNextPage + "},\"nodes\":["
+                + String.join(",", nodes) + "]}}";
+    }
+
+    /**
+     * @param name      id of the gist.
+     * @param updatedAt timestamp of the last update.
+     * @return json of a gist.
+     */
+    private static String gist(String name, String updatedAt) {
+        return "{\"name\":\"" + name + "\",\"url\":\"https://gist.github.com/" + name + "\",\"updatedAt\":\""
+                + updatedAt + "\"}";
+    }
+
+    /**
+     * @param value an ISO-8601 timestamp.
+     * @return the timestamp.
+     */
+    private static Date date(String value) {
+        return Date.from(Instant.parse(value));
+    }
+
+    /**
+     * @param gists gists.
+     * @return ids of the gists.
+     */
+    private static List<String> ids(List<GistDto> gists) {
+        return gists.stream().map(GistDto::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,167 @@
+package com.test.demo.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests related to {@link PipeDriveActivityPipeline}, against a local stub of the activities endpoint.
+ */
+public class PipeDriveActivityPipelineTest {
+
+    /**
+     * Simulated latency of the stub in milliseconds.
+     */
+    private static final int LATENCY_MILLIS = 25;
+
+    /**
+     * Number of activities sent per measurement.
+     */
+    private static final int ACTIVITIES = 40;
+
+    /**
+     * A logger.
+     */
+    private Logger logger = LoggerFactory.getLogger(PipeDriveActivityPipelineTest.class);
+
+    /**
+     * Stub of the Pipe Drive api.
+     */
+    private HttpServer server;
+
+    /**
+     * Handler threads of the stub.
+     */
+    private ExecutorService serverExecutor;
+
+    /**
+     * Requests currently being handled by the stub.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Maximum number of requests handled by the stub at the same time.
+     */
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * Start the stub server. Every activity whose subject contains "fail" is rejected.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server.setExecutor(serverExecutor);
+        server.createContext("/v1/activities", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                String request = new String(StreamUtils.copyToByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8);
+                Thread.sleep(LATENCY_MILLIS);
+                String body = request.contains("fail")
+                        ? "{\"success\":false,\"error\":\"rejected\"}"
+                        : "{\"success\":true,\"data\":{\"id\":1}}";
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(201, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Stop the stub server.
+     */
+    @After
+    public void after() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Success must be reported per activity.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void submit_RejectedActivity_ShouldReportFalse() throws InterruptedException {
+        PipeDriveActivityPipeline pipeline = pipeline(2);
+
+        CompletableFuture<Boolean> ok = pipeline.submit("1", "https://gist/1");
+        CompletableFuture<Boolean> rejected = pipeline.submit("fail", "https://gist/fail");
+
+        Assertions.assertThat(ok.join()).isTrue();
+        Assertions.assertThat(rejected.join()).isFalse();
+        Assertions.assertThat(pipeline.getQueueDepth()).isEqualTo(0);
+        pipeline.shutdown();
+    }
+
+    /**
+     * Several requests must be in flight, so the pipeline beats the old one-by-one loop.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void submit_ManyActivities_ShouldBeFasterThanSerial() throws InterruptedException {
+        long serial = measure(pipeline(1));
+        maxInFlight.set(0);
+        long pipelined = measure(pipeline(8));
+
+        logger.info("{} activities: serial {} ms, pipelined {} ms", ACTIVITIES, serial, pipelined);
+        Assertions.assertThat(maxInFlight.get()).isGreaterThan(1);
+        Assertions.assertThat(pipelined).isLessThan(serial);
+    }
+
+    /**
+     * Send {@link #ACTIVITIES} activities and wait for all of them.
+     *
+     * @param pipeline the pipeline.
+     * @return elapsed time in milliseconds.
+     * @throws InterruptedException if interrupted.
+     */
+    private long measure(PipeDriveActivityPipeline pipeline) throws InterruptedException {
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < ACTIVITIES; i++) {
+            results.add(pipeline.submit(String.valueOf(i), "https://gist/" + i));
+        }
+        Assertions.assertThat(results.stream().allMatch(CompletableFuture::join)).isTrue();
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        pipeline.shutdown();
+        return elapsed;
+    }
+
+    /**
+     * @param maxInFlight maximum number of requests in flight.
+     * @return a pipeline against the stub server.
+     */
+    private PipeDriveActivityPipeline pipeline(int maxInFlight) {
+        String apiUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new PipeDriveActivityPipeline(new RestTemplate(), apiUrl, "token", maxInFlight, 100);
+    }
+}
@@ -0,0 +1,109 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.UserDTO;
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tests related to {@link PollScheduler}.
+ */
+public class PollSchedulerTest {
+
+    /**
+     * Users being polled.
+     */
+    private UserRegistry users;
+
+    /**
+     * Scheduler under test: 15 minutes to a day, 3 hours at first, 2 users a minute.
+     */
+    private PollScheduler scheduler;
+
+    /**
+     * Create the scheduler.
+     */
+    @Before
+    public void before() {
+        users = new UserRegistry();
+        scheduler = new PollScheduler(users, 15, 1440, 180, 120, 60000);
+    }
+
+    /**
+     * New users must be due right away, within the budget of a tick, and recently swept ones later.
+     */
+    @Test
+    public void due_NewUsers_ShouldRespectBudget() {
+        add("a", null);
+        add("b", null);
+        add("c", null);
+        add("swept", new Date(0));
+
+        Assertions.assertThat(usernames(scheduler.due(1000, username -> true))).hasSize(2);
+        Assertions.assertThat(usernames(scheduler.due(1000, username -> true))).hasSize(1);
+        Assertions.assertThat(scheduler.due(1000, username -> true)).isEmpty();
+        Assertions.assertThat(usernames(scheduler.due(TimeUnit.MINUTES.toMillis(180), username -> true)))
+                .containsExactly("swept");
+        Assertions.assertThat(scheduler.size()).isEqualTo(4);
+    }
+
+    /**
+     * Active users must be polled more often, dormant ones less, within the bounds.
+     */
+    @Test
+    public void polled_ShouldAdaptInterval() {
+        add("active", null);
+        add("dormant", null);
+        scheduler.due(0, username -> true);
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.polled("active", 3, 0);
+            scheduler.polled("Dormant", 0, 0);
+        }
+
+        Assertions.assertThat(scheduler.getIntervalMillis("active")).isEqualTo(TimeUnit.MINUTES.toMillis(15));
+        Assertions.assertThat(scheduler.getIntervalMillis("dormant")).isEqualTo(TimeUnit.MINUTES.toMillis(1440));
+        Assertions.assertThat(usernames(scheduler.due(TimeUnit.MINUTES.toMillis(15), username -> true)))
+                .containsExactly("active");
+    }
+
+    /**
+     * Removed users must be dropped, and users of another replica must not be polled.
+     */
+    @Test
+    public void due_RemovedOrNotOwned_ShouldSkip() {
+        add("removed", null);
+        add("elsewhere", null);
+        scheduler.due(0, username -> false);
+        users.remove("removed");
+
+        List<UserDTO> due = scheduler.due(TimeUnit.MINUTES.toMillis(15), username -> true);
+
+        Assertions.assertThat(usernames(due)).containsExactly("elsewhere");
+        Assertions.assertThat(scheduler.size()).isEqualTo(1);
+    }
+
+    /**
+     * @param username  username of the user.
+     * @param lastAdded last sweep of the user, {@code null} if never swept.
+     */
+    private void add(String username, Date lastAdded) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        userDTO.setLastAdded(lastAdded);
+        users.add(userDTO);
+    }
+
+    /**
+     * @param userDTOs users.
+     * @return their usernames.
+     */
+    private static List<String> usernames(List<UserDTO> userDTOs) {
+        return userDTOs.stream().map(UserDTO::getUsername).collect(Collectors.toList());
+    }
+}
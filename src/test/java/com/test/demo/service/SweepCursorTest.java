@@ -0,0 +1,164 @@
+package com.test.demo.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.test.demo.DemoApplication;
+import com.test.demo.simulator.ApiSimulator;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests related to the cursor of the sweep of {@link DefaultMainService}, running the application against a
+ * stub of the Github and Pipe Drive apis whose gists are set by each test.
+ */
+public class SweepCursorTest {
+
+    /**
+     * Gists of every user, as ids and update timestamps in whole seconds.
+     */
+    private final Map<String, Instant> gists = new ConcurrentHashMap<>();
+
+    /**
+     * Bodies of the activities created.
+     */
+    private final List<String> activities = new CopyOnWriteArrayList<>();
+
+    /**
+     * Stub of both apis.
+     */
+    private HttpServer server;
+
+    /**
+     * Directory of the user files.
+     */
+    private Path storageDir;
+
+    /**
+     * The application.
+     */
+    private ConfigurableApplicationContext context;
+
+    /**
+     * Start the stub and the application.
+     *
+     * @throws IOException if the stub or the storage directory cannot be created.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/users/", exchange -> {
+            String since = UriComponentsBuilder.fromUri(exchange.getRequestURI()).build().getQueryParams()
+                    .getFirst("since");
+            Instant from = since == null ? Instant.MIN : OffsetDateTime.parse(since).toInstant();
+            String json = gists.entrySet().stream()
+                    .filter(gist -> !gist.getValue().isBefore(from))
+                    .sorted(Map.Entry.<String, Instant>comparingByValue().reversed())
+                    .map(gist -> ApiSimulator.gistJson(gist.getKey(), gist.getValue()))
+                    .collect(Collectors.joining(",", "[", "]"));
+            respond(exchange, 200, json);
+        });
+        server.createContext("/v1/activities", exchange -> {
+            activities.add(StreamUtils.copyToString(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            respond(exchange, 201, "{\"success\":true,\"data\":{\"id\":" + activities.size() + "}}");
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        storageDir = Files.createTempDirectory("sweep-cursor");
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--github.api-url=" + url,
+                        "--pipedrive.api-url=" + url,
+                        "--storage.dir=" + storageDir,
+                        "--sweep.schedule=fixed");
+    }
+
+    /**
+     * Stop the application and the stub.
+     *
+     * @throws IOException if the storage directory cannot be deleted.
+     */
+    @After
+    public void after() throws IOException {
+        context.close();
+        server.stop(0);
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A gist updated in the second of the cursor, after the fetch that moved it, must be delivered by the next
+     * sweep, and the gist read again with it must not be delivered twice.
+     *
+     * @throws Exception if the user cannot be added or a sweep is interrupted.
+     */
+    @Test
+    public void sweep_GistUpdatedInCursorSecond_ShouldBeDelivered() throws Exception {
+        MainService mainService = context.getBean(MainService.class);
+        Instant second = Instant.ofEpochSecond(Instant.now().getEpochSecond() - 60);
+        gists.put("gist1", second);
+        mainService.addUser("octocat");
+        sweep(mainService);
+        Assertions.assertThat(activities).hasSize(1);
+
+        gists.put("gist2", second);
+        sweep(mainService);
+
+        Assertions.assertThat(activities).hasSize(2);
+        Assertions.assertThat(activities.get(1)).contains("gist2");
+    }
+
+    /**
+     * Run a sweep, waiting for a running one (e.g. the scheduled one) to end first.
+     *
+     * @param mainService the service.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static void sweep(MainService mainService) throws InterruptedException {
+        do {
+            while (mainService.getSweepProgress().isRunning()) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+        } while (!mainService.sweep());
+    }
+
+    /**
+     * @param exchange the exchange.
+     * @param status   status of the response.
+     * @param json     body of the response.
+     * @throws IOException if the response cannot be written.
+     */
+    private static void respond(HttpExchange exchange, int status, String json)
+            throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.SweepProgress;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests related to {@link SweepEngine}.
+ */
+public class SweepEngineTest {
+
+    /**
+     * Engine under test, 4 workers and 2 Github permits.
+     */
+    private final SweepEngine sweepEngine = new SweepEngine(4, 2);
+
+    /**
+     * Required steps after running tests.
+     */
+    @After
+    public void after() {
+        sweepEngine.shutdown();
+    }
+
+    /**
+     * Items must be processed in parallel, so all 4 workers can meet at a latch.
+     */
+    @Test
+    public void run_FourItems_ShouldProcessInParallel() {
+        CountDownLatch latch = new CountDownLatch(4);
+        AtomicBoolean allMet = new AtomicBoolean(true);
+
+        boolean started = sweepEngine.run(Arrays.asList(1, 2, 3, 4), item -> {
+            latch.countDown();
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                allMet.set(false);
+            }
+        });
+
+        Assertions.assertThat(started).isTrue();
+        Assertions.assertThat(allMet.get()).isTrue();
+    }
+
+    /**
+     * Failing items are counted, the others still complete.
+     */
+    @Test
+    public void run_FailingItem_ShouldCountFailureAndContinue() {
+        sweepEngine.run(Arrays.asList(1, 2, 3), item -> {
+            if (item == 2) {
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        SweepProgress progress = sweepEngine.getProgress();
+        Assertions.assertThat(progress.isRunning()).isFalse();
+        Assertions.assertThat(progress.getTotal()).isEqualTo(3);
+        Assertions.assertThat(progress.getCompleted()).isEqualTo(2);
+        Assertions.assertThat(progress.getFailed()).isEqualTo(1);
+        Assertions.assertThat(progress.getFinishedAt()).isNotNull();
+    }
+
+    /**
+     * A sweep started while another one is running must be rejected.
+     *
+     * @throws InterruptedException if interrupted.
+     */
+    @Test
+    public void run_WhileRunning_ShouldBeSkipped() throws InterruptedException {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> sweepEngine.run(Collections.singletonList(1), item -> {
+            inside.countDown();
+            release.await();
+        }));
+        first.start();
+        inside.await();
+
+        boolean second = sweepEngine.run(Collections.singletonList(2), item -> {
+        });
+
+        release.countDown();
+        first.join();
+        Assertions.assertThat(second).isFalse();
+        Assertions.assertThat(sweepEngine.isRunning()).isFalse();
+    }
+
+    /**
+     * Concurrent Github calls must never exceed the configured permits.
+     */
+    @Test
+    public void callGitHub_ManyWorkers_ShouldRespectConcurrencyCap() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<Integer> items = Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8);
+
+        sweepEngine.run(items, item -> sweepEngine.callGitHub(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return inFlight.decrementAndGet();
+        }));
+
+        Assertions.assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+        Assertions.assertThat(sweepEngine.getProgress().getCompleted()).isEqualTo(items.size());
+    }
+
+    /**
+     * The non-blocking sweep must keep at most the given number of items in progress, and count failures.
+     */
+    @Test
+    public void runAsync_ManyItems_ShouldCapItemsInProgress() {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        AtomicInteger inProgress = new AtomicInteger();
+        AtomicInteger maxInProgress = new AtomicInteger();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(i);
+        }
+
+        boolean started = sweepEngine.runAsync(items, item -> {
+            maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            timer.schedule(() -> {
+                inProgress.decrementAndGet();
+                if (item == 7) {
+                    done.completeExceptionally(new IllegalStateException("boom"));
+                } else {
+                    done.complete(null);
+                }
+            }, 5, TimeUnit.MILLISECONDS);
+            return done;
+        }, 10);
+        timer.shutdown();
+
+        SweepProgress progress = sweepEngine.getProgress();
+        Assertions.assertThat(started).isTrue();
+        Assertions.assertThat(maxInProgress.get()).isEqualTo(10);
+        Assertions.assertThat(progress.getCompleted()).isEqualTo(99);
+        Assertions.assertThat(progress.getFailed()).isEqualTo(1);
+        Assertions.assertThat(progress.isRunning()).isFalse();
+    }
+}
@@ -0,0 +1,98 @@
+package com.test.demo.service;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests related to {@link UserBulkTransfer}.
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+public class UserBulkTransferTest {
+
+    /**
+     * Injected bulk transfer.
+     */
+    @Autowired
+    private UserBulkTransfer userBulkTransfer;
+
+    /**
+     * Injected service.
+     */
+    @Autowired
+    private MainService mainService;
+
+    /**
+     * Remove imported users.
+     */
+    @After
+    public void after() {
+        mainService.removeUser("bulk-one");
+        mainService.removeUser("bulk-two");
+    }
+
+    /**
+     * Every ndjson line must get its own result, in order.
+     *
+     * @throws IOException if the import fails.
+     */
+    @Test
+    public void importUsers_Ndjson_ShouldReportEachLine() throws IOException {
+        String body = "{\"username\":\"bulk-one\"}\n\n{\"username\":\"BULK-ONE\"}\n{\"name\":\"x\"}\nnot json\n"
+                + "{\"username\":\"-bad\"}\n{\"username\":\"bulk-two\"}\n";
+
+        String results = importUsers(body, UserBulkTransfer.Format.NDJSON);
+
+        Assertions.assertThat(results.split("\n")).containsExactly(
+                "{\"line\":1,\"username\":\"bulk-one\",\"result\":\"ADDED\"}",
+                "{\"line\":3,\"username\":\"BULK-ONE\",\"result\":\"EXISTS\"}",
+                "{\"line\":4,\"result\":\"INVALID\",\"error\":\"Not a Github username\"}",
+                "{\"line\":5,\"result\":\"INVALID\",\"error\":\"Malformed json\"}",
+                "{\"line\":6,\"username\":\"-bad\",\"result\":\"INVALID\",\"error\":\"Not a Github username\"}",
+                "{\"line\":7,\"username\":\"bulk-two\",\"result\":\"ADDED\"}");
+        Assertions.assertThat(mainService.getUsers(null, Integer.MAX_VALUE))
+                .extracting("username").contains("bulk-one", "bulk-two");
+    }
+
+    /**
+     * A csv header must be skipped, and exported users must read back as csv.
+     *
+     * @throws IOException if the import or export fails.
+     */
+    @Test
+    public void importAndExportUsers_Csv_ShouldRoundTrip() throws IOException {
+        String results = importUsers("username,lastVisit\n\"bulk-one\",\nbulk-two\n", UserBulkTransfer.Format.CSV);
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+
+        userBulkTransfer.exportUsers(UserBulkTransfer.Format.CSV, exported);
+
+        Assertions.assertThat(results).contains("\"line\":2,\"username\":\"bulk-one\",\"result\":\"ADDED\"")
+                .contains("\"line\":3,\"username\":\"bulk-two\",\"result\":\"ADDED\"");
+        Assertions.assertThat(new String(exported.toByteArray(), StandardCharsets.UTF_8).split("\n"))
+                .startsWith("username,lastVisit,lastAdded,cursor")
+                .contains("bulk-one,,,", "bulk-two,,,");
+    }
+
+    /**
+     * @param body   imported body.
+     * @param format format of the body.
+     * @return the results.
+     * @throws IOException if the import fails.
+     */
+    private String importUsers(String body, UserBulkTransfer.Format format) throws IOException {
+        ByteArrayOutputStream results = new ByteArrayOutputStream();
+        userBulkTransfer.importUsers(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), format,
+                results);
+        return new String(results.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+package com.test.demo.service;
+
+import com.test.demo.dto.UserDTO;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests related to {@link UserRegistry}.
+ */
+public class UserRegistryTest {
+
+    /**
+     * Registry under test.
+     */
+    private final UserRegistry registry = new UserRegistry();
+
+    /**
+     * Adding the same username with a different case must be rejected.
+     */
+    @Test
+    public void add_SameUsernameDifferentCase_ShouldBeRejected() {
+        Assertions.assertThat(registry.add(user("Octocat"))).isTrue();
+        Assertions.assertThat(registry.add(user("octocat"))).isFalse();
+        Assertions.assertThat(registry.size()).isEqualTo(1);
+    }
+
+    /**
+     * Lookup and removal must ignore case.
+     */
+    @Test
+    public void findAndRemove_DifferentCase_ShouldMatch() {
+        registry.add(user("Octocat"));
+
+        Assertions.assertThat(registry.find("OCTOCAT")).isPresent();
+        Assertions.assertThat(registry.remove("octoCAT")).isPresent();
+        Assertions.assertThat(registry.contains("Octocat")).isFalse();
+        Assertions.assertThat(registry.remove("Octocat")).isNotPresent();
+    }
+
+    /**
+     * Pages must follow each other in username order, ignoring case, without gaps or repeats.
+     */
+    @Test
+    public void page_WithCursor_ShouldReturnUsersInOrder() {
+        registry.add(user("carol"));
+        registry.add(user("Bob"));
+        registry.add(user("alice"));
+        registry.add(user("dave"));
+        registry.remove("carol");
+
+        List<UserDTO> first = registry.page(null, 2);
+        List<UserDTO> second = registry.page(first.get(1).getUsername(), 2);
+
+        Assertions.assertThat(first).extracting(UserDTO::getUsername).containsExactly("alice", "Bob");
+        Assertions.assertThat(second).extracting(UserDTO::getUsername).containsExactly("dave");
+        Assertions.assertThat(registry.page("dave", 2)).isEmpty();
+    }
+
+    /**
+     * Iterating the snapshot while it is modified must not fail.
+     */
+    @Test
+    public void snapshot_ModifiedWhileIterating_ShouldNotThrow() {
+        for (int i = 0; i < 100; i++) {
+            registry.add(user("user" + i));
+        }
+        int seen = 0;
+        for (UserDTO ignored : registry.snapshot()) {
+            registry.remove("user" + seen);
+            registry.add(user("other" + seen));
+            seen++;
+        }
+        Assertions.assertThat(seen).isGreaterThanOrEqualTo(1);
+        Assertions.assertThat(registry.size()).isEqualTo(100);
+    }
+
+    /**
+     * Concurrent adds of the same username must only succeed once.
+     *
+     * @throws Exception if a worker fails.
+     */
+    @Test
+    public void add_Concurrently_ShouldSucceedOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger added = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            String username = i % 2 == 0 ? "Duplicate" : "DUPLICATE";
+            futures.add(executor.submit(() -> {
+                if (registry.add(user(username))) {
+                    added.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Assertions.assertThat(added.get()).isEqualTo(1);
+        Assertions.assertThat(registry.size()).isEqualTo(1);
+    }
+
+    /**
+     * @param username username.
+     * @return a new user.
+     */
+    private UserDTO user(String username) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        return userDTO;
+    }
+}
@@ -0,0 +1,161 @@
+package com.test.demo.simulator;
+
+import com.test.demo.dto.GistDto;
+import com.test.demo.service.GitHubGistSource;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests related to {@link ApiSimulator}.
+ */
+public class ApiSimulatorTest {
+
+    /**
+     * Simulator under test.
+     */
+    private ApiSimulator simulator;
+
+    /**
+     * Client that does not throw on error responses; the JDK client cannot read a 401 to a streamed post.
+     */
+    private final RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory());
+
+    /**
+     * Start the simulator.
+     *
+     * @throws IOException if the simulator cannot be started.
+     */
+    @Before
+    public void before() throws IOException {
+        simulator = new ApiSimulator("127.0.0.1", 0);
+        simulator.setGistsPerUser(5);
+        restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Stop the simulator.
+     */
+    @After
+    public void after() {
+        simulator.close();
+    }
+
+    /**
+     * Pages must link to the next one, and the source must read all gists across them, newest first.
+     */
+    @Test
+    public void gists_SmallPages_ShouldLinkNextPage() {
+        ResponseEntity<GistDto[]> page = restTemplate.getForEntity(
+                simulator.getBaseUrl() + "/users/octocat/gists?per_page=2", GistDto[].class);
+
+        Assertions.assertThat(page.getBody()).hasSize(2);
+        Assertions.assertThat(page.getHeaders().getFirst("Link"))
+                .contains("per_page=2&page=2>; rel=\"next\"", "page=3>; rel=\"last\"");
+
+        List<GistDto> gists = new ArrayList<>();
+        new GitHubGistSource(new RestTemplate(), simulator.getBaseUrl()).forEachGist("octocat", null, gists::add);
+        Assertions.assertThat(gists).hasSize(5);
+        Assertions.assertThat(gists.get(0).getId()).isEqualTo(page.getBody()[0].getId());
+        Assertions.assertThat(gists.get(0).getUpdatedAt()).isAfter(gists.get(4).getUpdatedAt());
+    }
+
+    /**
+     * Only gists updated at or after {@code since} must be returned, and other users must have other gists.
+     */
+    @Test
+    public void gists_Since_ShouldOnlyReturnNewerGists() {
+        GitHubGistSource gistSource = new GitHubGistSource(new RestTemplate(), simulator.getBaseUrl());
+        List<GistDto> gists = new ArrayList<>();
+        // the initial gists were updated one, two, ... minutes before the start
+        gistSource.forEachGist("octocat", Date.from(Instant.now().minusSeconds(150)), gists::add);
+        List<GistDto> others = new ArrayList<>();
+        gistSource.forEachGist("hubot", null, others::add);
+
+        Assertions.assertThat(gists).hasSize(2);
+        Assertions.assertThat(others).extracting(GistDto::getId)
+                .doesNotContainAnyElementsOf(gists.stream().map(GistDto::getId).collect(Collectors.toList()));
+    }
+
+    /**
+     * A request with the ETag of the previous response must get 304, which is not counted by the rate limit.
+     */
+    @Test
+    public void gists_SameETag_ShouldAnswerNotModified() {
+        String url = simulator.getBaseUrl() + "/users/octocat/gists";
+        ResponseEntity<String> first = restTemplate.getForEntity(url, String.class);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(first.getHeaders().getETag());
+
+        ResponseEntity<String> second = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers),
+                String.class);
+
+        Assertions.assertThat(second.getStatusCodeValue()).isEqualTo(304);
+        Assertions.assertThat(second.getHeaders().getFirst("X-RateLimit-Remaining"))
+                .isEqualTo(first.getHeaders().getFirst("X-RateLimit-Remaining"));
+        Assertions.assertThat(simulator.getNotModified()).isEqualTo(1);
+    }
+
+    /**
+     * Once the window is used up, Github requests must get 403 with no remaining requests.
+     */
+    @Test
+    public void gists_RateLimitUsedUp_ShouldAnswerForbidden() {
+        simulator.setRateLimit(2, 3600);
+        String url = simulator.getBaseUrl() + "/users/octocat/gists";
+
+        ResponseEntity<String> first = restTemplate.getForEntity(url, String.class);
+        restTemplate.getForEntity(url, String.class);
+        ResponseEntity<String> third = restTemplate.getForEntity(url, String.class);
+
+        Assertions.assertThat(first.getHeaders().getFirst("X-RateLimit-Remaining")).isEqualTo("1");
+        Assertions.assertThat(third.getStatusCodeValue()).isEqualTo(403);
+        Assertions.assertThat(third.getHeaders().getFirst("X-RateLimit-Remaining")).isEqualTo("0");
+        Assertions.assertThat(Long.parseLong(third.getHeaders().getFirst("X-RateLimit-Reset")))
+                .isGreaterThan(Instant.now().getEpochSecond());
+        Assertions.assertThat(simulator.getRateLimited()).isEqualTo(1);
+    }
+
+    /**
+     * Activities must need a token, and fail at the configured error rate.
+     */
+    @Test
+    public void activities_TokenAndErrorRate_ShouldAnswerLikePipeDrive() {
+        String url = simulator.getBaseUrl() + "/v1/activities";
+        HttpEntity<String> activity = new HttpEntity<>("{\"subject\":\"gist\"}");
+
+        ResponseEntity<String> created = restTemplate.postForEntity(url + "?api_token=x", activity, String.class);
+        ResponseEntity<String> unauthorized = restTemplate.postForEntity(url, activity, String.class);
+        simulator.setPipeDriveErrorRate(1);
+        ResponseEntity<String> failed = restTemplate.postForEntity(url + "?api_token=x", activity, String.class);
+
+        Assertions.assertThat(created.getStatusCodeValue()).isEqualTo(201);
+        Assertions.assertThat(created.getBody()).contains("\"success\":true");
+        Assertions.assertThat(unauthorized.getStatusCodeValue()).isEqualTo(401);
+        Assertions.assertThat(failed.getStatusCodeValue()).isEqualTo(500);
+        Assertions.assertThat(failed.getBody()).contains("\"success\":false");
+        Assertions.assertThat(simulator.getActivities()).isEqualTo(1);
+        Assertions.assertThat(simulator.getPipeDriveErrors()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,103 @@
+package com.test.demo.simulator;
+
+import com.test.demo.DemoApplication;
+import com.test.demo.service.MainService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests related to {@link SweepLoadHarness}, running the application against {@link ApiSimulator}.
+ */
+public class SweepLoadHarnessTest {
+
+    /**
+     * The simulator.
+     */
+    private ApiSimulator simulator;
+
+    /**
+     * Directory of the user files.
+     */
+    private Path storageDir;
+
+    /**
+     * The application.
+     */
+    private ConfigurableApplicationContext context;
+
+    /**
+     * Start the simulator and the application.
+     *
+     * @throws IOException if the simulator or the storage directory cannot be created.
+     */
+    @Before
+    public void before() throws IOException {
+        simulator = new ApiSimulator("127.0.0.1", 0);
+        simulator.setGistsPerUser(3);
+        simulator.setPipeDriveLatencyMillis(5);
+        // the governor spreads Github's 5000 an hour over the hour, 0.7 seconds a request
+        simulator.setRateLimit(10_000_000, 3600);
+        storageDir = Files.createTempDirectory("sweep-load");
+        // arguments rather than default properties, so they win over application.properties
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--github.api-url=" + simulator.getBaseUrl(),
+                        "--pipedrive.api-url=http://localhost:" + simulator.getPort(),
+                        "--storage.dir=" + storageDir,
+                        "--sweep.schedule=fixed",
+                        "--management.metrics.distribution.percentiles.sweep.user.duration=0.5,0.99",
+                        "--management.metrics.distribution.percentiles.http.outbound.requests=0.99");
+    }
+
+    /**
+     * Stop the application and the simulator.
+     *
+     * @throws IOException if the storage directory cannot be deleted.
+     */
+    @After
+    public void after() throws IOException {
+        context.close();
+        simulator.close();
+        try (Stream<Path> paths = Files.walk(storageDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * The first sweep must deliver every gist of every user; the second has nothing new to deliver.
+     *
+     * @throws InterruptedException if interrupted while waiting for a sweep.
+     */
+    @Test
+    public void run_TwoSweeps_ShouldReportEachSweep() throws InterruptedException {
+        SweepLoadHarness harness = new SweepLoadHarness(context.getBean(MainService.class), simulator,
+                context.getBean(MeterRegistry.class));
+
+        List<SweepLoadHarness.Report> reports = harness.run(20, 2);
+
+        Assertions.assertThat(reports).hasSize(2);
+        SweepLoadHarness.Report first = reports.get(0);
+        Assertions.assertThat(first.getProgress().getCompleted()).isEqualTo(20);
+        Assertions.assertThat(first.getActivities()).isEqualTo(60);
+        Assertions.assertThat(first.getActivitiesPerSecond()).isPositive();
+        Assertions.assertThat(first.getUserPercentiles()).hasSize(2);
+        Assertions.assertThat(first.getGitHubPercentiles()).hasSize(1);
+        Assertions.assertThat(first.getPipeDrivePercentiles()).hasSize(1);
+        Assertions.assertThat(first.toString()).contains("Sweep 1: 20 users", "p50=", "p99=");
+        Assertions.assertThat(reports.get(1).getProgress().getCompleted()).isEqualTo(20);
+        Assertions.assertThat(reports.get(1).getActivities()).isZero();
+    }
+}